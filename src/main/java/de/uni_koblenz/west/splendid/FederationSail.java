@@ -22,6 +22,14 @@ package de.uni_koblenz.west.splendid;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
@@ -38,7 +46,10 @@ import org.slf4j.LoggerFactory;
 
 import de.uni_koblenz.west.splendid.config.InitializedWithSail;
 import de.uni_koblenz.west.splendid.evaluation.FederationEvalStrategy;
+import de.uni_koblenz.west.splendid.optimizer.DynamicProgrammingOptimizer;
+import de.uni_koblenz.west.splendid.optimizer.QueryPlanCache;
 import de.uni_koblenz.west.splendid.sources.SourceSelector;
+import de.uni_koblenz.west.splendid.statistics.RDFStatistics;
 import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
 
 /**
@@ -47,6 +58,9 @@ import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
  * of the data sources. Join optimization is based on data statistics
  * and result cardinality estimation.<br>
  * 
+ * Members are initialized concurrently and can be added, refreshed or
+ * removed while the Sail is running.<br>
+ * 
  * The implementation is adapted from Sesame's {@link Federation} Sail.
  * 
  * @author Olaf Goerlitz
@@ -56,21 +70,77 @@ public class FederationSail extends AbstractSail {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(FederationSail.class);
 	
+	private static final int INIT_THREADS = Runtime.getRuntime().availableProcessors();
+	
 	private List<Repository> members;
 	private SourceSelector selector;
 	private QueryOptimizer optimizer;
 	private EvaluationStrategy evalStrategy;
+	private RDFStatistics statistics;
+	private QueryPlanCache planCache;
 
-	private boolean initialized = false;
+	private volatile boolean initialized = false;
 	
 	public FederationSail() {
-		this.members = new ArrayList<Repository>();
+		this.members = new CopyOnWriteArrayList<Repository>();
 	}
 	
-	public void addMember(Repository rep) {
+	/**
+	 * Adds a member to the federation. The member is initialized
+	 * immediately if the Sail has already been initialized.
+	 * 
+	 * @param rep the member repository.
+	 * @throws SailException if the member can not be initialized.
+	 */
+	public void addMember(Repository rep) throws SailException {
 		if (rep == null)
 			throw new IllegalArgumentException("federation member must not be NULL");
+		if (this.initialized) {
+			assignStatistics(rep);
+			initMember(rep);
+		}
 		this.members.add(rep);
+		clearPlanCache();
+	}
+	
+	/**
+	 * Removes a member from the federation and shuts it down if the Sail
+	 * has been initialized, which also removes the member's statistics.
+	 * 
+	 * @param rep the member repository.
+	 * @return true if the repository was a member of the federation.
+	 * @throws SailException if the member can not be shut down.
+	 */
+	public boolean removeMember(Repository rep) throws SailException {
+		if (!this.members.remove(rep))
+			return false;
+		clearPlanCache();
+		if (this.initialized) {
+			try {
+				rep.shutDown();
+			} catch (RepositoryException e) {
+				throw new SailException("can not shut down repository: " + e.getMessage(), e);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Reloads the statistics of a federation member.
+	 * 
+	 * @param rep the member repository.
+	 * @throws SailException if the statistics can not be reloaded.
+	 */
+	public void refreshMember(Repository rep) throws SailException {
+		if (!this.members.contains(rep))
+			throw new IllegalArgumentException("repository is not a federation member");
+		if (!(rep instanceof VoidRepository))
+			throw new IllegalArgumentException("can not refresh statistics of " + rep.getClass().getName());
+		try {
+			((VoidRepository) rep).refresh();
+		} catch (RepositoryException e) {
+			throw new SailException("can not refresh repository: " + e.getMessage(), e);
+		}
 	}
 	
 	// --- GETTER --------------------------------------------------------------
@@ -91,6 +161,14 @@ public class FederationSail extends AbstractSail {
 		return this.selector;
 	}
 	
+	public RDFStatistics getStatistics() {
+		return this.statistics;
+	}
+	
+	public QueryPlanCache getPlanCache() {
+		return this.planCache;
+	}
+	
 	// --- SETTER --------------------------------------------------------------
 
 	public void setEvalStrategy(EvaluationStrategy evalStrategy) {
@@ -112,7 +190,30 @@ public class FederationSail extends AbstractSail {
 			if (rep == null)
 				throw new IllegalArgumentException("federation member must not be NULL");
 		}
-		this.members = members;
+		this.members = new CopyOnWriteArrayList<Repository>(members);
+	}
+
+	/**
+	 * Sets the statistics of this federation. voiD repository members
+	 * load their statistics into this instance.
+	 * 
+	 * @param statistics the statistics.
+	 */
+	public void setStatistics(RDFStatistics statistics) {
+		if (statistics == null)
+			throw new IllegalArgumentException("statistics must not be NULL");
+		if (this.initialized)
+			throw new IllegalStateException("statistics can not be changed after initialization");
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Sets the cache for optimized query plans.
+	 * 
+	 * @param planCache the plan cache or null to disable caching.
+	 */
+	public void setPlanCache(QueryPlanCache planCache) {
+		this.planCache = planCache;
 	}
 
 	public void setSourceSelector(SourceSelector selector) {
@@ -123,6 +224,15 @@ public class FederationSail extends AbstractSail {
 	
 	// -------------------------------------------------------------------------
 	
+	/**
+	 * Discards the cached query plans, which may refer to removed members
+	 * or miss added ones.
+	 */
+	private void clearPlanCache() {
+		if (this.planCache != null)
+			this.planCache.clear();
+	}
+	
 	/**
 	 * Initializes the Sail with statistics and optimizer settings.
 	 * 
@@ -142,20 +252,16 @@ public class FederationSail extends AbstractSail {
 //		if (this.evalStrategy == null)
 //			throw new SailException("Sail evaluation strategy has not been initialized");
 		
-		// initialize all members
+		// initialize statistics and all members
+		if (this.statistics == null)
+			this.statistics = new VoidStatistics();
 		for (Repository rep : this.members) {
-			try {
-				rep.init();
-			} catch (RepositoryException e) {
-				throw new SailException("can not initialize repository: " + e.getMessage(), e);
-			} catch (IllegalStateException e) {
-				LOGGER.debug("member repository is already initialized", e);
-			}
+			assignStatistics(rep);
 		}
+		initMembers(this.members);
 		
-		// initialize statistics and source selector
-		VoidStatistics stats = VoidStatistics.getInstance();
-		this.selector.setStatistics(stats);
+		// initialize source selector
+		this.selector.setStatistics(this.statistics);
 		this.selector.init();
 		
 		// initialize evaluation strategy
@@ -173,6 +279,77 @@ public class FederationSail extends AbstractSail {
 		initialized = true;
 	}
 	
+	/**
+	 * Initializes the members concurrently, which loads their statistics.
+	 * 
+	 * @param reps the member repositories.
+	 * @throws SailException if a member can not be initialized.
+	 */
+	private void initMembers(List<Repository> reps) throws SailException {
+		if (reps.isEmpty())
+			return;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(reps.size(), INIT_THREADS), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "splendid-init-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>(reps.size());
+			for (final Repository rep : reps) {
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws SailException {
+						initMember(rep);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SailException)
+				throw (SailException) e.getCause();
+			throw new SailException("can not initialize repository: " + e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SailException("interrupted while initializing repositories", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Lets a voiD repository member load its statistics into the
+	 * statistics of this federation.
+	 * 
+	 * @param rep the member repository.
+	 * @throws SailException if the statistics can not hold voiD descriptions.
+	 */
+	private void assignStatistics(Repository rep) throws SailException {
+		if (rep instanceof VoidRepository) {
+			if (!(this.statistics instanceof VoidStatistics))
+				throw new SailException("voiD repository members require VoidStatistics but found " + this.statistics.getClass().getName());
+			((VoidRepository) rep).setStatistics((VoidStatistics) this.statistics);
+		}
+	}
+	
+	private void initMember(Repository rep) throws SailException {
+		try {
+			rep.init();
+		} catch (RepositoryException e) {
+			throw new SailException("can not initialize repository: " + e.getMessage(), e);
+		} catch (IllegalStateException e) {
+			LOGGER.debug("member repository is already initialized", e);
+		}
+	}
+	
 	/**
 	 * Shuts down the Sail.
 	 * 
@@ -181,6 +358,15 @@ public class FederationSail extends AbstractSail {
 	 */
 	@Override
 	protected void shutDownInternal() throws SailException {
+		if (this.evalStrategy instanceof FederationEvalStrategy)
+			((FederationEvalStrategy) this.evalStrategy).shutDown();
+		
+		if (this.selector != null)
+			this.selector.shutDown();
+		
+		if (this.optimizer instanceof DynamicProgrammingOptimizer)
+			((DynamicProgrammingOptimizer) this.optimizer).shutDown();
+		
 		for (Repository rep : this.members) {
 			try {
 				rep.shutDown();
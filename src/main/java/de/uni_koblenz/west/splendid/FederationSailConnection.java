@@ -50,6 +50,10 @@ import org.slf4j.LoggerFactory;
 
 import de.uni_koblenz.west.splendid.helpers.OperatorTreePrinter;
 import de.uni_koblenz.west.splendid.helpers.ReadOnlySailConnection;
+import de.uni_koblenz.west.splendid.optimizer.DuplicateEliminationOptimizer;
+import de.uni_koblenz.west.splendid.optimizer.ProjectionPushdownOptimizer;
+import de.uni_koblenz.west.splendid.optimizer.QueryPlanCache;
+import de.uni_koblenz.west.splendid.statistics.RDFStatistics;
 
 /**
  * Wraps multiple remote repositories with SPARQL endpoints into one
@@ -69,6 +73,8 @@ public class FederationSailConnection extends ReadOnlySailConnection {
 
 	private final QueryOptimizer optimizer;
 	private final EvaluationStrategy strategy;
+	private final QueryPlanCache planCache;
+	private final RDFStatistics statistics;
 	
 	/**
 	 * Create a Sail connection which wraps the members repository connections.
@@ -86,6 +92,8 @@ public class FederationSailConnection extends ReadOnlySailConnection {
 		
 		this.optimizer = sail.getFederationOptimizer();
 		this.strategy = sail.getEvalStrategy();
+		this.planCache = sail.getPlanCache();
+		this.statistics = sail.getStatistics();
 	}
 	
 	// -------------------------------------------------------------------------
@@ -124,10 +132,32 @@ public class FederationSailConnection extends ReadOnlySailConnection {
 		optimizerList.add(new SameTermFilterOptimizer());
 		// optimizerList.add(new FilterOptimizer());
 		// optimizerList.add(new QueryModelPruner());
-		optimizerList.add(this.optimizer);
-
+		
 		optimizerList.optimize(query, dataset, bindings);
 		
+		// reuse the plan of a query with the same template
+		QueryPlanCache.Template template = null;
+		TupleExpr plan = null;
+		if (this.planCache != null && dataset == null) {
+			this.planCache.validate(this.statistics.getVersion());
+			template = this.planCache.getTemplate(query);
+			plan = this.planCache.get(template);
+		}
+		
+		if (plan != null) {
+			query = plan;
+		} else {
+			QueryOptimizerList planOptimizerList = new QueryOptimizerList();
+			planOptimizerList.add(this.optimizer);
+			planOptimizerList.add(new DuplicateEliminationOptimizer());
+			planOptimizerList.add(new ProjectionPushdownOptimizer());
+			
+			planOptimizerList.optimize(query, dataset, bindings);
+			
+			if (template != null)
+				this.planCache.put(template, query);
+		}
+		
 		if (LOGGER.isTraceEnabled())
 			LOGGER.trace("Optimized query model:\n{}", OperatorTreePrinter.print(query));
 		
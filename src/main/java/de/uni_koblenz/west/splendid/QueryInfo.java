@@ -4,6 +4,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class QueryInfo {
     public AtomicInteger nbAskQuery = new AtomicInteger();   
+    public AtomicInteger nbAskCacheHit = new AtomicInteger();
+    public AtomicInteger nbAskCacheMiss = new AtomicInteger();
     public long planningTime = 0;
     public long sourceSelectionTime = 0;
 }
@@ -236,6 +236,8 @@ public class SPLENDID {
 
 					// Reset nbAsk and planningtime to avoid issue
 					queryInfo.nbAskQuery.set(0);
+					queryInfo.nbAskCacheHit.set(0);
+					queryInfo.nbAskCacheMiss.set(0);
 					queryInfo.planningTime = 0;
 					queryInfo.sourceSelectionTime = 0;
 
@@ -48,6 +48,8 @@ public class VoidRepository implements Repository {
 	protected IRI endpoint;
 	protected final IRI voidIRI;
 	
+	protected VoidStatistics statistics;
+	
 	protected boolean initialized = false;
 	
 	public VoidRepository(VoidRepositoryConfig config) {
@@ -58,6 +60,19 @@ public class VoidRepository implements Repository {
 	public IRI getEndpoint() {
 		return this.endpoint;
 	}
+	
+	/**
+	 * Sets the statistics which the voiD description is loaded into.
+	 * 
+	 * @param statistics the statistics of the federation.
+	 */
+	public void setStatistics(VoidStatistics statistics) {
+		if (statistics == null)
+			throw new IllegalArgumentException("statistics must not be null");
+		if (this.initialized && statistics != this.statistics)
+			throw new IllegalStateException("Void repository has already been initialized with other statistics");
+		this.statistics = statistics;
+	}
 
 	// --------------------------------------------------------------
 	
@@ -95,8 +110,12 @@ public class VoidRepository implements Repository {
 			return;
 		}
 		
+		// a repository which is not part of a federation keeps its own statistics
+		if (this.statistics == null)
+			this.statistics = new VoidStatistics();
+		
 		try {
-			this.endpoint = VoidStatistics.getInstance().load(this.voidIRI, this.endpoint);
+			this.endpoint = this.statistics.load(this.voidIRI, this.endpoint);
 		} catch (IOException e) {
 			throw new RepositoryException("can not read voiD description " + this.voidIRI + " because of the following error: " + e.getMessage(), e);
 		}
@@ -104,9 +123,27 @@ public class VoidRepository implements Repository {
 		this.initialized = true;
 	}
 
+	/**
+	 * Reloads the voiD description of this repository, e.g. after the
+	 * statistics of the SPARQL endpoint have been updated.
+	 */
+	public void refresh() throws RepositoryException {
+		if (!this.initialized)
+			throw new IllegalStateException("Void repository has not been initialized");
+		
+		try {
+			this.endpoint = this.statistics.reload(this.voidIRI, this.endpoint);
+		} catch (IOException e) {
+			throw new RepositoryException("can not read voiD description " + this.voidIRI + " because of the following error: " + e.getMessage(), e);
+		}
+	}
+
 	@Override
 	public void shutDown() throws RepositoryException {
-		// TODO: remove statistics from VOID repository?
+		if (this.initialized) {
+			this.statistics.unload(this.voidIRI);
+			this.initialized = false;
+		}
 	}
 
 	@Override
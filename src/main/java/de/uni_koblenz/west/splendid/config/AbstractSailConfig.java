@@ -149,6 +149,28 @@ public abstract class AbstractSailConfig implements SailImplConfig {
 		}
 	}
 	
+	/**
+	 * Returns the integer value of the triple's object matching the predicate.
+	 * 
+	 * @param model the model of the configuration settings.
+	 * @param implNode the model representing a configuration setting.
+	 * @param predicate the predicate defining a configuration attribute.
+	 * @return the integer value of the object or the default value.
+	 * @throws SailConfigException if there is no (single) integer to return.
+	 */
+	protected int getObjectInteger(Model model, Resource implNode, IRI property, int defaultValue) throws SailConfigException {
+		Literal literal = getObjectLiteral(model, implNode, property);
+		if (literal == null) {
+			LOGGER.trace("missing option " + property + ", default is " + defaultValue);
+			return defaultValue;
+		}
+		try {
+			return literal.intValue();
+		} catch (NumberFormatException e) {
+			throw new SailConfigException("not an integer value in option " + property);
+		}
+	}
+	
 	/**
 	 * Returns the object resource of the triple matching the supplied predicate.
 	 * 
@@ -23,18 +23,24 @@ package de.uni_koblenz.west.splendid.config;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.MEMBER;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.QUERY_OPT;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.SRC_SELECTION;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.STATISTIC;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.config.RepositoryConfigException;
 import org.eclipse.rdf4j.repository.config.RepositoryImplConfig;
 import org.eclipse.rdf4j.repository.config.AbstractRepositoryImplConfig;
 import org.eclipse.rdf4j.sail.config.SailConfigException;
 
+import de.uni_koblenz.west.splendid.statistics.RDFStatistics;
+import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
+
 /**
  * Configuration details for federation setup including member descriptions.
  * 
@@ -48,6 +54,7 @@ public class FederationSailConfig extends AbstractSailConfig {
 	private final List<RepositoryImplConfig> memberConfig = new ArrayList<RepositoryImplConfig>();
 	private SourceSelectorConfig selectorConfig;
 	private QueryOptimizerConfig optimizerConfig;
+	private Class<? extends RDFStatistics> statisticsClass;
 	
 	/**
 	 * Returns the configuration settings of the federation members.
@@ -71,6 +78,27 @@ public class FederationSailConfig extends AbstractSailConfig {
 		return this.optimizerConfig;
 	}
 	
+	/**
+	 * Returns the statistics implementation of the federation. Every
+	 * federation created from this configuration gets its own instance.
+	 * 
+	 * @return the statistics implementation or null if the federation
+	 *         uses {@link VoidStatistics}.
+	 */
+	public Class<? extends RDFStatistics> getStatisticsClass() {
+		return this.statisticsClass;
+	}
+	
+	/**
+	 * Sets the statistics implementation of the federation, which must
+	 * have a public no-argument constructor.
+	 * 
+	 * @param statisticsClass the statistics implementation or null for {@link VoidStatistics}.
+	 */
+	public void setStatisticsClass(Class<? extends RDFStatistics> statisticsClass) {
+		this.statisticsClass = statisticsClass;
+	}
+	
 	// -------------------------------------------------------------------------
 
 	/**
@@ -91,6 +119,9 @@ public class FederationSailConfig extends AbstractSailConfig {
 		model.add(self, SRC_SELECTION, this.selectorConfig.export(model));
 		model.add(self, QUERY_OPT, this.optimizerConfig.export(model));
 		
+		if (this.statisticsClass != null)
+			model.add(self, STATISTIC, SimpleValueFactory.getInstance().createLiteral(this.statisticsClass.getName()));
+		
 		return self;
 	}
 
@@ -137,6 +168,18 @@ public class FederationSailConfig extends AbstractSailConfig {
 			if (optimizerConfig.getType() == null)
 				optimizerConfig.setType(DEFAULT_OPTIMIZER_STRATEGY);
 		}
+		
+		// get statistics implementation
+		Literal className = getObjectLiteral(model, implNode, STATISTIC);
+		if (className != null) {
+			try {
+				this.statisticsClass = Class.forName(className.stringValue()).asSubclass(RDFStatistics.class);
+			} catch (ClassNotFoundException e) {
+				throw new SailConfigException("unknown statistics impl: " + className);
+			} catch (ClassCastException e) {
+				throw new SailConfigException(className + " is not an RDFStatistics", e);
+			}
+		}
 	}
 
 	/**
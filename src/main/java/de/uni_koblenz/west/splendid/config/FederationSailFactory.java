@@ -20,6 +20,9 @@
  */
 package de.uni_koblenz.west.splendid.config;
 
+import java.io.File;
+
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
 import org.eclipse.rdf4j.repository.config.RepositoryConfigException;
 import org.eclipse.rdf4j.repository.config.RepositoryFactory;
 import org.eclipse.rdf4j.repository.config.RepositoryImplConfig;
@@ -34,14 +37,18 @@ import de.uni_koblenz.west.splendid.estimation.AbstractCardinalityEstimator;
 import de.uni_koblenz.west.splendid.estimation.AbstractCostEstimator;
 import de.uni_koblenz.west.splendid.estimation.SPLENDIDCardinalityEstimator;
 import de.uni_koblenz.west.splendid.estimation.SPLENDIDCostEstimator;
+import de.uni_koblenz.west.splendid.evaluation.FederationEvalStrategy;
 import de.uni_koblenz.west.splendid.model.SubQueryBuilder;
 import de.uni_koblenz.west.splendid.optimizer.AbstractFederationOptimizer;
 import de.uni_koblenz.west.splendid.optimizer.DynamicProgrammingOptimizer;
 import de.uni_koblenz.west.splendid.optimizer.PatternSelectivityOptimizer;
+import de.uni_koblenz.west.splendid.optimizer.QueryPlanCache;
+import de.uni_koblenz.west.splendid.sources.AskCache;
 import de.uni_koblenz.west.splendid.sources.AskSelector;
 import de.uni_koblenz.west.splendid.sources.IndexAskSelector;
 import de.uni_koblenz.west.splendid.sources.IndexSelector;
 import de.uni_koblenz.west.splendid.sources.SourceSelector;
+import de.uni_koblenz.west.splendid.statistics.RDFStatistics;
 import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
 
 /**
@@ -123,7 +130,10 @@ public class FederationSailFactory implements SailFactory {
 		sail.setFederationOptimizer(opt);
 		
 		// create evaluation strategy
-		sail.setEvalStrategy(optConfig.getEvalStrategy());
+		EvaluationStrategy evalStrategy = optConfig.getEvalStrategy();
+		if (evalStrategy == null)
+			evalStrategy = new FederationEvalStrategy(sail.getValueFactory(), optConfig);
+		sail.setEvalStrategy(evalStrategy);
 		
 		// setup statistics
 		boolean voidPlus = true;
@@ -133,7 +143,10 @@ public class FederationSailFactory implements SailFactory {
 		if ("VOID_PLUS".equalsIgnoreCase(estType))
 			voidPlus = true;
 		
-		VoidStatistics stats = VoidStatistics.getInstance();
+		// every federation has its own statistics
+		RDFStatistics stats = createStatistics(cfg.getStatisticsClass());
+		sail.setStatistics(stats);
+		
 		AbstractCardinalityEstimator cardEstim = new SPLENDIDCardinalityEstimator(stats, voidPlus);
 		AbstractCostEstimator costEstim = new SPLENDIDCostEstimator();
 		costEstim.setCardinalityEstimator(cardEstim);
@@ -143,6 +156,10 @@ public class FederationSailFactory implements SailFactory {
 		SourceSelector selector = getSourceSelector(cfg.getSelectorConfig());
 		sail.setSourceSelector(selector);
 		
+		// ASK queries use the HTTP connections of the federation
+		if (selector instanceof AskSelector && evalStrategy instanceof FederationEvalStrategy)
+			((AskSelector) selector).setEndpointRegistry(((FederationEvalStrategy) evalStrategy).getEndpointRegistry());
+		
 		opt.setBuilder(new SubQueryBuilder(optConfig));
 		opt.setSelector(selector);
 		opt.setCostEstimator(costEstim);
@@ -150,12 +167,33 @@ public class FederationSailFactory implements SailFactory {
 		opt.setModelEvaluator(costEstim);
 //		opt.setModelEvaluator(modelEval);
 		
+		// ASK queries probe the sources with the constants of the query
+		if (optConfig.getPlanCacheSize() > 0)
+			sail.setPlanCache(new QueryPlanCache(optConfig.getPlanCacheSize(), !(selector instanceof AskSelector)));
+		
 
 		return sail;
 	}
 	
 	// --------------------------------------------------------------
 	
+	/**
+	 * Creates the statistics of a federation.
+	 * 
+	 * @param statisticsClass the statistics implementation or null.
+	 * @return the created statistics.
+	 * @throws SailConfigException if the statistics can not be instantiated.
+	 */
+	private RDFStatistics createStatistics(Class<? extends RDFStatistics> statisticsClass) throws SailConfigException {
+		if (statisticsClass == null)
+			return new VoidStatistics();
+		try {
+			return statisticsClass.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new SailConfigException("failed to create statistics impl: " + statisticsClass.getName(), e);
+		}
+	}
+	
 	/**
 	 * Creates a sources selector for the given configuration settings.
 	 * 
@@ -167,14 +205,22 @@ public class FederationSailFactory implements SailFactory {
 	private SourceSelector getSourceSelector(SourceSelectorConfig selConf) throws SailConfigException {
 		String selectorType = selConf.getType();
 		
+		AskSelector askSelector;
 		if ("ASK".equalsIgnoreCase(selectorType))
-			return new AskSelector();
+			askSelector = new AskSelector();
 		else if ("INDEX".equalsIgnoreCase(selectorType))
 			return new IndexSelector(selConf.isUseTypeStats());
 		else if ("INDEX_ASK".equalsIgnoreCase(selectorType))
-			return new IndexAskSelector(selConf.isUseTypeStats());
+			askSelector = new IndexAskSelector(selConf.isUseTypeStats());
+		else
+			throw new SailConfigException("invalid source selector type: " + selectorType);
 		
-		throw new SailConfigException("invalid source selector type: " + selectorType);
+		askSelector.setAskTimeout(selConf.getAskTimeout());
+		if (selConf.getAskCacheSize() > 0) {
+			File file = (selConf.getAskCacheFile() != null) ? new File(selConf.getAskCacheFile()) : null;
+			askSelector.setAskCache(new AskCache(selConf.getAskCacheSize(), selConf.getAskCacheTTL() * 1000L, file));
+		}
+		return askSelector;
 	}
 	
 	/**
@@ -188,8 +234,15 @@ public class FederationSailFactory implements SailFactory {
 	private AbstractFederationOptimizer getQueryOptimizer(QueryOptimizerConfig optConf) throws SailConfigException {
 		String optimizerType = optConf.getType();
 		
-		if ("DYNAMIC_PROGRAMMING".equals(optimizerType))
-			return new DynamicProgrammingOptimizer(optConf.isUseHashJoin(), optConf.isUseBindJoin());
+		if ("DYNAMIC_PROGRAMMING".equals(optimizerType) || "IDP".equals(optimizerType)) {
+			DynamicProgrammingOptimizer opt = new DynamicProgrammingOptimizer(optConf.isUseHashJoin(), optConf.isUseBindJoin());
+			// IDP applies dynamic programming only to the blocks
+			opt.setMaxExpressions("IDP".equals(optimizerType) ? 0 : optConf.getDPMaxExpressions());
+			opt.setBlockSize(optConf.getIDPBlockSize());
+			opt.setTimeBudget(optConf.getPlanningTimeBudget());
+			opt.setParallelism(optConf.getPlanningParallelism());
+			return opt;
+		}
 		else if ("PATTERN_HEURISTIC".equals(optimizerType))
 			return new PatternSelectivityOptimizer();
 		
@@ -43,13 +43,38 @@ public class FederationSailSchema {
 	public static final IRI SRC_SELECTION = vf.createIRI(NAMESPACE + "sourceSelection");
 	public static final IRI SELECTOR_TYPE = vf.createIRI(NAMESPACE + "selectorType");
 	public static final IRI USE_TYPE_STATS = vf.createIRI(NAMESPACE + "useTypeStats");
+	public static final IRI ASK_CACHE_SIZE = vf.createIRI(NAMESPACE + "askCacheSize");
+	public static final IRI ASK_CACHE_TTL = vf.createIRI(NAMESPACE + "askCacheTTL");
+	public static final IRI ASK_CACHE_FILE = vf.createIRI(NAMESPACE + "askCacheFile");
+	public static final IRI ASK_TIMEOUT = vf.createIRI(NAMESPACE + "askTimeout");
 	public static final IRI GROUP_BY_SAMEAS = vf.createIRI(NAMESPACE + "groupBySameAs");
 	public static final IRI GROUP_BY_SOURCE = vf.createIRI(NAMESPACE + "groupBySource");
 	public static final IRI USE_BIND_JOIN = vf.createIRI(NAMESPACE + "useBindJoin");
 	public static final IRI USE_HASH_JOIN = vf.createIRI(NAMESPACE + "useHashJoin");
+	public static final IRI DP_MAX_EXPRESSIONS = vf.createIRI(NAMESPACE + "dpMaxExpressions");
+	public static final IRI IDP_BLOCK_SIZE = vf.createIRI(NAMESPACE + "idpBlockSize");
+	public static final IRI PLANNING_TIME_BUDGET = vf.createIRI(NAMESPACE + "planningTimeBudget");
+	public static final IRI PLANNING_PARALLELISM = vf.createIRI(NAMESPACE + "planningParallelism");
+	public static final IRI PLAN_CACHE_SIZE = vf.createIRI(NAMESPACE + "planCacheSize");
 	public static final IRI ESTIMATOR = vf.createIRI(NAMESPACE + "cardEstimator");
 	public static final IRI STATISTIC = vf.createIRI(NAMESPACE + "statistic");
 	public static final IRI VOID_IRI  = vf.createIRI(NAMESPACE + "voidDescription");
 	public static final IRI EVAL_STRATEGY  = vf.createIRI(NAMESPACE + "evalStrategy");
+	public static final IRI HASH_JOIN_TYPE = vf.createIRI(NAMESPACE + "hashJoinType");
+	public static final IRI HASH_JOIN_MEMORY = vf.createIRI(NAMESPACE + "hashJoinMemoryBudget");
+	public static final IRI HASH_JOIN_THREADS = vf.createIRI(NAMESPACE + "hashJoinThreads");
+	public static final IRI BIND_JOIN_BLOCK_SIZE = vf.createIRI(NAMESPACE + "bindJoinBlockSize");
+	public static final IRI BIND_JOIN_USE_VALUES = vf.createIRI(NAMESPACE + "bindJoinUseValues");
+	public static final IRI MAX_THREADS = vf.createIRI(NAMESPACE + "maxThreads");
+	public static final IRI MAX_THREADS_PER_SOURCE = vf.createIRI(NAMESPACE + "maxThreadsPerSource");
+	public static final IRI TASK_QUEUE_SIZE = vf.createIRI(NAMESPACE + "taskQueueSize");
+	public static final IRI VIRTUAL_THREADS = vf.createIRI(NAMESPACE + "virtualThreads");
+	public static final IRI PREFETCH_BUFFER_SIZE = vf.createIRI(NAMESPACE + "prefetchBufferSize");
+	public static final IRI PREFETCH_HIGH_WATERMARK = vf.createIRI(NAMESPACE + "prefetchHighWatermark");
+	public static final IRI PREFETCH_LOW_WATERMARK = vf.createIRI(NAMESPACE + "prefetchLowWatermark");
+	public static final IRI MAX_CONNECTIONS = vf.createIRI(NAMESPACE + "maxConnections");
+	public static final IRI MAX_CONNECTIONS_PER_ENDPOINT = vf.createIRI(NAMESPACE + "maxConnectionsPerEndpoint");
+	public static final IRI CONNECT_TIMEOUT = vf.createIRI(NAMESPACE + "connectTimeout");
+	public static final IRI READ_TIMEOUT = vf.createIRI(NAMESPACE + "readTimeout");
 
 }
@@ -20,13 +20,34 @@
  */
 package de.uni_koblenz.west.splendid.config;
 
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.BIND_JOIN_BLOCK_SIZE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.BIND_JOIN_USE_VALUES;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.CONNECT_TIMEOUT;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.DP_MAX_EXPRESSIONS;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.ESTIMATOR;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.EVAL_STRATEGY;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.GROUP_BY_SAMEAS;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.GROUP_BY_SOURCE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.HASH_JOIN_MEMORY;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.HASH_JOIN_THREADS;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.HASH_JOIN_TYPE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.IDP_BLOCK_SIZE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.MAX_CONNECTIONS;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.MAX_CONNECTIONS_PER_ENDPOINT;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.MAX_THREADS;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.MAX_THREADS_PER_SOURCE;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.OPT_TYPE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.PLANNING_PARALLELISM;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.PLAN_CACHE_SIZE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.PLANNING_TIME_BUDGET;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.PREFETCH_BUFFER_SIZE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.PREFETCH_HIGH_WATERMARK;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.PREFETCH_LOW_WATERMARK;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.READ_TIMEOUT;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.TASK_QUEUE_SIZE;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.USE_BIND_JOIN;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.USE_HASH_JOIN;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.VIRTUAL_THREADS;
 
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Literal;
@@ -36,6 +57,10 @@ import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
 import org.eclipse.rdf4j.sail.config.SailConfigException;
 
+import de.uni_koblenz.west.splendid.helpers.SparqlEndpointRegistry;
+import de.uni_koblenz.west.splendid.optimizer.DynamicProgrammingOptimizer;
+import de.uni_koblenz.west.splendid.optimizer.QueryPlanCache;
+
 /**
  * Configuration settings for the query optimizer.
  * 
@@ -44,8 +69,19 @@ import org.eclipse.rdf4j.sail.config.SailConfigException;
 public class QueryOptimizerConfig extends AbstractSailConfig {
 	
 	private static final String DEFAULT_ESTIMATOR_TYPE = "INDEX_ASK";
+	private static final String DEFAULT_HASH_JOIN_TYPE = "SYMMETRIC";
+	private static final int DEFAULT_HASH_JOIN_MEMORY = 256;
+	private static final int DEFAULT_HASH_JOIN_THREADS = 16;
+	private static final int DEFAULT_BIND_JOIN_BLOCK_SIZE = 50;
+	private static final int DEFAULT_MAX_THREADS = 32;
+	private static final int DEFAULT_MAX_THREADS_PER_SOURCE = 8;
+	private static final int DEFAULT_TASK_QUEUE_SIZE = 1024;
+	private static final int DEFAULT_PREFETCH_BUFFER_SIZE = 1024;
 	
 	private String estimatorType = DEFAULT_ESTIMATOR_TYPE;
+	private String hashJoinType = DEFAULT_HASH_JOIN_TYPE;
+	private int hashJoinMemoryBudget = DEFAULT_HASH_JOIN_MEMORY;
+	private int hashJoinThreads = DEFAULT_HASH_JOIN_THREADS;
 	
 	private boolean groupBySameAs = false;
 	private boolean groupBySource = true;
@@ -53,6 +89,29 @@ public class QueryOptimizerConfig extends AbstractSailConfig {
 	private boolean useBindJoin = true;
 	private boolean useHashJoin = true;
 	
+	private int bindJoinBlockSize = DEFAULT_BIND_JOIN_BLOCK_SIZE;
+	private boolean bindJoinUseValues = true;
+	
+	private int dpMaxExpressions = DynamicProgrammingOptimizer.DEFAULT_MAX_EXPRESSIONS;
+	private int idpBlockSize = DynamicProgrammingOptimizer.DEFAULT_BLOCK_SIZE;
+	private int planningTimeBudget = (int) DynamicProgrammingOptimizer.DEFAULT_TIME_BUDGET;
+	private int planningParallelism = Runtime.getRuntime().availableProcessors();
+	private int planCacheSize = QueryPlanCache.DEFAULT_CAPACITY;
+	
+	private int maxThreads = DEFAULT_MAX_THREADS;
+	private int maxThreadsPerSource = DEFAULT_MAX_THREADS_PER_SOURCE;
+	private int taskQueueSize = DEFAULT_TASK_QUEUE_SIZE;
+	private boolean virtualThreads = false;
+	
+	private int prefetchBufferSize = DEFAULT_PREFETCH_BUFFER_SIZE;
+	private int prefetchHighWatermark = DEFAULT_PREFETCH_BUFFER_SIZE;
+	private int prefetchLowWatermark = DEFAULT_PREFETCH_BUFFER_SIZE / 2;
+	
+	private int maxConnections = SparqlEndpointRegistry.DEFAULT_MAX_CONNECTIONS;
+	private int maxConnectionsPerEndpoint = SparqlEndpointRegistry.DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT;
+	private int connectTimeout = SparqlEndpointRegistry.DEFAULT_CONNECT_TIMEOUT;
+	private int readTimeout = SparqlEndpointRegistry.DEFAULT_READ_TIMEOUT;
+	
 	private EvaluationStrategy evalStrategy;
 	
 	protected QueryOptimizerConfig() {
@@ -73,6 +132,215 @@ public class QueryOptimizerConfig extends AbstractSailConfig {
 		return this.estimatorType;
 	}
 	
+	/**
+	 * Returns the hash join implementation used for evaluation:
+	 * <tt>BLOCKING</tt> or <tt>SYMMETRIC</tt>.
+	 * 
+	 * @return the hash join type.
+	 */
+	public String getHashJoinType() {
+		return this.hashJoinType;
+	}
+	
+	/**
+	 * Returns the memory budget (in MB) of a blocking hash join.
+	 * Larger hash tables are partitioned and spilled to disk.
+	 * 
+	 * @return the hash join memory budget.
+	 */
+	public int getHashJoinMemoryBudget() {
+		return this.hashJoinMemoryBudget;
+	}
+	
+	/**
+	 * Returns the maximum number of threads which retrieve the arguments
+	 * of symmetric hash joins. Join arguments without a free thread are
+	 * read by the join itself.
+	 * 
+	 * @return the hash join thread limit.
+	 */
+	public int getHashJoinThreads() {
+		return this.hashJoinThreads;
+	}
+	
+	/**
+	 * Returns the number of left bindings which are shipped with a single
+	 * bind join sub query. A block size of 1 disables block shipping.
+	 * 
+	 * @return the bind join block size.
+	 */
+	public int getBindJoinBlockSize() {
+		return this.bindJoinBlockSize;
+	}
+	
+	/**
+	 * Returns whether bind join blocks are shipped with a SPARQL 1.1 VALUES
+	 * clause or as a UNION of renamed patterns (for SPARQL 1.0 endpoints).
+	 * 
+	 * @return true if VALUES clauses are used.
+	 */
+	public boolean isBindJoinUseValues() {
+		return this.bindJoinUseValues;
+	}
+	
+	/**
+	 * Returns the maximum number of base expressions which are optimized
+	 * with full dynamic programming. Larger queries are optimized with
+	 * iterative dynamic programming (IDP).
+	 * 
+	 * @return the maximum number of base expressions.
+	 */
+	public int getDPMaxExpressions() {
+		return this.dpMaxExpressions;
+	}
+	
+	/**
+	 * Returns the number of base expressions which are combined in every
+	 * iteration of IDP.
+	 * 
+	 * @return the IDP block size.
+	 */
+	public int getIDPBlockSize() {
+		return this.idpBlockSize;
+	}
+	
+	/**
+	 * Returns the time (in milliseconds) which may be spent on dynamic
+	 * programming and on IDP before falling back to a faster strategy.
+	 * A budget of 0 disables the limit.
+	 * 
+	 * @return the planning time budget.
+	 */
+	public int getPlanningTimeBudget() {
+		return this.planningTimeBudget;
+	}
+	
+	/**
+	 * Returns the number of threads which enumerate the join plans of large
+	 * queries. A parallelism of 1 disables the parallel enumeration.
+	 * 
+	 * @return the planning parallelism.
+	 */
+	public int getPlanningParallelism() {
+		return this.planningParallelism;
+	}
+	
+	/**
+	 * Returns the maximum number of cached query plans.
+	 * A size of 0 disables the plan cache.
+	 * 
+	 * @return the plan cache size.
+	 */
+	public int getPlanCacheSize() {
+		return this.planCacheSize;
+	}
+	
+	/**
+	 * Returns the maximum number of sub queries which are executed
+	 * concurrently on all sources.
+	 * 
+	 * @return the global thread limit.
+	 */
+	public int getMaxThreads() {
+		return this.maxThreads;
+	}
+	
+	/**
+	 * Returns the maximum number of sub queries which are executed
+	 * concurrently on a single source.
+	 * 
+	 * @return the per-source thread limit.
+	 */
+	public int getMaxThreadsPerSource() {
+		return this.maxThreadsPerSource;
+	}
+	
+	/**
+	 * Returns the maximum number of pending sub queries. Submitting more
+	 * sub queries blocks until running sub queries have finished.
+	 * 
+	 * @return the task queue size.
+	 */
+	public int getTaskQueueSize() {
+		return this.taskQueueSize;
+	}
+	
+	/**
+	 * Returns whether sub queries are executed on virtual threads.
+	 * Requires JDK 21 or later, otherwise platform threads are used.
+	 * 
+	 * @return true if virtual threads are used.
+	 */
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+	
+	/**
+	 * Returns the number of results which are prefetched from a source
+	 * while the query operators process the previous results.
+	 * 
+	 * @return the prefetch buffer size.
+	 */
+	public int getPrefetchBufferSize() {
+		return this.prefetchBufferSize;
+	}
+	
+	/**
+	 * Returns the prefetch buffer fill level which pauses the retrieval.
+	 * 
+	 * @return the high watermark.
+	 */
+	public int getPrefetchHighWatermark() {
+		return this.prefetchHighWatermark;
+	}
+	
+	/**
+	 * Returns the prefetch buffer fill level which resumes the retrieval.
+	 * 
+	 * @return the low watermark.
+	 */
+	public int getPrefetchLowWatermark() {
+		return this.prefetchLowWatermark;
+	}
+	
+	/**
+	 * Returns the maximum number of open HTTP connections to all endpoints.
+	 * 
+	 * @return the global connection limit.
+	 */
+	public int getMaxConnections() {
+		return this.maxConnections;
+	}
+	
+	/**
+	 * Returns the maximum number of open HTTP connections to a single endpoint.
+	 * 
+	 * @return the per-endpoint connection limit.
+	 */
+	public int getMaxConnectionsPerEndpoint() {
+		return this.maxConnectionsPerEndpoint;
+	}
+	
+	/**
+	 * Returns the timeout (in milliseconds) for establishing a connection
+	 * to an endpoint. A timeout of 0 waits forever.
+	 * 
+	 * @return the connect timeout.
+	 */
+	public int getConnectTimeout() {
+		return this.connectTimeout;
+	}
+	
+	/**
+	 * Returns the timeout (in milliseconds) for waiting on data from an
+	 * endpoint. A timeout of 0 waits forever.
+	 * 
+	 * @return the read timeout.
+	 */
+	public int getReadTimeout() {
+		return this.readTimeout;
+	}
+	
 	public EvaluationStrategy getEvalStrategy() {
 		return this.evalStrategy;
 	}
@@ -107,6 +375,31 @@ public class QueryOptimizerConfig extends AbstractSailConfig {
 		
 		model.add(self, USE_BIND_JOIN, vf.createLiteral(this.useBindJoin));
 		model.add(self, USE_HASH_JOIN, vf.createLiteral(this.useHashJoin));
+		model.add(self, HASH_JOIN_TYPE, vf.createLiteral(this.hashJoinType));
+		model.add(self, HASH_JOIN_MEMORY, vf.createLiteral(this.hashJoinMemoryBudget));
+		model.add(self, HASH_JOIN_THREADS, vf.createLiteral(this.hashJoinThreads));
+		model.add(self, BIND_JOIN_BLOCK_SIZE, vf.createLiteral(this.bindJoinBlockSize));
+		model.add(self, BIND_JOIN_USE_VALUES, vf.createLiteral(this.bindJoinUseValues));
+		
+		model.add(self, DP_MAX_EXPRESSIONS, vf.createLiteral(this.dpMaxExpressions));
+		model.add(self, IDP_BLOCK_SIZE, vf.createLiteral(this.idpBlockSize));
+		model.add(self, PLANNING_TIME_BUDGET, vf.createLiteral(this.planningTimeBudget));
+		model.add(self, PLANNING_PARALLELISM, vf.createLiteral(this.planningParallelism));
+		model.add(self, PLAN_CACHE_SIZE, vf.createLiteral(this.planCacheSize));
+		
+		model.add(self, MAX_THREADS, vf.createLiteral(this.maxThreads));
+		model.add(self, MAX_THREADS_PER_SOURCE, vf.createLiteral(this.maxThreadsPerSource));
+		model.add(self, TASK_QUEUE_SIZE, vf.createLiteral(this.taskQueueSize));
+		model.add(self, VIRTUAL_THREADS, vf.createLiteral(this.virtualThreads));
+		
+		model.add(self, PREFETCH_BUFFER_SIZE, vf.createLiteral(this.prefetchBufferSize));
+		model.add(self, PREFETCH_HIGH_WATERMARK, vf.createLiteral(this.prefetchHighWatermark));
+		model.add(self, PREFETCH_LOW_WATERMARK, vf.createLiteral(this.prefetchLowWatermark));
+		
+		model.add(self, MAX_CONNECTIONS, vf.createLiteral(this.maxConnections));
+		model.add(self, MAX_CONNECTIONS_PER_ENDPOINT, vf.createLiteral(this.maxConnectionsPerEndpoint));
+		model.add(self, CONNECT_TIMEOUT, vf.createLiteral(this.connectTimeout));
+		model.add(self, READ_TIMEOUT, vf.createLiteral(this.readTimeout));
 		
 		model.add(self, EVAL_STRATEGY, vf.createLiteral(this.evalStrategy.getClass().getName()));
 		
@@ -130,6 +423,38 @@ public class QueryOptimizerConfig extends AbstractSailConfig {
 		this.useBindJoin = getObjectBoolean(model, implNode, USE_BIND_JOIN, this.useBindJoin);
 		this.useHashJoin = getObjectBoolean(model, implNode, USE_HASH_JOIN, this.useHashJoin);
 		
+		Literal hashJoin = getObjectLiteral(model, implNode, HASH_JOIN_TYPE);
+		if (hashJoin != null) {
+			this.hashJoinType = hashJoin.getLabel();
+		}
+		
+		this.hashJoinMemoryBudget = getObjectInteger(model, implNode, HASH_JOIN_MEMORY, this.hashJoinMemoryBudget);
+		this.hashJoinThreads = getObjectInteger(model, implNode, HASH_JOIN_THREADS, this.hashJoinThreads);
+		
+		this.bindJoinBlockSize = getObjectInteger(model, implNode, BIND_JOIN_BLOCK_SIZE, this.bindJoinBlockSize);
+		this.bindJoinUseValues = getObjectBoolean(model, implNode, BIND_JOIN_USE_VALUES, this.bindJoinUseValues);
+		
+		this.dpMaxExpressions = getObjectInteger(model, implNode, DP_MAX_EXPRESSIONS, this.dpMaxExpressions);
+		this.idpBlockSize = getObjectInteger(model, implNode, IDP_BLOCK_SIZE, this.idpBlockSize);
+		this.planningTimeBudget = getObjectInteger(model, implNode, PLANNING_TIME_BUDGET, this.planningTimeBudget);
+		this.planningParallelism = getObjectInteger(model, implNode, PLANNING_PARALLELISM, this.planningParallelism);
+		this.planCacheSize = getObjectInteger(model, implNode, PLAN_CACHE_SIZE, this.planCacheSize);
+		
+		this.maxThreads = getObjectInteger(model, implNode, MAX_THREADS, this.maxThreads);
+		this.maxThreadsPerSource = getObjectInteger(model, implNode, MAX_THREADS_PER_SOURCE, this.maxThreadsPerSource);
+		this.taskQueueSize = getObjectInteger(model, implNode, TASK_QUEUE_SIZE, this.taskQueueSize);
+		this.virtualThreads = getObjectBoolean(model, implNode, VIRTUAL_THREADS, this.virtualThreads);
+		
+		// watermarks default to a full and a half empty buffer
+		this.prefetchBufferSize = getObjectInteger(model, implNode, PREFETCH_BUFFER_SIZE, this.prefetchBufferSize);
+		this.prefetchHighWatermark = getObjectInteger(model, implNode, PREFETCH_HIGH_WATERMARK, this.prefetchBufferSize);
+		this.prefetchLowWatermark = getObjectInteger(model, implNode, PREFETCH_LOW_WATERMARK, this.prefetchHighWatermark / 2);
+		
+		this.maxConnections = getObjectInteger(model, implNode, MAX_CONNECTIONS, this.maxConnections);
+		this.maxConnectionsPerEndpoint = getObjectInteger(model, implNode, MAX_CONNECTIONS_PER_ENDPOINT, this.maxConnectionsPerEndpoint);
+		this.connectTimeout = getObjectInteger(model, implNode, CONNECT_TIMEOUT, this.connectTimeout);
+		this.readTimeout = getObjectInteger(model, implNode, READ_TIMEOUT, this.readTimeout);
+		
 		Literal className = getObjectLiteral(model, implNode, EVAL_STRATEGY);
 		if (className != null) {
 			try {
@@ -158,6 +483,52 @@ public class QueryOptimizerConfig extends AbstractSailConfig {
 		if (this.useHashJoin == false && this.useBindJoin == false)
 			throw new SailConfigException("cannot create joins: all physical join types are set to false");
 		
+		if (!"BLOCKING".equalsIgnoreCase(this.hashJoinType) && !"SYMMETRIC".equalsIgnoreCase(this.hashJoinType))
+			throw new SailConfigException("invalid hash join type: " + this.hashJoinType);
+		
+		if (this.hashJoinMemoryBudget < 1)
+			throw new SailConfigException("hash join memory budget must be positive: " + this.hashJoinMemoryBudget);
+		
+		if (this.hashJoinThreads < 1)
+			throw new SailConfigException("hash join threads must be positive: " + this.hashJoinThreads);
+		
+		if (this.bindJoinBlockSize < 1)
+			throw new SailConfigException("bind join block size must be positive: " + this.bindJoinBlockSize);
+		
+		if (this.dpMaxExpressions < 0)
+			throw new SailConfigException("max DP expressions must not be negative: " + this.dpMaxExpressions);
+		
+		if (this.idpBlockSize < 2)
+			throw new SailConfigException("IDP block size must be at least 2: " + this.idpBlockSize);
+		
+		if (this.planningTimeBudget < 0)
+			throw new SailConfigException("planning time budget must not be negative: " + this.planningTimeBudget);
+		
+		if (this.planningParallelism < 1)
+			throw new SailConfigException("planning parallelism must be positive: " + this.planningParallelism);
+		
+		if (this.planCacheSize < 0)
+			throw new SailConfigException("plan cache size must not be negative: " + this.planCacheSize);
+		
+		if (this.maxThreads < 1 || this.maxThreadsPerSource < 1)
+			throw new SailConfigException("thread limits must be positive: " + MAX_THREADS + ", " + MAX_THREADS_PER_SOURCE);
+		
+		if (this.taskQueueSize < 1)
+			throw new SailConfigException("task queue size must be positive: " + this.taskQueueSize);
+		
+		if (this.prefetchBufferSize < 1)
+			throw new SailConfigException("prefetch buffer size must be positive: " + this.prefetchBufferSize);
+		
+		if (this.prefetchHighWatermark < 1 || this.prefetchHighWatermark > this.prefetchBufferSize
+				|| this.prefetchLowWatermark < 0 || this.prefetchLowWatermark >= this.prefetchHighWatermark)
+			throw new SailConfigException("invalid prefetch watermarks: " + this.prefetchLowWatermark + ", " + this.prefetchHighWatermark);
+		
+		if (this.maxConnections < 1 || this.maxConnectionsPerEndpoint < 1)
+			throw new SailConfigException("connection limits must be positive: " + MAX_CONNECTIONS + ", " + MAX_CONNECTIONS_PER_ENDPOINT);
+		
+		if (this.connectTimeout < 0 || this.readTimeout < 0)
+			throw new SailConfigException("timeouts must not be negative: " + CONNECT_TIMEOUT + ", " + READ_TIMEOUT);
+		
 		// TODO: check for valid estimator settings
 	}
 
@@ -20,15 +20,23 @@
  */
 package de.uni_koblenz.west.splendid.config;
 
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.ASK_CACHE_FILE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.ASK_CACHE_SIZE;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.ASK_CACHE_TTL;
+import static de.uni_koblenz.west.splendid.config.FederationSailSchema.ASK_TIMEOUT;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.SELECTOR_TYPE;
 import static de.uni_koblenz.west.splendid.config.FederationSailSchema.USE_TYPE_STATS;
 
+import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.ValueFactoryImpl;
 import org.eclipse.rdf4j.sail.config.SailConfigException;
 
+import de.uni_koblenz.west.splendid.sources.AskCache;
+import de.uni_koblenz.west.splendid.sources.AskSelector;
+
 /**
  * Configuration settings for the sources selector.
  * 
@@ -40,6 +48,11 @@ public class SourceSelectorConfig extends AbstractSailConfig {
 	/** @deprecated */
 	private boolean useTypeStats;
 	
+	private int askCacheSize = AskCache.DEFAULT_MAX_SIZE;
+	private int askCacheTTL = (int) (AskCache.DEFAULT_TTL / 1000);
+	private String askCacheFile;
+	private int askTimeout = AskSelector.DEFAULT_ASK_TIMEOUT;
+	
 	protected SourceSelectorConfig() {
 		super(SELECTOR_TYPE);
 	}
@@ -58,12 +71,56 @@ public class SourceSelectorConfig extends AbstractSailConfig {
 		return this.useTypeStats;
 	}
 	
+	/**
+	 * Returns the maximum number of cached ASK results.
+	 * A size of 0 disables the ASK cache.
+	 * 
+	 * @return the ASK cache size.
+	 */
+	public int getAskCacheSize() {
+		return this.askCacheSize;
+	}
+	
+	/**
+	 * Returns the time (in seconds) until a cached ASK result expires.
+	 * 
+	 * @return the ASK cache TTL.
+	 */
+	public int getAskCacheTTL() {
+		return this.askCacheTTL;
+	}
+	
+	/**
+	 * Returns the file which stores the ASK cache between restarts.
+	 * 
+	 * @return the ASK cache file or null if the cache is not stored.
+	 */
+	public String getAskCacheFile() {
+		return this.askCacheFile;
+	}
+	
+	/**
+	 * Returns the time (in milliseconds) to wait for the answers of the ASK
+	 * queries of a source selection. Sources which do not answer in time
+	 * are selected.
+	 * 
+	 * @return the ASK timeout.
+	 */
+	public int getAskTimeout() {
+		return this.askTimeout;
+	}
+	
 	@Override
 	public Resource export(Model model) {
 		ValueFactory vf = ValueFactoryImpl.getInstance();
 		
 		Resource self = super.export(model);
 		model.add(self, USE_TYPE_STATS, vf.createLiteral(this.useTypeStats));
+		model.add(self, ASK_CACHE_SIZE, vf.createLiteral(this.askCacheSize));
+		model.add(self, ASK_CACHE_TTL, vf.createLiteral(this.askCacheTTL));
+		if (this.askCacheFile != null)
+			model.add(self, ASK_CACHE_FILE, vf.createLiteral(this.askCacheFile));
+		model.add(self, ASK_TIMEOUT, vf.createLiteral(this.askTimeout));
 		
 		return self;
 	}
@@ -73,6 +130,27 @@ public class SourceSelectorConfig extends AbstractSailConfig {
 		super.parse(model, implNode);
 		
 		this.useTypeStats = getObjectBoolean(model, implNode, USE_TYPE_STATS, true);
+		
+		this.askCacheSize = getObjectInteger(model, implNode, ASK_CACHE_SIZE, this.askCacheSize);
+		this.askCacheTTL = getObjectInteger(model, implNode, ASK_CACHE_TTL, this.askCacheTTL);
+		Literal file = getObjectLiteral(model, implNode, ASK_CACHE_FILE);
+		if (file != null)
+			this.askCacheFile = file.getLabel();
+		this.askTimeout = getObjectInteger(model, implNode, ASK_TIMEOUT, this.askTimeout);
+	}
+	
+	@Override
+	public void validate() throws SailConfigException {
+		super.validate();
+		
+		if (this.askCacheSize < 0)
+			throw new SailConfigException("ASK cache size must not be negative: " + this.askCacheSize);
+		
+		if (this.askCacheTTL < 1)
+			throw new SailConfigException("ASK cache TTL must be positive: " + this.askCacheTTL);
+		
+		if (this.askTimeout < 1)
+			throw new SailConfigException("ASK timeout must be positive: " + this.askTimeout);
 	}
 
 }
@@ -20,7 +20,7 @@
  */
 package de.uni_koblenz.west.splendid.estimation;
 
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import org.eclipse.rdf4j.query.algebra.Filter;
@@ -31,17 +31,43 @@ import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
 import de.uni_koblenz.west.splendid.model.RemoteQuery;
 
 /**
+ * Base class for cardinality estimators. Estimates are memoized by plan
+ * signature (see {@link CardinalityMemo}).
+ * 
+ * The estimator does not lock: all state of an estimation is kept in the
+ * invocation and the memo table is concurrent. Hence, plans can be estimated
+ * by multiple threads at the same time.
+ * 
  * @author Olaf Goerlitz
  */
 public abstract class AbstractCardinalityEstimator extends AbstractQueryModelVisitor<RuntimeException> implements ModelEvaluator {
 
-	protected Map<TupleExpr, Double> cardIndex = new HashMap<TupleExpr, Double>();
+	protected final CardinalityMemo memo;
+	
+	// state of the estimation which is running in the current thread
+	private final ThreadLocal<Invocation> invocation = new ThreadLocal<Invocation>();
+	
+	public AbstractCardinalityEstimator() {
+		this.memo = new CardinalityMemo(CardinalityMemo.DEFAULT_CAPACITY);
+	}
+	
+	public CardinalityMemo getMemo() {
+		return this.memo;
+	}
 	
 	@Override
 	public Double process(TupleExpr expr) {
-		synchronized (this) {
-			expr.visit(this);
-			return cardIndex.get(expr);
+		Invocation outer = invocation.get();
+		invocation.set(new Invocation());
+		try {
+			if (getIndexCard(expr) == null)
+				expr.visit(this);
+			return getIndexCard(expr);
+		} finally {
+			if (outer == null)
+				invocation.remove();
+			else
+				invocation.set(outer);
 		}
 	}
 	
@@ -78,11 +104,48 @@ public abstract class AbstractCardinalityEstimator extends AbstractQueryModelVis
 	}
 	
 	protected Double getIndexCard(TupleExpr expr) {
-		return this.cardIndex.get(expr);
+		Invocation current = current();
+		Double card = current.cards.get(expr);
+		if (card == null) {
+			String signature = current.getSignature(expr);
+			if (signature != null) {
+				card = memo.get(signature);
+				if (card != null)
+					current.cards.put(expr, card);
+			}
+		}
+		return card;
 	}
 	
 	protected void setIndexCard(TupleExpr expr, Double value) {
-		this.cardIndex.put(expr, value);
+		Invocation current = current();
+		current.cards.put(expr, value);
+		String signature = current.getSignature(expr);
+		if (signature != null)
+			memo.put(signature, value);
+	}
+	
+	private Invocation current() {
+		Invocation current = invocation.get();
+		return (current != null) ? current : new Invocation();
+	}
+	
+	/**
+	 * Signatures and estimates of the plans seen by a single invocation.
+	 * Estimates are kept even if the memo table is cleared concurrently.
+	 */
+	private static class Invocation {
+		final Map<TupleExpr, String> signatures = new IdentityHashMap<TupleExpr, String>();
+		final Map<TupleExpr, Double> cards = new IdentityHashMap<TupleExpr, Double>();
+		
+		String getSignature(TupleExpr expr) {
+			String signature = signatures.get(expr);
+			if (signature == null && !signatures.containsKey(expr)) {
+				signature = CardinalityMemo.signature(expr);
+				signatures.put(expr, signature);
+			}
+			return signature;
+		}
 	}
 
 }
@@ -24,11 +24,16 @@ import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
 
 /**
+ * Base class for cost estimators. The cost of a plan is accumulated in the
+ * invocation, hence plans can be estimated by multiple threads at the same
+ * time.
+ * 
  * @author Olaf Goerlitz
  */
 public abstract class AbstractCostEstimator extends AbstractQueryModelVisitor<RuntimeException> implements ModelEvaluator {
 	
-	protected double cost;
+	// cost accumulated by the estimation which is running in the current thread
+	private final ThreadLocal<double[]> cost = new ThreadLocal<double[]>();
 	
 	protected AbstractCardinalityEstimator cardEst;
 	
@@ -41,16 +46,32 @@ public abstract class AbstractCostEstimator extends AbstractQueryModelVisitor<Ru
 	}
 
 	public Double getCost(TupleExpr expr) {
-		cost = 0;
-		expr.visit(this);
-		return cost;
+		double[] outer = cost.get();
+		double[] total = new double[1];
+		cost.set(total);
+		try {
+			expr.visit(this);
+			return total[0];
+		} finally {
+			if (outer == null)
+				cost.remove();
+			else
+				cost.set(outer);
+		}
 	}
 	
 	@Override
 	public Double process(TupleExpr expr) {
-		synchronized (this) {
-			return getCost(expr);
-		}
+		return getCost(expr);
+	}
+	
+	/**
+	 * Adds the cost of an operator to the cost of the plan being estimated.
+	 * 
+	 * @param value the cost of the operator.
+	 */
+	protected void addCost(double value) {
+		cost.get()[0] += value;
 	}
 	
 }
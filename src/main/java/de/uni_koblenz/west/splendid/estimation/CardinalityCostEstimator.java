@@ -37,7 +37,7 @@ public class CardinalityCostEstimator extends AbstractCostEstimator {
 	protected void meetNode(QueryModelNode node) throws RuntimeException {
 		super.meetNode(node);
 		if (node instanceof TupleExpr)
-			cost += cardEst.process((TupleExpr) node);
+			addCost(cardEst.process((TupleExpr) node));
 	}
 
 }
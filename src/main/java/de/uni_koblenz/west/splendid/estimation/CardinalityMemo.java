@@ -0,0 +1,304 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.estimation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.rio.helpers.NTriplesUtil;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+import de.uni_koblenz.west.splendid.model.RemoteQuery;
+
+/**
+ * Memo table for cardinality estimates which is keyed by a canonical
+ * signature of the query plan instead of the plan nodes. Hence, cloned
+ * plans, the same patterns joined in a different order or by another
+ * physical join share one entry.
+ * 
+ * The signature of a single triple pattern uses canonical variable names,
+ * so pattern estimates are shared across queries. The signatures of larger
+ * plans keep the variable names which define the join structure. Both
+ * tables are bounded and evict the least recently used entries; they are
+ * cleared when the statistics change.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class CardinalityMemo {
+	
+	public static final int DEFAULT_CAPACITY = 10000;
+	
+	private final Table patterns;
+	private final Table plans;
+	
+	private volatile long version;
+	
+	/**
+	 * Creates a memo table.
+	 * 
+	 * @param capacity the maximum number of pattern and plan entries each.
+	 */
+	public CardinalityMemo(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.patterns = new Table(capacity);
+		this.plans = new Table(capacity);
+	}
+	
+	/**
+	 * Returns the memoized cardinality for a plan signature.
+	 * 
+	 * @param signature the plan signature.
+	 * @return the cardinality or null if it is not known.
+	 */
+	public Double get(String signature) {
+		return table(signature).get(signature);
+	}
+	
+	/**
+	 * Memoizes the cardinality for a plan signature.
+	 * 
+	 * @param signature the plan signature.
+	 * @param card the cardinality.
+	 */
+	public void put(String signature, Double card) {
+		table(signature).put(signature, card);
+	}
+	
+	/**
+	 * Discards all entries if the statistics have changed.
+	 * 
+	 * @param version the current version of the statistics.
+	 */
+	public void validate(long version) {
+		if (this.version == version)
+			return;
+		synchronized (this) {
+			if (this.version != version) {
+				clear();
+				this.version = version;
+			}
+		}
+	}
+	
+	public void clear() {
+		patterns.clear();
+		plans.clear();
+	}
+	
+	public int size() {
+		return patterns.size() + plans.size();
+	}
+	
+	private Table table(String signature) {
+		return signature.charAt(0) == 'P' ? patterns : plans;
+	}
+	
+	/**
+	 * Bounded table which evicts the least recently used entries. Large
+	 * tables are split into segments with their own lock, so concurrent
+	 * estimations rarely block each other.
+	 */
+	private static class Table {
+		
+		private static final int MAX_SEGMENTS = 16;
+		private static final int MIN_SEGMENT_CAPACITY = 64;
+		
+		private final Segment[] segments;
+		
+		Table(int capacity) {
+			int count = Math.max(1, Math.min(MAX_SEGMENTS, capacity / MIN_SEGMENT_CAPACITY));
+			this.segments = new Segment[count];
+			for (int i = 0; i < count; i++) {
+				// distribute the capacity evenly
+				segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+			}
+		}
+		
+		Double get(String signature) {
+			Segment segment = segment(signature);
+			synchronized (segment) {
+				return segment.get(signature);
+			}
+		}
+		
+		void put(String signature, Double card) {
+			Segment segment = segment(signature);
+			synchronized (segment) {
+				segment.put(signature, card);
+			}
+		}
+		
+		void clear() {
+			for (Segment segment : segments) {
+				synchronized (segment) {
+					segment.clear();
+				}
+			}
+		}
+		
+		int size() {
+			int size = 0;
+			for (Segment segment : segments) {
+				synchronized (segment) {
+					size += segment.size();
+				}
+			}
+			return size;
+		}
+		
+		private Segment segment(String signature) {
+			int hash = signature.hashCode();
+			hash ^= hash >>> 16;
+			return segments[(hash & Integer.MAX_VALUE) % segments.length];
+		}
+	}
+	
+	@SuppressWarnings("serial")
+	private static class Segment extends LinkedHashMap<String, Double> {
+		
+		private final int capacity;
+		
+		Segment(int capacity) {
+			super(16, 0.75f, true);  // access order
+			this.capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+			return size() > capacity;
+		}
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Computes the canonical signature of a plan consisting of (mapped)
+	 * triple patterns, joins, filters and sub queries. The signature of a
+	 * join contains the sorted signatures of all join arguments, hence it
+	 * does not depend on the join order or the physical join.
+	 * 
+	 * @param expr the plan.
+	 * @return the signature or null if the plan contains other operators.
+	 */
+	public static String signature(TupleExpr expr) {
+		StringBuilder buffer = new StringBuilder();
+		if (expr instanceof StatementPattern) {
+			appendPattern(buffer, (StatementPattern) expr, new HashMap<String, String>());
+			return buffer.toString();
+		}
+		return append(buffer, expr) ? buffer.toString() : null;
+	}
+	
+	private static boolean append(StringBuilder buffer, TupleExpr expr) {
+		if (expr instanceof StatementPattern) {
+			appendPattern(buffer, (StatementPattern) expr, null);
+			return true;
+		}
+		if (expr instanceof Join) {
+			List<TupleExpr> args = new ArrayList<TupleExpr>();
+			flatten((Join) expr, args);
+			List<String> signatures = new ArrayList<String>(args.size());
+			for (TupleExpr arg : args) {
+				StringBuilder argBuffer = new StringBuilder();
+				if (!append(argBuffer, arg))
+					return false;
+				signatures.add(argBuffer.toString());
+			}
+			Collections.sort(signatures);
+			buffer.append("J(");
+			for (String signature : signatures) {
+				buffer.append(signature).append(';');
+			}
+			buffer.append(')');
+			return true;
+		}
+		if (expr instanceof Filter) {
+			buffer.append("F[").append(((Filter) expr).getCondition()).append("](");
+			if (!append(buffer, ((Filter) expr).getArg()))
+				return false;
+			buffer.append(')');
+			return true;
+		}
+		if (expr instanceof RemoteQuery) {
+			buffer.append("R(");
+			if (!append(buffer, ((RemoteQuery) expr).getArg()))
+				return false;
+			buffer.append(')');
+			return true;
+		}
+		return false;
+	}
+	
+	private static void flatten(Join join, List<TupleExpr> args) {
+		for (TupleExpr arg : new TupleExpr[] { join.getLeftArg(), join.getRightArg() }) {
+			if (arg instanceof Join)
+				flatten((Join) arg, args);
+			else
+				args.add(arg);
+		}
+	}
+	
+	/**
+	 * Appends the pattern and its sources.
+	 * 
+	 * @param varNames the canonical variable names or null to keep the names.
+	 */
+	private static void appendPattern(StringBuilder buffer, StatementPattern pattern, Map<String, String> varNames) {
+		buffer.append("P(");
+		for (Var var : new Var[] { pattern.getSubjectVar(), pattern.getPredicateVar(), pattern.getObjectVar() }) {
+			if (var.hasValue()) {
+				buffer.append(NTriplesUtil.toNTriplesString(var.getValue()));
+			} else if (varNames == null) {
+				buffer.append('?').append(var.getName());
+			} else {
+				String name = varNames.get(var.getName());
+				if (name == null)
+					varNames.put(var.getName(), name = "v" + varNames.size());
+				buffer.append('?').append(name);
+			}
+			buffer.append(' ');
+		}
+		buffer.append(")@[");
+		if (pattern instanceof MappedStatementPattern) {
+			List<String> sources = new ArrayList<String>();
+			for (Graph source : ((MappedStatementPattern) pattern).getSources()) {
+				sources.add(source.toString());
+			}
+			Collections.sort(sources);
+			for (String source : sources) {
+				buffer.append(source).append(' ');
+			}
+		}
+		buffer.append(']');
+	}
+	
+}
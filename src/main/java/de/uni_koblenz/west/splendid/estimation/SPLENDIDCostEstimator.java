@@ -78,7 +78,7 @@ public class SPLENDIDCostEstimator extends AbstractCostEstimator {
 		Double leftCard = cardEst.process(join.getLeftArg());
 		Double rightCard = cardEst.process(join.getRightArg());
 		
-		this.cost += (leftCard + rightCard) * C_TRANSFER_TUPLE + 2 * C_TRANSFER_QUERY;
+		addCost((leftCard + rightCard) * C_TRANSFER_TUPLE + 2 * C_TRANSFER_QUERY);
 		
 //		LOGGER.warn("HashJoin: " + leftCard + " >< " + rightCard + " :: " + (leftCard + rightCard) * C_TRANSFER_TUPLE + 2 * C_TRANSFER_QUERY);
 	}
@@ -87,7 +87,7 @@ public class SPLENDIDCostEstimator extends AbstractCostEstimator {
 		Double leftCard = cardEst.process(join.getLeftArg());
 		Double joinCard = cardEst.process(join);
 		
-		this.cost += leftCard * (C_TRANSFER_TUPLE + C_TRANSFER_QUERY) + joinCard * C_TRANSFER_TUPLE;
+		addCost(leftCard * (C_TRANSFER_TUPLE + C_TRANSFER_QUERY) + joinCard * C_TRANSFER_TUPLE);
 		
 //		LOGGER.warn("BindJoin: " + leftCard + " >< " + joinCard + " :: " + (leftCard + joinCard) * C_TRANSFER_TUPLE + 2 * C_TRANSFER_QUERY);
 	}
@@ -66,6 +66,13 @@ public abstract class VoidCardinalityEstimator extends AbstractCardinalityEstima
 		this.stats = stats;
 	}
 	
+	@Override
+	public Double process(TupleExpr expr) {
+		// memoized estimates are invalid if the statistics have changed
+		memo.validate(stats.getVersion());
+		return super.process(expr);
+	}
+	
 	public void meet(MappedStatementPattern pattern) throws RuntimeException {
 		
 		// check cardinality index first
@@ -23,76 +23,388 @@ package de.uni_koblenz.west.splendid.evaluation;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
 
-//import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-//import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 
-//import org.eclipse.rdf4j.cursor.Cursor;
-//import org.eclipse.rdf4j.store.StoreException;
-
 /**
  * Allows for asynchronous fetching of the cursor's input data.
+ * 
+ * A producer task opens the input cursor and eagerly drains it into a
+ * bounded ring buffer, such that data transfer overlaps with the processing
+ * of the results. The producer pauses (and releases its thread) when the
+ * buffer fill level reaches the high watermark and is resumed when the
+ * consumer has reduced the fill level to the low watermark.
+ * Errors of the producer are rethrown to the consumer. A producer task which
+ * is cancelled before it has started, e.g. by a scheduler shutdown, is
+ * reported as an error, too.
+ * 
+ * A consumer of several cursors can {@link #poll()} their buffers without
+ * blocking and register a listener which is notified when new results have
+ * arrived or the input has ended.
  *  
  * @author Olaf Goerlitz
  *
  * @param <E> The type of object that the cursor iterates over.
  */
-//public class AsyncCursor<E> implements Cursor<E> {
 public class AsyncCursor<E> extends LookAheadIteration<E, QueryEvaluationException> {
 	
-//	protected Future<Cursor<E>> future;
-//	protected Cursor<E> result;
-	protected Future<CloseableIteration<E, QueryEvaluationException>> future;
+	public static final int DEFAULT_BUFFER_SIZE = 1024;
+	
+	protected final Executor executor;
+	protected final Callable<CloseableIteration<E, QueryEvaluationException>> callable;
 	protected CloseableIteration<E, QueryEvaluationException> result;
 	
-//	public AsyncCursor(Future<Cursor<E>> future) {
-	public AsyncCursor(Future<CloseableIteration<E, QueryEvaluationException>> future) {
-		if (future == null)
-			throw new IllegalArgumentException("future must not be null");
+	private final Object[] buffer;
+	private final int highWatermark;
+	private final int lowWatermark;
+	private int head;
+	private int count;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	
+	private final Producer producer = new Producer();
+	private volatile Future<?> task;
+	private boolean producing;
+	private boolean running;
+	private boolean exhausted;
+	private boolean closed;
+	private Throwable error;
+	private Runnable listener;
+	
+	/**
+	 * Creates a cursor with a default buffer size which pauses the producer
+	 * when the buffer is full and resumes it when the buffer is half empty.
+	 * 
+	 * @param executor the executor which runs the producer.
+	 * @param callable the callable which opens the input cursor.
+	 */
+	public AsyncCursor(Executor executor, Callable<CloseableIteration<E, QueryEvaluationException>> callable) {
+		this(executor, callable, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE / 2);
+	}
+	
+	/**
+	 * Creates a cursor and starts the producer.
+	 * 
+	 * @param executor the executor which runs the producer.
+	 * @param callable the callable which opens the input cursor.
+	 * @param bufferSize the capacity of the ring buffer.
+	 * @param highWatermark the fill level which pauses the producer.
+	 * @param lowWatermark the fill level which resumes the producer.
+	 */
+	public AsyncCursor(Executor executor, Callable<CloseableIteration<E, QueryEvaluationException>> callable,
+			int bufferSize, int highWatermark, int lowWatermark) {
+		if (executor == null || callable == null)
+			throw new IllegalArgumentException("executor and callable must not be null");
+		if (bufferSize < 1 || highWatermark < 1 || highWatermark > bufferSize || lowWatermark < 0 || lowWatermark >= highWatermark)
+			throw new IllegalArgumentException("invalid buffer settings: size=" + bufferSize + ", high=" + highWatermark + ", low=" + lowWatermark);
 		
-		this.future = future;
+		this.executor = executor;
+		this.callable = callable;
+		this.buffer = new Object[bufferSize];
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+		
+		this.producing = true;
+		schedule();
 	}
-
-////	public AsyncCursor(ExecutorService executor, Callable<Cursor<E>> callable) {
-//	public AsyncCursor(ExecutorService executor, Callable<CloseableIteration<E, QueryEvaluationException>> callable) {
-//		if (executor == null)
-//			throw new IllegalArgumentException("executor must not be null");
-//		
-//		this.future = executor.submit(callable);
-//	}
 	
 	/**
 	 * Stop the evaluation thread and close any open cursor.
 	 */
-//	public void close() throws StoreException {
+	@Override
 	protected void handleClose() throws QueryEvaluationException {
-		if (result != null)
-			result.close();
-		else
-			future.cancel(true);
+		CloseableIteration<E, QueryEvaluationException> input = null;
+		lock.lock();
+		try {
+			closed = true;
+			clearBuffer();
+		} finally {
+			lock.unlock();
+		}
+		
+		// interrupt a producer which is blocked while reading the input
+		Future<?> current = task;
+		if (current != null)
+			current.cancel(true);
+		
+		lock.lock();
+		try {
+			// an active producer closes the input itself
+			if (!producing)
+				input = result;
+		} finally {
+			lock.unlock();
+		}
+		if (input != null)
+			input.close();
 	}
 	
-//	public BindingSet next() throws StoreException {
+	@Override
 	protected E getNextElement() throws QueryEvaluationException {
+		lock.lock();
+		try {
+			while (count == 0 && !exhausted && error == null) {
+				try {
+					notEmpty.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new QueryEvaluationException("interrupted while waiting for results", e);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		return poll();
+	}
+	
+	/**
+	 * Returns the next buffered result without waiting for the producer.
+	 * Must not be mixed with {@link #hasNext()} and {@link #next()}.
+	 * 
+	 * @return the next result or null if the buffer is empty.
+	 * @throws QueryEvaluationException if the producer has failed.
+	 */
+	public E poll() throws QueryEvaluationException {
+		E next;
+		boolean resume = false;
+		
+		lock.lock();
 		try {
-			if (result == null)
-				result = future.get();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-			return null;
-		} catch (ExecutionException e) {
-			e.printStackTrace();
-			return null;
+			if (count == 0) {
+				if (error != null)
+					throw toQueryEvaluationException(error);
+				return null;
+			}
+			
+			next = dequeue();
+			if (!producing && !exhausted && error == null && count <= lowWatermark) {
+				producing = true;
+				resume = true;
+			}
+		} finally {
+			lock.unlock();
 		}
 		
-//		return result.next();
-		if (result != null && result.hasNext())
-			return result.next();
-		else
-			return null;
+		if (resume)
+			schedule();
+		return next;
+	}
+	
+	/**
+	 * Checks if all results have been returned by {@link #poll()}.
+	 * 
+	 * @return true if the input is exhausted and the buffer is empty.
+	 */
+	public boolean isDrained() {
+		lock.lock();
+		try {
+			return count == 0 && exhausted;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Sets a listener which is notified when results arrive in the empty
+	 * buffer, when the input is exhausted and when the producer fails.
+	 * The listener is called while the buffer is locked and must not block.
+	 * 
+	 * @param listener the listener or null.
+	 */
+	public void setListener(Runnable listener) {
+		lock.lock();
+		try {
+			this.listener = listener;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	private void schedule() {
+		FutureTask<Void> next = new FutureTask<Void>(producer, null) {
+			@Override
+			protected void done() {
+				if (isCancelled())
+					cancelled();
+			}
+		};
+		task = next;
+		try {
+			executor.execute(next);
+		} catch (RejectedExecutionException e) {
+			lock.lock();
+			try {
+				producing = false;
+				error = e;
+				signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Reports a producer task which was cancelled before it has started.
+	 * A running producer is only interrupted and finishes by itself.
+	 */
+	private void cancelled() {
+		lock.lock();
+		try {
+			if (!producing || running)
+				return;
+			producing = false;
+			if (!closed)
+				error = new QueryEvaluationException("sub query has been cancelled");
+			signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Wakes up the consumer, must be called while holding the lock.
+	 */
+	private void signal() {
+		notEmpty.signalAll();
+		if (listener != null)
+			listener.run();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private E dequeue() {
+		E next = (E) buffer[head];
+		buffer[head] = null;
+		head = (head + 1) % buffer.length;
+		count--;
+		return next;
+	}
+	
+	private void enqueue(E element) {
+		buffer[(head + count) % buffer.length] = element;
+		count++;
+	}
+	
+	private void clearBuffer() {
+		while (count > 0)
+			dequeue();
+	}
+	
+	private static QueryEvaluationException toQueryEvaluationException(Throwable t) {
+		if (t instanceof QueryEvaluationException)
+			return (QueryEvaluationException) t;
+		return new QueryEvaluationException(t);
+	}
+	
+	/**
+	 * Drains the input cursor into the buffer until the high watermark is
+	 * reached or the input is exhausted.
+	 */
+	private class Producer implements Runnable {
+		
+		@Override
+		public void run() {
+			lock.lock();
+			try {
+				// the task has been cancelled in the meantime
+				if (!producing)
+					return;
+				running = true;
+			} finally {
+				lock.unlock();
+			}
+			
+			boolean paused = false;
+			try {
+				if (result == null && !isClosed())
+					result = callable.call();
+				
+				while (true) {
+					lock.lock();
+					try {
+						if (closed)
+							break;
+						// release the thread, the consumer will resume the producer
+						if (count >= highWatermark) {
+							producing = false;
+							running = false;
+							paused = true;
+							return;
+						}
+					} finally {
+						lock.unlock();
+					}
+					
+					boolean hasNext = result.hasNext();
+					E next = hasNext ? result.next() : null;
+					
+					lock.lock();
+					try {
+						// the consumer only waits for an empty buffer
+						boolean empty = (count == 0);
+						if (!hasNext)
+							exhausted = true;
+						else if (!closed)
+							enqueue(next);
+						if (empty || !hasNext)
+							signal();
+					} finally {
+						lock.unlock();
+					}
+					if (!hasNext)
+						break;
+				}
+			} catch (Throwable t) {
+				lock.lock();
+				try {
+					if (!closed)
+						error = t;
+					signal();
+				} finally {
+					lock.unlock();
+				}
+			} finally {
+				if (!paused)
+					finished();
+			}
+		}
+		
+		private boolean isClosed() {
+			lock.lock();
+			try {
+				return closed;
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		private void finished() {
+			boolean closeInput;
+			lock.lock();
+			try {
+				producing = false;
+				running = false;
+				closeInput = closed || exhausted || error != null;
+			} finally {
+				lock.unlock();
+			}
+			if (closeInput && result != null) {
+				try {
+					result.close();
+				} catch (QueryEvaluationException e) {
+					// ignore, the results are not used anymore
+				}
+			}
+		}
 	}
 
 }
@@ -0,0 +1,344 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.Compare;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.ValueConstant;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.eclipse.rdf4j.query.algebra.helpers.VarNameCollector;
+import org.eclipse.rdf4j.rio.helpers.NTriplesUtil;
+
+import de.uni_koblenz.west.splendid.helpers.SparqlPrinter;
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.DuplicateElimination;
+
+/**
+ * Bind join which ships the bindings of the left join argument in blocks.
+ * Each block of left bindings is sent as a single sub query to the sources
+ * of the right join argument, either with a SPARQL 1.1 <tt>VALUES</tt>
+ * clause or, for SPARQL 1.0 endpoints, as a <tt>UNION</tt> of the right
+ * argument with variables renamed per binding. The sub query results are
+ * mapped back to their originating left bindings.
+ * A right argument without variables does not depend on the left bindings,
+ * hence it is sent only once and all left bindings are returned if it has
+ * a result.
+ *
+ * @author Olaf Goerlitz
+ */
+public class BindJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/** Variable which identifies the originating left binding in VALUES mode. */
+	static final String INDEX_VAR = "__bindIndex";
+
+	private static final String UNDEF = "UNDEF";
+
+	private final FederationEvalStrategy strategy;
+	private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+	private final TupleExpr rightArg;
+	private final Set<Graph> sources;
+	private final BindingSet bindings;
+	private final int blockSize;
+	private final boolean useValues;
+	private final DuplicateElimination dedup;
+
+	private final Set<String> rightVars;
+	private final boolean constant;
+	private Boolean constantMatch;
+
+	private List<BindingSet> block = new ArrayList<BindingSet>();
+	private CloseableIteration<BindingSet, QueryEvaluationException> blockResult;
+
+	public BindJoinCursor(FederationEvalStrategy strategy, CloseableIteration<BindingSet, QueryEvaluationException> leftIter,
+			TupleExpr rightArg, Set<Graph> sources, BindingSet bindings, int blockSize, boolean useValues, DuplicateElimination dedup) {
+
+		if (blockSize < 1)
+			throw new IllegalArgumentException("block size must be positive: " + blockSize);
+
+		this.strategy = strategy;
+		this.leftIter = leftIter;
+		this.rightArg = rightArg;
+		this.sources = sources;
+		this.bindings = bindings;
+		this.blockSize = blockSize;
+		this.useValues = useValues;
+		this.dedup = dedup;
+		this.rightVars = VarNameCollector.process(rightArg);
+		this.constant = !hasFreeVars(rightArg);
+	}
+
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		try {
+			if (blockResult != null)
+				blockResult.close();
+		} finally {
+			leftIter.close();
+		}
+	}
+
+	@Override
+	protected BindingSet getNextElement() throws QueryEvaluationException {
+
+		if (constant)
+			return nextConstantMatch();
+
+		while (true) {
+
+			// map the results of the current block back to the left bindings
+			if (blockResult != null) {
+				while (blockResult.hasNext()) {
+					BindingSet joined = join(blockResult.next());
+					if (joined != null)
+						return joined;
+				}
+				blockResult.close();
+				blockResult = null;
+			}
+
+			// collect the next block of left bindings
+			block = new ArrayList<BindingSet>(blockSize);
+			while (block.size() < blockSize && leftIter.hasNext()) {
+				block.add(merge(bindings, leftIter.next()));
+			}
+			if (block.isEmpty())
+				return null;
+
+			String pattern = useValues ? createValuesPattern() : createUnionPattern();
+			blockResult = strategy.sendSparqlQuery(pattern, sources, dedup);
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Returns the next left binding if the constant right argument has a result.
+	 *
+	 * @return the next left binding or null if there are no more results.
+	 */
+	private BindingSet nextConstantMatch() throws QueryEvaluationException {
+		if (constantMatch == null) {
+			CloseableIteration<BindingSet, QueryEvaluationException> result = strategy.sendSparqlQuery(SparqlPrinter.print(rightArg), sources, dedup);
+			try {
+				constantMatch = result.hasNext();
+			} finally {
+				result.close();
+			}
+		}
+		if (constantMatch && leftIter.hasNext())
+			return merge(bindings, leftIter.next());
+		return null;
+	}
+
+	/**
+	 * Checks if the expression has a named variable which is not bound to a
+	 * constant. Anonymous variables are not returned by the sub queries.
+	 */
+	private static boolean hasFreeVars(TupleExpr expr) {
+		final boolean[] found = new boolean[1];
+		expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+			@Override
+			public void meet(Var var) {
+				if (!var.hasValue() && !var.isAnonymous())
+					found[0] = true;
+			}
+		});
+		return found[0];
+	}
+
+	/**
+	 * Creates the right argument pattern with a VALUES clause containing the
+	 * join bindings of the current block and the index of each binding.
+	 *
+	 * @return the SPARQL pattern.
+	 */
+	private String createValuesPattern() {
+
+		// determine the variables which are bound in the block
+		Set<String> vars = new LinkedHashSet<String>();
+		for (BindingSet left : block) {
+			for (String name : left.getBindingNames()) {
+				if (rightVars.contains(name))
+					vars.add(name);
+			}
+		}
+
+		StringBuilder buffer = new StringBuilder(SparqlPrinter.print(rightArg));
+		buffer.append("  VALUES (");
+		for (String var : vars) {
+			buffer.append("?").append(var).append(" ");
+		}
+		buffer.append("?").append(INDEX_VAR).append(") {\n");
+
+		for (int i = 0; i < block.size(); i++) {
+			BindingSet left = block.get(i);
+			buffer.append("    (");
+			for (String var : vars) {
+				Value value = left.getValue(var);
+				// blank nodes cannot be shipped, the join check will filter mismatches
+				if (value == null || value instanceof BNode)
+					buffer.append(UNDEF);
+				else
+					buffer.append(NTriplesUtil.toNTriplesString(value));
+				buffer.append(" ");
+			}
+			buffer.append("\"").append(i).append("\")\n");
+		}
+		buffer.append("  }\n");
+		return buffer.toString();
+	}
+
+	/**
+	 * Creates a union of the right argument pattern for all bindings in the
+	 * current block. Bound variables are substituted and all other variables
+	 * are renamed with the index of the binding as suffix.
+	 *
+	 * @return the SPARQL pattern.
+	 */
+	private String createUnionPattern() {
+		StringBuilder buffer = new StringBuilder();
+		for (int i = 0; i < block.size(); i++) {
+			if (i > 0)
+				buffer.append("  UNION\n");
+			TupleExpr expr = new VarBinder(block.get(i), i).bind(rightArg);
+			buffer.append("  {\n").append(SparqlPrinter.print(expr)).append("  }\n");
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Joins a sub query result with its originating left binding.
+	 *
+	 * @param result the sub query result.
+	 * @return the joined binding set or null if the bindings are incompatible.
+	 */
+	private BindingSet join(BindingSet result) {
+
+		QueryBindingSet joined;
+		if (useValues) {
+			Value index = result.getValue(INDEX_VAR);
+			if (index == null)
+				return null;
+			joined = new QueryBindingSet(block.get(Integer.parseInt(index.stringValue())));
+			for (Binding binding : result) {
+				if (!INDEX_VAR.equals(binding.getName()) && !addCompatible(joined, binding.getName(), binding.getValue()))
+					return null;
+			}
+		} else {
+			joined = null;
+			for (Binding binding : result) {
+				String name = binding.getName();
+				int suffix = name.lastIndexOf('_');
+				if (suffix < 0)
+					continue;
+				if (joined == null)
+					joined = new QueryBindingSet(block.get(Integer.parseInt(name.substring(suffix + 1))));
+				if (!addCompatible(joined, name.substring(0, suffix), binding.getValue()))
+					return null;
+			}
+		}
+		return joined;
+	}
+
+	private boolean addCompatible(QueryBindingSet bindings, String name, Value value) {
+		Value bound = bindings.getValue(name);
+		if (bound == null) {
+			bindings.addBinding(name, value);
+			return true;
+		}
+		return bound.equals(value);
+	}
+
+	private BindingSet merge(BindingSet outer, BindingSet left) {
+		if (outer.size() == 0)
+			return left;
+		QueryBindingSet merged = new QueryBindingSet(outer);
+		for (Binding binding : left) {
+			merged.setBinding(binding);
+		}
+		return merged;
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Substitutes the bound variables of an expression and renames the
+	 * unbound ones with the block index as suffix.
+	 */
+	private static class VarBinder extends AbstractQueryModelVisitor<RuntimeException> {
+
+		private final BindingSet bindings;
+		private final String suffix;
+		private Var freeVar;
+		private Var boundVar;
+
+		VarBinder(BindingSet bindings, int index) {
+			this.bindings = bindings;
+			this.suffix = "_" + index;
+		}
+
+		TupleExpr bind(TupleExpr expr) {
+			TupleExpr copy = expr.clone();
+			copy.visit(this);
+
+			// a fully bound pattern must keep one variable to identify the binding
+			if (freeVar == null && boundVar != null) {
+				Value value = boundVar.getValue();
+				boundVar.setValue(null);
+				boundVar.setName(boundVar.getName() + suffix);
+				copy = new Filter(copy, new Compare(new Var(boundVar.getName()), new ValueConstant(value)));
+			}
+			return copy;
+		}
+
+		@Override
+		public void meet(Var var) {
+			if (var.hasValue() || var.isAnonymous())
+				return;
+			Value value = bindings.getValue(var.getName());
+			if (value != null && !(value instanceof BNode)) {
+				var.setValue(value);
+				if (boundVar == null)
+					boundVar = var;
+			} else {
+				var.setName(var.getName() + suffix);
+				freeVar = var;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import java.util.Arrays;
+
+import org.eclipse.rdf4j.common.iteration.FilterIteration;
+import org.eclipse.rdf4j.common.iteration.Iteration;
+
+/**
+ * Removes duplicates with a fixed amount of memory.
+ * Elements are remembered in a direct mapped cache, i.e. an element
+ * replaces the previous element with the same cache slot. Hence, only
+ * duplicates found in the cache are removed and some duplicates may pass.
+ * Unlike a Bloom filter, a distinct element is never dropped by mistake,
+ * so the results satisfy the semantics of <tt>REDUCED</tt>.
+ * 
+ * @author Olaf Goerlitz
+ *
+ * @param <E> The type of object that the iteration iterates over.
+ * @param <X> The type of exception that the iteration can throw.
+ */
+public class BoundedDistinctIteration<E, X extends Exception> extends FilterIteration<E, X> {
+	
+	public static final int DEFAULT_CACHE_SIZE = 1 << 14;
+	
+	private final Object[] cache;
+	private final int mask;
+	
+	public BoundedDistinctIteration(Iteration<? extends E, ? extends X> iter) {
+		this(iter, DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates a new filter.
+	 * 
+	 * @param iter the underlying iteration.
+	 * @param cacheSize the number of cached elements, rounded up to a power of two.
+	 */
+	public BoundedDistinctIteration(Iteration<? extends E, ? extends X> iter, int cacheSize) {
+		super(iter);
+		if (cacheSize < 1)
+			throw new IllegalArgumentException("cache size must be positive: " + cacheSize);
+		int size = Integer.highestOneBit(cacheSize);
+		if (size < cacheSize)
+			size <<= 1;
+		this.cache = new Object[size];
+		this.mask = size - 1;
+	}
+	
+	@Override
+	protected boolean accept(E object) throws X {
+		int h = object.hashCode() * 0x9E3779B9;
+		int slot = (h ^ (h >>> 16)) & mask;
+		if (object.equals(cache[slot]))
+			return false;
+		cache[slot] = object;
+		return true;
+	}
+	
+	@Override
+	protected void handleClose() throws X {
+		try {
+			super.handleClose();
+		} finally {
+			Arrays.fill(cache, null);
+		}
+	}
+
+}
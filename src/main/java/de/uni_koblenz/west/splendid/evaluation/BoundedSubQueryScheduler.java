@@ -0,0 +1,274 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Sub query scheduler with a global and a per-source concurrency limit.
+ * Tasks which cannot be started immediately wait in a queue per source and
+ * are dispatched round-robin across the sources whenever a running task
+ * finishes. The total number of pending tasks is bounded; submitting more
+ * tasks blocks the caller until running tasks have finished (back-pressure).
+ * Tasks which can not be started, e.g. after a shutdown, are cancelled.
+ *
+ * Optionally, tasks are executed on virtual threads (requires JDK 21+).
+ *
+ * @author Olaf Goerlitz
+ */
+public class BoundedSubQueryScheduler implements SubQueryScheduler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BoundedSubQueryScheduler.class);
+
+	private final ExecutorService executor;
+	private final int maxThreads;
+	private final int maxThreadsPerSource;
+	private final Semaphore queueSlots;
+
+	private final Map<Graph, SourceQueue> sourceQueues = new HashMap<Graph, SourceQueue>();
+	private final Deque<SourceQueue> waiting = new ArrayDeque<SourceQueue>();
+	private int running;
+	private boolean shutdown;
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param maxThreads the maximum number of concurrently running tasks.
+	 * @param maxThreadsPerSource the maximum number of concurrently running tasks per source.
+	 * @param queueSize the maximum number of pending tasks.
+	 * @param virtualThreads use virtual threads instead of platform threads.
+	 */
+	public BoundedSubQueryScheduler(int maxThreads, int maxThreadsPerSource, int queueSize, boolean virtualThreads) {
+		if (maxThreads < 1 || maxThreadsPerSource < 1 || queueSize < 1)
+			throw new IllegalArgumentException("scheduler limits must be positive");
+
+		this.maxThreads = maxThreads;
+		this.maxThreadsPerSource = maxThreadsPerSource;
+		this.queueSlots = new Semaphore(queueSize + maxThreads);
+
+		ExecutorService virtualExecutor = virtualThreads ? createVirtualThreadExecutor() : null;
+		this.executor = (virtualExecutor != null) ? virtualExecutor : Executors.newFixedThreadPool(maxThreads, new DaemonThreadFactory());
+	}
+
+	/**
+	 * Creates a virtual thread executor if supported by the JVM.
+	 *
+	 * @return the executor or null if virtual threads are not available.
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			LOGGER.warn("virtual threads are not supported by this JVM, using platform threads");
+			return null;
+		}
+	}
+
+	@Override
+	public <T> Future<T> submit(Graph source, Callable<T> task) {
+		FutureTask<T> future = new FutureTask<T>(task);
+		execute(source, future);
+		return future;
+	}
+
+	@Override
+	public void execute(Graph source, RunnableFuture<?> task) {
+
+		// back-pressure: wait until a slot for a new task becomes available
+		try {
+			queueSlots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			task.cancel(false);
+			throw new RejectedExecutionException("interrupted while waiting for free task slot", e);
+		}
+
+		synchronized (this) {
+			if (shutdown) {
+				queueSlots.release();
+				task.cancel(false);
+				return;
+			}
+			SourceQueue queue = sourceQueues.get(source);
+			if (queue == null) {
+				queue = new SourceQueue(source);
+				sourceQueues.put(source, queue);
+			}
+			if (queue.tasks.isEmpty())
+				waiting.add(queue);
+			queue.tasks.add(task);
+			dispatch();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+			for (SourceQueue queue : waiting) {
+				for (RunnableFuture<?> task : queue.tasks) {
+					task.cancel(false);
+					queueSlots.release();
+				}
+				queue.tasks.clear();
+				removeIfIdle(queue);
+			}
+			waiting.clear();
+		}
+		// cancel tasks which have been handed over but not started yet
+		for (Runnable runnable : executor.shutdownNow()) {
+			if (runnable instanceof ScheduledTask)
+				((ScheduledTask) runnable).task.cancel(false);
+		}
+	}
+
+	/**
+	 * Returns the number of sources which have running or waiting tasks.
+	 *
+	 * @return the number of sources.
+	 */
+	public synchronized int getSourceCount() {
+		return sourceQueues.size();
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Starts waiting tasks round-robin across all sources as long as the
+	 * concurrency limits permit.
+	 */
+	private synchronized void dispatch() {
+		int candidates = waiting.size();
+		while (running < maxThreads && candidates-- > 0) {
+			SourceQueue queue = waiting.poll();
+			if (queue.running < maxThreadsPerSource) {
+				start(queue, queue.tasks.poll());
+			}
+			if (!queue.tasks.isEmpty())
+				waiting.add(queue);
+		}
+	}
+
+	private void start(final SourceQueue queue, final RunnableFuture<?> task) {
+		running++;
+		queue.running++;
+		try {
+			executor.execute(new ScheduledTask(queue, task));
+		} catch (RejectedExecutionException e) {
+			// scheduler has been shut down
+			task.cancel(false);
+			running--;
+			queue.running--;
+			queueSlots.release();
+			removeIfIdle(queue);
+		}
+	}
+
+	private synchronized void finished(SourceQueue queue) {
+		running--;
+		queue.running--;
+		queueSlots.release();
+		removeIfIdle(queue);
+		dispatch();
+	}
+
+	/**
+	 * Drops the queue of a source without running or waiting tasks, e.g.
+	 * of a federation member which has been removed.
+	 */
+	private void removeIfIdle(SourceQueue queue) {
+		if (queue.running == 0 && queue.tasks.isEmpty())
+			sourceQueues.remove(queue.source);
+	}
+
+	/**
+	 * Runs a task and releases its slot afterwards.
+	 */
+	private class ScheduledTask implements Runnable {
+		final SourceQueue queue;
+		final RunnableFuture<?> task;
+
+		ScheduledTask(SourceQueue queue, RunnableFuture<?> task) {
+			this.queue = queue;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				finished(queue);
+			}
+		}
+	}
+
+	/**
+	 * Tasks waiting for execution on a single source.
+	 */
+	private static class SourceQueue {
+		final Graph source;
+		final Deque<RunnableFuture<?>> tasks = new ArrayDeque<RunnableFuture<?>>();
+		int running;
+
+		SourceQueue(Graph source) {
+			this.source = source;
+		}
+
+		@Override
+		public String toString() {
+			return source + " [" + running + " running, " + tasks.size() + " waiting]";
+		}
+	}
+
+	/**
+	 * Creates named daemon threads which do not block the JVM shutdown.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "splendid-subquery-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
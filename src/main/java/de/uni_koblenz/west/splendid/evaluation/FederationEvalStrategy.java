@@ -30,9 +30,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //import org.eclipse.rdf4j.cursor.Cursor;
 import org.eclipse.rdf4j.model.Resource;
@@ -54,15 +60,18 @@ import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
 import org.eclipse.rdf4j.query.algebra.evaluation.impl.StrictEvaluationStrategy;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.JoinIterator;
 import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
 //import org.eclipse.rdf4j.store.StoreException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.uni_koblenz.west.splendid.config.QueryOptimizerConfig;
 import de.uni_koblenz.west.splendid.helpers.OperatorTreePrinter;
 import de.uni_koblenz.west.splendid.helpers.QueryExecutor;
-import de.uni_koblenz.west.splendid.helpers.SparqlPrinter;
+import de.uni_koblenz.west.splendid.helpers.SparqlEndpointRegistry;
 import de.uni_koblenz.west.splendid.index.Graph;
 import de.uni_koblenz.west.splendid.model.BindJoin;
+import de.uni_koblenz.west.splendid.model.DuplicateElimination;
 import de.uni_koblenz.west.splendid.model.HashJoin;
 import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
 import de.uni_koblenz.west.splendid.model.RemoteQuery;
@@ -83,11 +92,57 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(FederationEvalStrategy.class);
 	
-	private static final ExecutorService executor = Executors.newCachedThreadPool();
-	
 	private static final boolean MULTI_THREADED = true;
 	private static final boolean COLLECT_BGP_PATTERNS = true;
 	
+	private static final int DEFAULT_MAX_THREADS = 32;
+	private static final int DEFAULT_MAX_THREADS_PER_SOURCE = 8;
+	private static final int DEFAULT_TASK_QUEUE_SIZE = 1024;
+	private static final int DEFAULT_HASH_JOIN_THREADS = 16;
+	
+	private SubQueryScheduler scheduler;
+	private SparqlEndpointRegistry endpointRegistry;
+	
+	// local operator threads (join argument producers), remote sub queries
+	// are executed by the bounded sub query scheduler
+	private ExecutorService joinExecutor;
+	private int hashJoinThreads = DEFAULT_HASH_JOIN_THREADS;
+	
+	// rendered sub queries, reused by repeated evaluations of the same pattern
+	private final QueryTemplateCache templates = new QueryTemplateCache();
+	
+	private boolean symmetricHashJoin = true;
+	private long hashJoinMemoryBudget = 256L << 20;
+	private int bindJoinBlockSize = 1;
+	private boolean bindJoinUseValues = true;
+	
+	private int prefetchBufferSize = AsyncCursor.DEFAULT_BUFFER_SIZE;
+	private int prefetchHighWatermark = AsyncCursor.DEFAULT_BUFFER_SIZE;
+	private int prefetchLowWatermark = AsyncCursor.DEFAULT_BUFFER_SIZE / 2;
+	
+	/**
+	 * Creates a new Evaluation strategy using the supplied configuration.
+	 * 
+	 * @param vf the value factory to use.
+	 * @param config the optimizer configuration defining the physical operators.
+	 */
+	public FederationEvalStrategy(final ValueFactory vf, QueryOptimizerConfig config) {
+		this(vf, new BoundedSubQueryScheduler(config.getMaxThreads(),
+				config.getMaxThreadsPerSource(), config.getTaskQueueSize(), config.isVirtualThreads()));
+		this.symmetricHashJoin = "SYMMETRIC".equalsIgnoreCase(config.getHashJoinType());
+		this.hashJoinMemoryBudget = (long) config.getHashJoinMemoryBudget() << 20;
+		this.hashJoinThreads = config.getHashJoinThreads();
+		this.bindJoinBlockSize = config.getBindJoinBlockSize();
+		this.bindJoinUseValues = config.isBindJoinUseValues();
+		this.prefetchBufferSize = config.getPrefetchBufferSize();
+		this.prefetchHighWatermark = config.getPrefetchHighWatermark();
+		this.prefetchLowWatermark = config.getPrefetchLowWatermark();
+		
+		// every federation has its own pool of HTTP connections
+		this.endpointRegistry = new SparqlEndpointRegistry(config.getMaxConnections(), config.getMaxConnectionsPerEndpoint(),
+				config.getConnectTimeout(), config.getReadTimeout());
+	}
+	
 	/**
 	 * Creates a new Evaluation strategy using the supplied source finder.
 	 * 
@@ -95,6 +150,17 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 	 * @param vf the value factory to use.
 	 */
 	public FederationEvalStrategy(final ValueFactory vf) {
+		this(vf, new BoundedSubQueryScheduler(DEFAULT_MAX_THREADS,
+				DEFAULT_MAX_THREADS_PER_SOURCE, DEFAULT_TASK_QUEUE_SIZE, false));
+	}
+	
+	/**
+	 * Creates a new Evaluation strategy using the supplied sub query scheduler.
+	 * 
+	 * @param vf the value factory to use.
+	 * @param scheduler the scheduler which executes the remote sub queries.
+	 */
+	public FederationEvalStrategy(final ValueFactory vf, SubQueryScheduler scheduler) {
 	
 		// use a dummy triple source
 		// it can handle only single triple patterns but no basic graph patterns
@@ -109,6 +175,63 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 				throw new UnsupportedOperationException("Statement retrieval is not supported in federation");
 			}
 		},null,null);
+		
+		if (scheduler == null)
+			throw new IllegalArgumentException("scheduler must not be null");
+		this.scheduler = scheduler;
+		this.endpointRegistry = new SparqlEndpointRegistry();
+	}
+	
+	/**
+	 * Returns the scheduler which executes the remote sub queries.
+	 * 
+	 * @return the sub query scheduler.
+	 */
+	public SubQueryScheduler getScheduler() {
+		return this.scheduler;
+	}
+	
+	/**
+	 * Returns the registry which provides the connections to the SPARQL endpoints.
+	 * 
+	 * @return the SPARQL endpoint registry.
+	 */
+	public SparqlEndpointRegistry getEndpointRegistry() {
+		return this.endpointRegistry;
+	}
+	
+	/**
+	 * Stops all pending remote sub queries and join argument producers and
+	 * closes the endpoint connections.
+	 */
+	public void shutDown() {
+		try {
+			this.scheduler.shutdown();
+			getJoinExecutor().shutdownNow();
+		} finally {
+			this.endpointRegistry.shutDown();
+		}
+	}
+	
+	/**
+	 * Returns the executor which runs the producers of the join arguments.
+	 * The number of threads is bounded and further producers are rejected.
+	 * 
+	 * @return the join executor.
+	 */
+	private synchronized ExecutorService getJoinExecutor() {
+		if (this.joinExecutor == null) {
+			this.joinExecutor = new ThreadPoolExecutor(0, hashJoinThreads, 60, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				@Override public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "splendid-join-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.joinExecutor;
 	}
 	
 	// -------------------------------------------------------------------------
@@ -135,6 +258,26 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 	
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(
 			BindJoin join, BindingSet bindings) throws QueryEvaluationException {
+		
+		// ship left bindings in blocks if the right argument is a remote query
+		TupleExpr rightArg = join.getRightArg();
+		Set<Graph> sources = null;
+		DuplicateElimination dedup = DuplicateElimination.EXACT;
+		if (rightArg instanceof RemoteQuery) {
+			sources = ((RemoteQuery) rightArg).getSources();
+			dedup = ((RemoteQuery) rightArg).getDuplicateElimination();
+			rightArg = ((RemoteQuery) rightArg).getArg();
+		} else if (rightArg instanceof MappedStatementPattern) {
+			sources = ((MappedStatementPattern) rightArg).getSources();
+			dedup = ((MappedStatementPattern) rightArg).getDuplicateElimination();
+		}
+		
+		if (bindJoinBlockSize > 1 && sources != null && sources.size() > 0) {
+			CloseableIteration<BindingSet, QueryEvaluationException> leftIter = evaluate(join.getLeftArg(), bindings);
+			return new BindJoinCursor(this, leftIter, rightArg, sources, bindings, bindJoinBlockSize, bindJoinUseValues, dedup);
+		}
+		
+		// evaluate right argument for each left binding
 		return new JoinIterator(this, join, bindings);
 //		throw new UnsupportedOperationException("bind join not supported");
 	}
@@ -145,7 +288,7 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 		// TODO optimize with caching
 		Set<Graph> sources = new SourceCollector().getSources(join);
 		if (COLLECT_BGP_PATTERNS && sources.size() == 1)
-			return sendSparqlQuery(join, sources, bindings);
+			return sendSparqlQuery(join, sources, bindings, DuplicateElimination.NONE, new ProjectionCollector().getProjectionVars(join));
 	
 //		assert join.getNumberOfArguments() > 0;
 		
@@ -192,7 +335,12 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 //				}
 //			}
 //			
-			joinCursor = new HashJoinCursor(joinCursor, argCursor, joinVars);
+			// a symmetric hash join returns first results without draining the left argument,
+			// a blocking hash join spills to disk if the left argument exceeds the memory budget
+			if (symmetricHashJoin)
+				joinCursor = new SymmetricHashJoinCursor(joinCursor, argCursor, joinVars, getJoinExecutor());
+			else
+				joinCursor = new HybridHashJoinCursor(joinCursor, argCursor, joinVars, hashJoinMemoryBudget);
 			resultVars.addAll(joinArg.getBindingNames());
 
 			// TODO: can constants vars be removed here?
@@ -255,7 +403,8 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 			
 			if (LOGGER.isDebugEnabled())
 				LOGGER.debug("EVAL PATTERN {" + OperatorTreePrinter.print(sp) + "} on sources " + sources);
-			return sendSparqlQuery(sp, sources , bindings);
+			MappedStatementPattern pattern = (MappedStatementPattern) sp;
+			return sendSparqlQuery(sp, sources , bindings, pattern.getDuplicateElimination(), pattern.getProjectionVars());
 		}
 
 		throw new IllegalArgumentException("pattern has no sources");
@@ -278,12 +427,12 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 		// 1. pattern group on single source OR
 		// 2. single pattern on multiple sources
 //		return this.evaluate(query.getArg(), bindings);
-		return this.sendSparqlQuery(query.getArg(), query.getSources(), bindings);
+		return this.sendSparqlQuery(query.getArg(), query.getSources(), bindings, query.getDuplicateElimination(), query.getProjectionVars());
 	}
 	
 	// -------------------------------------------------------------------------
 	
-	private CloseableIteration<BindingSet, QueryEvaluationException> sendSparqlQuery(TupleExpr expr, Set<Graph> sources, BindingSet bindings) {
+	private CloseableIteration<BindingSet, QueryEvaluationException> sendSparqlQuery(TupleExpr expr, Set<Graph> sources, BindingSet bindings, DuplicateElimination dedup, Set<String> projection) {
 		
 		// check if there are any sources to query
 		if (sources.size() == 0) {
@@ -294,85 +443,134 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 //		if (expr instanceof StatementPattern)
 //			LOGGER.error("is statement pattern");
 		
-		// TODO: need to know actual projection and join variables to reduce transmitted data
-		
-		CloseableIteration<BindingSet, QueryEvaluationException> cursor;
-		List<CloseableIteration<BindingSet, QueryEvaluationException>> cursors = new ArrayList<CloseableIteration<BindingSet, QueryEvaluationException>>(sources.size());
+		String query = templates.get(createSelectClause(dedup, projection, bindings), expr, sources);
+		return sendQuery(query, sources, bindings, dedup);
+	}
+	
+	/**
+	 * Sends a query with the supplied graph pattern to all sources.
+	 * Used by the bind join to ship blocks of bindings.
+	 * 
+	 * @param pattern the SPARQL graph pattern.
+	 * @param sources the sources to query.
+	 * @param dedup the duplicate elimination to apply on the results.
+	 * @return the results from all sources.
+	 */
+	protected CloseableIteration<BindingSet, QueryEvaluationException> sendSparqlQuery(String pattern, Set<Graph> sources, DuplicateElimination dedup) {
+		BindingSet bindings = EmptyBindingSet.getInstance();
+		String query = QueryTemplateCache.render(createSelectClause(dedup, null, bindings), pattern, sources);
+		return sendQuery(query, sources, bindings, dedup);
+	}
+	
+	/**
+	 * Creates the select clause of a sub query.
+	 * Only the variables needed by the operators above the sub query are
+	 * projected, unless exact duplicate elimination is required (which must
+	 * compare all variables) or bindings are substituted in the query.
+	 * 
+	 * @param dedup the duplicate elimination of the sub query.
+	 * @param projection the needed variables or null if all are needed.
+	 * @param bindings the bindings to substitute.
+	 * @return the select clause.
+	 */
+	private String createSelectClause(DuplicateElimination dedup, Set<String> projection, BindingSet bindings) {
+		if (projection == null || projection.isEmpty() || dedup == DuplicateElimination.EXACT || bindings.size() > 0)
+			return "SELECT REDUCED *";
 		
-		//Add graph clause to each source to query only given source !
-		String query = "SELECT REDUCED * WHERE {{";
-		int count = 1;
-		for (Graph source : sources) {
-			if (count!=sources.size()) {
-				query += "GRAPH <" + source.toString() + "> {" + SparqlPrinter.print(expr) + "}}UNION{";
-			} else {
-				query += "GRAPH <" + source.toString() + "> {" + SparqlPrinter.print(expr) + "}}";
-			}
-			count++;
+		// REDUCED would change the number of duplicates of the projected variables
+		StringBuilder select = new StringBuilder(dedup == DuplicateElimination.NONE ? "SELECT" : "SELECT REDUCED");
+		for (String var : projection) {
+			select.append(" ?").append(var);
 		}
-		query += "}";
+		return select.toString();
+	}
+	
+	/**
+	 * Sends the query to all sources. The query restricts the graph pattern
+	 * to each source with a graph clause (see {@link QueryTemplateCache}).
+	 * 
+	 * @param query the query string.
+	 * @param sources the sources to query.
+	 * @param bindings the bindings to substitute in the query.
+	 * @param dedup the duplicate elimination to apply on the results.
+	 * @return the results from all sources.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> sendQuery(String query, Set<Graph> sources, BindingSet bindings, DuplicateElimination dedup) {
+		
+		CloseableIteration<BindingSet, QueryEvaluationException> cursor;
 		
 		//if (LOGGER.isDebugEnabled())
 			//LOGGER.info("Sending SPARQL query to '" + sources + " with bindings " + bindings + "\n" + query);
 		
-		for (final Graph rep : sources) {
-			if (MULTI_THREADED)
+		if (MULTI_THREADED) {
+			List<AsyncCursor<BindingSet>> cursors = new ArrayList<AsyncCursor<BindingSet>>(sources.size());
+			for (final Graph rep : sources) {
 				cursors.add(getMultiThread(rep, query, bindings));
+			}
+			// create union if multiple sources are involved
+			// (results are interleaved as they arrive in the prefetch buffers)
+			if (cursors.size() > 1)
+				cursor = new ParallelUnionCursor<BindingSet>(cursors);
 			else
-				cursors.add(QueryExecutor.eval(rep.toString(), query, bindings));
-		}
-		
-
-		// create union if multiple sources are involved
-		if (cursors.size() > 1) {
-//			cursor = new UnionCursor<BindingSet>(cursors);
-			cursor = new UnionIteration<BindingSet, QueryEvaluationException>(cursors);
+				cursor = cursors.get(0);
 		} else {
-			cursor = cursors.get(0);
+			List<CloseableIteration<BindingSet, QueryEvaluationException>> cursors = new ArrayList<CloseableIteration<BindingSet, QueryEvaluationException>>(sources.size());
+			for (final Graph rep : sources) {
+				cursors.add(QueryExecutor.eval(endpointRegistry, rep.toString(), query, bindings));
+			}
+//			cursor = new UnionCursor<BindingSet>(cursors);
+			if (cursors.size() > 1)
+				cursor = new UnionIteration<BindingSet, QueryEvaluationException>(cursors);
+			else
+				cursor = cursors.get(0);
 		}
 
 		// Filter any duplicates
 //		cursor = new DistinctCursor<BindingSet>(cursor);
-		// TODO: check if this is bad for performance
-		cursor = new DistinctIteration<BindingSet, QueryEvaluationException>(cursor);
+		// exact removal keeps all results in memory, hence only if required
+		switch (dedup) {
+		case EXACT:
+			cursor = new DistinctIteration<BindingSet, QueryEvaluationException>(cursor);
+			break;
+		case BOUNDED:
+			cursor = new BoundedDistinctIteration<BindingSet, QueryEvaluationException>(cursor);
+			break;
+		default:
+			break;
+		}
 
 		return cursor;
 		
 	}
 	
 //	public Cursor<BindingSet> getMultiThread(final Graph source, final String query) {
-	public CloseableIteration<BindingSet, QueryEvaluationException> getMultiThread(final Graph source, final String query, final BindingSet bindings) {
-//		Callable<Cursor<BindingSet>> callable = new Callable<Cursor<BindingSet>>() {
+	public AsyncCursor<BindingSet> getMultiThread(final Graph source, final String query, final BindingSet bindings) {
 		Callable<CloseableIteration<BindingSet, QueryEvaluationException>>  callable = new Callable<CloseableIteration<BindingSet, QueryEvaluationException>>() {
-//			@Override public Cursor<BindingSet> call() {
 			@Override public CloseableIteration<BindingSet, QueryEvaluationException> call() {
-//				return QueryExecutor.evalQuery(repository, query);
-				return QueryExecutor.eval(source.toString(), query, bindings);
+				return QueryExecutor.eval(endpointRegistry, source.toString(), query, bindings);
 			}
 		};
-//		Future<Cursor<BindingSet>> future = executor.submit(callable);
-		Future<CloseableIteration<BindingSet, QueryEvaluationException>> future = executor.submit(callable);
-		return new AsyncCursor<BindingSet>(future);
+		// the results are prefetched in the scheduler slots of the source
+		Executor sourceExecutor = new Executor() {
+			@Override public void execute(Runnable task) {
+				// hand over the task itself, such that its cancellation is signaled
+				if (task instanceof RunnableFuture)
+					scheduler.execute(source, (RunnableFuture<?>) task);
+				else
+					scheduler.submit(source, Executors.callable(task));
+			}
+		};
+		return new AsyncCursor<BindingSet>(sourceExecutor, callable, prefetchBufferSize, prefetchHighWatermark, prefetchLowWatermark);
 	}	
 	
 //	public Cursor<BindingSet> fetchArgResults(final TupleExpr joinArg, final BindingSet bindings) {
 	public CloseableIteration<BindingSet, QueryEvaluationException>  fetchArgResults(final TupleExpr joinArg, final BindingSet bindings) {
-//		Callable<Cursor<BindingSet>> callable = new Callable<Cursor<BindingSet>>() {
 		Callable<CloseableIteration<BindingSet, QueryEvaluationException>>  callable = new Callable<CloseableIteration<BindingSet, QueryEvaluationException>>() {
-//			@Override public Cursor<BindingSet> call() {
-			@Override public CloseableIteration<BindingSet, QueryEvaluationException> call() {
-//				return evaluate(joinArg, bindings);
-				try {
-					return evaluate(joinArg, bindings);
-				} catch (QueryEvaluationException e) {
-					e.printStackTrace();
-					return null;
-				}
+			@Override public CloseableIteration<BindingSet, QueryEvaluationException> call() throws QueryEvaluationException {
+				return evaluate(joinArg, bindings);
 			}
 		};
-//		Future<Cursor<BindingSet>> future = executor.submit(callable);
-		Future<CloseableIteration<BindingSet, QueryEvaluationException>> future = executor.submit(callable);
-		return new AsyncCursor<BindingSet>(future);
+		return new AsyncCursor<BindingSet>(getJoinExecutor(), callable, prefetchBufferSize, prefetchHighWatermark, prefetchLowWatermark);
 	}
 	
 	class SourceCollector extends AbstractQueryModelVisitor<RuntimeException> {
@@ -399,6 +597,48 @@ public class FederationEvalStrategy extends StrictEvaluationStrategy {
 		
 	}
 	
+	/**
+	 * Collects the projection variables of all sub queries in an expression.
+	 */
+	static class ProjectionCollector extends AbstractQueryModelVisitor<RuntimeException> {
+		
+		private Set<String> projection = new HashSet<String>();
+		
+		/**
+		 * Returns the union of the projection variables of all sub queries.
+		 * 
+		 * @param node the expression.
+		 * @return the projection variables or null if all variables are needed.
+		 */
+		public Set<String> getProjectionVars(QueryModelNode node) {
+			node.visit(this);
+			return projection;
+		}
+		
+		@Override
+		public void meet(StatementPattern pattern) {
+			if (pattern instanceof MappedStatementPattern)
+				add(((MappedStatementPattern) pattern).getProjectionVars());
+			else
+				projection = null;
+		}
+		
+		@Override
+		public void meetOther(QueryModelNode node) {
+			if (node instanceof RemoteQuery)
+				add(((RemoteQuery) node).getProjectionVars());
+			else
+				super.meetOther(node);
+		}
+		
+		private void add(Set<String> vars) {
+			if (vars == null)
+				projection = null;
+			else if (projection != null)
+				projection.addAll(vars);
+		}
+	}
+	
 	static class PatternCollector extends AbstractQueryModelVisitor<RuntimeException> {
 		
 		Set<StatementPattern> patternSet = new HashSet<StatementPattern>();
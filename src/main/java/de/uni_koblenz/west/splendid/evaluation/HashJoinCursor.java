@@ -24,13 +24,9 @@ import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
 
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Set;
 
-import org.eclipse.rdf4j.query.Binding;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
@@ -39,6 +35,8 @@ import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
  * Hash join on two result sets.
  * First the bindings of the left join argument are put in a hash table.
  * Then the bindings of the right argument are matched.
+ * The hash table is keyed by a hash of the join values, hence no key
+ * objects are created for the left and right bindings.
  * 
  * @author Olaf Goerlitz
  */
@@ -46,10 +44,10 @@ public class HashJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluati
 	
 	protected final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
 	protected final CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
-	protected final List<String> joinBindingNames;
+	protected final Set<String> joinVars;
 	
 	protected Deque<BindingSet> joinedBindings = new ArrayDeque<BindingSet>();
-	protected HashMap<List<Binding>, List<BindingSet>> joinHashMap;
+	private JoinHashTable joinTable;
 	
 	private volatile boolean closed;
 	
@@ -58,35 +56,17 @@ public class HashJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluati
 
 		this.leftIter = leftIter;
 		this.rightIter = rightIter;
-		this.joinBindingNames = new ArrayList<String>(joinVars);
+		this.joinVars = joinVars;
 	}
 	
-	private void buildHashMap() {
+	private void buildHashTable() throws QueryEvaluationException {
 		
-		try {
-			this.joinHashMap = new HashMap<List<Binding>, List<BindingSet>>();
-			
-			// populate hash map with left side results
-			while (!closed && leftIter.hasNext()) {
-				BindingSet next = leftIter.next();
-				
-				// compile join bindings of current binding set
-				// (cross product will result in empty bindings list)
-				List<Binding> joinBindings = new ArrayList<Binding>();
-				for (String bindingName : this.joinBindingNames) {
-					joinBindings.add(next.getBinding(bindingName));
-				}
-
-				// add join bindings to hash map
-				List<BindingSet> bindings = joinHashMap.get(joinBindings);
-				if (bindings == null) {
-					bindings = new ArrayList<BindingSet>();
-					joinHashMap.put(joinBindings, bindings);
-				}
-				bindings.add(next);
-			}
-		} catch (QueryEvaluationException e) {
-			e.printStackTrace();
+		this.joinTable = new JoinHashTable(joinVars);
+		
+		// populate hash table with left side results
+		// (cross product will put all bindings in the same chain)
+		while (!closed && leftIter.hasNext()) {
+			joinTable.add(leftIter.next());
 		}
 	}
 	
@@ -105,46 +85,30 @@ public class HashJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluati
 	@Override
 	protected BindingSet getNextElement() throws QueryEvaluationException {
 		
-		if (joinHashMap == null)
-			buildHashMap();
+		if (joinTable == null)
+			buildHashTable();
 		
 		// return next joined binding if available
 		if (joinedBindings.size() != 0)
 			return joinedBindings.remove();
 		
-		if (!rightIter.hasNext())
-			return null;
-		
 		// or generate next join bindings
 		// get next original binding set until join partner is found
-		List<BindingSet> bindings = null;
-		BindingSet next = null;
-
-		while (bindings == null) {
-
-			if (!rightIter.hasNext())
-				return null;
-
-			next = rightIter.next();
+		while (rightIter.hasNext()) {
+			BindingSet next = rightIter.next();
 			
-			// compile join bindings of current binding set
-			// (cross product will result in empty bindings list)
-			List<Binding> joinBindings = new ArrayList<Binding>();
-			for (String bindingName : this.joinBindingNames) {
-				joinBindings.add(next.getBinding(bindingName));
+			// create all join combinations
+			for (int row = joinTable.first(next); row >= 0; row = joinTable.next(row, next)) {
+				QueryBindingSet set = new QueryBindingSet(next);
+				set.addAll(joinTable.get(row));
+				joinedBindings.add(set);
 			}
 			
-			bindings = joinHashMap.get(joinBindings);
-		}			
-		
-		// create all join combinations
-		for (BindingSet binding : bindings) {
-			QueryBindingSet set = new QueryBindingSet(next);
-			set.addAll(binding);
-			joinedBindings.add(set);
+			if (joinedBindings.size() != 0)
+				return joinedBindings.remove();
 		}
 		
-		return joinedBindings.remove();
+		return null;
 	}
 
 }
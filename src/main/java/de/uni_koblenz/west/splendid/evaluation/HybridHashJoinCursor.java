@@ -0,0 +1,323 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory-bounded hash join on two result sets.
+ * Like the {@link HashJoinCursor}, the bindings of the left join argument
+ * are put in a hash table which is then probed with the right bindings.
+ * The hash table is divided into partitions, each of which is a
+ * {@link JoinHashTable} while it is kept in memory. If the estimated size of the
+ * hash table exceeds the memory budget, the largest partitions are spilled
+ * to disk and the right bindings belonging to spilled partitions are
+ * written to disk as well. After the right argument has been processed,
+ * the spilled partitions are joined one by one (and partitioned again if
+ * necessary).
+ * 
+ * @author Olaf Goerlitz
+ */
+public class HybridHashJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(HybridHashJoinCursor.class);
+	
+	private static final int PARTITIONS = 16;
+	
+	/** Initial number of binding sets of an in-memory partition. */
+	private static final int PARTITION_CAPACITY = 64;
+	
+	/** Spilled partitions are not partitioned again beyond this level. */
+	private static final int MAX_LEVEL = 3;
+	
+	protected final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+	protected final CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
+	protected final Set<String> joinVars;
+	protected final List<String> joinBindingNames;
+	
+	protected Deque<BindingSet> joinedBindings = new ArrayDeque<BindingSet>();
+	
+	private final long memoryBudget;
+	private final int level;
+	private long memoryUsed;
+	
+	private Partition[] partitions;
+	private boolean rightDone;
+	private int nextPartition;
+	private CloseableIteration<BindingSet, QueryEvaluationException> partitionJoin;
+	
+	private volatile boolean closed;
+	
+	/**
+	 * Creates a new hash join.
+	 * 
+	 * @param leftIter the left join argument used to build the hash table.
+	 * @param rightIter the right join argument used to probe the hash table.
+	 * @param joinVars the join variables.
+	 * @param memoryBudget the estimated hash table size (in bytes) which causes partitions to be spilled.
+	 */
+	public HybridHashJoinCursor(CloseableIteration<BindingSet, QueryEvaluationException> leftIter, CloseableIteration<BindingSet, QueryEvaluationException> rightIter, Set<String> joinVars, long memoryBudget)
+		throws QueryEvaluationException {
+		this(leftIter, rightIter, joinVars, memoryBudget, 0);
+	}
+	
+	private HybridHashJoinCursor(CloseableIteration<BindingSet, QueryEvaluationException> leftIter, CloseableIteration<BindingSet, QueryEvaluationException> rightIter, Set<String> joinVars, long memoryBudget, int level)
+		throws QueryEvaluationException {
+		
+		if (memoryBudget < 1)
+			throw new IllegalArgumentException("memory budget must be positive: " + memoryBudget);
+		
+		this.leftIter = leftIter;
+		this.rightIter = rightIter;
+		this.joinVars = joinVars;
+		this.joinBindingNames = new ArrayList<String>(joinVars);
+		this.memoryBudget = memoryBudget;
+		this.level = level;
+	}
+	
+	/**
+	 * Populates the partitioned hash table with the left side results.
+	 */
+	private void buildHashTable() throws QueryEvaluationException {
+		partitions = new Partition[PARTITIONS];
+		for (int i = 0; i < PARTITIONS; i++) {
+			partitions[i] = new Partition(joinBindingNames);
+		}
+		
+		try {
+			while (!closed && leftIter.hasNext()) {
+				BindingSet next = leftIter.next();
+				Partition partition = partitions[getPartition(next)];
+				
+				if (partition.left != null) {
+					partition.left.write(next);
+					continue;
+				}
+				partition.table.add(next);
+				
+				long size = estimateSize(next);
+				partition.memory += size;
+				memoryUsed += size;
+				
+				// at the last level the remaining partitions must fit in memory
+				while (memoryUsed > memoryBudget && level < MAX_LEVEL) {
+					if (!spillLargestPartition())
+						break;
+				}
+			}
+		} catch (IOException e) {
+			throw new QueryEvaluationException("failed to spill hash join partition", e);
+		} finally {
+			leftIter.close();
+		}
+	}
+	
+	/**
+	 * Writes the in-memory partition with the largest size to disk.
+	 * 
+	 * @return false if there is no partition left in memory.
+	 */
+	private boolean spillLargestPartition() throws IOException {
+		Partition largest = null;
+		for (Partition partition : partitions) {
+			if (partition.left == null && partition.memory > 0 && (largest == null || partition.memory > largest.memory))
+				largest = partition;
+		}
+		if (largest == null)
+			return false;
+		
+		if (LOGGER.isDebugEnabled())
+			LOGGER.debug("spilling hash join partition of " + largest.memory + " bytes (level " + level + ")");
+		
+		largest.left = new SpillFile();
+		for (int row = 0; row < largest.table.size(); row++) {
+			largest.left.write(largest.table.get(row));
+		}
+		largest.table = null;
+		memoryUsed -= largest.memory;
+		largest.memory = 0;
+		return true;
+	}
+	
+	/**
+	 * Stop the evaluation, close any open cursor and remove spill files.
+	 */
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		closed = true;
+		
+		try {
+			if (partitionJoin != null)
+				partitionJoin.close();
+		} finally {
+			if (partitions != null) {
+				for (int i = nextPartition; i < PARTITIONS; i++) {
+					partitions[i].delete();
+				}
+			}
+			try {
+				leftIter.close();
+			} finally {
+				rightIter.close();
+			}
+		}
+	}
+	
+	@Override
+	protected BindingSet getNextElement() throws QueryEvaluationException {
+		
+		if (partitions == null)
+			buildHashTable();
+		
+		try {
+			while (true) {
+				
+				// return next joined binding if available
+				if (!joinedBindings.isEmpty())
+					return joinedBindings.remove();
+				
+				// probe the in-memory partitions or spill the right bindings
+				if (!rightDone) {
+					if (rightIter.hasNext()) {
+						probe(rightIter.next());
+						continue;
+					}
+					rightDone = true;
+					rightIter.close();
+					for (Partition partition : partitions) {
+						partition.table = null;
+					}
+					memoryUsed = 0;
+				}
+				
+				// join the spilled partitions one after another
+				if (partitionJoin != null) {
+					if (partitionJoin.hasNext())
+						return partitionJoin.next();
+					partitionJoin.close();
+					partitionJoin = null;
+				}
+				
+				while (nextPartition < PARTITIONS && partitions[nextPartition].left == null) {
+					nextPartition++;
+				}
+				if (nextPartition == PARTITIONS)
+					return null;
+				
+				Partition partition = partitions[nextPartition++];
+				if (partition.right == null) {
+					partition.delete();
+					continue;
+				}
+				partitionJoin = new HybridHashJoinCursor(partition.left.read(), partition.right.read(), joinVars, memoryBudget, level + 1);
+			}
+		} catch (IOException e) {
+			throw new QueryEvaluationException("failed to process spilled hash join partition", e);
+		}
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	private void probe(BindingSet next) throws IOException {
+		Partition partition = partitions[getPartition(next)];
+		
+		if (partition.left != null) {
+			if (partition.right == null)
+				partition.right = new SpillFile();
+			partition.right.write(next);
+			return;
+		}
+		
+		// create all join combinations
+		JoinHashTable table = partition.table;
+		for (int row = table.first(next); row >= 0; row = table.next(row, next)) {
+			QueryBindingSet set = new QueryBindingSet(next);
+			set.addAll(table.get(row));
+			joinedBindings.add(set);
+		}
+	}
+	
+	/**
+	 * Assigns a binding set to a partition based on its join values, using
+	 * a different hash function on every level of partitioning.
+	 */
+	private int getPartition(BindingSet bindings) {
+		int h = 1;
+		for (String bindingName : this.joinBindingNames) {
+			Value value = bindings.getValue(bindingName);
+			h = 31 * h + (value == null ? 0 : value.hashCode());
+		}
+		h += level * 0x9E3779B9;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return (h & Integer.MAX_VALUE) % PARTITIONS;
+	}
+	
+	/**
+	 * Estimates the heap size of a binding set in the hash table.
+	 */
+	private static long estimateSize(BindingSet bindings) {
+		long size = 96;
+		for (Binding binding : bindings) {
+			size += 64 + 2L * binding.getValue().stringValue().length();
+		}
+		return size;
+	}
+	
+	/**
+	 * A hash table partition which is either kept in memory or spilled.
+	 */
+	private static class Partition {
+		JoinHashTable table;
+		long memory;
+		SpillFile left;
+		SpillFile right;
+		
+		Partition(List<String> joinVars) {
+			this.table = new JoinHashTable(joinVars, PARTITION_CAPACITY);
+		}
+		
+		void delete() {
+			if (left != null)
+				left.delete();
+			if (right != null)
+				right.delete();
+		}
+	}
+
+}
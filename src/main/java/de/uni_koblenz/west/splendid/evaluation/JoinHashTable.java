@@ -0,0 +1,212 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+
+/**
+ * Hash table which groups binding sets by the values of their join
+ * variables without allocating key objects.
+ * The join values are combined into a 64 bit hash which is stored in an
+ * open addressing table. Each slot references a chain of binding sets
+ * (in insertion order) with the same hash; join value equality is only
+ * checked for the binding sets in the chain of a probed hash.
+ * 
+ * @author Olaf Goerlitz
+ */
+class JoinHashTable {
+	
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final String[] joinVars;
+	private final int initialCapacity;
+	
+	// open addressing slots: hash -> first and last row of the chain
+	private long[] hashes;
+	private int[] heads;
+	private int[] tails;
+	private int slotsUsed;
+	
+	// rows and their chain successors
+	private BindingSet[] rows;
+	private int[] next;
+	private int size;
+	
+	JoinHashTable(Collection<String> joinVars) {
+		this(joinVars, INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Creates a hash table for the expected number of binding sets.
+	 * 
+	 * @param joinVars the join variables.
+	 * @param initialCapacity the initial number of binding sets (rounded up to a power of two).
+	 */
+	JoinHashTable(Collection<String> joinVars, int initialCapacity) {
+		if (initialCapacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + initialCapacity);
+		int capacity = 1;
+		while (capacity < initialCapacity)
+			capacity <<= 1;
+		this.joinVars = joinVars.toArray(new String[joinVars.size()]);
+		this.initialCapacity = capacity;
+		this.rows = new BindingSet[this.initialCapacity];
+		this.next = new int[this.initialCapacity];
+		initSlots(this.initialCapacity * 2);
+	}
+	
+	/**
+	 * Returns the number of binding sets in the table.
+	 * 
+	 * @return the number of binding sets.
+	 */
+	int size() {
+		return this.size;
+	}
+	
+	void add(BindingSet bindings) {
+		if (size == rows.length) {
+			rows = Arrays.copyOf(rows, size * 2);
+			next = Arrays.copyOf(next, size * 2);
+		}
+		int row = size++;
+		rows[row] = bindings;
+		next[row] = -1;
+		
+		long hash = hash(bindings);
+		int slot = findSlot(hash);
+		if (heads[slot] < 0) {
+			hashes[slot] = hash;
+			heads[slot] = row;
+			if (++slotsUsed * 2 > heads.length)
+				resize();
+		} else {
+			next[tails[slot]] = row;
+		}
+		tails[slot] = row;
+	}
+	
+	/**
+	 * Returns the first row whose join values match the probe bindings.
+	 * 
+	 * @param probe the probe bindings.
+	 * @return the row index or -1 if there is no matching row.
+	 */
+	int first(BindingSet probe) {
+		int slot = findSlot(hash(probe));
+		return matching(heads[slot], probe);
+	}
+	
+	/**
+	 * Returns the next row after the supplied row which matches the probe bindings.
+	 * 
+	 * @param row the current row index.
+	 * @param probe the probe bindings.
+	 * @return the row index or -1 if there is no further matching row.
+	 */
+	int next(int row, BindingSet probe) {
+		return matching(next[row], probe);
+	}
+	
+	BindingSet get(int row) {
+		return rows[row];
+	}
+	
+	/**
+	 * Removes all binding sets and releases the allocated memory.
+	 */
+	void clear() {
+		rows = new BindingSet[initialCapacity];
+		next = new int[initialCapacity];
+		size = 0;
+		slotsUsed = 0;
+		initSlots(initialCapacity * 2);
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	private int matching(int row, BindingSet probe) {
+		for (; row >= 0; row = next[row]) {
+			if (joinValuesEqual(rows[row], probe))
+				return row;
+		}
+		return -1;
+	}
+	
+	private boolean joinValuesEqual(BindingSet a, BindingSet b) {
+		for (String var : joinVars) {
+			Value va = a.getValue(var);
+			Value vb = b.getValue(var);
+			if (va == null ? vb != null : !va.equals(vb))
+				return false;
+		}
+		return true;
+	}
+	
+	private long hash(BindingSet bindings) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (String var : joinVars) {
+			Value value = bindings.getValue(var);
+			h = (h ^ (value == null ? 0 : value.hashCode())) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		return h;
+	}
+	
+	/**
+	 * Returns the slot containing the hash or the empty slot where it belongs.
+	 */
+	private int findSlot(long hash) {
+		int mask = heads.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (heads[slot] >= 0 && hashes[slot] != hash) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void initSlots(int capacity) {
+		hashes = new long[capacity];
+		heads = new int[capacity];
+		tails = new int[capacity];
+		Arrays.fill(heads, -1);
+	}
+	
+	private void resize() {
+		long[] oldHashes = hashes;
+		int[] oldHeads = heads;
+		int[] oldTails = tails;
+		initSlots(oldHeads.length * 2);
+		for (int i = 0; i < oldHeads.length; i++) {
+			if (oldHeads[i] >= 0) {
+				int slot = findSlot(oldHashes[i]);
+				hashes[slot] = oldHashes[i];
+				heads[slot] = oldHeads[i];
+				tails[slot] = oldTails[i];
+			}
+		}
+	}
+
+}
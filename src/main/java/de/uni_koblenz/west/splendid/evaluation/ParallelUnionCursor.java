@@ -0,0 +1,126 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+/**
+ * Union of multiple asynchronous cursors which are consumed concurrently.
+ * In contrast to the sequential <tt>UnionIteration</tt>, results are
+ * returned as soon as they arrive from any of the cursors.
+ * 
+ * The union does not need threads of its own: the producers of the
+ * {@link AsyncCursor}s fill their bounded buffers and signal new results,
+ * the end of their input and errors. The union polls the buffers
+ * round-robin and waits for the next signal if all of them are empty.
+ * 
+ * @author Olaf Goerlitz
+ *
+ * @param <E> The type of object that the cursor iterates over.
+ */
+public class ParallelUnionCursor<E> extends LookAheadIteration<E, QueryEvaluationException> {
+	
+	private final List<AsyncCursor<E>> args;
+	private final boolean[] drained;
+	private final Semaphore signals = new Semaphore(0);
+	private int finished;
+	private int next;
+	
+	public ParallelUnionCursor(List<? extends AsyncCursor<E>> args) {
+		this.args = new ArrayList<AsyncCursor<E>>(args);
+		this.drained = new boolean[args.size()];
+		
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				signals.release();
+			}
+		};
+		for (AsyncCursor<E> arg : this.args) {
+			arg.setListener(listener);
+		}
+	}
+	
+	/**
+	 * Stop the evaluation and close any open cursor.
+	 */
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		QueryEvaluationException error = null;
+		for (AsyncCursor<E> arg : args) {
+			try {
+				arg.close();
+			} catch (QueryEvaluationException e) {
+				error = e;
+			}
+		}
+		if (error != null)
+			throw error;
+	}
+	
+	@Override
+	protected E getNextElement() throws QueryEvaluationException {
+		
+		while (finished < args.size()) {
+			// results which arrive after polling a buffer are signaled
+			signals.drainPermits();
+			
+			for (int i = 0; i < args.size(); i++) {
+				int index = (next + i) % args.size();
+				if (drained[index])
+					continue;
+				
+				AsyncCursor<E> arg = args.get(index);
+				E element = arg.poll();
+				if (element != null) {
+					next = index + 1;
+					return element;
+				}
+				if (arg.isDrained()) {
+					drained[index] = true;
+					finished++;
+				}
+			}
+			
+			if (finished < args.size()) {
+				try {
+					signals.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new QueryEvaluationException("interrupted while waiting for union input", e);
+				}
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		return "ParallelUnion(" + args.size() + " args)";
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+
+import de.uni_koblenz.west.splendid.helpers.SparqlPrinter;
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Cache for rendered sub query strings. A template is identified by the
+ * shape of the query expression (i.e. structural equality of the operator
+ * tree), the queried sources and the select clause. Bindings are not part
+ * of the template, they are substituted when the query is sent.
+ * 
+ * The cache is bounded and simply discarded when it is full.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class QueryTemplateCache {
+	
+	public static final int DEFAULT_CAPACITY = 1024;
+	
+	private final ConcurrentMap<Key, String> templates = new ConcurrentHashMap<Key, String>();
+	private final int capacity;
+	
+	public QueryTemplateCache() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a new template cache.
+	 * 
+	 * @param capacity the maximum number of cached templates.
+	 */
+	public QueryTemplateCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * Returns the query string for the supplied expression and sources.
+	 * The query is only rendered if no template with the same shape exists.
+	 * 
+	 * @param select the select clause of the query.
+	 * @param expr the expression to render as graph pattern.
+	 * @param sources the sources to query.
+	 * @return the query string.
+	 */
+	public String get(String select, TupleExpr expr, Set<Graph> sources) {
+		Key key = new Key(select, expr, sources);
+		String query = templates.get(key);
+		if (query == null) {
+			query = render(select, SparqlPrinter.print(expr), sources);
+			if (templates.size() >= capacity)
+				templates.clear();
+			// the cached key must not change if the query model is modified
+			templates.putIfAbsent(new Key(select, expr.clone(), new HashSet<Graph>(sources)), query);
+		}
+		return query;
+	}
+	
+	/**
+	 * Returns the number of cached templates.
+	 * 
+	 * @return the number of templates.
+	 */
+	public int size() {
+		return templates.size();
+	}
+	
+	/**
+	 * Removes all cached templates.
+	 */
+	public void clear() {
+		templates.clear();
+	}
+	
+	/**
+	 * Renders a query which evaluates the graph pattern on each of the
+	 * sources using a union of named graph patterns.
+	 * 
+	 * @param select the select clause of the query.
+	 * @param pattern the SPARQL graph pattern.
+	 * @param sources the sources to query.
+	 * @return the query string.
+	 */
+	public static String render(String select, String pattern, Set<Graph> sources) {
+		StringBuilder query = new StringBuilder(select.length() + 16 + sources.size() * (pattern.length() + 64));
+		query.append(select).append(" WHERE {{");
+		int count = 1;
+		for (Graph source : sources) {
+			query.append("GRAPH <").append(source.toString()).append("> {").append(pattern);
+			query.append(count++ != sources.size() ? "}}UNION{" : "}}");
+		}
+		return query.append("}").toString();
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	private static final class Key {
+		private final String select;
+		private final TupleExpr expr;
+		private final Set<Graph> sources;
+		private final int hash;
+		
+		Key(String select, TupleExpr expr, Set<Graph> sources) {
+			this.select = select;
+			this.expr = expr;
+			this.sources = sources;
+			this.hash = 31 * (31 * select.hashCode() + expr.hashCode()) + sources.hashCode();
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && select.equals(other.select)
+					&& expr.equals(other.expr) && sources.equals(other.sources);
+		}
+	}
+	
+}
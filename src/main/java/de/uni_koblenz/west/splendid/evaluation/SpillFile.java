@@ -0,0 +1,267 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+
+/**
+ * Temporary file which stores binding sets in a compact binary encoding.
+ * Binding names and datatypes are written only once and referenced by
+ * their index afterwards. The file is deleted when it has been read or
+ * discarded; it is not registered for deletion on exit, because every
+ * registered path is kept in memory until the JVM terminates.
+ * 
+ * @author Olaf Goerlitz
+ */
+class SpillFile {
+	
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+	
+	private static final int IRI_VALUE = 1;
+	private static final int BNODE_VALUE = 2;
+	private static final int PLAIN_LITERAL = 3;
+	private static final int LANG_LITERAL = 4;
+	private static final int TYPED_LITERAL = 5;
+	
+	private final File file;
+	private DataOutputStream out;
+	private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+	private int size;
+	
+	SpillFile() throws IOException {
+		this.file = File.createTempFile("splendid-join-", ".bin");
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	}
+	
+	/**
+	 * Returns the number of binding sets written to the file.
+	 * 
+	 * @return the number of binding sets.
+	 */
+	int size() {
+		return this.size;
+	}
+	
+	void write(BindingSet bindings) throws IOException {
+		writeVarInt(bindings.size());
+		for (Binding binding : bindings) {
+			writeDictEntry(binding.getName());
+			writeValue(binding.getValue());
+		}
+		size++;
+	}
+	
+	/**
+	 * Finishes writing and returns an iteration over the stored binding sets.
+	 * Closing the iteration deletes the file.
+	 * 
+	 * @return the binding set iteration.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	CloseableIteration<BindingSet, QueryEvaluationException> read() throws IOException {
+		out.close();
+		return new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16)));
+	}
+	
+	/**
+	 * Discards the file without reading it.
+	 */
+	void delete() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			// ignore, the file is removed anyway
+		}
+		file.delete();
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	private void writeValue(Value value) throws IOException {
+		if (value instanceof IRI) {
+			out.writeByte(IRI_VALUE);
+			writeString(value.stringValue());
+		} else if (value instanceof BNode) {
+			out.writeByte(BNODE_VALUE);
+			writeString(((BNode) value).getID());
+		} else {
+			Literal literal = (Literal) value;
+			if (literal.getLanguage().isPresent()) {
+				out.writeByte(LANG_LITERAL);
+				writeString(literal.getLabel());
+				writeDictEntry(literal.getLanguage().get());
+			} else if (XSD.STRING.equals(literal.getDatatype())) {
+				out.writeByte(PLAIN_LITERAL);
+				writeString(literal.getLabel());
+			} else {
+				out.writeByte(TYPED_LITERAL);
+				writeString(literal.getLabel());
+				writeDictEntry(literal.getDatatype().stringValue());
+			}
+		}
+	}
+	
+	/**
+	 * Writes the index of a frequent string incremented by one, or 0 and
+	 * the string itself on its first occurrence.
+	 */
+	private void writeDictEntry(String value) throws IOException {
+		Integer index = dictionary.get(value);
+		if (index != null) {
+			writeVarInt(index + 1);
+		} else {
+			dictionary.put(value, dictionary.size());
+			writeVarInt(0);
+			writeString(value);
+		}
+	}
+	
+	private void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+	
+	/**
+	 * Decodes the binding sets of the file.
+	 */
+	private class Reader extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+		
+		private final DataInputStream in;
+		private final List<String> dict = new ArrayList<String>();
+		private int remaining = size;
+		
+		Reader(DataInputStream in) {
+			this.in = in;
+		}
+		
+		@Override
+		protected BindingSet getNextElement() throws QueryEvaluationException {
+			if (remaining == 0)
+				return null;
+			remaining--;
+			try {
+				int count = readVarInt();
+				QueryBindingSet bindings = new QueryBindingSet(count);
+				for (int i = 0; i < count; i++) {
+					String name = readDictEntry();
+					bindings.addBinding(name, readValue());
+				}
+				return bindings;
+			} catch (IOException e) {
+				throw new QueryEvaluationException("failed to read spilled join data from " + file, e);
+			}
+		}
+		
+		@Override
+		protected void handleClose() throws QueryEvaluationException {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore, the file is removed anyway
+			}
+			file.delete();
+		}
+		
+		private Value readValue() throws IOException {
+			int type = in.readByte();
+			switch (type) {
+			case IRI_VALUE:
+				return vf.createIRI(readString());
+			case BNODE_VALUE:
+				return vf.createBNode(readString());
+			case PLAIN_LITERAL:
+				return vf.createLiteral(readString());
+			case LANG_LITERAL:
+				String label = readString();
+				return vf.createLiteral(label, readDictEntry());
+			case TYPED_LITERAL:
+				label = readString();
+				return vf.createLiteral(label, vf.createIRI(readDictEntry()));
+			default:
+				throw new IOException("invalid value type: " + type);
+			}
+		}
+		
+		private String readDictEntry() throws IOException {
+			int index = readVarInt();
+			if (index > 0)
+				return dict.get(index - 1);
+			String value = readString();
+			dict.add(value);
+			return value;
+		}
+		
+		private String readString() throws IOException {
+			byte[] bytes = new byte[readVarInt()];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		private int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = in.readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new EOFException("malformed variable length integer");
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Schedules the execution of remote sub queries on the data sources.
+ *
+ * @author Olaf Goerlitz
+ */
+public interface SubQueryScheduler {
+
+	/**
+	 * Submits a task which sends a sub query to the supplied source.
+	 * May block the caller if too many tasks are pending. The returned
+	 * future is cancelled if the task can not be executed.
+	 *
+	 * @param source the data source which is queried by the task.
+	 * @param task the task to execute.
+	 * @return the future result of the task.
+	 */
+	public <T> Future<T> submit(Graph source, Callable<T> task);
+
+	/**
+	 * Executes a task which sends a sub query to the supplied source.
+	 * May block the caller if too many tasks are pending. The task is
+	 * cancelled if it can not be executed, e.g. because the scheduler
+	 * has been shut down, hence its completion is always signaled.
+	 *
+	 * @param source the data source which is queried by the task.
+	 * @param task the task to execute.
+	 */
+	public void execute(Graph source, RunnableFuture<?> task);
+
+	/**
+	 * Stops the execution of all pending tasks and cancels them.
+	 */
+	public void shutdown();
+
+}
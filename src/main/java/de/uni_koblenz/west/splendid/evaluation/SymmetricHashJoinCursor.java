@@ -0,0 +1,261 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.evaluation;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+
+/**
+ * Symmetric (pipelined) hash join on two result sets.
+ * Both join arguments are consumed concurrently and every incoming binding
+ * set is put in the hash table of its own side and probed against the hash
+ * table of the other side. Hence, join results are produced as soon as both
+ * join partners have arrived, not only after one input has been drained
+ * completely as in the {@link HashJoinCursor}.
+ * 
+ * The producers of both join arguments run on a bounded executor. If the
+ * executor rejects a producer because all its threads are busy, the
+ * consumer reads this join argument itself whenever no input of the other
+ * side is waiting. Hence, nested joins can not exhaust the executor and
+ * block each other.
+ *
+ * @author Olaf Goerlitz
+ */
+public class SymmetricHashJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	private static final int LEFT = 0;
+	private static final int RIGHT = 1;
+
+	protected final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+	protected final CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
+	protected final List<String> joinBindingNames;
+
+	protected Deque<BindingSet> joinedBindings = new ArrayDeque<BindingSet>();
+
+	private final JoinHashTable leftTable;
+	private final JoinHashTable rightTable;
+	private final boolean[] finished = new boolean[2];
+	private final boolean[] pulled = new boolean[2];
+	private int nextPull;
+
+	private final ExecutorService executor;
+	private final BlockingQueue<Input> queue;
+	private Future<?>[] producers;
+
+	private volatile boolean closed;
+
+	public SymmetricHashJoinCursor(CloseableIteration<BindingSet, QueryEvaluationException> leftIter, CloseableIteration<BindingSet, QueryEvaluationException> rightIter, Set<String> joinVars, ExecutorService executor)
+		throws QueryEvaluationException {
+
+		if (executor == null)
+			throw new IllegalArgumentException("executor must not be null");
+
+		this.leftIter = leftIter;
+		this.rightIter = rightIter;
+		this.joinBindingNames = new ArrayList<String>(joinVars);
+		this.leftTable = new JoinHashTable(joinBindingNames);
+		this.rightTable = new JoinHashTable(joinBindingNames);
+		this.executor = executor;
+		this.queue = new ArrayBlockingQueue<Input>(DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Starts the concurrent retrieval of the left and right join argument.
+	 */
+	private void startProducers() {
+		this.producers = new Future<?>[2];
+		for (int side = LEFT; side <= RIGHT; side++) {
+			try {
+				producers[side] = executor.submit(new Producer(side, iter(side)));
+			} catch (RejectedExecutionException e) {
+				// no free producer thread, the consumer reads the input
+				pulled[side] = true;
+			}
+		}
+	}
+
+	/**
+	 * Stop the evaluation and close any open cursor.
+	 */
+	@Override
+	protected void handleClose() throws QueryEvaluationException {
+		closed = true;
+
+		// stop producers which may be blocked on a full queue
+		if (producers != null) {
+			for (Future<?> producer : producers) {
+				if (producer != null)
+					producer.cancel(true);
+			}
+		}
+		queue.clear();
+
+		try {
+			leftIter.close();
+		} finally {
+			rightIter.close();
+		}
+	}
+
+	@Override
+	protected BindingSet getNextElement() throws QueryEvaluationException {
+
+		if (producers == null)
+			startProducers();
+
+		// process incoming binding sets until join partners are found
+		while (joinedBindings.isEmpty()) {
+
+			if (finished[LEFT] && finished[RIGHT])
+				return null;
+
+			Input input = nextInput();
+			if (input.error != null)
+				throw input.error;
+
+			if (input.bindings == null) {
+				finished[input.side] = true;
+				// the other hash table will not be probed anymore
+				hashTable(input.side ^ 1).clear();
+				continue;
+			}
+
+			int other = input.side ^ 1;
+
+			// only remember binding set if more join partners may arrive
+			if (!finished[other])
+				hashTable(input.side).add(input.bindings);
+
+			// create all join combinations with partners seen so far
+			JoinHashTable partners = hashTable(other);
+			for (int row = partners.first(input.bindings); row >= 0; row = partners.next(row, input.bindings)) {
+				QueryBindingSet set = new QueryBindingSet(input.bindings);
+				set.addAll(partners.get(row));
+				joinedBindings.add(set);
+			}
+		}
+
+		return joinedBindings.remove();
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Returns the next binding set of any join argument. Inputs which have
+	 * been retrieved by the producers are preferred over reading a join
+	 * argument without producer.
+	 */
+	private Input nextInput() throws QueryEvaluationException {
+		Input input = queue.poll();
+		if (input != null)
+			return input;
+
+		for (int i = 0; i < 2; i++) {
+			int side = nextPull ^ i;
+			if (pulled[side] && !finished[side]) {
+				nextPull = side ^ 1;
+				CloseableIteration<BindingSet, QueryEvaluationException> iter = iter(side);
+				return new Input(side, iter.hasNext() ? iter.next() : null, null);
+			}
+		}
+
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryEvaluationException("interrupted while waiting for join input", e);
+		}
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> iter(int side) {
+		return (side == LEFT) ? leftIter : rightIter;
+	}
+
+	private JoinHashTable hashTable(int side) {
+		return (side == LEFT) ? leftTable : rightTable;
+	}
+
+	/**
+	 * A binding set retrieved from one join argument.
+	 * A null binding set marks the end of the input.
+	 */
+	private static class Input {
+		final int side;
+		final BindingSet bindings;
+		final QueryEvaluationException error;
+
+		Input(int side, BindingSet bindings, QueryEvaluationException error) {
+			this.side = side;
+			this.bindings = bindings;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Drains one join argument into the shared input queue.
+	 */
+	private class Producer implements Runnable {
+
+		private final int side;
+		private final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+
+		Producer(int side, CloseableIteration<BindingSet, QueryEvaluationException> iter) {
+			this.side = side;
+			this.iter = iter;
+		}
+
+		@Override
+		public void run() {
+			try {
+				try {
+					while (!closed && iter.hasNext()) {
+						queue.put(new Input(side, iter.next(), null));
+					}
+					queue.put(new Input(side, null, null));
+				} catch (QueryEvaluationException e) {
+					queue.put(new Input(side, null, e));
+				} catch (RuntimeException e) {
+					queue.put(new Input(side, null, new QueryEvaluationException(e)));
+				}
+			} catch (InterruptedException e) {
+				// cursor has been closed
+			}
+		}
+	}
+
+}
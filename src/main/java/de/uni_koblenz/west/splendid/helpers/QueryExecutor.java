@@ -32,9 +32,7 @@ import java.net.ConnectException;
 //import java.net.URLEncoder;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.io.InputStream;
 import java.io.File;
@@ -53,21 +51,25 @@ import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResultHandler;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
 import org.eclipse.rdf4j.query.UnsupportedQueryLanguageException;
 //import org.eclipse.rdf4j.query.algebra.QueryModel;
 //import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+import org.eclipse.rdf4j.query.impl.AbstractQuery;
 import org.eclipse.rdf4j.query.impl.EmptyBindingSet;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
 import org.eclipse.rdf4j.query.parser.ParsedQuery;
 import org.eclipse.rdf4j.query.parser.sparql.SPARQLParser;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 //import org.eclipse.rdf4j.repository.http.HTTPRepository;
 //import org.eclipse.rdf4j.repository.http.HTTPTupleQuery;
 //import org.eclipse.rdf4j.repository.sparql.SPARQLConnection;
-import org.eclipse.rdf4j.repository.sparql.SPARQLRepository;
 import org.eclipse.rdf4j.sail.Sail;
 import org.eclipse.rdf4j.sail.SailConnection;
 import org.eclipse.rdf4j.sail.SailException;
@@ -94,7 +96,6 @@ public final class QueryExecutor {
 	
 	private static final SPARQLParser parser = new SPARQLParser();
 	
-	private static final Map<String, SPARQLRepository> httpMap = new HashMap<String, SPARQLRepository>();
 //	private static final Map<String, HTTPRepository> httpMap = new HashMap<String, HTTPRepository>();
 //	private static final Map<String, HTTPConnectionPool> httpMap = new HashMap<String, HTTPConnectionPool>();
 	
@@ -180,7 +181,7 @@ public final class QueryExecutor {
 			try {
 				TupleQuery tupleQuery = con.prepareTupleQuery(SPARQL, query);
 //				return asList(wrapResult(tupleQuery, rep.toString()));
-				return asList(wrapResult(tupleQuery, rep.toString(), query));
+				return asList(wrapResult(tupleQuery, null, null, null, rep.toString(), query));
 			} catch (IllegalArgumentException e) {
 				LOGGER.error("not a tuple query:\n" + query, e);
 			} catch (MalformedQueryException e) {
@@ -206,13 +207,50 @@ public final class QueryExecutor {
 	}
 	
 	public static boolean ask(String target, String triplePattern, Configuration config) {
+		return ask(SparqlEndpointRegistry.getDefault(), target, triplePattern, config);
+	}
+	
+	/**
+	 * Checks if the SPARQL endpoint has results for the triple pattern.
+	 * 
+	 * @param registry the registry which provides the endpoint connections.
+	 * @param target the SPARQL endpoint.
+	 * @param triplePattern the triple pattern.
+	 * @param config the configuration of the SPARQL endpoint (may be null).
+	 * @return true if the endpoint has results, false otherwise.
+	 */
+	public static boolean ask(SparqlEndpointRegistry registry, String target, String triplePattern, Configuration config) {
+		return ask(registry, target, triplePattern, config, 0);
+	}
+	
+	/**
+	 * Checks if the SPARQL endpoint has results for the triple pattern.
+	 * The request fails if the endpoint does not answer within the timeout.
+	 * 
+	 * @param registry the registry which provides the endpoint connections.
+	 * @param target the SPARQL endpoint.
+	 * @param triplePattern the triple pattern.
+	 * @param config the configuration of the SPARQL endpoint (may be null).
+	 * @param timeout the timeout in milliseconds (0 = read timeout of the registry).
+	 * @return true if the endpoint has results, false otherwise.
+	 */
+	public static boolean ask(SparqlEndpointRegistry registry, String target, String triplePattern, Configuration config, long timeout) {
 		String query = "ASK { " + "GRAPH <"+ target +"> { "+ triplePattern +" }" + " }";
 		//System.out.println("ASK QUERY: "+query);
 		try {
 			try {
 				//System.out.println("ASK Config: "+config);
 				//System.out.println("RESULT: "+prepareBooleanQuery(query, target, config).evaluate());
-				return prepareBooleanQuery(query, target, config).evaluate();
+				RepositoryConnection con = getAskRepository(registry, target, config).getConnection();
+				try {
+					BooleanQuery askQuery = con.prepareBooleanQuery(QueryLanguage.SPARQL, query);
+					// the execution time is limited in seconds
+					if (timeout > 0)
+						askQuery.setMaxExecutionTime((int) Math.min(Integer.MAX_VALUE, (timeout + 999) / 1000));
+					return askQuery.evaluate();
+				} finally {
+					con.close();
+				}
 			} catch (QueryEvaluationException e) {  // Sesame 3: StoreException
 				// first check for network connection error
 				Throwable cause = e.getCause();
@@ -256,6 +294,19 @@ public final class QueryExecutor {
 	 */
 //	public static Cursor<BindingSet> eval(String endpoint, String query) {
 	public static CloseableIteration<BindingSet, QueryEvaluationException> eval(String endpoint, String query, BindingSet bindings) {
+		return eval(SparqlEndpointRegistry.getDefault(), endpoint, query, bindings);
+	}
+	
+	/**
+	 * Evaluates a given SPARQL query on the specified SPARQL endpoint.
+	 * 
+	 * @param registry the registry which provides the endpoint connections.
+	 * @param endpoint the SPARQL endpoint to use for query evaluation.
+	 * @param query the query to evaluate.
+	 * @param bindings the bindings of the query (may be null).
+	 * @return the result.
+	 */
+	public static CloseableIteration<BindingSet, QueryEvaluationException> eval(SparqlEndpointRegistry registry, String endpoint, String query, BindingSet bindings) {
 		try {
 			//System.out.println("RESULT OF "+query);
 			//System.out.println("========================\n");
@@ -264,7 +315,15 @@ public final class QueryExecutor {
 			//	System.out.println("- "+result);
 			//}
 			//System.out.println("\n========================");
-			return wrapResult(prepareTupleQuery(query, endpoint, bindings), endpoint, query);
+			// the connection is closed with the result iteration
+			SparqlEndpointRepository http = registry.getRepository(endpoint);
+			RepositoryConnection con = http.getConnection();
+			try {
+				return wrapResult(prepareTupleQuery(con, query, endpoint, bindings), con, http, bindings, endpoint, query);
+			} catch (RuntimeException e) {
+				con.close();
+				throw e;
+			}
 		} catch (MalformedQueryException e) {
 			LOGGER.error("Malformed query:\n" + query, e.getMessage());
 			throw new IllegalArgumentException("Malformed query:\n" + query, e);
@@ -278,7 +337,8 @@ public final class QueryExecutor {
 	}
 	
 	/**
-	 * Prepares a TupleQuery for a SPARQL endpoint.
+	 * Prepares a BooleanQuery for a SPARQL endpoint.
+	 * Every evaluation uses its own connection which is closed afterwards.
 	 */
 	public static BooleanQuery prepareBooleanQuery(String query, String endpoint, Configuration config)
 			throws RepositoryException, MalformedQueryException {
@@ -287,63 +347,53 @@ public final class QueryExecutor {
 			LOGGER.debug("query endpoint " + endpoint + ": '" + query.replace("\n", " ") + "'");
 		}
 		
-		try {
-			SPARQLRepository http = httpMap.get(endpoint);
-			if (http == null) {
-				if (config != null) {
-					//System.out.println("Config: "+config);
-					//System.out.println("Endpoint: "+endpoint);
-					http = new SPARQLRepository(config.getSparqlEndpoint());
-					httpMap.put(endpoint, http);
-				} else {
-					try {
-						Properties prop = new Properties();          
-						File configFile = new File("eval/sail-config/config.properties");
-						InputStream stream = new FileInputStream(configFile);
-						prop.load(stream);
-						//System.out.println("localhost: "+prop.getProperty("sparql.endpoint"));
-						http = new SPARQLRepository(prop.getProperty("sparql.endpoint"));
-						httpMap.put(endpoint, http);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
+		return new EndpointBooleanQuery(getAskRepository(SparqlEndpointRegistry.getDefault(), endpoint, config), query);
+	}
+	
+	/**
+	 * Returns the repository which answers ASK queries for an endpoint.
+	 * The repository of a configured SPARQL endpoint is used if available.
+	 */
+	private static SparqlEndpointRepository getAskRepository(SparqlEndpointRegistry registry, String endpoint, Configuration config) {
+		String url = null;
+		if (config != null) {
+			//System.out.println("Config: "+config);
+			//System.out.println("Endpoint: "+endpoint);
+			url = config.getSparqlEndpoint();
+		} else {
+			try {
+				Properties prop = new Properties();          
+				File configFile = new File("eval/sail-config/config.properties");
+				InputStream stream = new FileInputStream(configFile);
+				try {
+					prop.load(stream);
+				} finally {
+					stream.close();
 				}
+				//System.out.println("localhost: "+prop.getProperty("sparql.endpoint"));
+				url = prop.getProperty("sparql.endpoint");
+			} catch (Exception e) {
+				e.printStackTrace();
 			}
-			Map<String, String> headers =new HashMap<String, String>();
-			headers.put("Accept", "application/sparql-results+json");
-			//System.out.println(http);
-			http.setAdditionalHttpHeaders(headers);
-
-			return http.getConnection().prepareBooleanQuery(QueryLanguage.SPARQL, query);
-		} catch (RepositoryException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			throw e;
 		}
+		// the result format is negotiated by the repository
+		return registry.getRepository(endpoint, url);
 	}
 	
 	/**
 	 * Prepares a TupleQuery for a SPARQL endpoint.
+	 * Every evaluation uses its own connection which is closed with the result.
 	 */
 	public static TupleQuery prepareTupleQuery(String query, String endpoint, BindingSet bindings)
 			throws RepositoryException, MalformedQueryException {  // SESAME 2:
 		
-		if (LOGGER.isDebugEnabled()) {
-			LOGGER.debug("query endpoint " + endpoint + ": '" + query.replace("\n", " ") + "'");
-			if (bindings != null  && bindings.size() > 0)
-				LOGGER.debug("with bindings: " + bindings);
-		}
-		
 		try {
-			SPARQLRepository http = httpMap.get(endpoint);
-			if (http == null) {
-				http = new SPARQLRepository(endpoint);
-				httpMap.put(endpoint, http);
-			}
-			
-			TupleQuery tq = http.getConnection().prepareTupleQuery(QueryLanguage.SPARQL, query, null);
-			for (Binding b : bindings) {
-				tq.setBinding(b.getName(), b.getValue());
+			SparqlEndpointRepository http = SparqlEndpointRegistry.getDefault().getRepository(endpoint);
+			TupleQuery tq = new EndpointTupleQuery(http, query, endpoint);
+			if (bindings != null) {
+				for (Binding b : bindings) {
+					tq.setBinding(b.getName(), b.getValue());
+				}
 			}
 			return tq;
 //			return http.getConnection().prepareTupleQuery(QueryLanguage.SPARQL, query, null);
@@ -378,6 +428,24 @@ public final class QueryExecutor {
 //		}
 	}
 	
+	private static TupleQuery prepareTupleQuery(RepositoryConnection con, String query, String endpoint, BindingSet bindings)
+			throws RepositoryException, MalformedQueryException {
+		
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("query endpoint " + endpoint + ": '" + query.replace("\n", " ") + "'");
+			if (bindings != null  && bindings.size() > 0)
+				LOGGER.debug("with bindings: " + bindings);
+		}
+		
+		TupleQuery tq = con.prepareTupleQuery(QueryLanguage.SPARQL, query, null);
+		if (bindings != null) {
+			for (Binding b : bindings) {
+				tq.setBinding(b.getName(), b.getValue());
+			}
+		}
+		return tq;
+	}
+	
 	// -------------------------------------------------------------------------
 	
 	/**
@@ -420,10 +488,14 @@ public final class QueryExecutor {
 	 * Evaluates the supplied TupleQuery.
 	 * 
 	 * @tupleQuery the TupleQuery to evaluate.
+	 * @con the connection of the TupleQuery, closed with the result (may be null).
+	 * @endpoint the endpoint repository which negotiates the result format (may be null).
+	 * @bindings the bindings of the TupleQuery, needed to prepare it again.
 	 * @target the target of the evaluation. (for debugging. TODO change to getDataset())
 	 */
 //	private static Cursor<BindingSet> wrapResult(TupleQuery tupleQuery, final String target) {
-	private static CloseableIteration<BindingSet, QueryEvaluationException> wrapResult(final TupleQuery tupleQuery, final String target, final String query) {
+	private static CloseableIteration<BindingSet, QueryEvaluationException> wrapResult(final TupleQuery tupleQuery, final RepositoryConnection con,
+			final SparqlEndpointRepository endpoint, final BindingSet bindings, final String target, final String query) {
 		
 		// Use result wrapper to catch (HTTP) communication errors.
 		// next result will be null if an error occurs.
@@ -433,13 +505,43 @@ public final class QueryExecutor {
 			private TupleQueryResult result;
 			
 			private BindingSet last;
+			
+			private TupleQuery tq = tupleQuery;
+			private RepositoryConnection connection = con;
+			
+			/**
+			 * Evaluates the query and falls back to the next result format
+			 * of the endpoint if the results cannot be processed.
+			 */
+			private TupleQueryResult evaluate() {
+				while (true) {
+					TupleQueryResultFormat format = (endpoint != null) ? endpoint.getTupleQueryResultFormat() : null;
+					TupleQueryResult evaluated = null;
+					try {
+						evaluated = tq.evaluate();
+						// the first result is parsed in the requested format
+						evaluated.hasNext();
+						if (endpoint != null)
+							endpoint.formatAccepted(evaluated, format);
+						return evaluated;
+					} catch (RuntimeException e) {
+						if (evaluated != null)
+							evaluated.close();
+						if (endpoint == null || !SparqlEndpointRepository.isFormatError(e) || !endpoint.formatRejected(format))
+							throw e;
+						connection.close();
+						connection = endpoint.getConnection();
+						tq = prepareTupleQuery(connection, query, target, bindings);
+					}
+				}
+			}
 
 //			public BindingSet next() throws StoreException { // Sesame 3
 			public BindingSet getNextElement() { // Sesame 2
 				try {
 //					return super.next();
 					if (result == null)
-						result = tupleQuery.evaluate();
+						result = evaluate();
 					if (result.hasNext()) {
 						last = result.next();
 						return last;
@@ -481,6 +583,22 @@ public final class QueryExecutor {
 //					return new EmptyBindingSet();
 				}
 			}
+			
+			@Override
+			protected void handleClose() throws QueryEvaluationException {
+				// release the HTTP connection even if the result was not consumed
+				try {
+					if (result != null)
+						result.close();
+				} finally {
+					try {
+						if (connection != null)
+							connection.close();
+					} catch (RepositoryException e) {
+						LOGGER.warn("failed to close connection to " + target, e);
+					}
+				}
+			}
 			//				@Override // Sesame 3:
 			//				public void close() throws StoreException {
 			//					try {
@@ -494,4 +612,93 @@ public final class QueryExecutor {
 		};
 	}
 
+	/**
+	 * Tuple query which opens a connection to the endpoint for every
+	 * evaluation and closes it together with the result.
+	 */
+	private static class EndpointTupleQuery extends AbstractQuery implements TupleQuery {
+		
+		private final SparqlEndpointRepository http;
+		private final String query;
+		private final String endpoint;
+		
+		EndpointTupleQuery(SparqlEndpointRepository http, String query, String endpoint) {
+			this.http = http;
+			this.query = query;
+			this.endpoint = endpoint;
+		}
+		
+		@Override
+		public TupleQueryResult evaluate() throws QueryEvaluationException {
+			final RepositoryConnection con = http.getConnection();
+			try {
+				TupleQueryResult result = prepare(con).evaluate();
+				CloseableIteration<BindingSet, QueryEvaluationException> bindings = result;
+				return new IteratingTupleQueryResult(result.getBindingNames(), bindings) {
+					@Override
+					protected void handleClose() throws QueryEvaluationException {
+						try {
+							super.handleClose();
+						} finally {
+							con.close();
+						}
+					}
+				};
+			} catch (RuntimeException e) {
+				con.close();
+				throw e;
+			}
+		}
+		
+		@Override
+		public void evaluate(TupleQueryResultHandler handler) throws QueryEvaluationException, TupleQueryResultHandlerException {
+			RepositoryConnection con = http.getConnection();
+			try {
+				prepare(con).evaluate(handler);
+			} finally {
+				con.close();
+			}
+		}
+		
+		private TupleQuery prepare(RepositoryConnection con) {
+			TupleQuery tq = prepareTupleQuery(con, query, endpoint, getBindings());
+			tq.setDataset(getDataset());
+			tq.setIncludeInferred(getIncludeInferred());
+			tq.setMaxExecutionTime(getMaxExecutionTime());
+			return tq;
+		}
+	}
+	
+	/**
+	 * Boolean query which opens a connection to the endpoint for every
+	 * evaluation and closes it afterwards.
+	 */
+	private static class EndpointBooleanQuery extends AbstractQuery implements BooleanQuery {
+		
+		private final SparqlEndpointRepository http;
+		private final String query;
+		
+		EndpointBooleanQuery(SparqlEndpointRepository http, String query) {
+			this.http = http;
+			this.query = query;
+		}
+		
+		@Override
+		public boolean evaluate() throws QueryEvaluationException {
+			RepositoryConnection con = http.getConnection();
+			try {
+				BooleanQuery bq = con.prepareBooleanQuery(QueryLanguage.SPARQL, query);
+				for (Binding b : getBindings()) {
+					bq.setBinding(b.getName(), b.getValue());
+				}
+				bq.setDataset(getDataset());
+				bq.setIncludeInferred(getIncludeInferred());
+				bq.setMaxExecutionTime(getMaxExecutionTime());
+				return bq.evaluate();
+			} finally {
+				con.close();
+			}
+		}
+	}
+
 }
@@ -0,0 +1,194 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.helpers;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.rdf4j.http.client.SharedHttpClientSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the SPARQL endpoints which are accessed by a federation.
+ * All endpoints of a registry share a single pooled HTTP client which keeps
+ * connections alive between sub queries and limits the number of open
+ * connections per endpoint (route). Connections are returned to the pool
+ * when the query result is closed.
+ * 
+ * Every federation owns its registry and shuts it down with the federation,
+ * the {@link #getDefault() default registry} is used by standalone helpers.
+ * 
+ * @author Olaf Goerlitz
+ */
+public final class SparqlEndpointRegistry {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(SparqlEndpointRegistry.class);
+	
+	public static final int DEFAULT_MAX_CONNECTIONS = 256;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT = 32;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	public static final int DEFAULT_READ_TIMEOUT = 300000;
+	
+	// idle connections are closed after this time (in seconds)
+	private static final int IDLE_TIMEOUT = 60;
+	
+	private static final SparqlEndpointRegistry defaultRegistry = new SparqlEndpointRegistry();
+	
+	private final ConcurrentMap<String, SparqlEndpointRepository> endpoints = new ConcurrentHashMap<String, SparqlEndpointRepository>();
+	
+	private final int maxConnections;
+	private final int maxConnectionsPerEndpoint;
+	private final int connectTimeout;
+	private final int readTimeout;
+	
+	private CloseableHttpClient httpClient;
+	private SharedHttpClientSessionManager sessionManager;
+	
+	/**
+	 * Creates a registry with the default connection limits and timeouts.
+	 */
+	public SparqlEndpointRegistry() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+	}
+	
+	/**
+	 * Creates a registry with the supplied connection limits and timeouts.
+	 * 
+	 * @param maxConnections the maximum number of open connections.
+	 * @param maxConnectionsPerEndpoint the maximum number of open connections per endpoint.
+	 * @param connectTimeout the connect timeout in milliseconds (0 = no timeout).
+	 * @param readTimeout the socket read timeout in milliseconds (0 = no timeout).
+	 */
+	public SparqlEndpointRegistry(int maxConnections, int maxConnectionsPerEndpoint, int connectTimeout, int readTimeout) {
+		if (maxConnections < 1 || maxConnectionsPerEndpoint < 1)
+			throw new IllegalArgumentException("connection limits must be positive");
+		if (connectTimeout < 0 || readTimeout < 0)
+			throw new IllegalArgumentException("timeouts must not be negative");
+		
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+	
+	/**
+	 * Returns the registry which is shared by all users without a registry
+	 * of their own. It is never shut down.
+	 * 
+	 * @return the default registry.
+	 */
+	public static SparqlEndpointRegistry getDefault() {
+		return defaultRegistry;
+	}
+	
+	/**
+	 * Returns the repository for the SPARQL endpoint with the supplied name.
+	 * 
+	 * @param name the name of the endpoint.
+	 * @param url the URL of the endpoint, used if the repository does not exist yet.
+	 * @return the repository.
+	 */
+	public SparqlEndpointRepository getRepository(String name, String url) {
+		SparqlEndpointRepository repository = endpoints.get(name);
+		if (repository == null) {
+			SparqlEndpointRepository created = new SparqlEndpointRepository(url);
+			created.setHttpClientSessionManager(getSessionManager());
+			repository = endpoints.putIfAbsent(name, created);
+			if (repository == null)
+				repository = created;
+		}
+		return repository;
+	}
+	
+	/**
+	 * Returns the repository for the SPARQL endpoint with the supplied URL.
+	 * 
+	 * @param url the URL of the endpoint.
+	 * @return the repository.
+	 */
+	public SparqlEndpointRepository getRepository(String url) {
+		return getRepository(url, url);
+	}
+	
+	/**
+	 * Removes all endpoints and closes the pooled connections.
+	 * Repositories which are requested afterwards use a new HTTP client.
+	 */
+	public synchronized void shutDown() {
+		for (SparqlEndpointRepository repository : endpoints.values()) {
+			repository.shutDown();
+		}
+		endpoints.clear();
+		closeClient();
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	private synchronized SharedHttpClientSessionManager getSessionManager() {
+		if (sessionManager == null) {
+			PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+			pool.setMaxTotal(maxConnections);
+			pool.setDefaultMaxPerRoute(maxConnectionsPerEndpoint);
+			
+			// do not wait forever for a free connection of an exhausted pool
+			RequestConfig requestConfig = RequestConfig.custom()
+					.setConnectTimeout(connectTimeout)
+					.setConnectionRequestTimeout(connectTimeout)
+					.setSocketTimeout(readTimeout)
+					.build();
+			
+			httpClient = HttpClients.custom()
+					.useSystemProperties()
+					.setConnectionManager(pool)
+					.setDefaultRequestConfig(requestConfig)
+					.setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+					.evictExpiredConnections()
+					.evictIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS)
+					.build();
+			
+			sessionManager = new SparqlEndpointRepository.SessionManager(requestConfig);
+			sessionManager.setHttpClient(httpClient);
+		}
+		return sessionManager;
+	}
+	
+	private synchronized void closeClient() {
+		if (sessionManager == null)
+			return;
+		sessionManager.shutDown();
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			LOGGER.warn("failed to close HTTP client", e);
+		}
+		sessionManager = null;
+		httpClient = null;
+	}
+	
+}
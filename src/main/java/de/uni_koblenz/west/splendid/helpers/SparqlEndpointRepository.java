@@ -0,0 +1,287 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.helpers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.eclipse.rdf4j.common.iteration.IterationWrapper;
+import org.eclipse.rdf4j.http.client.SPARQLProtocolSession;
+import org.eclipse.rdf4j.http.client.SharedHttpClientSessionManager;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryInterruptedException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.resultio.BooleanQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.QueryResultParseException;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.UnsupportedQueryResultFormatException;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.sparql.SPARQLRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SPARQL endpoint repository which negotiates the result format with the
+ * endpoint. Compact formats are preferred (rdf4j binary, then TSV), the
+ * verbose SPARQL XML and JSON formats are only used as fallback. A format
+ * which repeatedly cannot be processed is dropped and the next one is
+ * preferred. After the first successful exchange the format of the
+ * response, which is not necessarily the preferred one, is kept for the
+ * endpoint.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class SparqlEndpointRepository extends SPARQLRepository {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(SparqlEndpointRepository.class);
+	
+	/** Tuple result formats in order of preference. */
+	private static final TupleQueryResultFormat[] TUPLE_FORMATS = {
+		TupleQueryResultFormat.BINARY,
+		TupleQueryResultFormat.TSV,
+		TupleQueryResultFormat.SPARQL,
+		TupleQueryResultFormat.JSON };
+	
+	/** Consecutive failures which cause a format to be dropped. */
+	static final int MAX_FORMAT_FAILURES = 3;
+	
+	private final String url;
+	
+	private volatile int formatIndex = 0;
+	private volatile boolean negotiated = false;
+	private int failures;
+	
+	public SparqlEndpointRepository(String url) {
+		super(url);
+		this.url = url;
+	}
+	
+	@Override
+	protected SPARQLProtocolSession createHTTPClient() {
+		SPARQLProtocolSession session = super.createHTTPClient();
+		session.setPreferredTupleQueryResultFormat(getTupleQueryResultFormat());
+		session.setPreferredBooleanQueryResultFormat(BooleanQueryResultFormat.JSON);
+		return session;
+	}
+	
+	/**
+	 * Returns the preferred tuple result format of the endpoint.
+	 * 
+	 * @return the tuple result format.
+	 */
+	public TupleQueryResultFormat getTupleQueryResultFormat() {
+		return TUPLE_FORMATS[formatIndex];
+	}
+	
+	/**
+	 * Returns whether the result format has been confirmed by a successful
+	 * exchange with the endpoint.
+	 * 
+	 * @return true if the result format is fixed.
+	 */
+	public boolean isNegotiated() {
+		return this.negotiated;
+	}
+	
+	/**
+	 * Confirms that the supplied results have been processed. The format of
+	 * the response is kept for the endpoint if it is known, otherwise the
+	 * requested format.
+	 * 
+	 * @param result the results of the successful exchange.
+	 * @param requested the format which was requested.
+	 */
+	public void formatAccepted(TupleQueryResult result, TupleQueryResultFormat requested) {
+		TupleQueryResultFormat format = null;
+		if (result instanceof FormattedTupleQueryResult)
+			format = ((FormattedTupleQueryResult) result).getFormat();
+		formatAccepted(format != null ? format : requested);
+	}
+	
+	/**
+	 * Confirms that results in the supplied format have been processed.
+	 * 
+	 * @param format the format of the successful exchange.
+	 */
+	public synchronized void formatAccepted(TupleQueryResultFormat format) {
+		failures = 0;
+		if (negotiated)
+			return;
+		for (int i = 0; i < TUPLE_FORMATS.length; i++) {
+			if (TUPLE_FORMATS[i].equals(format))
+				formatIndex = i;
+		}
+		negotiated = true;
+		if (LOGGER.isDebugEnabled())
+			LOGGER.debug("using " + format.getName() + " results for " + url);
+	}
+	
+	/**
+	 * Records that the supplied format could not be processed. The format
+	 * is only dropped after repeated failures, since a single error may be
+	 * caused by a broken connection, and the next format in order of
+	 * preference is used instead.
+	 * 
+	 * @param format the format which could not be processed.
+	 * @return true if the query should be sent again.
+	 */
+	public synchronized boolean formatRejected(TupleQueryResultFormat format) {
+		if (negotiated)
+			return false;
+		if (format != getTupleQueryResultFormat())
+			return true;  // already changed by a concurrent query
+		if (++failures < MAX_FORMAT_FAILURES)
+			return true;
+		if (formatIndex + 1 >= TUPLE_FORMATS.length)
+			return false;
+		formatIndex++;
+		failures = 0;
+		LOGGER.warn(url + " does not support " + format.getName() + " results, trying " + getTupleQueryResultFormat().getName());
+		return true;
+	}
+	
+	/**
+	 * Checks if the error was caused by an unsupported result format.
+	 * 
+	 * @param error the error to check.
+	 * @return true if the result format could not be processed.
+	 */
+	public static boolean isFormatError(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof UnsupportedQueryResultFormatException || cause instanceof QueryResultParseException)
+				return true;
+		}
+		return false;
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Session manager whose sessions report the format of the tuple results
+	 * returned by the endpoint.
+	 */
+	static class SessionManager extends SharedHttpClientSessionManager {
+		
+		private final RequestConfig requestConfig;
+		
+		/**
+		 * @param requestConfig the default request settings of the HTTP client.
+		 */
+		SessionManager(RequestConfig requestConfig) {
+			this.requestConfig = requestConfig;
+		}
+		
+		@Override
+		public SPARQLProtocolSession createSPARQLProtocolSession(String queryEndpointUrl, String updateEndpointUrl) {
+			return new ResultFormatSession(getHttpClient(), getExecutorService(), requestConfig, queryEndpointUrl, updateEndpointUrl);
+		}
+	}
+	
+	/**
+	 * Session which remembers the MIME type of the last response. The
+	 * maximum execution time of a query limits the time to wait for data
+	 * from the endpoint, since an interrupt does not abort a blocking read.
+	 */
+	private static class ResultFormatSession extends SPARQLProtocolSession {
+		
+		private final RequestConfig requestConfig;
+		private volatile String mimeType;
+		
+		ResultFormatSession(HttpClient client, ExecutorService executor, RequestConfig requestConfig, String queryUrl, String updateUrl) {
+			super(client, executor);
+			this.requestConfig = requestConfig;
+			setQueryURL(queryUrl);
+			setUpdateURL(updateUrl);
+		}
+		
+		@Override
+		protected HttpUriRequest getQueryMethod(QueryLanguage ql, String query, String baseURI, Dataset dataset,
+				boolean includeInferred, int maxQueryTime, Binding... bindings) {
+			HttpUriRequest method = super.getQueryMethod(ql, query, baseURI, dataset, includeInferred, maxQueryTime, bindings);
+			if (maxQueryTime > 0 && method instanceof HttpRequestBase) {
+				// the request settings replace the client defaults
+				int timeout = (int) Math.min(Integer.MAX_VALUE, maxQueryTime * 1000L);
+				if (requestConfig.getSocketTimeout() > 0)
+					timeout = Math.min(timeout, requestConfig.getSocketTimeout());
+				((HttpRequestBase) method).setConfig(RequestConfig.copy(requestConfig).setSocketTimeout(timeout).build());
+			}
+			return method;
+		}
+		
+		@Override
+		protected String getResponseMIMEType(HttpResponse response) throws IOException {
+			String type = super.getResponseMIMEType(response);
+			this.mimeType = type;
+			return type;
+		}
+		
+		@Override
+		protected TupleQueryResult getBackgroundTupleQueryResult(HttpUriRequest method)
+				throws RepositoryException, QueryInterruptedException, MalformedQueryException, IOException {
+			this.mimeType = null;
+			TupleQueryResult result = super.getBackgroundTupleQueryResult(method);
+			TupleQueryResultFormat format = null;
+			if (mimeType != null) {
+				for (TupleQueryResultFormat candidate : TUPLE_FORMATS) {
+					if (candidate.hasMIMEType(mimeType))
+						format = candidate;
+				}
+			}
+			return new FormattedTupleQueryResult(result, format);
+		}
+	}
+	
+	/**
+	 * Tuple result which knows the format it has been parsed from.
+	 */
+	private static class FormattedTupleQueryResult extends IterationWrapper<BindingSet, QueryEvaluationException> implements TupleQueryResult {
+		
+		private final TupleQueryResult result;
+		private final TupleQueryResultFormat format;
+		
+		FormattedTupleQueryResult(TupleQueryResult result, TupleQueryResultFormat format) {
+			super(result);
+			this.result = result;
+			this.format = format;
+		}
+		
+		TupleQueryResultFormat getFormat() {
+			return this.format;
+		}
+		
+		@Override
+		public List<String> getBindingNames() throws QueryEvaluationException {
+			return result.getBindingNames();
+		}
+	}
+	
+}
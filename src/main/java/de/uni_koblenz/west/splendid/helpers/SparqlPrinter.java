@@ -45,13 +45,20 @@ import de.uni_koblenz.west.splendid.model.RemoteQuery;
  * 
  * TODO: need to extend beyond join and triple patterns.
  * 
+ * Printing is thread-safe, each thread reuses its own printer instance.
+ * 
  * @author Olaf Goerlitz.
  */
 public class SparqlPrinter extends AbstractQueryModelVisitor<RuntimeException> {
 	
-	private static final SparqlPrinter printer = new SparqlPrinter();
+	private static final ThreadLocal<SparqlPrinter> printer = new ThreadLocal<SparqlPrinter>() {
+		@Override
+		protected SparqlPrinter initialValue() {
+			return new SparqlPrinter();
+		}
+	};
 	
-	private StringBuffer buffer = new StringBuffer();
+	private StringBuilder buffer = new StringBuilder();
 	private String indent = "  ";
 	private boolean secondFilterParam = false;
 	private boolean regexFilter = false;
@@ -63,11 +70,12 @@ public class SparqlPrinter extends AbstractQueryModelVisitor<RuntimeException> {
 	 * @return the SPARQL representation of the query model.
 	 */
 	public static String print(QueryModelNode root) {
-		synchronized (printer) {
-			printer.buffer.setLength(0);
-			root.visit(printer);
-			return printer.buffer.toString();
-		}
+		SparqlPrinter printer = SparqlPrinter.printer.get();
+		printer.buffer.setLength(0);
+		printer.secondFilterParam = false;
+		printer.regexFilter = false;
+		root.visit(printer);
+		return printer.buffer.toString();
 	}
 
 	// --------------------------------------------------------------
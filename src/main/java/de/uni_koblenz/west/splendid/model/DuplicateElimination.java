@@ -0,0 +1,39 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.model;
+
+/**
+ * Defines how duplicates are removed from the results of a remote sub query.
+ * 
+ * @author Olaf Goerlitz
+ */
+public enum DuplicateElimination {
+	
+	/** No duplicates can occur, e.g. the sub query is sent to a single source. */
+	NONE,
+	
+	/** Duplicates do not change the query result, removal saves processing costs only. */
+	BOUNDED,
+	
+	/** Duplicates must be removed to produce correct results. */
+	EXACT
+	
+}
@@ -37,6 +37,8 @@ import de.uni_koblenz.west.splendid.index.Graph;
 public class MappedStatementPattern extends StatementPattern {
 	
 	private Set<Graph> sources = new HashSet<Graph>();
+	private DuplicateElimination duplicateElimination = DuplicateElimination.EXACT;
+	private Set<String> projectionVars;
 	
 	public MappedStatementPattern(StatementPattern pattern, Set<Graph> sources) {
 		super(pattern.getScope(), pattern.getSubjectVar(), pattern.getPredicateVar(), pattern.getObjectVar(), pattern.getContextVar());
@@ -60,6 +62,35 @@ public class MappedStatementPattern extends StatementPattern {
 	public boolean removeSource(Graph source) {
 		return this.sources.remove(source);
 	}
+
+	/**
+	 * Returns how duplicates are removed from the results of this sub query.
+	 * 
+	 * @return the duplicate elimination mode.
+	 */
+	public DuplicateElimination getDuplicateElimination() {
+		return duplicateElimination;
+	}
+	
+	public void setDuplicateElimination(DuplicateElimination duplicateElimination) {
+		if (duplicateElimination == null)
+			throw new IllegalArgumentException("duplicate elimination mode is null");
+		this.duplicateElimination = duplicateElimination;
+	}
+
+	/**
+	 * Returns the variables which are needed by the operators above this
+	 * sub query.
+	 * 
+	 * @return the projection variables or null if all variables are needed.
+	 */
+	public Set<String> getProjectionVars() {
+		return projectionVars;
+	}
+	
+	public void setProjectionVars(Set<String> projectionVars) {
+		this.projectionVars = projectionVars;
+	}
 	
 	// -------------------------------------------------------------------------
 	
@@ -39,10 +39,42 @@ import de.uni_koblenz.west.splendid.index.Graph;
 //@SuppressWarnings({"deprecation","removal"})
 public class RemoteQuery extends UnaryTupleOperator {
 	
+	private DuplicateElimination duplicateElimination = DuplicateElimination.EXACT;
+	private Set<String> projectionVars;
+	
 	public RemoteQuery(TupleExpr expr) {
 		super(expr);
 	}
 
+	/**
+	 * Returns how duplicates are removed from the results of this sub query.
+	 * 
+	 * @return the duplicate elimination mode.
+	 */
+	public DuplicateElimination getDuplicateElimination() {
+		return duplicateElimination;
+	}
+	
+	public void setDuplicateElimination(DuplicateElimination duplicateElimination) {
+		if (duplicateElimination == null)
+			throw new IllegalArgumentException("duplicate elimination mode is null");
+		this.duplicateElimination = duplicateElimination;
+	}
+
+	/**
+	 * Returns the variables which are needed by the operators above this
+	 * sub query.
+	 * 
+	 * @return the projection variables or null if all variables are needed.
+	 */
+	public Set<String> getProjectionVars() {
+		return projectionVars;
+	}
+	
+	public void setProjectionVars(Set<String> projectionVars) {
+		this.projectionVars = projectionVars;
+	}
+
 	@Override
 	public <X extends Exception> void visit(QueryModelVisitor<X> visitor) throws X {
 		visitor.meetOther(this);
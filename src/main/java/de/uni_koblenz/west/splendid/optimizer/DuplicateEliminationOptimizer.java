@@ -0,0 +1,125 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.optimizer;
+
+import java.util.Set;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.algebra.Distinct;
+import org.eclipse.rdf4j.query.algebra.Group;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.Reduced;
+import org.eclipse.rdf4j.query.algebra.Slice;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryOptimizer;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.DuplicateElimination;
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+import de.uni_koblenz.west.splendid.model.RemoteQuery;
+
+/**
+ * Chooses the duplicate elimination for the results of each remote sub query.
+ * <ul>
+ * <li>A sub query on a single source returns no duplicates.</li>
+ * <li>Below a DISTINCT or REDUCED projection (without intermediate
+ *     aggregation or slicing) duplicates do not change the query result
+ *     and are only removed with bounded memory.</li>
+ * <li>Otherwise all duplicates are removed.</li>
+ * </ul>
+ * 
+ * @author Olaf Goerlitz
+ */
+public class DuplicateEliminationOptimizer implements QueryOptimizer {
+	
+	@Override
+	public void optimize(TupleExpr query, Dataset dataset, BindingSet bindings) {
+		query.visit(new DuplicateVisitor());
+	}
+	
+	/**
+	 * Tracks whether duplicates are relevant for the sub tree being visited.
+	 */
+	private static class DuplicateVisitor extends AbstractQueryModelVisitor<RuntimeException> {
+		
+		private boolean duplicatesRelevant = true;
+		
+		@Override
+		public void meet(Distinct node) {
+			visitChildren(node, false);
+		}
+		
+		@Override
+		public void meet(Reduced node) {
+			visitChildren(node, false);
+		}
+		
+		@Override
+		public void meet(Group node) {
+			// aggregates count duplicates
+			visitChildren(node, true);
+		}
+		
+		@Override
+		public void meet(Slice node) {
+			// limit and offset count duplicates
+			visitChildren(node, true);
+		}
+		
+		@Override
+		public void meet(StatementPattern node) {
+			if (node instanceof MappedStatementPattern) {
+				MappedStatementPattern pattern = (MappedStatementPattern) node;
+				pattern.setDuplicateElimination(choose(pattern.getSources()));
+			}
+		}
+		
+		@Override
+		public void meetOther(QueryModelNode node) {
+			if (node instanceof RemoteQuery) {
+				RemoteQuery query = (RemoteQuery) node;
+				query.setDuplicateElimination(choose(query.getSources()));
+			} else {
+				super.meetOther(node);
+			}
+		}
+		
+		private DuplicateElimination choose(Set<Graph> sources) {
+			if (sources != null && sources.size() <= 1)
+				return DuplicateElimination.NONE;
+			return duplicatesRelevant ? DuplicateElimination.EXACT : DuplicateElimination.BOUNDED;
+		}
+		
+		private void visitChildren(QueryModelNode node, boolean relevant) {
+			boolean outer = duplicatesRelevant;
+			duplicatesRelevant = relevant;
+			try {
+				node.visitChildren(this);
+			} finally {
+				duplicatesRelevant = outer;
+			}
+		}
+	}
+
+}
@@ -23,39 +23,74 @@ package de.uni_koblenz.west.splendid.optimizer;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.eclipse.rdf4j.query.algebra.Filter;
 import org.eclipse.rdf4j.query.algebra.Join;
-import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.ValueExpr;
-import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
 import org.eclipse.rdf4j.query.algebra.helpers.VarNameCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.uni_koblenz.west.splendid.SPLENDID;
 import de.uni_koblenz.west.splendid.helpers.FilterConditionCollector;
-import de.uni_koblenz.west.splendid.helpers.Format;
 import de.uni_koblenz.west.splendid.model.BindJoin;
 import de.uni_koblenz.west.splendid.model.HashJoin;
 
 /**
+ * Join order optimization with dynamic programming. Sub plans are identified
+ * by the bitmask of their base expressions and only pairs of connected sub
+ * plans are joined (see {@link JoinGraph}). The best plan for each set of
+ * base expressions is kept in a memo table.
+ * 
+ * Cross products are only created if the join graph is not connected. Then,
+ * the optimal plans of the connected components are joined in any order.
+ * 
+ * Since dynamic programming is exponential in the number of base
+ * expressions, it is only used for small queries and as long as the
+ * planning time budget is not exceeded. Otherwise, iterative dynamic
+ * programming (IDP-k) is applied, which repeatedly optimizes blocks of k
+ * expressions and replaces the best block with its plan. If this exceeds
+ * the budget, too, a greedy search (IDP-2) creates the plan. The join pairs
+ * of an IDP iteration are reused by the next one, which only enumerates the
+ * pairs containing the new plan. Queries with more base expressions than a
+ * join graph can hold are always optimized with greedy search.
+ * 
+ * All join pairs of the same size are independent of each other. Hence,
+ * large levels are enumerated in parallel on a fork/join pool and only the
+ * pruning of the candidate plans between two levels is synchronized.
+ * 
  * @author Olaf Goerlitz
  */
 public class DynamicProgrammingOptimizer extends AbstractFederationOptimizer {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(DynamicProgrammingOptimizer.class);
 	
+	public static final int DEFAULT_MAX_EXPRESSIONS = 12;
+	public static final int DEFAULT_BLOCK_SIZE = 5;
+	public static final long DEFAULT_TIME_BUDGET = 1000;
+	
+	/** Minimum number of join pairs which are enumerated by a single task. */
+	private static final int MIN_PAIRS_PER_TASK = 64;
+	
 	private boolean bindJoin;
 	private boolean hashJoin;
+	
+	private int maxExpressions = DEFAULT_MAX_EXPRESSIONS;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	private long timeBudget = DEFAULT_TIME_BUDGET;
+	private int parallelism = 1;
+	private ForkJoinPool pool;
 			
 	public DynamicProgrammingOptimizer(boolean hashJoin, boolean bindJoin) {
 		if (hashJoin == false && bindJoin == false)
@@ -63,289 +98,553 @@ public class DynamicProgrammingOptimizer extends AbstractFederationOptimizer {
 		this.bindJoin = bindJoin;
 		this.hashJoin = hashJoin;
 	}
+	
+	/**
+	 * Sets the maximum number of base expressions which are optimized with
+	 * full dynamic programming. Larger queries are optimized with IDP.
+	 * 
+	 * @param maxExpressions the maximum number of base expressions.
+	 */
+	public void setMaxExpressions(int maxExpressions) {
+		if (maxExpressions < 0)
+			throw new IllegalArgumentException("max expressions must not be negative: " + maxExpressions);
+		this.maxExpressions = maxExpressions;
+	}
+	
+	/**
+	 * Sets the number of base expressions (k) which are combined by IDP
+	 * in every iteration.
+	 * 
+	 * @param blockSize the IDP block size.
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize < 2)
+			throw new IllegalArgumentException("IDP block size must be at least 2: " + blockSize);
+		this.blockSize = blockSize;
+	}
+	
+	/**
+	 * Sets the time (in milliseconds) which may be spent on dynamic
+	 * programming and on IDP before falling back to a faster strategy.
+	 * A budget of 0 disables the limit.
+	 * 
+	 * @param timeBudget the planning time budget.
+	 */
+	public void setTimeBudget(long timeBudget) {
+		if (timeBudget < 0)
+			throw new IllegalArgumentException("planning time budget must not be negative: " + timeBudget);
+		this.timeBudget = timeBudget;
+	}
+	
+	/**
+	 * Sets the number of threads which enumerate the join pairs of a level
+	 * in parallel. A parallelism of 1 enumerates all plans sequentially.
+	 * 
+	 * @param parallelism the number of planning threads.
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("planning parallelism must be positive: " + parallelism);
+		if (parallelism != this.parallelism) {
+			shutDown();
+			this.parallelism = parallelism;
+		}
+	}
+	
+	/**
+	 * Stops the planning threads. They are started again by the next
+	 * parallel enumeration.
+	 */
+	public synchronized void shutDown() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+			this.pool = null;
+		}
+	}
+	
+	/**
+	 * Returns the pool of planning threads, which is created on first use.
+	 * 
+	 * @return the pool or null if plans are enumerated sequentially.
+	 */
+	private synchronized ForkJoinPool getPool() {
+		if (this.pool == null && this.parallelism > 1)
+			this.pool = new ForkJoinPool(this.parallelism);
+		return this.pool;
+	}
 
 	@Override
 	public TupleExpr optimizeBGP(TupleExpr bgp) {
 		
 		long startTime = System.currentTimeMillis();
-		long sourceSelectionTime = 0L;
 		
 		try {
-			PlanCollection optPlans = new PlanCollection();
 			List<ValueExpr> conditions = FilterConditionCollector.process(bgp);
 
 			// create access plans for all statement patterns
 			Pair<List<TupleExpr>, Long> plansAndSSTime = this.getBaseExpressions(bgp);
 			List<TupleExpr> plans = plansAndSSTime.getLeft();
-			long subSourceSelectionTime = plansAndSSTime.getRight();
-			sourceSelectionTime += subSourceSelectionTime;
-
-			int count = plans.size();
-			prune(plans);
-			optPlans.add(new HashSet<TupleExpr>(plans), 1);
-			// create all n-ary join combinations [n = 2 .. #plans]
-			for (int n = 2; n <= count; n++) {
-				// build n-ary joins by combining i-ary joins and (n-i)-ary joins
-				for (int i = 1; i < n; i++) {
-					
-					Set<TupleExpr> plans1 = optPlans.get(i);
-					Set<TupleExpr> plans2 = optPlans.get(n-i);
-					
-					// find for each plan all complementary plans to join
-					for (TupleExpr plan : plans1) {
-						Set<TupleExpr> comp = filterDistinctPlans(plan, plans2);
-						// we may not always find complementary plans
-						if (comp.size() > 0) {
-							// cross products are created if there is no common join variable
-							plans = createJoins(plan, comp, conditions);
-							//LOGGER.info(plans.toString());
-							optPlans.add(new HashSet<TupleExpr>(plans), n);
-						}
-					}
-				}
-				
-				//if (LOGGER.isTraceEnabled())
-					//LOGGER.info(optPlans.get(n).size() + " plans generated for N=" + n);
-
-				prune(optPlans.get(n)); //Problem with this line, need to avoid prune of null !
-
-			}
 			
-			//if (LOGGER.isDebugEnabled())
-				//LOGGER.info("time taken for optimization: " + (System.currentTimeMillis() - time));
+			TupleExpr newOp = optimizeJoinOrder(plans, conditions);
+			
 			long endTime = System.currentTimeMillis();
 			SPLENDID.queryInfo.planningTime = endTime - startTime;
-			SPLENDID.queryInfo.sourceSelectionTime = sourceSelectionTime;
-			// return the final plan
-			if (optPlans.get(count).size() == 0)
-				// This is wrong: how do we get here?
-				throw new UnsupportedOperationException("Queries requiring cross products are not supported (yet)");
+			SPLENDID.queryInfo.sourceSelectionTime = plansAndSSTime.getRight();
 			
-			TupleExpr newOp = optPlans.get(count).iterator().next();
 			bgp.replaceWith(newOp);
 			return newOp;
 		} catch (Exception e) {
+			LOGGER.warn("join order optimization failed: " + e.getMessage());
 			return bgp;
 		}
 
 	}
 	
 	/**
-	 * Combine tuple expressions with a join operator.
+	 * Finds the best join order for the supplied base expressions.
 	 * 
-	 * @param leftArg the left join argument.
-	 * @param rightArgs a set of potential right join arguments.
-	 * @param filters filter expressions which may be applied.
-	 * @return a list of created physical join operators.
+	 * @param exprs the base expressions.
+	 * @param conditions filter expressions which may be applied.
+	 * @return the best plan.
 	 */
-	public List<TupleExpr> createJoins(TupleExpr leftArg, Set<TupleExpr> rightArgs, List<ValueExpr> filters) {
+	protected TupleExpr optimizeJoinOrder(List<TupleExpr> exprs, List<ValueExpr> conditions) {
 		
-		List<TupleExpr> newPlans = new ArrayList<TupleExpr>();
+		List<Plan> plans = new ArrayList<Plan>(exprs.size());
+		for (TupleExpr expr : exprs) {
+			plans.add(new Plan(expr, costEstimator.process(expr)));
+		}
 		
-		// check each pair of potential join arguments if they have at leas one variable in common 
-		for (TupleExpr plan : rightArgs) {
-			
-			// get the intersection of variables found in the left and right join argument
-			Set<String> vars = VarNameCollector.process(leftArg);
-			vars.retainAll(VarNameCollector.process(plan));
-			
-			// avoid joins with cross products (without a common join variable)
-			if (vars.size() == 0) continue;
-			
-			// create all physical join variations
-			for (TupleExpr join : createPhysicalJoins(leftArg, plan)) {
-				join = applyFilters(join, filters);
-				newPlans.add(join);
-			}
+		// bitmasks can not represent the sets of so many expressions
+		if (exprs.size() > JoinGraph.MAX_SIZE) {
+			LOGGER.debug("join graph is limited to " + JoinGraph.MAX_SIZE + " expressions, using greedy search for " + exprs.size() + " expressions");
+			return greedy(plans, conditions).expr.clone();
 		}
 		
-		// only cross products possible
-		if (newPlans.size() == 0) {
-			for (TupleExpr plan : rightArgs) {
-				// create all physical join variations
-				for (TupleExpr join : createPhysicalJoins(leftArg, plan)) {
-					join = applyFilters(join, filters);
-					newPlans.add(join);
-				}
+		Plan plan;
+		JoinGraph graph = JoinGraph.create(exprs);
+		long[] components = graph.getComponents();
+		if (components.length == 1) {
+			plan = search(plans, false, conditions);
+		} else {
+			// join the best plans of all components with cross products
+			List<Plan> componentPlans = new ArrayList<Plan>(components.length);
+			for (long component : components) {
+				componentPlans.add(search(select(plans, component), false, conditions));
 			}
+			plan = search(componentPlans, true, conditions);
 		}
 		
-		return newPlans;
+		// sub plans are shared by many candidate plans, only the best plan
+		// is copied to get a proper tree
+		return plan.expr.clone();
 	}
 	
-	private List<Join> createPhysicalJoins(TupleExpr leftArg, TupleExpr rightArg) {
-		List<Join> joins = new ArrayList<Join>();
-		if (bindJoin) {
-			// need to clone the argument to maintain the proper parent reference
-			TupleExpr left = leftArg.clone();
-			TupleExpr right = rightArg.clone();
-			Join join = new BindJoin(left, right);
-			left.setParentNode(join);
-			right.setParentNode(join);
-			joins.add(join);
-		}
-		if (hashJoin) {
-			// need to clone the argument to maintain the proper parent reference
-			TupleExpr left = leftArg.clone();
-			TupleExpr right = rightArg.clone();
-			Join join = new HashJoin(left, right);
-			left.setParentNode(join);
-			right.setParentNode(join);
-			joins.add(join);
-		}
-		return joins;
-	}
-	
-	protected TupleExpr applyFilters(TupleExpr operator, List<ValueExpr> conditions) {
+	/**
+	 * Finds the best join order for connected sub plans with the most
+	 * thorough strategy which fits in the planning time budget.
+	 * 
+	 * @param plans the sub plans.
+	 * @param crossProducts join the sub plans with cross products.
+	 * @param conditions filter expressions which may be applied.
+	 * @return the best plan.
+	 */
+	private Plan search(List<Plan> plans, boolean crossProducts, List<ValueExpr> conditions) {
 		
-		// copy given filters and remove all which are already applied
-		Set<ValueExpr> newFilters = new HashSet<ValueExpr>(conditions);
-		newFilters.removeAll(FilterConditionCollector.process(operator));
+		if (plans.size() <= maxExpressions) {
+			long deadline = getDeadline();
+			JoinGraph.PairList[] levels = getJoinGraph(plans, crossProducts).getConnectedPairs(plans.size(), deadline);
+			PlanTable table = (levels == null) ? null : enumerate(plans, levels, deadline, conditions);
+			if (table != null)
+				return table.get(JoinGraph.all(plans.size()));
+			LOGGER.debug("planning time budget exceeded by DP for " + plans.size() + " expressions, using IDP-" + blockSize);
+		}
 		
+		Plan plan = iterate(plans, crossProducts, blockSize, getDeadline(), conditions);
+		if (plan != null)
+			return plan;
+		LOGGER.debug("planning time budget exceeded by IDP-" + blockSize + " for " + plans.size() + " expressions, using greedy search");
 		
-		// check if node satisfies all variables for remaining filters
-		Set<String> nodeVars = VarNameCollector.process(operator);
-		Iterator<ValueExpr> it = newFilters.iterator();
-		while (it.hasNext()) {
-			ValueExpr filter = it.next();
-			if (!nodeVars.containsAll(VarNameCollector.process(filter)))
-				it.remove();
-		}
+		return iterate(plans, crossProducts, 2, Long.MAX_VALUE, conditions);
+	}
+	
+	/**
+	 * Iterative dynamic programming (IDP-k): finds the best plan for k sub
+	 * plans and replaces the sub plans with this plan until only k sub
+	 * plans are left, which are optimized with dynamic programming.
+	 * 
+	 * @param plans the sub plans.
+	 * @param crossProducts join the sub plans with cross products.
+	 * @param k the number of sub plans to combine in each iteration.
+	 * @param deadline the time when the planning has to be stopped.
+	 * @param conditions filter expressions which may be applied.
+	 * @return the best plan or null if the deadline has passed.
+	 */
+	private Plan iterate(List<Plan> plans, boolean crossProducts, int k, long deadline, List<ValueExpr> conditions) {
 		
-		// apply filters
-		for (ValueExpr condition : newFilters) {
-			operator = new Filter(operator, condition);
+		List<Plan> current = plans;
+		JoinGraph.PairList[] levels = getJoinGraph(current, crossProducts).getConnectedPairs(k, deadline);
+		while (true) {
+			if (levels == null)
+				return null;
+			int count = current.size();
+			PlanTable table = enumerate(current, levels, deadline, conditions);
+			if (table == null)
+				return null;
+			if (count <= k)
+				return table.get(JoinGraph.all(count));
+			
+			// replace the sub plans of the best block with its plan
+			long block = table.getBest(k);
+			List<Plan> next = new ArrayList<Plan>(count - k + 1);
+			next.add(table.get(block));
+			next.addAll(select(current, ~block & JoinGraph.all(count)));
+			current = next;
+			
+			// only the pairs with the new plan are enumerated again
+			levels = getJoinGraph(current, crossProducts).getConnectedPairs(levels, block, deadline);
 		}
-		
-		return operator;
 	}
 	
-	public Set<Set<TupleExpr>> groupEquivalentPlans(Collection<TupleExpr> plans) {
+	/**
+	 * Enumerates the join plans of all connected sub graphs in order of
+	 * their size and keeps the best plan for each of them.
+	 * 
+	 * @param plans the sub plans.
+	 * @param levels the connected pairs of the sub plans indexed by their size.
+	 * @param deadline the time when the planning has to be stopped.
+	 * @param conditions filter expressions which may be applied.
+	 * @return the plans or null if the deadline has passed.
+	 */
+	private PlanTable enumerate(List<Plan> plans, JoinGraph.PairList[] levels, long deadline, List<ValueExpr> conditions) {
 		
-		// put query plans in same category if the have the same patterns
-		Map<Set<StatementPattern>, Set<TupleExpr>> equivalent = new HashMap<Set<StatementPattern>, Set<TupleExpr>>();
-
-		// Collect all equivalent plans, i.e. plans with the same patterns
-		for (TupleExpr plan : plans) {
-			Set<StatementPattern> patterns = new HashSet<StatementPattern>(StatementPatternCollector.process(plan));
-			Set<TupleExpr> planSet = equivalent.get(patterns);
+		int count = plans.size();
+		PlanTable table = new PlanTable(count);
+		for (int i = 0; i < count; i++) {
+			table.offer(1L << i, plans.get(i));
+		}
+		
+		for (int n = 2; n < levels.length; n++) {
+			JoinGraph.PairList pairs = levels[n];
+			
+			// sub plans of smaller size are not modified while enumerating a level
+			ForkJoinPool pool = (pairs.size() > MIN_PAIRS_PER_TASK) ? getPool() : null;
+			Map<Long, Plan> candidates;
+			if (pool != null)
+				candidates = pool.invoke(new LevelTask(table, pairs, 0, pairs.size(), deadline, conditions));
+			else
+				candidates = joinPairs(table, pairs, 0, pairs.size(), deadline, conditions);
 			
-			if (planSet == null) {
-				planSet = new HashSet<TupleExpr>();
-				equivalent.put(patterns, planSet);
+			if (candidates == null)
+				return null;
+			
+			for (Map.Entry<Long, Plan> entry : candidates.entrySet()) {
+				table.offer(entry.getKey(), entry.getValue());
 			}
 			
-			planSet.add(plan);
+			if (LOGGER.isTraceEnabled())
+				LOGGER.trace(pairs.size() + " join pairs enumerated for N=" + n);
 		}
-		return new HashSet<Set<TupleExpr>>(equivalent.values());
+		return table;
 	}
 	
-	public Set<TupleExpr> filterDistinctPlans(TupleExpr plan, Set<TupleExpr> plans) {
+	/**
+	 * Joins a range of sub plan pairs and keeps the best candidate plan for
+	 * each set of base expressions.
+	 * 
+	 * @return the candidate plans or null if the deadline has passed.
+	 */
+	private Map<Long, Plan> joinPairs(PlanTable table, JoinGraph.PairList pairs, int from, int to, long deadline, List<ValueExpr> conditions) {
+		Map<Long, Plan> candidates = new LinkedHashMap<Long, Plan>();
+		for (int i = from; i < to; i++) {
+			long left = pairs.getLeft(i);
+			long right = pairs.getRight(i);
+			join(candidates, table.get(left), table.get(right), left | right, conditions);
+			join(candidates, table.get(right), table.get(left), left | right, conditions);
+			
+			if (System.currentTimeMillis() > deadline)
+				return null;
+		}
+		return candidates;
+	}
+	
+	/**
+	 * Creates all physical joins of two sub plans and keeps the best join
+	 * plan in the candidates.
+	 */
+	private void join(Map<Long, Plan> candidates, Plan leftPlan, Plan rightPlan, long set, List<ValueExpr> conditions) {
+		// the join arguments are not copied, i.e. their parent is not valid
+		if (bindJoin)
+			offer(candidates, set, createPlan(new BindJoin(leftPlan.expr, rightPlan.expr), leftPlan, rightPlan, conditions));
+		if (hashJoin)
+			offer(candidates, set, createPlan(new HashJoin(leftPlan.expr, rightPlan.expr), leftPlan, rightPlan, conditions));
+	}
+	
+	/**
+	 * Keeps the plan if it is cheaper than the current candidate.
+	 * Ties are resolved in favor of the current candidate.
+	 */
+	private static void offer(Map<Long, Plan> candidates, long set, Plan plan) {
+		Plan best = candidates.get(set);
+		if (best == null || plan.cost < best.cost)
+			candidates.put(set, plan);
+	}
+	
+	/**
+	 * Enumerates a range of join pairs by recursively splitting it into
+	 * halves. The candidates of the left half are merged first, such that
+	 * the result is the same as for the sequential enumeration.
+	 */
+	private class LevelTask extends RecursiveTask<Map<Long, Plan>> {
+		
+		private static final long serialVersionUID = 1L;
 		
-		// distinct plans don't share any triple patterns (intersection is empty)
+		private final PlanTable table;
+		private final JoinGraph.PairList pairs;
+		private final int from;
+		private final int to;
+		private final long deadline;
+		private final List<ValueExpr> conditions;
 		
-		Collection<StatementPattern> planpatterns = StatementPatternCollector.process(plan);
+		LevelTask(PlanTable table, JoinGraph.PairList pairs, int from, int to, long deadline, List<ValueExpr> conditions) {
+			this.table = table;
+			this.pairs = pairs;
+			this.from = from;
+			this.to = to;
+			this.deadline = deadline;
+			this.conditions = conditions;
+		}
 		
-		Set<TupleExpr> planSet = new HashSet<TupleExpr>();
-		for (TupleExpr other : plans) {
-			Collection<StatementPattern> patterns = StatementPatternCollector.process(other);
-			patterns.retainAll(planpatterns);
-			if (patterns.size() == 0)
-				planSet.add(other);
+		@Override
+		protected Map<Long, Plan> compute() {
+			if (to - from <= MIN_PAIRS_PER_TASK)
+				return joinPairs(table, pairs, from, to, deadline, conditions);
+			
+			int middle = (from + to) >>> 1;
+			LevelTask leftTask = new LevelTask(table, pairs, from, middle, deadline, conditions);
+			leftTask.fork();
+			Map<Long, Plan> right = new LevelTask(table, pairs, middle, to, deadline, conditions).compute();
+			Map<Long, Plan> left = leftTask.join();
+			
+			if (left == null || right == null)
+				return null;
+			for (Map.Entry<Long, Plan> entry : right.entrySet()) {
+				offer(left, entry.getKey(), entry.getValue());
+			}
+			return left;
 		}
-		return planSet;
 	}
 	
 	/**
-	 * Prune inferior plans - only keep plans with the lowest cost estimate.
+	 * Greedy search which does not need a join graph: joins the pair of sub
+	 * plans with the cheapest join plan until a single plan is left. Sub
+	 * plans without a common variable are only joined if there is no other
+	 * pair. The join plans of all pairs are kept, hence only the joins with
+	 * the new plan are created in each step.
 	 * 
-	 * Computes the cost for each plan and retains only the best plans.
-	 * Since some plans are not comparable there can be several best plans.
+	 * @param plans the sub plans.
+	 * @param conditions filter expressions which may be applied.
+	 * @return the plan.
 	 */
-	private void prune(Collection<TupleExpr> plans) {
-
-		int eqClass = 0;
-		Set<TupleExpr> bestPlans = new HashSet<TupleExpr>();
-		Set<Set<TupleExpr>> equivalentPlans = groupEquivalentPlans(plans);
-
-//		// DEBUG
-//		if (LOGGER.isDebugEnabled()) {
-//			String arity = DEBUG_N < 2 ? "access" : DEBUG_N + "-ary join";
-//			LOGGER.debug("pruning " + plans.size() + " " + arity + " plans in " + equivalentPlans.size() + " equivalence classes");
-//			if (LOGGER.isTraceEnabled()) {
-//				int eqs = 0;
-//				for (Set<O> equalSet : equivalentPlans) {
-//					eqs++;
-//					for (O plan : equalSet) {
-//						String pStr = plan.toString().replace("\n", " ");
-//						LOGGER.trace("SET [" + eqs + "] " + pStr);
-//					}
-//				}
-//			}
-//		}
+	private Plan greedy(List<Plan> plans, List<ValueExpr> conditions) {
 		
-		// Compare all plan from same equivalence class to find best one
-		for (Set<TupleExpr> equalSet : equivalentPlans) {
-			
-			int planCount = 0;
-			eqClass++;
-
-			TupleExpr bestPlan = null;
-			double lowestCost = Double.MAX_VALUE;
-			
-			for (TupleExpr plan : equalSet) {
-				
-				planCount++;
-				double cost = costEstimator.process(plan);
-				
-				if (bestPlan == null || cost < lowestCost) {
-					
-					//if (/*LOGGER.isTraceEnabled() && */bestPlan != null) {
-					//	LOGGER.info("found better plan (" + Format.d(cost, 2) + " < " + Format.d(lowestCost, 2) + "): " + planCount + " of " + equalSet.size() + " in class " + eqClass);
-					//}
-					
-					bestPlan = plan;
-					lowestCost = cost;
-				} else {
-					//if (LOGGER.isTraceEnabled()) {
-						//LOGGER.info("discarding plan (" + Format.d(cost, 2) + " > " + Format.d(lowestCost, 2) + "): " + planCount + " of " + equalSet.size() + " in class " + eqClass);
-					//}
+		Plan[] current = plans.toArray(new Plan[plans.size()]);
+		Plan[][] joins = new Plan[current.length][current.length];
+		for (int i = 0; i < current.length; i++) {
+			for (int j = i + 1; j < current.length; j++) {
+				joins[i][j] = join(current[i], current[j], conditions);
+			}
+		}
+		
+		for (int remaining = current.length; remaining > 1; remaining--) {
+			int left = -1;
+			int right = -1;
+			boolean connected = false;
+			for (int i = 0; i < current.length; i++) {
+				for (int j = i + 1; current[i] != null && j < current.length; j++) {
+					if (current[j] == null)
+						continue;
+					boolean shared = !Collections.disjoint(current[i].vars, current[j].vars);
+					if (left == -1 || (shared && !connected) || (shared == connected && joins[i][j].cost < joins[left][right].cost)) {
+						left = i;
+						right = j;
+						connected = shared;
+					}
 				}
 			}
 			
-			bestPlans.add(bestPlan);
+			// replace the left sub plan with the join
+			current[left] = joins[left][right];
+			current[right] = null;
+			for (int i = 0; i < current.length; i++) {
+				if (i < left && current[i] != null)
+					joins[i][left] = join(current[i], current[left], conditions);
+				if (i > left && current[i] != null)
+					joins[left][i] = join(current[left], current[i], conditions);
+			}
+		}
+		
+		for (Plan plan : current) {
+			if (plan != null)
+				return plan;
+		}
+		throw new IllegalArgumentException("no expressions to join");
+	}
+	
+	/**
+	 * Returns the cheapest physical join of two sub plans in any order.
+	 */
+	private Plan join(Plan left, Plan right, List<ValueExpr> conditions) {
+		Map<Long, Plan> candidates = new HashMap<Long, Plan>(2);
+		join(candidates, left, right, 0, conditions);
+		join(candidates, right, left, 0, conditions);
+		return candidates.get(0L);
+	}
+	
+	/**
+	 * Creates the plan for a join and applies all filters which can be
+	 * evaluated on the join result but not on the join arguments.
+	 */
+	private Plan createPlan(Join join, Plan left, Plan right, List<ValueExpr> conditions) {
+		
+		Set<String> vars = new HashSet<String>(left.vars);
+		vars.addAll(right.vars);
+		List<ValueExpr> applied = new ArrayList<ValueExpr>(left.conditions);
+		applied.addAll(right.conditions);
+		
+		TupleExpr expr = join;
+		for (ValueExpr condition : conditions) {
+			if (!applied.contains(condition) && vars.containsAll(VarNameCollector.process(condition))) {
+				expr = new Filter(expr, condition);
+				applied.add(condition);
+			}
+		}
+		return new Plan(expr, vars, applied, costEstimator.process(expr));
+	}
+	
+	private JoinGraph getJoinGraph(List<Plan> plans, boolean crossProducts) {
+		if (crossProducts)
+			return JoinGraph.complete(plans.size());
+		List<TupleExpr> exprs = new ArrayList<TupleExpr>(plans.size());
+		for (Plan plan : plans) {
+			exprs.add(plan.expr);
 		}
+		return JoinGraph.create(exprs);
+	}
+	
+	private List<Plan> select(List<Plan> plans, long set) {
+		List<Plan> selected = new ArrayList<Plan>(Long.bitCount(set));
+		for (long rest = set; rest != 0; rest &= rest - 1) {
+			selected.add(plans.get(Long.numberOfTrailingZeros(rest)));
+		}
+		return selected;
+	}
+	
+	private long getDeadline() {
+		return (timeBudget == 0) ? Long.MAX_VALUE : System.currentTimeMillis() + timeBudget;
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * A (sub) plan which is created during the optimization. The plan
+	 * expression shares the expressions of its sub plans, hence the plans
+	 * form a DAG and only the final plan is turned into a tree.
+	 */
+	static class Plan {
+		
+		final TupleExpr expr;
+		final Set<String> vars;
+		final List<ValueExpr> conditions;
+		final double cost;
 		
-		plans.clear();
-		plans.addAll(bestPlans);
+		Plan(TupleExpr expr, double cost) {
+			this(expr, VarNameCollector.process(expr), FilterConditionCollector.process(expr), cost);
+		}
 		
-//		if (LOGGER.isTraceEnabled() && DEBUG_N > 1)
-//			LOGGER.trace("reduced to " + bestPlans.size() + " " + DEBUG_N + "-ary join plans.");
+		Plan(TupleExpr expr, Set<String> vars, List<ValueExpr> conditions, double cost) {
+			this.expr = expr;
+			this.vars = vars;
+			this.conditions = conditions;
+			this.cost = cost;
+		}
 	}
 	
-	class PlanCollection {
+	/**
+	 * Memo table with the best plan for each set of sub plans.
+	 * Small tables are indexed directly by the bitmask of the set.
+	 */
+	static class PlanTable {
+		
+		private static final int MAX_ARRAY_SIZE = 16;
 		
-		private Map<Integer, Set<TupleExpr>> planMap = new HashMap<Integer, Set<TupleExpr>>();
+		private Plan[] plans;
+		private long[] sets;
+		private final Map<Long, Integer> index;
 		
 		/**
-		 * Adds the collection of query plans to the set of n-ary joins.
-		 * @param plans the plans to add.
-		 * @param n the number of n-ary joins.
+		 * Creates a new memo table.
+		 * 
+		 * @param count the number of sub plans.
 		 */
-		public void add(Set<TupleExpr> plans, int n) {
-			Set<TupleExpr> planSet = planMap.get(n);
-			if (planSet == null)
-				planMap.put(n, planSet = new HashSet<TupleExpr>());
-			planSet.addAll(plans);
+		PlanTable(int count) {
+			if (count <= MAX_ARRAY_SIZE) {
+				this.plans = new Plan[1 << count];
+				this.index = null;
+			} else {
+				this.plans = new Plan[64];
+				this.sets = new long[64];
+				this.index = new HashMap<Long, Integer>();
+			}
+		}
+		
+		Plan get(long set) {
+			int i = indexOf(set, false);
+			return (i < 0) ? null : plans[i];
 		}
 		
 		/**
-		 * Return the collection of query plans for n-ary joins.
-		 * @param n the number of n-ary joins.
-		 * @return the collection of query plans.
+		 * Keeps the plan if it is the first or the cheapest plan for the set.
 		 */
-		public Set<TupleExpr> get(int n) {
-			return this.planMap.get(n);
+		void offer(long set, Plan plan) {
+			int i = indexOf(set, true);
+			if (plans[i] == null || plan.cost < plans[i].cost)
+				plans[i] = plan;
+		}
+		
+		/**
+		 * Returns the set with the cheapest plan among all sets of the
+		 * supplied size.
+		 * 
+		 * @param size the number of sub plans in the set.
+		 * @return the bitmask of the set or 0 if there is no such plan.
+		 */
+		long getBest(int size) {
+			long best = 0;
+			int count = (index == null) ? plans.length : index.size();
+			for (int i = 0; i < count; i++) {
+				long set = (index == null) ? i : sets[i];
+				if (plans[i] != null && Long.bitCount(set) == size && (best == 0 || plans[i].cost < get(best).cost))
+					best = set;
+			}
+			return best;
+		}
+		
+		private int indexOf(long set, boolean create) {
+			if (index == null)
+				return (int) set;
+			Integer i = index.get(set);
+			if (i == null) {
+				if (!create)
+					return -1;
+				i = index.size();
+				index.put(set, i);
+				if (i == plans.length) {
+					plans = Arrays.copyOf(plans, 2 * plans.length);
+					sets = Arrays.copyOf(sets, 2 * sets.length);
+				}
+				sets[i] = set;
+			}
+			return i;
 		}
 	}
 
@@ -0,0 +1,487 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.helpers.VarNameCollector;
+
+/**
+ * Join graph of the base expressions of a basic graph pattern. Expressions
+ * are identified by their index and sets of expressions by a bitmask of
+ * these indexes, hence a join graph is limited to 63 expressions. Two
+ * expressions are connected if they share a variable.
+ * 
+ * The connected subgraph/complement pairs of the graph are enumerated as
+ * described by Moerkotte and Neumann in "Analysis of Two Existing and One
+ * New Dynamic Programming Algorithm for the Generation of Optimal Bushy Join
+ * Trees without Cross Products" (DPccp). The enumeration can be bounded
+ * by the size of the pairs and by a deadline.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class JoinGraph {
+	
+	public static final int MAX_SIZE = Long.SIZE - 1;
+	
+	private final long[] neighbors;
+	
+	/**
+	 * Creates a join graph.
+	 * 
+	 * @param neighbors the bitmask of the neighbors of each expression.
+	 */
+	public JoinGraph(long[] neighbors) {
+		if (neighbors.length > MAX_SIZE)
+			throw new IllegalArgumentException("join graph is limited to " + MAX_SIZE + " expressions: " + neighbors.length);
+		this.neighbors = neighbors.clone();
+	}
+	
+	/**
+	 * Creates the join graph of the supplied expressions.
+	 * Expressions with a common variable are connected.
+	 * 
+	 * @param exprs the expressions.
+	 * @return the join graph.
+	 */
+	public static JoinGraph create(List<? extends TupleExpr> exprs) {
+		int size = exprs.size();
+		if (size > MAX_SIZE)
+			throw new IllegalArgumentException("join graph is limited to " + MAX_SIZE + " expressions: " + size);
+		
+		List<Set<String>> vars = new ArrayList<Set<String>>(size);
+		for (TupleExpr expr : exprs) {
+			vars.add(VarNameCollector.process(expr));
+		}
+		
+		long[] neighbors = new long[size];
+		for (int i = 0; i < size; i++) {
+			for (int j = i + 1; j < size; j++) {
+				for (String var : vars.get(i)) {
+					if (vars.get(j).contains(var)) {
+						neighbors[i] |= 1L << j;
+						neighbors[j] |= 1L << i;
+						break;
+					}
+				}
+			}
+		}
+		return new JoinGraph(neighbors);
+	}
+	
+	/**
+	 * Creates a complete graph, i.e. all expressions are connected.
+	 * 
+	 * @param size the number of expressions.
+	 * @return the join graph.
+	 */
+	public static JoinGraph complete(int size) {
+		if (size > MAX_SIZE)
+			throw new IllegalArgumentException("join graph is limited to " + MAX_SIZE + " expressions: " + size);
+		long[] neighbors = new long[size];
+		for (int i = 0; i < size; i++) {
+			neighbors[i] = all(size) & ~(1L << i);
+		}
+		return new JoinGraph(neighbors);
+	}
+	
+	/**
+	 * Returns the bitmask of a set containing all expressions.
+	 * 
+	 * @param size the number of expressions.
+	 * @return the bitmask.
+	 */
+	public static long all(int size) {
+		return (1L << size) - 1;
+	}
+	
+	public int size() {
+		return neighbors.length;
+	}
+	
+	/**
+	 * Returns the expressions which are connected to the supplied set
+	 * of expressions but not included in the set.
+	 * 
+	 * @param set the bitmask of the expression set.
+	 * @return the bitmask of the neighbors.
+	 */
+	public long getNeighbors(long set) {
+		long result = 0;
+		for (long rest = set; rest != 0; rest &= rest - 1) {
+			result |= neighbors[Long.numberOfTrailingZeros(rest)];
+		}
+		return result & ~set;
+	}
+	
+	/**
+	 * Returns the connected components of the graph.
+	 * 
+	 * @return the bitmasks of the components ordered by their first expression.
+	 */
+	public long[] getComponents() {
+		List<Long> components = new ArrayList<Long>();
+		long remaining = all(size());
+		while (remaining != 0) {
+			long component = Long.lowestOneBit(remaining);
+			for (long next = getNeighbors(component); next != 0; next = getNeighbors(component)) {
+				component |= next;
+			}
+			components.add(component);
+			remaining &= ~component;
+		}
+		long[] result = new long[components.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = components.get(i);
+		}
+		return result;
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Enumerates all pairs of disjoint, connected expression sets which are
+	 * connected with each other. Each pair is enumerated only once, i.e.
+	 * the symmetric pair is not included. The pairs are grouped by the size
+	 * of their union, hence all pairs for the sub plans of a level have been
+	 * enumerated in lower levels.
+	 * 
+	 * @return the pairs indexed by the size of their union.
+	 */
+	public PairList[] getConnectedPairs() {
+		return getConnectedPairs(size());
+	}
+	
+	/**
+	 * Enumerates all pairs of disjoint, connected expression sets which are
+	 * connected with each other and contain at most the supplied number of
+	 * expressions in total.
+	 * 
+	 * @param maxSize the maximum size of the union of a pair.
+	 * @return the pairs indexed by the size of their union.
+	 * @see #getConnectedPairs()
+	 */
+	public PairList[] getConnectedPairs(int maxSize) {
+		return getConnectedPairs(maxSize, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Enumerates all pairs of disjoint, connected expression sets which are
+	 * connected with each other and contain at most the supplied number of
+	 * expressions in total, unless the deadline passes.
+	 * 
+	 * @param maxSize the maximum size of the union of a pair.
+	 * @param deadline the time when the enumeration has to be stopped.
+	 * @return the pairs indexed by the size of their union or null if the deadline has passed.
+	 * @see #getConnectedPairs()
+	 */
+	public PairList[] getConnectedPairs(int maxSize, long deadline) {
+		maxSize = Math.min(maxSize, size());
+		PairList[] pairs = new PairList[maxSize + 1];
+		for (int i = 0; i < pairs.length; i++) {
+			pairs[i] = new PairList();
+		}
+		return new Enumeration(pairs, deadline).run(size()) ? pairs : null;
+	}
+	
+	/**
+	 * Enumerates the connected pairs of a graph which is derived from a
+	 * previous graph by merging a block of expressions into a new first
+	 * expression, followed by the remaining expressions in their previous
+	 * order. The previous pairs without an expression of the block are still
+	 * valid and only renumbered, hence only the pairs containing the new
+	 * expression are enumerated. The previous pairs are modified.
+	 * 
+	 * @param previous the pairs of the previous graph.
+	 * @param block the bitmask of the merged expressions in the previous graph.
+	 * @param deadline the time when the enumeration has to be stopped.
+	 * @return the pairs indexed by the size of their union or null if the deadline has passed.
+	 */
+	public PairList[] getConnectedPairs(PairList[] previous, long block, long deadline) {
+		PairList[] pairs = Arrays.copyOf(previous, Math.min(previous.length - 1, size()) + 1);
+		for (PairList level : pairs) {
+			level.retain(block);
+		}
+		return new Enumeration(pairs, deadline).run(1) ? pairs : null;
+	}
+	
+	private static long lowerOrEqual(int index) {
+		return (index == Long.SIZE - 1) ? -1L : (1L << (index + 1)) - 1;
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * A single enumeration of connected pairs which stops as soon as the
+	 * deadline has passed.
+	 */
+	private class Enumeration {
+		
+		// number of steps between two checks of the deadline
+		private static final int CHECK_INTERVAL = 4096;
+		
+		private final PairList[] pairs;
+		private final long deadline;
+		private int steps;
+		private boolean expired;
+		
+		Enumeration(PairList[] pairs, long deadline) {
+			this.pairs = pairs;
+			this.deadline = deadline;
+		}
+		
+		/**
+		 * Enumerates the pairs whose smallest expression is below the limit.
+		 * 
+		 * @return false if the deadline has passed.
+		 */
+		boolean run(int limit) {
+			for (int i = limit - 1; i >= 0 && !expired; i--) {
+				long start = 1L << i;
+				emitSubgraph(start);
+				enumerateSubgraphs(start, lowerOrEqual(i));
+			}
+			return !expired;
+		}
+		
+		/**
+		 * Enumerates all connected subgraphs which extend the supplied
+		 * subgraph with neighbors not contained in the exclusion set.
+		 */
+		private void enumerateSubgraphs(long subgraph, long excluded) {
+			long neighbors = getNeighbors(subgraph) & ~excluded;
+			int maxSize = pairs.length - 1 - Long.bitCount(subgraph);
+			if (neighbors == 0 || maxSize <= 0)
+				return;
+			Subsets subsets = new Subsets(neighbors, maxSize);
+			for (long subset = subsets.next(); subset != 0 && !expired; subset = subsets.next()) {
+				emitSubgraph(subgraph | subset);
+			}
+			subsets.reset();
+			for (long subset = subsets.next(); subset != 0 && !expired; subset = subsets.next()) {
+				enumerateSubgraphs(subgraph | subset, excluded | neighbors);
+			}
+		}
+		
+		/**
+		 * Enumerates all connected complements of a connected subgraph.
+		 */
+		private void emitSubgraph(long subgraph) {
+			if (tick() || Long.bitCount(subgraph) >= pairs.length - 1)
+				return;
+			long excluded = subgraph | lowerOrEqual(Long.numberOfTrailingZeros(subgraph));
+			long neighbors = getNeighbors(subgraph) & ~excluded;
+			for (long rest = neighbors; rest != 0; rest &= ~Long.highestOneBit(rest)) {
+				int i = Long.numberOfTrailingZeros(Long.highestOneBit(rest));
+				long complement = 1L << i;
+				add(subgraph, complement);
+				enumerateComplements(subgraph, complement, excluded | (lowerOrEqual(i) & neighbors));
+			}
+		}
+		
+		/**
+		 * Enumerates all connected complements which extend the supplied
+		 * complement with neighbors not contained in the exclusion set.
+		 */
+		private void enumerateComplements(long subgraph, long complement, long excluded) {
+			long neighbors = getNeighbors(complement) & ~excluded;
+			int maxSize = pairs.length - 1 - Long.bitCount(subgraph | complement);
+			if (neighbors == 0 || maxSize <= 0)
+				return;
+			Subsets subsets = new Subsets(neighbors, maxSize);
+			for (long subset = subsets.next(); subset != 0 && !expired; subset = subsets.next()) {
+				add(subgraph, complement | subset);
+			}
+			subsets.reset();
+			for (long subset = subsets.next(); subset != 0 && !expired; subset = subsets.next()) {
+				enumerateComplements(subgraph, complement | subset, excluded | neighbors);
+			}
+		}
+		
+		private void add(long subgraph, long complement) {
+			pairs[Long.bitCount(subgraph | complement)].add(subgraph, complement);
+			tick();
+		}
+		
+		/**
+		 * Checks the deadline every few steps.
+		 * 
+		 * @return true if the deadline has passed.
+		 */
+		private boolean tick() {
+			if (++steps % CHECK_INTERVAL == 0 && System.currentTimeMillis() > deadline)
+				expired = true;
+			return expired;
+		}
+	}
+	
+	/**
+	 * Iterates over the non-empty subsets of a set with at most the supplied
+	 * size. The subsets are not materialized, since there may be too many of
+	 * them to finish before the deadline. If the size is not bounded, the
+	 * subsets are returned in descending order, otherwise in order of their
+	 * size.
+	 */
+	private static class Subsets {
+		
+		private final long set;
+		private final boolean bounded;
+		private final long[] elements;
+		private final int maxSize;
+		private final int[] index;
+		private long subset;
+		private int size;
+		
+		Subsets(long set, int maxSize) {
+			this.set = set;
+			int count = Long.bitCount(set);
+			this.bounded = maxSize < count;
+			this.maxSize = Math.max(0, Math.min(maxSize, count));
+			if (bounded) {
+				this.elements = new long[count];
+				int i = 0;
+				for (long rest = set; rest != 0; rest &= rest - 1) {
+					elements[i++] = Long.lowestOneBit(rest);
+				}
+				this.index = new int[this.maxSize];
+			} else {
+				this.elements = null;
+				this.index = null;
+			}
+			reset();
+		}
+		
+		/**
+		 * Restarts the iteration with the first subset.
+		 */
+		void reset() {
+			this.subset = set;
+			this.size = 0;
+		}
+		
+		/**
+		 * Returns the next subset.
+		 * 
+		 * @return the bitmask of the subset or 0 if there are no more subsets.
+		 */
+		long next() {
+			if (!bounded) {
+				long next = subset;
+				subset = (subset - 1) & set;
+				return next;
+			}
+			if (size > maxSize)
+				return 0;
+			if (size == 0 || !advance()) {
+				// continue with the first subset of the next size
+				if (++size > maxSize)
+					return 0;
+				for (int i = 0; i < size; i++) {
+					index[i] = i;
+				}
+			}
+			long subset = 0;
+			for (int i = 0; i < size; i++) {
+				subset |= elements[index[i]];
+			}
+			return subset;
+		}
+		
+		/**
+		 * Moves to the next combination of elements of the current size.
+		 */
+		private boolean advance() {
+			for (int i = size - 1; i >= 0; i--) {
+				if (index[i] < elements.length - size + i) {
+					index[i]++;
+					for (int j = i + 1; j < size; j++) {
+						index[j] = index[j - 1] + 1;
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * A list of expression set pairs.
+	 */
+	public static class PairList {
+		
+		private long[] pairs = new long[16];
+		private int size;
+		
+		void add(long left, long right) {
+			if (2 * size == pairs.length)
+				pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+			pairs[2 * size] = left;
+			pairs[2 * size + 1] = right;
+			size++;
+		}
+		
+		public int size() {
+			return size;
+		}
+		
+		public long getLeft(int index) {
+			return pairs[2 * index];
+		}
+		
+		public long getRight(int index) {
+			return pairs[2 * index + 1];
+		}
+		
+		/**
+		 * Keeps the pairs without an expression of the supplied set and
+		 * renumbers their expressions to follow a new first expression.
+		 */
+		void retain(long removed) {
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				long left = pairs[2 * i];
+				long right = pairs[2 * i + 1];
+				if (((left | right) & removed) == 0) {
+					pairs[2 * count] = renumber(left, removed);
+					pairs[2 * count + 1] = renumber(right, removed);
+					count++;
+				}
+			}
+			size = count;
+		}
+		
+		private static long renumber(long set, long removed) {
+			long result = 0;
+			for (long rest = set; rest != 0; rest &= rest - 1) {
+				int i = Long.numberOfTrailingZeros(rest);
+				result |= 1L << (i + 1 - Long.bitCount(removed & ((1L << i) - 1)));
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.algebra.BindingSetAssignment;
+import org.eclipse.rdf4j.query.algebra.Group;
+import org.eclipse.rdf4j.query.algebra.MultiProjection;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.ProjectionElem;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryOptimizer;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+import de.uni_koblenz.west.splendid.model.RemoteQuery;
+
+/**
+ * Computes for each remote sub query the variables which are needed by
+ * the operators above it, i.e. join variables, filter variables and the
+ * variables of the final projection. All other variables of a sub query
+ * need not be transmitted by the SPARQL endpoint.
+ * 
+ * The query model is left unchanged if it does not contain a projection.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class ProjectionPushdownOptimizer implements QueryOptimizer {
+	
+	@Override
+	public void optimize(TupleExpr query, Dataset dataset, BindingSet bindings) {
+		
+		VarReferenceCounter counter = new VarReferenceCounter();
+		query.visit(counter);
+		if (!counter.hasProjection)
+			return;
+		
+		for (QueryModelNode node : counter.remoteNodes) {
+			// count the references within the sub query
+			VarReferenceCounter inner = new VarReferenceCounter();
+			node.visitChildren(inner);
+			
+			// keep all variables which are referenced outside the sub query too
+			Set<String> projection = new LinkedHashSet<String>();
+			for (Map.Entry<String, Integer> entry : inner.references.entrySet()) {
+				if (counter.references.get(entry.getKey()) > entry.getValue())
+					projection.add(entry.getKey());
+			}
+			
+			if (node instanceof RemoteQuery)
+				((RemoteQuery) node).setProjectionVars(projection);
+			else
+				((MappedStatementPattern) node).setProjectionVars(projection);
+		}
+	}
+	
+	/**
+	 * Counts the references of all variables and collects the remote sub queries.
+	 */
+	private static class VarReferenceCounter extends AbstractQueryModelVisitor<RuntimeException> {
+		
+		private final Map<String, Integer> references = new HashMap<String, Integer>();
+		private final List<QueryModelNode> remoteNodes = new ArrayList<QueryModelNode>();
+		private boolean hasProjection;
+		private boolean insideRemoteQuery;
+		
+		@Override
+		public void meet(Var var) {
+			// constants are not projected
+			if (!var.hasValue())
+				add(var.getName());
+		}
+		
+		@Override
+		public void meet(Projection node) {
+			hasProjection = true;
+			super.meet(node);
+		}
+		
+		@Override
+		public void meet(MultiProjection node) {
+			hasProjection = true;
+			super.meet(node);
+		}
+		
+		@Override
+		public void meet(ProjectionElem node) {
+			add(node.getSourceName());
+		}
+		
+		@Override
+		public void meet(Group node) {
+			for (String name : node.getGroupBindingNames()) {
+				add(name);
+			}
+			super.meet(node);
+		}
+		
+		@Override
+		public void meet(BindingSetAssignment node) {
+			for (String name : node.getBindingNames()) {
+				add(name);
+			}
+		}
+		
+		@Override
+		public void meet(StatementPattern node) {
+			if (node instanceof MappedStatementPattern && !insideRemoteQuery)
+				remoteNodes.add(node);
+			super.meet(node);
+		}
+		
+		@Override
+		public void meetOther(QueryModelNode node) {
+			if (node instanceof RemoteQuery) {
+				// patterns within a remote query are no separate sub queries
+				remoteNodes.add(node);
+				boolean outer = insideRemoteQuery;
+				insideRemoteQuery = true;
+				node.visitChildren(this);
+				insideRemoteQuery = outer;
+			} else {
+				super.meetOther(node);
+			}
+		}
+		
+		private void add(String name) {
+			Integer count = references.get(name);
+			references.put(name, count == null ? 1 : count + 1);
+		}
+	}
+
+}
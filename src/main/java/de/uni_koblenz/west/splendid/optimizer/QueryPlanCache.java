@@ -0,0 +1,287 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+
+/**
+ * Cache for optimized query plans. A plan is identified by the template of
+ * the query, i.e. the query model in which the constants in subject and
+ * object position of the triple patterns are replaced by parameters.
+ * Queries which only differ in these constants reuse the join order, the
+ * physical join operators and the source assignment of the cached plan.
+ * 
+ * Predicates and the classes of rdf:type patterns are part of the template,
+ * since they determine the selected sources and the cardinality estimates.
+ * Source selectors which probe the data sources with the concrete triple
+ * patterns need all constants to be part of the template.
+ * 
+ * The cache is bounded and discarded when it is full, when the statistics
+ * change or when members are added to or removed from the federation.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class QueryPlanCache {
+	
+	public static final int DEFAULT_CAPACITY = 256;
+	
+	private static final String PARAM_PREFIX = "-param-";
+	
+	private final ConcurrentMap<Template, Plan> plans = new ConcurrentHashMap<Template, Plan>();
+	private final int capacity;
+	private final boolean parameterize;
+	
+	private volatile long version;
+	
+	/**
+	 * Creates a new plan cache.
+	 * 
+	 * @param capacity the maximum number of cached plans.
+	 * @param parameterize replace subject and object constants with parameters.
+	 */
+	public QueryPlanCache(int capacity, boolean parameterize) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		this.parameterize = parameterize;
+	}
+	
+	/**
+	 * Creates the template of a query. The query is not modified.
+	 * 
+	 * @param query the query model before the plan optimization.
+	 * @return the query template.
+	 */
+	public Template getTemplate(TupleExpr query) {
+		return new Template(query, parameterize, version);
+	}
+	
+	/**
+	 * Returns a copy of the cached plan for the template which uses the
+	 * constants of the template's query.
+	 * 
+	 * @param template the query template.
+	 * @return the query plan or null if no plan is cached.
+	 */
+	public TupleExpr get(Template template) {
+		Plan plan = plans.get(template);
+		if (plan == null)
+			return null;
+		
+		TupleExpr expr = plan.expr.clone();
+		expr.visit(new ParameterBinder(plan.params, template));
+		return expr;
+	}
+	
+	/**
+	 * Caches the optimized plan of a query template.
+	 * 
+	 * @param template the template of the query.
+	 * @param plan the optimized plan of the query.
+	 */
+	public void put(Template template, TupleExpr plan) {
+		// the plan may be based on outdated statistics
+		if (template.version != version)
+			return;
+		if (plans.size() >= capacity)
+			plans.clear();
+		// the cached plan must not change if the returned plan is modified
+		plans.put(template, new Plan(plan.clone(), template.names));
+	}
+	
+	/**
+	 * Discards all plans if the statistics have changed.
+	 * 
+	 * @param version the current version of the statistics.
+	 */
+	public void validate(long version) {
+		if (this.version == version)
+			return;
+		synchronized (this) {
+			if (this.version != version) {
+				clear();
+				this.version = version;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of cached plans.
+	 * 
+	 * @return the number of plans.
+	 */
+	public int size() {
+		return plans.size();
+	}
+	
+	/**
+	 * Removes all cached plans.
+	 */
+	public void clear() {
+		plans.clear();
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * The normalized query model and the names and values of its parameters.
+	 */
+	public static final class Template {
+		private final TupleExpr expr;
+		private final List<String> names = new ArrayList<String>();
+		private final List<Value> values = new ArrayList<Value>();
+		private final long version;
+		private final int hash;
+		
+		Template(TupleExpr query, boolean parameterize, long version) {
+			this.expr = query.clone();
+			this.version = version;
+			if (parameterize) {
+				ConstantCollector collector = new ConstantCollector();
+				expr.visit(collector);
+				
+				// parameters are numbered in the order of their first occurrence
+				Map<String, String> params = new HashMap<String, String>();
+				for (Var var : collector.candidates) {
+					if (collector.fixed.contains(var.getName()))
+						continue;
+					String param = params.get(var.getName());
+					if (param == null) {
+						params.put(var.getName(), param = PARAM_PREFIX + params.size());
+						names.add(var.getName());
+						values.add(var.getValue());
+					}
+					var.setName(param);
+					var.setValue(null);
+				}
+			}
+			this.hash = expr.hashCode();
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Template))
+				return false;
+			Template other = (Template) obj;
+			return hash == other.hash && expr.equals(other.expr);
+		}
+	}
+	
+	private static final class Plan {
+		final TupleExpr expr;
+		final List<String> params;
+		
+		Plan(TupleExpr expr, List<String> params) {
+			this.expr = expr;
+			this.params = params;
+		}
+	}
+	
+	/**
+	 * Collects the subject and object constants of all triple patterns and
+	 * the names of constants which must not become a parameter.
+	 */
+	private static class ConstantCollector extends AbstractQueryModelVisitor<RuntimeException> {
+		
+		final List<Var> candidates = new ArrayList<Var>();
+		final Set<String> fixed = new HashSet<String>();
+		
+		@Override
+		public void meet(StatementPattern node) {
+			Var sVar = node.getSubjectVar();
+			Var pVar = node.getPredicateVar();
+			Var oVar = node.getObjectVar();
+			Var cVar = node.getContextVar();
+			
+			add(sVar);
+			fix(pVar);
+			if (RDF.TYPE.equals(pVar.getValue()))
+				fix(oVar);
+			else
+				add(oVar);
+			if (cVar != null)
+				fix(cVar);
+		}
+		
+		@Override
+		public void meet(Var var) {
+			// constants outside of triple patterns
+			fix(var);
+		}
+		
+		private void add(Var var) {
+			if (var.hasValue())
+				candidates.add(var);
+		}
+		
+		private void fix(Var var) {
+			if (var.hasValue())
+				fixed.add(var.getName());
+		}
+	}
+	
+	/**
+	 * Replaces the cached parameter constants with the constants of a query.
+	 */
+	private static class ParameterBinder extends AbstractQueryModelVisitor<RuntimeException> {
+		
+		private final Map<String, Integer> params = new HashMap<String, Integer>();
+		private final Template template;
+		
+		ParameterBinder(List<String> names, Template template) {
+			for (int i = 0; i < names.size(); i++) {
+				params.put(names.get(i), i);
+			}
+			this.template = template;
+		}
+		
+		@Override
+		public void meet(Var var) {
+			Integer index = params.get(var.getName());
+			if (index != null && var.hasValue()) {
+				var.setName(template.names.get(index));
+				var.setValue(template.values.get(index));
+			}
+		}
+	}
+	
+}
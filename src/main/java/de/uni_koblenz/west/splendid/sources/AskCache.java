@@ -0,0 +1,287 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.sources;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.rio.helpers.NTriplesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Cache for the results of ASK queries sent to the data sources.
+ * Results are identified by the source and the triple pattern with
+ * canonical variable names, i.e. patterns which differ only in the names
+ * of their variables share the same result. Results expire after a fixed
+ * time and the oldest results are evicted if the cache is full.
+ * 
+ * The cache can be stored in a file to be reused after a restart.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class AskCache {
+	
+	private static final Logger LOGGER = LoggerFactory.getLogger(AskCache.class);
+	
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	public static final long DEFAULT_TTL = 3600 * 1000L;
+	
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final int maxSize;
+	private final long ttl;
+	private final File file;
+	
+	/**
+	 * Creates a new ASK cache.
+	 * 
+	 * @param maxSize the maximum number of cached results.
+	 * @param ttl the time (in milliseconds) until a result expires.
+	 * @param file the file to store the cache in, or null.
+	 */
+	public AskCache(int maxSize, long ttl, File file) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("cache size must be positive: " + maxSize);
+		if (ttl < 1)
+			throw new IllegalArgumentException("time to live must be positive: " + ttl);
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.file = file;
+	}
+	
+	/**
+	 * Returns the cached ASK result of a source for a triple pattern.
+	 * 
+	 * @param source the source.
+	 * @param pattern the triple pattern.
+	 * @return the ASK result or null if no valid result is cached.
+	 */
+	public Boolean get(Graph source, StatementPattern pattern) {
+		String key = getKey(source, pattern);
+		Entry entry = entries.get(key);
+		if (entry == null)
+			return null;
+		if (entry.expires <= System.currentTimeMillis()) {
+			entries.remove(key, entry);
+			return null;
+		}
+		return entry.result;
+	}
+	
+	/**
+	 * Adds the ASK result of a source for a triple pattern.
+	 * 
+	 * @param source the source.
+	 * @param pattern the triple pattern.
+	 * @param result the ASK result.
+	 */
+	public void put(Graph source, StatementPattern pattern, boolean result) {
+		long now = System.currentTimeMillis();
+		entries.put(getKey(source, pattern), new Entry(result, now + ttl));
+		if (entries.size() > maxSize)
+			evict(now);
+	}
+	
+	/**
+	 * Returns the number of cached results (including expired ones).
+	 * 
+	 * @return the cache size.
+	 */
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Removes all cached results.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * Loads the valid results from the cache file.
+	 */
+	public void load() {
+		if (file == null || !file.exists())
+			return;
+		
+		long now = System.currentTimeMillis();
+		int count = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					// <expires> TAB <result> TAB <key>
+					String[] fields = line.split("\t", 3);
+					if (fields.length != 3)
+						continue;
+					long expires = Long.parseLong(fields[0]);
+					if (expires > now) {
+						entries.put(fields[2], new Entry(Boolean.parseBoolean(fields[1]), expires));
+						count++;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			LOGGER.warn("cannot read ASK cache from " + file, e);
+		} catch (NumberFormatException e) {
+			LOGGER.warn("invalid ASK cache file " + file, e);
+		}
+		if (entries.size() > maxSize)
+			evict(now);
+		
+		if (LOGGER.isDebugEnabled())
+			LOGGER.debug("loaded " + count + " ASK results from " + file);
+	}
+	
+	/**
+	 * Stores the valid results in the cache file.
+	 */
+	public void save() {
+		if (file == null)
+			return;
+		
+		long now = System.currentTimeMillis();
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+			try {
+				for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+					if (entry.getValue().expires <= now)
+						continue;
+					writer.write(Long.toString(entry.getValue().expires));
+					writer.write('\t');
+					writer.write(Boolean.toString(entry.getValue().result));
+					writer.write('\t');
+					writer.write(entry.getKey());
+					writer.newLine();
+				}
+			} finally {
+				writer.close();
+			}
+			// replace the old file only if all results have been written
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file))
+					throw new IOException("cannot rename " + tmp + " to " + file);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("cannot write ASK cache to " + file, e);
+		}
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Removes all expired results and, if the cache is still full, the
+	 * results which will expire first (i.e. the oldest ones).
+	 */
+	private synchronized void evict(long now) {
+		if (entries.size() <= maxSize)
+			return;
+		
+		List<Map.Entry<String, Entry>> valid = new ArrayList<Map.Entry<String, Entry>>(entries.size());
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			if (entry.getValue().expires <= now)
+				entries.remove(entry.getKey(), entry.getValue());
+			else
+				valid.add(entry);
+		}
+		
+		// make room for new results to avoid evicting on every insertion
+		int limit = maxSize - maxSize / 10;
+		if (entries.size() > limit) {
+			Collections.sort(valid, new Comparator<Map.Entry<String, Entry>>() {
+				@Override
+				public int compare(Map.Entry<String, Entry> e1, Map.Entry<String, Entry> e2) {
+					return Long.compare(e1.getValue().expires, e2.getValue().expires);
+				}
+			});
+			for (int i = 0; i < valid.size() && entries.size() > limit; i++) {
+				entries.remove(valid.get(i).getKey(), valid.get(i).getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Creates the cache key for a source and a triple pattern.
+	 * Variables are renamed in order of their occurrence.
+	 * 
+	 * @param source the source.
+	 * @param pattern the triple pattern.
+	 * @return the cache key.
+	 */
+	static String getKey(Graph source, StatementPattern pattern) {
+		StringBuilder key = new StringBuilder(source.toString());
+		Map<String, String> varNames = new HashMap<String, String>(4);
+		appendVar(key, pattern.getSubjectVar(), varNames);
+		appendVar(key, pattern.getPredicateVar(), varNames);
+		appendVar(key, pattern.getObjectVar(), varNames);
+		return key.toString();
+	}
+	
+	private static void appendVar(StringBuilder key, Var var, Map<String, String> varNames) {
+		key.append(' ');
+		if (var.hasValue()) {
+			key.append(NTriplesUtil.toNTriplesString(var.getValue()));
+		} else {
+			String name = varNames.get(var.getName());
+			if (name == null) {
+				name = "?v" + varNames.size();
+				varNames.put(var.getName(), name);
+			}
+			key.append(name);
+		}
+	}
+	
+	private static class Entry {
+		final boolean result;
+		final long expires;
+		
+		Entry(boolean result, long expires) {
+			this.result = result;
+			this.expires = expires;
+		}
+	}
+	
+}
@@ -20,10 +20,21 @@
  */
 package de.uni_koblenz.west.splendid.sources;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.sail.SailException;
@@ -33,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import de.uni_koblenz.west.splendid.SPLENDID;
 import de.uni_koblenz.west.splendid.helpers.OperatorTreePrinter;
 import de.uni_koblenz.west.splendid.helpers.QueryExecutor;
+import de.uni_koblenz.west.splendid.helpers.SparqlEndpointRegistry;
 import de.uni_koblenz.west.splendid.index.Graph;
 import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
 import de.uni_koblenz.west.splendid.test.config.Configuration;
@@ -41,56 +53,238 @@ import de.uni_koblenz.west.splendid.test.config.Configuration;
  * A source selector which contacts SPARQL Endpoints asking them whether
  * they can return results for a triple pattern or not. 
  * 
+ * The ASK queries for all patterns and sources are sent concurrently.
+ * Sources which do not answer before the deadline are selected, since
+ * they may return results.
+ * 
  * @author Olaf Goerlitz
  */
 public class AskSelector extends SourceSelectorBase {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(AskSelector.class);
 	
-	private List<Graph> sourceList;
+	public static final int DEFAULT_ASK_TIMEOUT = 10000;
+	
+	private static final int ASK_THREADS = 32;
+	
+	private AskCache cache;
+	
+	private long askTimeout = DEFAULT_ASK_TIMEOUT;
+	
+	private ExecutorService executor;
+	
+	private SparqlEndpointRegistry endpointRegistry = SparqlEndpointRegistry.getDefault();
+	
+	/**
+	 * Sets the registry which provides the connections to the SPARQL endpoints.
+	 * 
+	 * @param registry the SPARQL endpoint registry.
+	 */
+	public void setEndpointRegistry(SparqlEndpointRegistry registry) {
+		if (registry == null)
+			throw new IllegalArgumentException("endpoint registry must not be null");
+		this.endpointRegistry = registry;
+	}
+	
+	/**
+	 * Sets the cache for the ASK query results.
+	 * 
+	 * @param cache the ASK cache or null to disable caching.
+	 */
+	public void setAskCache(AskCache cache) {
+		this.cache = cache;
+	}
+	
+	/**
+	 * Sets the time (in milliseconds) to wait for the answers of all ASK
+	 * queries of a source selection.
+	 * 
+	 * @param askTimeout the ASK timeout.
+	 */
+	public void setAskTimeout(long askTimeout) {
+		if (askTimeout < 1)
+			throw new IllegalArgumentException("ASK timeout must be positive: " + askTimeout);
+		this.askTimeout = askTimeout;
+	}
 	
 	@Override
 	public void init() throws SailException {
 		super.init();
-		this.sourceList = ((VoidStatistics) stats).getEndpoints();
+		
+		if (this.cache != null)
+			this.cache.load();
+		
+		if (this.executor == null)
+			this.executor = Executors.newFixedThreadPool(ASK_THREADS, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "splendid-ask-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 		
 		if (LOGGER.isDebugEnabled())
-			LOGGER.debug("initialized ask selecector with: " + this.sourceList);
+			LOGGER.debug("initialized ask selecector with: " + getEndpoints());
+	}
+	
+	@Override
+	public void shutDown() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+			this.executor = null;
+		}
+		if (this.cache != null)
+			this.cache.save();
 	}
 
 	@Override
 	protected Set<Graph> getSources(StatementPattern pattern, Configuration config) {
-		return getSources(pattern, this.sourceList, config);
+		return getSources(pattern, getCandidates(pattern, config), config);
+	}
+	
+	@Override
+	protected List<Set<Graph>> getSources(List<StatementPattern> patterns, Configuration config) {
+		List<Collection<Graph>> candidates = new ArrayList<Collection<Graph>>(patterns.size());
+		for (StatementPattern pattern : patterns) {
+			candidates.add(getCandidates(pattern, config));
+		}
+		return ask(patterns, candidates, config);
+	}
+	
+	/**
+	 * Returns the sources which are asked for the supplied pattern.
+	 * 
+	 * @param pattern the statement pattern.
+	 * @return the candidate sources.
+	 */
+	protected Collection<Graph> getCandidates(StatementPattern pattern, Configuration config) {
+		return getEndpoints();
+	}
+	
+	/**
+	 * Returns the SPARQL endpoints of all current federation members.
+	 * 
+	 * @return the SPARQL endpoints.
+	 */
+	private List<Graph> getEndpoints() {
+		return ((VoidStatistics) stats).getEndpoints();
 	}
 	
 	protected Set<Graph> getSources(StatementPattern pattern, Collection<Graph> sources, Configuration config) {
-		Set<Graph> selectedSources = new HashSet<Graph>();
+		return ask(Collections.singletonList(pattern), Collections.singletonList(sources), config).get(0);
+	}
+	
+	/**
+	 * Asks the candidate sources of all patterns concurrently.
+	 * 
+	 * @param patterns the statement patterns.
+	 * @param candidates the candidate sources of each pattern.
+	 * @return the selected sources of each pattern.
+	 */
+	private List<Set<Graph>> ask(List<StatementPattern> patterns, List<Collection<Graph>> candidates, final Configuration config) {
 		
-		if (LOGGER.isDebugEnabled())
-			LOGGER.debug(debugAskRequest(pattern));
+		List<Set<Graph>> selectedSources = new ArrayList<Set<Graph>>(patterns.size());
+		List<Probe> probes = new ArrayList<Probe>();
 		
-		String sparqlPattern = OperatorTreePrinter.print(pattern);
+		for (int i = 0; i < patterns.size(); i++) {
+			final StatementPattern pattern = patterns.get(i);
+			Set<Graph> selected = new HashSet<Graph>();
+			selectedSources.add(selected);
+			
+			if (LOGGER.isDebugEnabled())
+				LOGGER.debug(debugAskRequest(pattern));
+			
+			final String sparqlPattern = OperatorTreePrinter.print(pattern);
+			
+			// ask each source for current pattern
+			for (final Graph source : candidates.get(i)) {
+				//System.out.println("ASKSelector Config: "+config);
+				if (cache != null) {
+					Boolean cached = cache.get(source, pattern);
+					if (cached != null) {
+						SPLENDID.queryInfo.nbAskCacheHit.getAndIncrement();
+						if (cached)
+							selected.add(source);
+						continue;
+					}
+					SPLENDID.queryInfo.nbAskCacheMiss.getAndIncrement();
+				}
+				
+				SPLENDID.queryInfo.nbAskQuery.getAndIncrement();
+				Future<Boolean> answer = executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						// a hung endpoint must not keep the thread and connection after the deadline
+						boolean result = QueryExecutor.ask(endpointRegistry, source.toString(), sparqlPattern, config, askTimeout);
+						if (cache != null)
+							cache.put(source, pattern, result);
+						return result;
+					}
+				});
+				probes.add(new Probe(source, selected, answer));
+			}
+		}
 		
-		// ask each source for current pattern
-		for (Graph source : sources) {
-			//System.out.println("ASKSelector Config: "+config);
-			SPLENDID.queryInfo.nbAskQuery.getAndIncrement();
-			if (QueryExecutor.ask(source.toString(), sparqlPattern, config))
-				selectedSources.add(source);
+		// collect the answers until the deadline is reached
+		long deadline = System.currentTimeMillis() + askTimeout;
+		try {
+			for (Probe probe : probes) {
+				long remaining = deadline - System.currentTimeMillis();
+				try {
+					if (probe.answer.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS))
+						probe.selected.add(probe.source);
+				} catch (TimeoutException e) {
+					probe.answer.cancel(true);
+					LOGGER.warn("no ASK answer from " + probe.source + " within " + askTimeout + "ms, selecting source");
+					probe.selected.add(probe.source);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(probes);
+			throw new RuntimeException("interrupted while waiting for ASK answers", e);
+		} catch (ExecutionException e) {
+			cancel(probes);
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException("ASK query failed", e.getCause());
 		}
 		return selectedSources;
 	}
 	
+	private void cancel(List<Probe> probes) {
+		for (Probe probe : probes) {
+			probe.answer.cancel(true);
+		}
+	}
+	
 	private String debugAskRequest(StatementPattern pattern) {
 		StringBuffer buffer = new StringBuffer("ASK {");
 		buffer.append(OperatorTreePrinter.print(pattern));
 		buffer.append("} @[");
-		for (Graph source : sourceList) {
+		for (Graph source : getEndpoints()) {
 			buffer.append(source.getNamespaceURL()).append(", ");
 		}
 		buffer.setLength(buffer.length()-2);
 		buffer.append("]");
 		return buffer.toString();
 	}
+	
+	/**
+	 * A pending ASK query of a source.
+	 */
+	private static class Probe {
+		final Graph source;
+		final Set<Graph> selected;
+		final Future<Boolean> answer;
+		
+		Probe(Graph source, Set<Graph> selected, Future<Boolean> answer) {
+			this.source = source;
+			this.selected = selected;
+			this.answer = answer;
+		}
+	}
 
 }
@@ -20,7 +20,7 @@
  */
 package de.uni_koblenz.west.splendid.sources;
 
-import java.util.Set;
+import java.util.Collection;
 
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 
@@ -55,10 +55,9 @@ public class IndexAskSelector extends AskSelector {
 	}
 	
 	@Override
-	protected Set<Graph> getSources(StatementPattern pattern, Configuration config) {
-		Set<Graph> sources = this.indexSel.getSources(pattern, config);
+	protected Collection<Graph> getCandidates(StatementPattern pattern, Configuration config) {
 		//System.out.println("IndexAskSelector Config: "+config);
-		return getSources(pattern, sources, config);
+		return this.indexSel.getSources(pattern, config);
 	}
 	
 }
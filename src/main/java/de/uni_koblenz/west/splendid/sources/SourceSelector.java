@@ -39,6 +39,11 @@ public interface SourceSelector {
 	
 	public void init() throws SailException;
 	
+	/**
+	 * Releases the resources of the source selector.
+	 */
+	public void shutDown();
+	
 	public void setStatistics(RDFStatistics stats);
 	
 	/**
@@ -57,6 +57,20 @@ public abstract class SourceSelectorBase implements SourceSelector {
 	 */
 	protected abstract Set<Graph> getSources(StatementPattern pattern, Configuration config);
 	
+	/**
+	 * Return all sources for each of the supplied patterns.
+	 * 
+	 * @param patterns the statement patterns to process.
+	 * @return a set of sources for each pattern.
+	 */
+	protected List<Set<Graph>> getSources(List<StatementPattern> patterns, Configuration config) {
+		List<Set<Graph>> sources = new ArrayList<Set<Graph>>(patterns.size());
+		for (StatementPattern pattern : patterns) {
+			sources.add(getSources(pattern, config));
+		}
+		return sources;
+	}
+	
 	// --------------------------------------------------------------
 	
 	@Override
@@ -65,6 +79,11 @@ public abstract class SourceSelectorBase implements SourceSelector {
 			throw new SailException("need statistics for source selection");
 	}
 	
+	@Override
+	public void shutDown() {
+		// nothing to release
+	}
+	
 	public void setStatistics(RDFStatistics stats) {
 		if (stats == null)
 			throw new IllegalArgumentException("statistics must not be null");
@@ -84,17 +103,23 @@ public abstract class SourceSelectorBase implements SourceSelector {
 		// group patterns with same constant values but different variables
 		TriplePatternIndex pso = new TriplePatternIndex(patterns);
 		
+		// get sources for the first pattern in group (with same constants)
+		List<List<StatementPattern>> patternGroups = pso.getDistinctPatterns();
+		List<StatementPattern> firstPatterns = new ArrayList<StatementPattern>(patternGroups.size());
+		for (List<StatementPattern> patternGroup : patternGroups) {
+			firstPatterns.add(patternGroup.get(0));
+		}
+		//System.out.println("SourceSelectorBase Config: "+config);
+		List<Set<Graph>> groupSources = getSources(firstPatterns, config);
+		
 		// determine sources for all distinct pattern groups
-		for (List<StatementPattern> patternGroup : pso.getDistinctPatterns()) {
-			
-			// get sources for the first pattern in group (with same constants)
-			StatementPattern firstPattern = patternGroup.get(0);
-			//System.out.println("SourceSelectorBase Config: "+config);
-			Set<Graph> sources = getSources(firstPattern, config);
+		for (int i = 0; i < patternGroups.size(); i++) {
+			List<StatementPattern> patternGroup = patternGroups.get(i);
+			Set<Graph> sources = groupSources.get(i);
 			
 			// print warning if no sources were found
 			if (sources.size() == 0) {
-				//LOGGER.warn("cannot find any source for: " + OperatorTreePrinter.print(firstPattern));
+				//LOGGER.warn("cannot find any source for: " + OperatorTreePrinter.print(patternGroup.get(0)));
 			}
 			
 			for (StatementPattern pattern : patternGroup) {
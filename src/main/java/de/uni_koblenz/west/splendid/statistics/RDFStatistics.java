@@ -31,6 +31,14 @@ import de.uni_koblenz.west.splendid.index.Graph;
  */
 public interface RDFStatistics {
 	
+	/**
+	 * Returns the version of the statistics which changes whenever
+	 * statistics are added, updated or removed.
+	 * 
+	 * @return the version of the statistics.
+	 */
+	public long getVersion();
+	
 	/**
 	 * Returns a set of data sources which can potentially return results for the supplied s, p, o values.
 	 * 
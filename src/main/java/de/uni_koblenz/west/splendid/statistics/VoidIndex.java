@@ -0,0 +1,723 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.statistics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Compiled voiD statistics. Predicates and classes are mapped to dense
+ * integer IDs through hash tables and all counts are stored in primitive
+ * arrays, hence every lookup is a hash or array access. Unknown counts
+ * are -1.
+ * 
+ * The statistics are kept in a single buffer which has the same layout as
+ * the binary statistics snapshot file. An index compiled from voiD is
+ * stored on the heap and keeps maps of its predicate and class IDs; a
+ * snapshot file is memory-mapped and its statistics stay off-heap. Only
+ * the (few) endpoint names are held as objects, the names of a snapshot
+ * are compared in place.
+ * 
+ * Snapshot layout (big-endian, offsets in bytes):
+ * <pre>
+ * header:    magic, version, #endpoints E, #predicates P, #classes C,
+ *            #predicate rows PR, #class rows CR, predicate slots PS, class slots CS
+ * endpoints: E name offsets, 4*E dataset counts
+ *            (triples, properties, distinct subjects, distinct objects)
+ * predicates: P name offsets, PS hash slots (ID+1), P+1 row starts,
+ *            PR row endpoints, 3*PR row counts
+ *            (triples, distinct subjects, distinct objects)
+ * classes:   C name offsets, CS hash slots (ID+1), C+1 row starts,
+ *            CR row endpoints, CR row counts (entities)
+ * strings:   length and UTF-8 bytes of all names
+ * </pre>
+ * 
+ * The index is immutable, changed statistics require a new index.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class VoidIndex {
+	
+	/** File extension of statistics snapshots. */
+	public static final String FILE_EXTENSION = ".void.bin";
+	
+	public static final VoidIndex EMPTY = new Builder().build();
+	
+	private static final int MAGIC = 0x564F4944; // "VOID"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 9 * 4;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final ByteBuffer buffer;
+	
+	private final Graph[] endpoints;
+	private final Map<String, Integer> endpointIds;
+	
+	// name to ID maps of indexes compiled on the heap, null for snapshots
+	private final Map<String, Integer> predicateIds;
+	private final Map<String, Integer> classIds;
+	
+	private final int predicateCount;
+	private final int classCount;
+	private final int predicateSlots;
+	private final int classSlots;
+	
+	// section offsets
+	private final int datasetCounts;
+	private final int predicateNames;
+	private final int predicateTable;
+	private final int predicateRowStart;
+	private final int predicateRowEndpoint;
+	private final int predicateRowCounts;
+	private final int classNames;
+	private final int classTable;
+	private final int classRowStart;
+	private final int classRowEndpoint;
+	private final int classRowCounts;
+	private final int strings;
+	
+	private VoidIndex(ByteBuffer buffer, String endpoint) throws IOException {
+		this(buffer, endpoint, null, null);
+	}
+	
+	private VoidIndex(ByteBuffer buffer, String endpoint, Map<String, Integer> predicateIds, Map<String, Integer> classIds) throws IOException {
+		this.buffer = buffer;
+		this.predicateIds = predicateIds;
+		this.classIds = classIds;
+		
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("not a statistics snapshot");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("unsupported statistics snapshot version: " + buffer.getInt(4));
+		
+		int endpointCount = buffer.getInt(8);
+		this.predicateCount = buffer.getInt(12);
+		this.classCount = buffer.getInt(16);
+		int predicateRows = buffer.getInt(20);
+		int classRows = buffer.getInt(24);
+		this.predicateSlots = buffer.getInt(28);
+		this.classSlots = buffer.getInt(32);
+		
+		if (endpointCount < 0 || predicateCount < 0 || classCount < 0 || predicateRows < 0 || classRows < 0)
+			throw new IOException("invalid statistics snapshot: negative count");
+		if (!isTableSize(predicateSlots, predicateCount) || !isTableSize(classSlots, classCount))
+			throw new IOException("invalid statistics snapshot: bad hash table size");
+		
+		// computed as long to detect overlarge counts
+		long offset = HEADER_SIZE + 4L * endpointCount;
+		long[] sections = new long[12];
+		sections[0] = offset;
+		sections[1] = offset += 8L * 4 * endpointCount;
+		sections[2] = offset += 4L * predicateCount;
+		sections[3] = offset += 4L * predicateSlots;
+		sections[4] = offset += 4L * (predicateCount + 1);
+		sections[5] = offset += 4L * predicateRows;
+		sections[6] = offset += 8L * 3 * predicateRows;
+		sections[7] = offset += 4L * classCount;
+		sections[8] = offset += 4L * classSlots;
+		sections[9] = offset += 4L * (classCount + 1);
+		sections[10] = offset += 4L * classRows;
+		sections[11] = offset += 8L * classRows;
+		
+		if (offset > buffer.limit())
+			throw new IOException("truncated statistics snapshot");
+		
+		this.datasetCounts = (int) sections[0];
+		this.predicateNames = (int) sections[1];
+		this.predicateTable = (int) sections[2];
+		this.predicateRowStart = (int) sections[3];
+		this.predicateRowEndpoint = (int) sections[4];
+		this.predicateRowCounts = (int) sections[5];
+		this.classNames = (int) sections[6];
+		this.classTable = (int) sections[7];
+		this.classRowStart = (int) sections[8];
+		this.classRowEndpoint = (int) sections[9];
+		this.classRowCounts = (int) sections[10];
+		this.strings = (int) sections[11];
+		
+		// references must stay within their sections
+		checkNames(HEADER_SIZE, endpointCount);
+		checkNames(predicateNames, predicateCount);
+		checkNames(classNames, classCount);
+		checkTable(predicateTable, predicateSlots, predicateCount);
+		checkTable(classTable, classSlots, classCount);
+		checkRows(predicateRowStart, predicateCount, predicateRowEndpoint, predicateRows, endpointCount);
+		checkRows(classRowStart, classCount, classRowEndpoint, classRows, endpointCount);
+		
+		if (endpoint != null && endpointCount != 1)
+			throw new IllegalStateException("can not assign SPARQL endpoint to statistics of " + endpointCount + " endpoints");
+		
+		this.endpoints = new Graph[endpointCount];
+		this.endpointIds = new HashMap<String, Integer>();
+		for (int i = 0; i < endpointCount; i++) {
+			String name = (endpoint != null) ? endpoint : getString(buffer.getInt(HEADER_SIZE + 4 * i));
+			endpoints[i] = new Graph(name);
+			endpointIds.put(name, i);
+		}
+	}
+	
+	/**
+	 * Memory-maps a statistics snapshot file.
+	 * 
+	 * @param file the snapshot file.
+	 * @return the statistics of the snapshot.
+	 * @throws IOException if the file can not be read or is not a valid snapshot.
+	 */
+	public static VoidIndex map(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			// the mapping remains valid after the file has been closed
+			ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+			return new VoidIndex(buffer, null);
+		} catch (IOException e) {
+			throw new IOException("can not read statistics snapshot " + file + ": " + e.getMessage(), e);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Writes the statistics as snapshot file. The snapshot is written to a
+	 * temporary file which replaces the target file when it is complete,
+	 * hence a snapshot which is currently mapped is never truncated.
+	 * 
+	 * @param file the snapshot file.
+	 * @throws IOException if the file can not be written.
+	 */
+	public void write(File file) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				ByteBuffer data = buffer.duplicate();
+				data.clear();
+				FileChannel channel = out.getChannel();
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+				channel.force(true);
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			if (temp.exists())
+				temp.delete();
+		}
+	}
+	
+	/**
+	 * Returns the same statistics for another SPARQL endpoint.
+	 * 
+	 * @param endpoint the new SPARQL endpoint.
+	 * @return the statistics with the new endpoint.
+	 * @throws IllegalStateException if the statistics describe multiple endpoints.
+	 */
+	public VoidIndex withEndpoint(String endpoint) {
+		try {
+			return new VoidIndex(buffer, endpoint, predicateIds, classIds);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Returns all SPARQL endpoints.
+	 * 
+	 * @return the list of endpoints.
+	 */
+	public List<Graph> getEndpoints() {
+		return new ArrayList<Graph>(Arrays.asList(endpoints));
+	}
+	
+	/**
+	 * Returns the endpoints which contain triples with the predicate.
+	 * 
+	 * @param predicate the predicate.
+	 * @return a new set of endpoints.
+	 */
+	public Set<Graph> getPredicateSources(String predicate) {
+		return getSources(findPredicate(predicate), predicateRowStart, predicateRowEndpoint);
+	}
+	
+	/**
+	 * Returns the endpoints which contain entities of the class.
+	 * 
+	 * @param type the class.
+	 * @return a new set of endpoints.
+	 */
+	public Set<Graph> getClassSources(String type) {
+		return getSources(findClass(type), classRowStart, classRowEndpoint);
+	}
+	
+	public long getTriples(String endpoint) {
+		return getDatasetCount(endpoint, 0);
+	}
+	
+	public long getProperties(String endpoint) {
+		return getDatasetCount(endpoint, 1);
+	}
+	
+	public long getDistinctSubjects(String endpoint) {
+		return getDatasetCount(endpoint, 2);
+	}
+	
+	public long getDistinctObjects(String endpoint) {
+		return getDatasetCount(endpoint, 3);
+	}
+	
+	public long getPredicateTriples(String endpoint, String predicate) {
+		return getPredicateCount(endpoint, predicate, 0);
+	}
+	
+	public long getPredicateSubjects(String endpoint, String predicate) {
+		return getPredicateCount(endpoint, predicate, 1);
+	}
+	
+	public long getPredicateObjects(String endpoint, String predicate) {
+		return getPredicateCount(endpoint, predicate, 2);
+	}
+	
+	public long getClassEntities(String endpoint, String type) {
+		int row = findRow(endpoint, findClass(type), classRowStart, classRowEndpoint);
+		return (row < 0) ? -1 : buffer.getLong(classRowCounts + 8 * row);
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	private long getDatasetCount(String endpoint, int field) {
+		Integer id = endpointIds.get(endpoint);
+		return (id == null) ? -1 : buffer.getLong(datasetCounts + 8 * (4 * id + field));
+	}
+	
+	private long getPredicateCount(String endpoint, String predicate, int field) {
+		int row = findRow(endpoint, findPredicate(predicate), predicateRowStart, predicateRowEndpoint);
+		return (row < 0) ? -1 : buffer.getLong(predicateRowCounts + 8 * (3 * row + field));
+	}
+	
+	private Set<Graph> getSources(int id, int rowStart, int rowEndpoint) {
+		Set<Graph> sources = new HashSet<Graph>();
+		if (id < 0)
+			return sources;
+		int end = buffer.getInt(rowStart + 4 * (id + 1));
+		for (int row = buffer.getInt(rowStart + 4 * id); row < end; row++) {
+			sources.add(endpoints[buffer.getInt(rowEndpoint + 4 * row)]);
+		}
+		return sources;
+	}
+	
+	/**
+	 * Finds the row of an endpoint in the rows of a predicate or class.
+	 * The rows are scanned but there is only one row per endpoint.
+	 */
+	private int findRow(String endpoint, int id, int rowStart, int rowEndpoint) {
+		Integer endpointId = endpointIds.get(endpoint);
+		if (endpointId == null || id < 0)
+			return -1;
+		int end = buffer.getInt(rowStart + 4 * (id + 1));
+		for (int row = buffer.getInt(rowStart + 4 * id); row < end; row++) {
+			if (buffer.getInt(rowEndpoint + 4 * row) == endpointId)
+				return row;
+		}
+		return -1;
+	}
+	
+	private int findPredicate(String predicate) {
+		if (predicateIds != null)
+			return id(predicateIds, predicate);
+		return find(predicate, predicateNames, predicateTable, predicateSlots);
+	}
+	
+	private int findClass(String type) {
+		if (classIds != null)
+			return id(classIds, type);
+		return find(type, classNames, classTable, classSlots);
+	}
+	
+	private static int id(Map<String, Integer> ids, String name) {
+		Integer id = ids.get(name);
+		return (id == null) ? -1 : id;
+	}
+	
+	/**
+	 * Looks up the ID of a predicate or class name in its hash table.
+	 * 
+	 * @return the ID or -1 if the name is unknown.
+	 */
+	private int find(String name, int names, int table, int slots) {
+		if (slots == 0)
+			return -1;
+		int mask = slots - 1;
+		for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+			int entry = buffer.getInt(table + 4 * slot);
+			if (entry == 0)
+				return -1;
+			if (matches(buffer.getInt(names + 4 * (entry - 1)), name))
+				return entry - 1;
+		}
+	}
+	
+	/**
+	 * Compares a stored name with the supplied one. ASCII names are
+	 * compared without encoding them.
+	 */
+	private boolean matches(int offset, String name) {
+		int position = strings + offset;
+		int length = buffer.getInt(position);
+		position += 4;
+		int chars = name.length();
+		// every character is encoded with at least one byte
+		if (length < chars)
+			return false;
+		for (int i = 0; i < chars; i++) {
+			char c = name.charAt(i);
+			if (c >= 0x80)
+				return matches(position, length, name.getBytes(UTF8));
+			if (buffer.get(position + i) != c)
+				return false;
+		}
+		return length == chars;
+	}
+	
+	private boolean matches(int position, int length, byte[] key) {
+		if (length != key.length)
+			return false;
+		for (int i = 0; i < key.length; i++) {
+			if (buffer.get(position + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+	
+	private String getString(int offset) {
+		int position = strings + offset;
+		byte[] bytes = new byte[buffer.getInt(position)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(position + 4 + i);
+		}
+		return new String(bytes, UTF8);
+	}
+	
+	private static boolean isTableSize(int slots, int count) {
+		if (count == 0)
+			return slots == 0;
+		// a power of two with at least one empty slot
+		return slots > count && (slots & (slots - 1)) == 0;
+	}
+	
+	private void checkNames(int names, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			long position = strings + (long) buffer.getInt(names + 4 * i);
+			if (position < strings || position + 4 > buffer.limit())
+				throw new IOException("invalid statistics snapshot: bad name offset");
+			int length = buffer.getInt((int) position);
+			if (length < 0 || position + 4 + length > buffer.limit())
+				throw new IOException("invalid statistics snapshot: bad name length");
+		}
+	}
+	
+	/**
+	 * Checks that the hash table holds every ID exactly once. As there are
+	 * more slots than IDs, a probe always ends at an empty slot.
+	 */
+	private void checkTable(int table, int slots, int count) throws IOException {
+		BitSet ids = new BitSet(count);
+		for (int slot = 0; slot < slots; slot++) {
+			int entry = buffer.getInt(table + 4 * slot);
+			if (entry < 0 || entry > count)
+				throw new IOException("invalid statistics snapshot: bad hash table entry");
+			if (entry == 0)
+				continue;
+			if (ids.get(entry - 1))
+				throw new IOException("invalid statistics snapshot: duplicate hash table entry");
+			ids.set(entry - 1);
+		}
+		if (ids.cardinality() != count)
+			throw new IOException("invalid statistics snapshot: missing hash table entry");
+	}
+	
+	private void checkRows(int rowStart, int count, int rowEndpoint, int rows, int endpointCount) throws IOException {
+		int previous = 0;
+		for (int i = 0; i <= count; i++) {
+			int start = buffer.getInt(rowStart + 4 * i);
+			if (start < previous || start > rows || (i == 0 && start != 0))
+				throw new IOException("invalid statistics snapshot: bad row start");
+			previous = start;
+		}
+		if (previous != rows)
+			throw new IOException("invalid statistics snapshot: bad row count");
+		for (int row = 0; row < rows; row++) {
+			int endpoint = buffer.getInt(rowEndpoint + 4 * row);
+			if (endpoint < 0 || endpoint >= endpointCount)
+				throw new IOException("invalid statistics snapshot: bad row endpoint");
+		}
+	}
+	
+	private static int hash(String name) {
+		int h = name.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	private static long key(int endpoint, int item) {
+		return ((long) endpoint << 32) | item;
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Collects the voiD statistics of the datasets. If a count is defined
+	 * more than once for the same endpoint, the first value is kept.
+	 */
+	public static class Builder {
+		
+		private final Map<String, Integer> endpointIds = new LinkedHashMap<String, Integer>();
+		private final Map<String, Integer> predicateIds = new LinkedHashMap<String, Integer>();
+		private final Map<String, Integer> classIds = new LinkedHashMap<String, Integer>();
+		
+		private final Map<Integer, long[]> datasets = new HashMap<Integer, long[]>();
+		private final Map<Long, long[]> predicateParts = new LinkedHashMap<Long, long[]>();
+		private final Map<Long, long[]> classParts = new LinkedHashMap<Long, long[]>();
+		
+		/**
+		 * Adds the statistics of a dataset.
+		 * 
+		 * @param endpoint the SPARQL endpoint of the dataset.
+		 * @param triples the number of triples or -1.
+		 * @param properties the number of distinct properties or -1.
+		 * @param distinctSubjects the number of distinct subjects or -1.
+		 * @param distinctObjects the number of distinct objects or -1.
+		 * @return this builder.
+		 */
+		public Builder addDataset(String endpoint, long triples, long properties, long distinctSubjects, long distinctObjects) {
+			merge(datasets, id(endpointIds, endpoint), triples, properties, distinctSubjects, distinctObjects);
+			return this;
+		}
+		
+		/**
+		 * Adds the statistics of a property partition.
+		 * 
+		 * @param endpoint the SPARQL endpoint of the dataset.
+		 * @param predicate the predicate of the partition.
+		 * @param triples the number of triples or -1.
+		 * @param distinctSubjects the number of distinct subjects or -1.
+		 * @param distinctObjects the number of distinct objects or -1.
+		 * @return this builder.
+		 */
+		public Builder addPropertyPartition(String endpoint, String predicate, long triples, long distinctSubjects, long distinctObjects) {
+			merge(predicateParts, key(id(endpointIds, endpoint), id(predicateIds, predicate)), triples, distinctSubjects, distinctObjects);
+			return this;
+		}
+		
+		/**
+		 * Adds the statistics of a class partition.
+		 * 
+		 * @param endpoint the SPARQL endpoint of the dataset.
+		 * @param type the class of the partition.
+		 * @param entities the number of entities or -1.
+		 * @return this builder.
+		 */
+		public Builder addClassPartition(String endpoint, String type, long entities) {
+			merge(classParts, key(id(endpointIds, endpoint), id(classIds, type)), entities);
+			return this;
+		}
+		
+		/**
+		 * Creates the statistics index on the heap.
+		 * 
+		 * @return the statistics index.
+		 */
+		public VoidIndex build() {
+			
+			// group the partition rows by predicate and class
+			List<List<Long>> predicateRows = group(predicateParts, predicateIds.size());
+			List<List<Long>> classRows = group(classParts, classIds.size());
+			int predicateSlots = slots(predicateIds.size());
+			int classSlots = slots(classIds.size());
+			
+			// encode all names and assign their offsets in the string section
+			List<byte[]> names = new ArrayList<byte[]>();
+			int stringSize = 0;
+			for (Map<String, Integer> ids : Arrays.asList(endpointIds, predicateIds, classIds)) {
+				for (String name : ids.keySet()) {
+					byte[] bytes = name.getBytes(UTF8);
+					names.add(bytes);
+					stringSize += 4 + bytes.length;
+				}
+			}
+			
+			int size = HEADER_SIZE
+					+ 4 * endpointIds.size() + 8 * 4 * endpointIds.size()
+					+ 4 * predicateIds.size() + 4 * predicateSlots + 4 * (predicateIds.size() + 1)
+					+ 4 * predicateParts.size() + 8 * 3 * predicateParts.size()
+					+ 4 * classIds.size() + 4 * classSlots + 4 * (classIds.size() + 1)
+					+ 4 * classParts.size() + 8 * classParts.size()
+					+ stringSize;
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			
+			buffer.putInt(MAGIC).putInt(VERSION);
+			buffer.putInt(endpointIds.size()).putInt(predicateIds.size()).putInt(classIds.size());
+			buffer.putInt(predicateParts.size()).putInt(classParts.size());
+			buffer.putInt(predicateSlots).putInt(classSlots);
+			
+			int[] offsets = new int[names.size()];
+			for (int i = 1; i < offsets.length; i++) {
+				offsets[i] = offsets[i - 1] + 4 + names.get(i - 1).length;
+			}
+			
+			// endpoints
+			int name = 0;
+			for (int i = 0; i < endpointIds.size(); i++) {
+				buffer.putInt(offsets[name++]);
+			}
+			for (int i = 0; i < endpointIds.size(); i++) {
+				long[] counts = datasets.get(i);
+				for (int field = 0; field < 4; field++) {
+					buffer.putLong(counts == null ? -1 : counts[field]);
+				}
+			}
+			
+			// predicates
+			for (int i = 0; i < predicateIds.size(); i++) {
+				buffer.putInt(offsets[name++]);
+			}
+			putTable(buffer, predicateIds, predicateSlots);
+			putRows(buffer, predicateRows, predicateParts);
+			
+			// classes
+			for (int i = 0; i < classIds.size(); i++) {
+				buffer.putInt(offsets[name++]);
+			}
+			putTable(buffer, classIds, classSlots);
+			putRows(buffer, classRows, classParts);
+			
+			// strings
+			for (byte[] bytes : names) {
+				buffer.putInt(bytes.length).put(bytes);
+			}
+			
+			try {
+				return new VoidIndex(buffer, null, new HashMap<String, Integer>(predicateIds), new HashMap<String, Integer>(classIds));
+			} catch (IOException e) {
+				throw new IllegalStateException("invalid statistics layout", e);
+			}
+		}
+		
+		private static List<List<Long>> group(Map<Long, long[]> partitions, int size) {
+			List<List<Long>> rows = new ArrayList<List<Long>>(size);
+			for (int i = 0; i < size; i++) {
+				rows.add(new ArrayList<Long>(2));
+			}
+			for (Long key : partitions.keySet()) {
+				rows.get((int) (key & 0xFFFFFFFFL)).add(key);
+			}
+			return rows;
+		}
+		
+		private static int slots(int size) {
+			return (size == 0) ? 0 : Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+		}
+		
+		private static void putTable(ByteBuffer buffer, Map<String, Integer> ids, int slots) {
+			int[] table = new int[slots];
+			int mask = slots - 1;
+			for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+				int slot = hash(entry.getKey()) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = entry.getValue() + 1;
+			}
+			for (int entry : table) {
+				buffer.putInt(entry);
+			}
+		}
+		
+		private static void putRows(ByteBuffer buffer, List<List<Long>> rows, Map<Long, long[]> partitions) {
+			int start = 0;
+			for (List<Long> keys : rows) {
+				buffer.putInt(start);
+				start += keys.size();
+			}
+			buffer.putInt(start);
+			for (List<Long> keys : rows) {
+				for (Long key : keys) {
+					buffer.putInt((int) (key >>> 32));
+				}
+			}
+			for (List<Long> keys : rows) {
+				for (Long key : keys) {
+					for (long count : partitions.get(key)) {
+						buffer.putLong(count);
+					}
+				}
+			}
+		}
+		
+		private static int id(Map<String, Integer> ids, String name) {
+			Integer id = ids.get(name);
+			if (id == null) {
+				id = ids.size();
+				ids.put(name, id);
+			}
+			return id;
+		}
+		
+		private static <K> void merge(Map<K, long[]> map, K key, long... counts) {
+			long[] values = map.get(key);
+			if (values == null) {
+				map.put(key, counts);
+				return;
+			}
+			for (int i = 0; i < counts.length; i++) {
+				if (values[i] == -1)
+					values[i] = counts[i];
+			}
+		}
+	}
+	
+}
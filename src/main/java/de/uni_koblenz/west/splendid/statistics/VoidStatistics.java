@@ -1,6 +1,6 @@
 /*
  * This file is part of RDF Federator.
- * Copyright 2011 Olaf Goerlitz
+ * Copyright 2010 Olaf Goerlitz
  * 
  * RDF Federator is free software: you can redistribute it and/or modify
  * it under the terms of the GNU Lesser General Public License as published by
@@ -20,37 +20,30 @@
  */
 package de.uni_koblenz.west.splendid.statistics;
 
-import static org.eclipse.rdf4j.query.QueryLanguage.SPARQL;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.eclipse.rdf4j.model.Resource;
-import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
-import org.eclipse.rdf4j.query.MalformedQueryException;
-import org.eclipse.rdf4j.query.QueryEvaluationException;
-import org.eclipse.rdf4j.query.TupleQuery;
-import org.eclipse.rdf4j.query.TupleQueryResult;
-import org.eclipse.rdf4j.repository.Repository;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
-import org.eclipse.rdf4j.repository.RepositoryException;
-import org.eclipse.rdf4j.repository.RepositoryResult;
-import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFParseException;
 import org.eclipse.rdf4j.rio.Rio;
-import org.eclipse.rdf4j.sail.memory.MemoryStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +53,14 @@ import de.uni_koblenz.west.splendid.vocabulary.VOID2;
 /**
  * voiD-based statistics implementation.
  * 
+ * Each loaded voiD description is compiled into a {@link VoidIndex} and the
+ * parsed RDF data is discarded. Statistics snapshot files (see
+ * {@link VoidIndex#FILE_EXTENSION}) are memory-mapped without parsing.
+ * 
+ * Every federation has its own instance. Lookups read an immutable
+ * catalog of all descriptions without locking; loading a description
+ * publishes a new catalog.
+ * 
  * @author Olaf Goerlitz
  */
 public class VoidStatistics implements RDFStatistics {
@@ -68,275 +69,221 @@ public class VoidStatistics implements RDFStatistics {
 	
 	private static final String USER_DIR = System.getProperty("user.dir") + File.separator;
 	
-	private static final String VOID_PREFIX = "PREFIX void: <" + VOID2.NAMESPACE + ">\n";
-	
-	private static final String VAR_GRAPH = "$GRAPH$";
-	private static final String VAR_TYPE  = "$TYPE$";
-	private static final String VAR_PRED  = "$PRED$";
-
-	private static final String PRED_SOURCE = VOID_PREFIX +
-			"SELECT ?source WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint ?source ;" +
-			"     void:propertyPartition ?part ." +
-			"  ?part void:property <" + VAR_PRED + "> ." +
-			"}";
-	
-	private static final String TYPE_SOURCE = VOID_PREFIX +
-			"SELECT ?source WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint ?source ;" +
-			"     void:classPartition ?part ." +
-			"  ?part void:class <" + VAR_TYPE + ">" +
-			"}";
-	
-	private static final String TRIPLE_COUNT = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:triples ?count ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ." +
-			"}";
-	
-	private static final String DISTINCT_PREDICATES = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ;" +
-			"     void:properties ?count ." +
-			"}";
-
-	private static final String DISTINCT_SUBJECTS = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ;" +
-			"     void:distinctSubjects ?count ." +
-			"}";
-
-	private static final String DISTINCT_PRED_SUBJECTS = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ;" +
-			"     void:propertyPartition ?part ." +
-			"  ?part void:property <" + VAR_PRED + "> ;" +
-			"        void:distinctSubjects ?count ." +
-			"}";
-	
-	private static final String DISTINCT_OBJECTS = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ;" +
-			"     void:distinctObjects ?count ." +
-			"}";
-	
-	private static final String DISTINCT_PRED_OBJECTS = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ;" +
-			"     void:propertyPartition ?part ." +
-			"  ?part void:property <" + VAR_PRED + "> ;" +
-			"        void:distinctObjects ?count ." +
-			"}";
-	
-	private static final String TYPE_TRIPLES = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ;" +
-			"     void:classPartition ?part ." +
-			"  ?part void:class <" + VAR_TYPE + "> ;" +
-			"        void:entities ?count ." +
-			"}";
-	
-	private static final String PRED_TRIPLES = VOID_PREFIX +
-			"SELECT ?count WHERE {" +
-			"  [] a void:Dataset ;" +
-			"     void:sparqlEndpoint <" + VAR_GRAPH + "> ;" +
-			"     void:propertyPartition ?part ." +
-			"  ?part void:property <" + VAR_PRED + "> ;" +
-			"        void:triples ?count ." +
-			"}";
-	
 	private static final ValueFactory uf = SimpleValueFactory.getInstance();
 	private static final IRI DATASET = uf.createIRI(VOID2.Dataset.toString());
 	private static final IRI ENDPOINT = uf.createIRI(VOID2.sparqlEndpoint.toString());
-	
+	private static final IRI TRIPLES = uf.createIRI(VOID2.triples.toString());
+	private static final IRI PROPERTIES = uf.createIRI(VOID2.properties.toString());
+	private static final IRI DISTINCT_SUBJECTS = uf.createIRI(VOID2.distinctSubjects.toString());
+	private static final IRI DISTINCT_OBJECTS = uf.createIRI(VOID2.distinctObjects.toString());
+	private static final IRI ENTITIES = uf.createIRI(VOID2.entities.toString());
+	private static final IRI PROPERTY_PARTITION = uf.createIRI(VOID2.propertyPartition.toString());
+	private static final IRI PROPERTY = uf.createIRI(VOID2.property.toString());
+	private static final IRI CLASS_PARTITION = uf.createIRI(VOID2.classPartition.toString());
+	private static final IRI CLASS = uf.createIRI(VOID2.clazz.toString());
+	
+	@Deprecated
 	protected static final VoidStatistics singleton = new VoidStatistics();
 	
-	private final Repository voidRepository;
+	// compiled statistics per voiD description, guarded by 'this'
+	private final Map<IRI, VoidIndex> descriptions = new LinkedHashMap<IRI, VoidIndex>();
+	private long version;
+	
+	// read-only view of all statistics, replaced whenever a voiD description is loaded or removed
+	private volatile Catalog catalog = new Catalog(descriptions.values(), version);
 	
 	// --- STATIC -------------------------------------------------------------
 
-	public static VoidStatistics getInstance() {
-		return singleton;
-	}
-	
-	// --- PRIVATE ------------------------------------------------------------
-	
 	/**
-	 * Private constructor used for singleton creation.
+	 * Returns a process-wide instance.
+	 * 
+	 * @return the shared statistics.
+	 * @deprecated federations use their own statistics, see
+	 *             {@link de.uni_koblenz.west.splendid.FederationSail#setStatistics(RDFStatistics)}.
 	 */
-	private VoidStatistics() {
-		this.voidRepository = new SailRepository(new MemoryStore());
-		try {
-			this.voidRepository.init();
-		} catch (RepositoryException e) {
-			throw new RuntimeException("initialization of statistics repository failed", e);
-		}
+	@Deprecated
+	public static VoidStatistics getInstance() {
+		return singleton;
 	}
 	
 	/**
-	 * Returns the count value defined by the supplied query and variable substitutions.
+	 * Compiles the statistics of a voiD description.
 	 * 
-	 * @param query the query to be executed on the voiD repository.
-	 * @param vars the variable bindings to be substituted in the query.
-	 * @return the resulting count value.
+	 * @param voidIRI the IRI of the voiD description.
+	 * @param endpoint the SPARQL endpoint to use for the datasets or null.
+	 * @return the compiled statistics.
+	 * @throws IOException if the voiD description can not be read or parsed.
 	 */
-	private long getCount(String query, String... vars) {
+	public static VoidIndex compile(IRI voidIRI, IRI endpoint) throws IOException {
 		
-		// replace query variables
-		for (int i = 0; i < vars.length; i++) {
-			query = query.replace(vars[i], vars[++i]);
+		// initialize parser
+		RDFFormat format = Rio.getParserFormatForFileName(voidIRI.stringValue()).orElse(null);
+		if (format == null) {
+			throw new IOException("Unsupported RDF format: " + voidIRI);
 		}
 		
-		List<String> bindings = evalQuery(query, "count");
-		
-		//System.out.println("BINDINGS: "+bindings);
-		// check result validity
-		if (bindings.size() == 0) {
-			//System.out.println("QUERY: "+query);
-			LOGGER.warn("found no count for " + Arrays.asList(vars));
-			return -1;
+		URL voidURL = new URL(voidIRI.stringValue());  // throws IOException
+		InputStream in = voidURL.openStream();
+		try {
+			Model model = Rio.parse(in, voidIRI.stringValue(), format);
+			if (LOGGER.isDebugEnabled())
+				LOGGER.debug("loaded VOID: " + voidURL.getPath().replace(USER_DIR, ""));
+			return compile(model, endpoint);
+		} catch (RDFParseException e) {
+			throw new IOException("can not parse VOID file " + voidIRI + ": " + e.getMessage(), e);
+		} finally {
+			in.close();
 		}
-		if (bindings.size() > 1)
-			LOGGER.warn("found multiple counts for " + Arrays.asList(vars));
-		
-		return Long.parseLong(bindings.get(0));
 	}
 	
 	/**
-	 * Evaluates the given query and returns the result values for the specified binding name.
+	 * Compiles the statistics of all datasets in a voiD model.
 	 * 
-	 * @param query the query to evaluate.
-	 * @param bindingName the desired result bindings.
-	 * @return a list of result binding values.
+	 * @param model the voiD model.
+	 * @param endpoint the SPARQL endpoint to use for the datasets or null.
+	 * @return the compiled statistics.
 	 */
-	private List<String> evalQuery(String query, String bindingName) {
-		try {
-			//Use generated void description instead of endpoint
-			//System.out.println("QUERY: "+query);
-			RepositoryConnection con = this.voidRepository.getConnection();
-			try {
-				TupleQuery tupleQuery = con.prepareTupleQuery(SPARQL, query);
-				TupleQueryResult result = tupleQuery.evaluate();
+	private static VoidIndex compile(Model model, IRI endpoint) {
+		VoidIndex.Builder builder = new VoidIndex.Builder();
+		for (Resource ds : model.filter(null, RDF.TYPE, DATASET).subjects()) {
+			
+			// TODO: endpoint may be a literal
+			Set<Value> sources = (endpoint != null) ? new HashSet<Value>(Arrays.asList(endpoint)) : model.filter(ds, ENDPOINT, null).objects();
+			for (Value value : sources) {
+				String source = value.stringValue();
+				builder.addDataset(source, getLong(model, ds, TRIPLES), getLong(model, ds, PROPERTIES),
+						getLong(model, ds, DISTINCT_SUBJECTS), getLong(model, ds, DISTINCT_OBJECTS));
+				
+				for (Value part : model.filter(ds, PROPERTY_PARTITION, null).objects()) {
+					Resource partition = (Resource) part;
+					for (Value property : model.filter(partition, PROPERTY, null).objects()) {
+						builder.addPropertyPartition(source, property.stringValue(), getLong(model, partition, TRIPLES),
+								getLong(model, partition, DISTINCT_SUBJECTS), getLong(model, partition, DISTINCT_OBJECTS));
+					}
+				}
 				
-				try {
-					List<String> bindings = new ArrayList<String>();
-					while (result.hasNext()) {
-						bindings.add(result.next().getValue(bindingName).stringValue());
+				for (Value part : model.filter(ds, CLASS_PARTITION, null).objects()) {
+					Resource partition = (Resource) part;
+					for (Value clazz : model.filter(partition, CLASS, null).objects()) {
+						builder.addClassPartition(source, clazz.stringValue(), getLong(model, partition, ENTITIES));
 					}
-					//System.out.println("RESULT: "+bindings);
-					return bindings;
-				} catch (QueryEvaluationException e) {
-					LOGGER.error("failed to handle query result from voiD repository, " + e.getMessage() + "\n" + query, e);
-				} finally {
-					result.close();
 				}
-			} catch (IllegalArgumentException e) {
-				LOGGER.error("not a tuple query, " + e.getMessage() + "\n" + query, e);	
-			} catch (RepositoryException e) {
-				LOGGER.error("failed to create tuple query, " + e.getMessage() + "\n" + query, e);
-			} catch (MalformedQueryException e) {
-				LOGGER.error("malformed query, " + e.getMessage() + "\n" + query, e);
-			} catch (QueryEvaluationException e) {
-				LOGGER.error("failed to evaluate query on voiD repository, " + e.getMessage() + "\n" + query, e);
-			} finally {
-				con.close();
 			}
-		} catch (RepositoryException e) {
-			LOGGER.error("failed to open/close voiD repository connection, " + e.getMessage() + "\n" + query, e);
 		}
-		return null;
+		return builder.build();
 	}
 	
-	private List<IRI> getEndpoints(IRI voidIRI, RepositoryConnection con) throws RepositoryException {
-		ValueFactory uf = this.voidRepository.getValueFactory();
-		IRI voidDataset = uf.createIRI(VOID2.Dataset.toString());
-		IRI sparqlEndpoint = uf.createIRI(VOID2.sparqlEndpoint.toString());
-		List<IRI> endpoints = new ArrayList<IRI>();
-		
-		for (Statement dataset : con.getStatements(null, RDF.TYPE, voidDataset, false, voidIRI).asList()) {
-			for (Statement endpoint : con.getStatements(dataset.getSubject(), sparqlEndpoint, null, false, voidIRI).asList()) {
-				// TODO: endpoint may be a literal
-				endpoints.add((IRI) endpoint.getObject());
-			}
+	/**
+	 * Reads the count value of a voiD property.
+	 * 
+	 * @param model the voiD model.
+	 * @param subject the dataset or partition.
+	 * @param property the count property.
+	 * @return the count value or -1 if it is undefined.
+	 */
+	private static long getLong(Model model, Resource subject, IRI property) {
+		Set<Value> counts = model.filter(subject, property, null).objects();
+		if (counts.size() == 0)
+			return -1;
+		if (counts.size() > 1)
+			LOGGER.warn("found multiple counts for " + Arrays.asList(subject, property));
+		Value count = counts.iterator().next();
+		try {
+			return Long.parseLong(count.stringValue());
+		} catch (NumberFormatException e) {
+			LOGGER.warn("invalid count for " + Arrays.asList(subject, property) + ": " + count);
+			return -1;
 		}
-		return endpoints;
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Creates empty statistics.
+	 */
+	public VoidStatistics() {
+	}
+	
+	/**
+	 * Checks the validity of a count value.
+	 * 
+	 * @param count the count value or -1 if it is unknown.
+	 * @param vars the endpoint and the predicate or type of the count.
+	 * @return the count value.
+	 */
+	private long checkCount(long count, String... vars) {
+		if (count == -1)
+			LOGGER.warn("found no count for " + Arrays.asList(vars));
+		return count;
 	}
 	
 	// -------------------------------------------------------------------------
 	
+	@Override
+	public long getVersion() {
+		return catalog.version;
+	}
+	
 	@Override
 	public Set<Graph> findSources(String sValue, String pValue, String oValue, boolean handleType) {
 		
-		Set<Graph> sources = new HashSet<Graph>();
+		Catalog catalog = this.catalog;
 		
 		if (pValue == null) {
 			//LOGGER.info("found triple pattern with unbound predicate: selecting all sources");
-			sources.addAll(getEndpoints());
-			return sources;
-		}
-		
-		String query = null;
-		// query for RDF type occurrence if rdf:type with bound object is used
-		if (handleType && RDF.TYPE.stringValue().equals(pValue) && oValue != null) {
-			query = TYPE_SOURCE.replace(VAR_TYPE, oValue);
-		} else { // else query for predicate occurrence
-			query = PRED_SOURCE.replace(VAR_PRED, pValue);
+			return new HashSet<Graph>(catalog.endpoints);
 		}
 		
-		// execute query and get all source bindings
-		for (String graph : evalQuery(query, "source")) {
-			sources.add(new Graph(graph));
+		Set<Graph> sources = new HashSet<Graph>();
+		for (VoidIndex index : catalog.indexes) {
+			// look up RDF type occurrence if rdf:type with bound object is used
+			if (handleType && RDF.TYPE.stringValue().equals(pValue) && oValue != null) {
+				sources.addAll(index.getClassSources(oValue));
+			} else { // else look up predicate occurrence
+				sources.addAll(index.getPredicateSources(pValue));
+			}
 		}
 		return sources;
 	}
 	
 	@Override
 	public long getTripleCount(Graph g) {
-		return getCount(TRIPLE_COUNT, VAR_GRAPH, g.toString());
+		return checkCount(catalog.get(g).getTriples(g.toString()), g.toString());
 	}
 	
 	@Override
 	public long getPredicateCount(Graph g, String predicate) {
-		return getCount(PRED_TRIPLES, VAR_GRAPH, g.toString(), VAR_PRED, predicate);
+		return checkCount(catalog.get(g).getPredicateTriples(g.toString(), predicate), g.toString(), predicate);
 	}
 	
 	@Override
 	public long getTypeCount(Graph g, String type) {
-		return getCount(TYPE_TRIPLES, VAR_GRAPH, g.toString(), VAR_TYPE, type);
+		return checkCount(catalog.get(g).getClassEntities(g.toString(), type), g.toString(), type);
 	}
 	
 	@Override
 	public long getDistinctPredicates(Graph g) {
-		return getCount(DISTINCT_PREDICATES, VAR_GRAPH, g.toString());
+		return checkCount(catalog.get(g).getProperties(g.toString()), g.toString());
 	}
 	
 	@Override
 	public long getDistinctSubjects(Graph g) {
-		return getCount(DISTINCT_SUBJECTS, VAR_GRAPH, g.toString());
+		return checkCount(catalog.get(g).getDistinctSubjects(g.toString()), g.toString());
 	}
 	
 	@Override
 	public long getDistinctSubjects(Graph g, String predicate) {
-		return getCount(DISTINCT_PRED_SUBJECTS, VAR_GRAPH, g.toString(), VAR_PRED, predicate);
+		return checkCount(catalog.get(g).getPredicateSubjects(g.toString(), predicate), g.toString(), predicate);
 	}
 	
 	@Override
 	public long getDistinctObjects(Graph g) {
-		return getCount(DISTINCT_OBJECTS, VAR_GRAPH, g.toString());
+		return checkCount(catalog.get(g).getDistinctObjects(g.toString()), g.toString());
 	}
 
 	@Override
 	public long getDistinctObjects(Graph g, String predicate) {
-		return getCount(DISTINCT_PRED_OBJECTS, VAR_GRAPH, g.toString(), VAR_PRED, predicate);
+		return checkCount(catalog.get(g).getPredicateObjects(g.toString(), predicate), g.toString(), predicate);
 	}
 	
 	// -------------------------------------------------------------------------
@@ -347,123 +294,165 @@ public class VoidStatistics implements RDFStatistics {
 	 * @return the list of SPARQL endpoints.
 	 */
 	public List<Graph> getEndpoints() {
+		return new ArrayList<Graph>(catalog.endpoints);
+	}
+	
+	/**
+	 * Loads the supplied voiD description or statistics snapshot.
+	 * The voiD description is read and compiled without blocking other
+	 * loads, hence multiple descriptions can be loaded concurrently.
+	 * 
+	 * @param voidIRI the IRI of the voiD description to load.
+	 * @param endpoint the SPARQL endpoint to use for the dataset or null.
+	 * @return the assigned SPARQL endpoint.
+	 */
+	public IRI load(IRI voidIRI, IRI endpoint) throws IOException {
+		if (voidIRI == null)
+			throw new IllegalArgumentException("voiD IRI must not be null.");
 		
-		List<Graph> sources = new ArrayList<Graph>();
-		
-		ValueFactory uf = this.voidRepository.getValueFactory();
-		IRI voidDataset = uf.createIRI(VOID2.Dataset.toString());
-		IRI sparqlEndpoint = uf.createIRI(VOID2.sparqlEndpoint.toString());
-		
-		try {
-			RepositoryConnection con = this.voidRepository.getConnection();
-			
-			try {
-				for (Statement dataset : con.getStatements(null, RDF.TYPE, voidDataset, false).asList()) {
-					for (Statement endpoint : con.getStatements(dataset.getSubject(), sparqlEndpoint, null, false).asList()) {
-						sources.add(new Graph(endpoint.getObject().stringValue()));
-					}
+		// check if voiD description has already been loaded
+		VoidIndex index;
+		synchronized (this) {
+			index = descriptions.get(voidIRI);
+		}
+		if (index == null) {
+			index = read(voidIRI, endpoint);
+			if (index == null)
+				return null;
+			synchronized (this) {
+				// keep the description which has been loaded concurrently
+				VoidIndex loaded = descriptions.get(voidIRI);
+				if (loaded == null) {
+					descriptions.put(voidIRI, index);
+					this.catalog = new Catalog(descriptions.values(), ++version);
+					return getEndpoint(index, endpoint);
 				}
-			} catch (RepositoryException e) {
-				e.printStackTrace();
-			} finally {
-				con.close();
+				index = loaded;
 			}
-		} catch (RepositoryException e) {
-			e.printStackTrace();
 		}
 		
-		return sources;
+		LOGGER.warn("VOID has already been loaded: " + voidIRI);
+		return getEndpoint(index, null);
 	}
 	
 	/**
-	 * Loads the supplied voiD description into the statistics repository.
+	 * Reads the supplied voiD description or statistics snapshot again and
+	 * replaces its current statistics. Queries see either the old or the
+	 * new statistics.
 	 * 
-	 * @param voidIRI the IRI of the voiD description to load.
+	 * @param voidIRI the IRI of the voiD description to reload.
+	 * @param endpoint the SPARQL endpoint to use for the dataset or null.
 	 * @return the assigned SPARQL endpoint.
 	 */
-	public IRI load(IRI voidIRI, IRI endpoint) throws IOException {
+	public IRI reload(IRI voidIRI, IRI endpoint) throws IOException {
 		if (voidIRI == null)
 			throw new IllegalArgumentException("voiD IRI must not be null.");
 		
-		// initialize parser
-		RDFFormat format = Rio.getParserFormatForFileName(voidIRI.stringValue()).get();
-		if (format == null) {
-			throw new IOException("Unsupported RDF format: " + voidIRI);
+		VoidIndex index = read(voidIRI, endpoint);
+		if (index == null)
+			return null;
+		synchronized (this) {
+			descriptions.put(voidIRI, index);
+			this.catalog = new Catalog(descriptions.values(), ++version);
 		}
-
-		URL voidURL = new URL(voidIRI.stringValue());  // throws IOException
-		InputStream in = voidURL.openStream();
-		try {
-			
-			RepositoryConnection con = this.voidRepository.getConnection();
+		return getEndpoint(index, endpoint);
+	}
+	
+	/**
+	 * Removes the statistics of the supplied voiD description.
+	 * 
+	 * @param voidIRI the IRI of the voiD description to remove.
+	 * @return true if the statistics have been removed.
+	 */
+	public synchronized boolean unload(IRI voidIRI) {
+		if (descriptions.remove(voidIRI) == null)
+			return false;
+		this.catalog = new Catalog(descriptions.values(), ++version);
+		return true;
+	}
+	
+	/**
+	 * Reads the statistics of a voiD description or statistics snapshot.
+	 * 
+	 * @return the statistics or null if the voiD description is invalid.
+	 */
+	private VoidIndex read(IRI voidIRI, IRI endpoint) throws IOException {
+		VoidIndex index;
+		if (voidIRI.stringValue().endsWith(VoidIndex.FILE_EXTENSION)) {
+			index = VoidIndex.map(toFile(voidIRI));
+			if (endpoint != null)
+				index = index.withEndpoint(endpoint.stringValue());
+		} else {
 			try {
-				
-				// check if voiD description has already been loaded
-				List<IRI> endpoints = getEndpoints(voidIRI, con);
-				if (endpoints.size() > 0) {
-					LOGGER.warn("VOID has already been loaded: " + voidIRI);
-					return endpoints.get(0);
-				}
-				
-				// add voiD file content to repository
-				try {
-					con.add(in, voidIRI.stringValue(), format, voidIRI);
-				} catch (RDFParseException e) {
-					LOGGER.error("can not parse VOID file " + voidIRI + ": " + e.getMessage());
-					return null;
-				} catch (RepositoryException e) {
-					LOGGER.error("can not add VOID file: " + voidIRI, e);
-					return null;
-				}
-				
-				if (LOGGER.isDebugEnabled())
-					LOGGER.debug("loaded VOID: " + voidURL.getPath().replace(USER_DIR, ""));
-				
-				if (endpoint == null) {
-				
-					// check if this voiD description has a valid SPARQL endpoint
-					endpoints = getEndpoints(voidIRI, con);
-
-					if (endpoints.size() == 0)
-						LOGGER.debug("found no SPARQL endpoint in voiD file");
-					if (endpoints.size() > 1)
-						// TODO: don't throw Exception but use first endpoint only
-						throw new IllegalStateException("found multiple SPARQL endpoints in voiD file");
-
-				return endpoints.iterator().next();
-				} else {
-					// find dataset resource in specified context
-					RepositoryResult<Statement> result = con.getStatements(null, RDF.TYPE, DATASET, false, voidIRI);
-					Resource dataset = result.next().getSubject();
-					
-					// TODO: check that there is only one dataset defined
-					
-					// remove current SPARQL endpoint and add new one
-					con.remove(dataset, ENDPOINT, null, voidIRI);
-					con.add(dataset, ENDPOINT, endpoint, voidIRI);
-					
-					//LOGGER.info("set SPARQL endpoint '" + endpoint + "' for " + voidURL.getPath().replace(USER_DIR, ""));
-					
-					return endpoint;
+				index = compile(voidIRI, endpoint);
+			} catch (IOException e) {
+				if (!(e.getCause() instanceof RDFParseException))
+					throw e;
+				LOGGER.error(e.getMessage());
+				return null;
+			}
+		}
+		
+		if (endpoint == null) {
+			// check if this voiD description has a valid SPARQL endpoint
+			int endpoints = index.getEndpoints().size();
+			if (endpoints == 0)
+				LOGGER.debug("found no SPARQL endpoint in voiD file");
+			if (endpoints > 1)
+				// TODO: don't throw Exception but use first endpoint only
+				throw new IllegalStateException("found multiple SPARQL endpoints in voiD file");
+		}
+		return index;
+	}
+	
+	private IRI getEndpoint(VoidIndex index, IRI endpoint) {
+		if (endpoint != null)
+			return endpoint;
+		List<Graph> endpoints = index.getEndpoints();
+		return endpoints.isEmpty() ? null : uf.createIRI(endpoints.get(0).toString());
+	}
+	
+	private static File toFile(IRI voidIRI) throws IOException {
+		try {
+			return new File(new URL(voidIRI.stringValue()).toURI());
+		} catch (URISyntaxException e) {
+			throw new IOException("invalid statistics snapshot location: " + voidIRI, e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("statistics snapshot is not a local file: " + voidIRI, e);
+		}
+	}
+	
+	// -------------------------------------------------------------------------
+	
+	/**
+	 * Immutable view of the statistics of all voiD descriptions.
+	 */
+	private static class Catalog {
+		
+		final long version;
+		final VoidIndex[] indexes;
+		final List<Graph> endpoints = new ArrayList<Graph>();
+		final Map<Graph, VoidIndex> endpointIndex = new HashMap<Graph, VoidIndex>();
+		
+		Catalog(Iterable<VoidIndex> descriptions, long version) {
+			this.version = version;
+			List<VoidIndex> indexes = new ArrayList<VoidIndex>();
+			for (VoidIndex index : descriptions) {
+				indexes.add(index);
+				for (Graph endpoint : index.getEndpoints()) {
+					endpoints.add(endpoint);
+					// statistics of the first description are used for an endpoint
+					if (!endpointIndex.containsKey(endpoint))
+						endpointIndex.put(endpoint, index);
 				}
-				
-			} catch (RepositoryException e) {
-				System.out.println("RepositoryException");
-				e.printStackTrace();
-//			} catch (RDFParseException e) {
-//				e.printStackTrace();
-//			} catch (IOException e) {
-//				e.printStackTrace();
-			} finally {
-				con.close();
 			}
-		} catch (RepositoryException e) {
-			e.printStackTrace();
-		} finally {
-			in.close();
+			this.indexes = indexes.toArray(new VoidIndex[indexes.size()]);
 		}
 		
-		return null;
+		VoidIndex get(Graph endpoint) {
+			VoidIndex index = endpointIndex.get(endpoint);
+			return (index == null) ? VoidIndex.EMPTY : index;
+		}
 	}
 	
 }
@@ -0,0 +1,104 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.sources.AskCache;
+
+/**
+ * Tests the caching of ASK query results.
+ *
+ * @author Olaf Goerlitz
+ */
+public class AskCacheTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private static final Graph SOURCE1 = new Graph("http://a.org/sparql");
+	private static final Graph SOURCE2 = new Graph("http://b.org/sparql");
+
+	@Test
+	public void testCanonicalVariables() {
+		AskCache cache = new AskCache(100, 60000, null);
+		cache.put(SOURCE1, pattern("s", "knows", "o"), true);
+
+		Assert.assertEquals(Boolean.TRUE, cache.get(SOURCE1, pattern("x", "knows", "y")));
+		Assert.assertNull(cache.get(SOURCE2, pattern("x", "knows", "y")));
+		Assert.assertNull(cache.get(SOURCE1, pattern("x", "name", "y")));
+		// a join variable changes the pattern
+		Assert.assertNull(cache.get(SOURCE1, pattern("x", "knows", "x")));
+	}
+
+	@Test
+	public void testExpiration() throws InterruptedException {
+		AskCache cache = new AskCache(100, 10, null);
+		cache.put(SOURCE1, pattern("s", "knows", "o"), false);
+		Assert.assertEquals(Boolean.FALSE, cache.get(SOURCE1, pattern("s", "knows", "o")));
+		Thread.sleep(20);
+		Assert.assertNull(cache.get(SOURCE1, pattern("s", "knows", "o")));
+	}
+
+	@Test
+	public void testEviction() {
+		AskCache cache = new AskCache(10, 60000, null);
+		for (int i = 0; i < 100; i++) {
+			cache.put(SOURCE1, pattern("s", "p" + i, "o"), true);
+		}
+		Assert.assertTrue(cache.size() <= 10);
+		Assert.assertEquals(Boolean.TRUE, cache.get(SOURCE1, pattern("s", "p99", "o")));
+	}
+
+	@Test
+	public void testPersistence() throws IOException {
+		File file = File.createTempFile("askcache", ".txt");
+		try {
+			AskCache cache = new AskCache(100, 60000, file);
+			cache.put(SOURCE1, pattern("s", "knows", "o"), true);
+			cache.put(SOURCE2, pattern("s", "knows", "o"), false);
+			cache.save();
+
+			AskCache restored = new AskCache(100, 60000, file);
+			restored.load();
+			Assert.assertEquals(2, restored.size());
+			Assert.assertEquals(Boolean.TRUE, restored.get(SOURCE1, pattern("a", "knows", "b")));
+			Assert.assertEquals(Boolean.FALSE, restored.get(SOURCE2, pattern("a", "knows", "b")));
+		} finally {
+			file.delete();
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	private StatementPattern pattern(String subj, String property, String obj) {
+		return new StatementPattern(new Var(subj), new Var("-const-" + property, vf.createIRI("http://xmlns.com/foaf/0.1/" + property)), new Var(obj));
+	}
+
+}
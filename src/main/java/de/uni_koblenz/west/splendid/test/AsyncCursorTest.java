@@ -0,0 +1,190 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.evaluation.AsyncCursor;
+import de.uni_koblenz.west.splendid.evaluation.BoundedSubQueryScheduler;
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Checks the prefetching and error propagation of the async cursor.
+ *
+ * @author Olaf Goerlitz
+ */
+public class AsyncCursorTest {
+
+	private static final ExecutorService executor = Executors.newFixedThreadPool(1);
+
+	@AfterClass
+	public static void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testPrefetchWithSmallBuffer() throws QueryEvaluationException {
+		final List<Integer> input = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			input.add(i);
+		}
+
+		AsyncCursor<Integer> cursor = new AsyncCursor<Integer>(executor, new Callable<CloseableIteration<Integer, QueryEvaluationException>>() {
+			@Override
+			public CloseableIteration<Integer, QueryEvaluationException> call() {
+				return new CloseableIteratorIteration<Integer, QueryEvaluationException>(input.iterator());
+			}
+		}, 16, 12, 4);
+
+		List<Integer> output = new ArrayList<Integer>();
+		try {
+			while (cursor.hasNext()) {
+				output.add(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		Assert.assertEquals(input, output);
+	}
+
+	@Test
+	public void testErrorPropagation() {
+		AsyncCursor<Integer> cursor = new AsyncCursor<Integer>(executor, new Callable<CloseableIteration<Integer, QueryEvaluationException>>() {
+			@Override
+			public CloseableIteration<Integer, QueryEvaluationException> call() {
+				return new LookAheadIteration<Integer, QueryEvaluationException>() {
+					private int count;
+					@Override
+					protected Integer getNextElement() throws QueryEvaluationException {
+						if (count == 3)
+							throw new QueryEvaluationException("connection lost");
+						return count++;
+					}
+				};
+			}
+		});
+
+		int results = 0;
+		try {
+			while (cursor.hasNext()) {
+				cursor.next();
+				results++;
+			}
+			Assert.fail("error was not propagated");
+		} catch (QueryEvaluationException e) {
+			Assert.assertEquals("connection lost", e.getMessage());
+			Assert.assertEquals(3, results);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testCancelledProducer() throws Exception {
+		final BoundedSubQueryScheduler scheduler = new BoundedSubQueryScheduler(1, 1, 4, false);
+		final Graph source = new Graph("http://ex.com/sparql");
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			// occupy the only thread such that the producer has to wait
+			scheduler.submit(source, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					release.await();
+					return null;
+				}
+			});
+
+			AsyncCursor<Integer> cursor = new AsyncCursor<Integer>(new Executor() {
+				@Override
+				public void execute(Runnable task) {
+					scheduler.execute(source, (RunnableFuture<?>) task);
+				}
+			}, new Callable<CloseableIteration<Integer, QueryEvaluationException>>() {
+				@Override
+				public CloseableIteration<Integer, QueryEvaluationException> call() {
+					return new CloseableIteratorIteration<Integer, QueryEvaluationException>(new ArrayList<Integer>().iterator());
+				}
+			});
+
+			scheduler.shutdown();
+			try {
+				cursor.hasNext();
+				Assert.fail("cancelled producer was not reported");
+			} catch (QueryEvaluationException e) {
+				// expected
+			} finally {
+				cursor.close();
+			}
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testCloseInterruptsProducer() throws Exception {
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch inputClosed = new CountDownLatch(1);
+
+		AsyncCursor<Integer> cursor = new AsyncCursor<Integer>(executor, new Callable<CloseableIteration<Integer, QueryEvaluationException>>() {
+			@Override
+			public CloseableIteration<Integer, QueryEvaluationException> call() {
+				return new LookAheadIteration<Integer, QueryEvaluationException>() {
+					@Override
+					protected Integer getNextElement() throws QueryEvaluationException {
+						// blocks like a stalled remote endpoint
+						reading.countDown();
+						try {
+							new CountDownLatch(1).await();
+						} catch (InterruptedException e) {
+							throw new QueryEvaluationException(e);
+						}
+						return null;
+					}
+					@Override
+					protected void handleClose() throws QueryEvaluationException {
+						inputClosed.countDown();
+					}
+				};
+			}
+		});
+
+		reading.await();
+		cursor.close();
+		Assert.assertTrue(inputClosed.await(2, TimeUnit.SECONDS));
+	}
+
+}
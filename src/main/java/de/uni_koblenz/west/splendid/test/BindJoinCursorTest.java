@@ -0,0 +1,290 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.evaluation.BindJoinCursor;
+import de.uni_koblenz.west.splendid.evaluation.FederationEvalStrategy;
+import de.uni_koblenz.west.splendid.evaluation.SubQueryScheduler;
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.DuplicateElimination;
+
+/**
+ * Tests that the bind join maps the sub query results of a block back to
+ * the originating left bindings, both with VALUES and with UNION queries.
+ * The sub queries are evaluated on a local memory store.
+ *
+ * @author Olaf Goerlitz
+ */
+public class BindJoinCursorTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private static final String EX = "http://example.org/";
+	private static final String FOAF = "http://xmlns.com/foaf/0.1/";
+
+	private static final String DATA =
+			"@prefix ex: <" + EX + "> . @prefix foaf: <" + FOAF + "> .\n"
+			+ "ex:alice foaf:name \"Alice\" ; ex:age 30 .\n"
+			+ "ex:bob foaf:name \"Bob\"@en , \"Robert\" .\n"
+			+ "ex:carol ex:age 30 .\n"
+			+ "_:anon foaf:name \"Anon\" .\n";
+
+	private static Repository repository;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		repository = new SailRepository(new MemoryStore());
+		repository.init();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			con.add(new StringReader(DATA), EX, RDFFormat.TURTLE);
+		} finally {
+			con.close();
+		}
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		repository.shutDown();
+	}
+
+	@Test
+	public void testValues() throws QueryEvaluationException {
+		LocalStrategy strategy = new LocalStrategy();
+		Assert.assertEquals(expectedNames(), join(strategy, namePattern(), nameBindings(), 3, true));
+		Assert.assertEquals(2, strategy.patterns.size());
+		Assert.assertTrue(strategy.patterns.get(0).contains("VALUES"));
+		Assert.assertTrue(strategy.patterns.get(0).contains("?__bindIndex"));
+	}
+
+	@Test
+	public void testUnion() throws QueryEvaluationException {
+		LocalStrategy strategy = new LocalStrategy();
+		Assert.assertEquals(expectedNames(), join(strategy, namePattern(), nameBindings(), 3, false));
+		Assert.assertEquals(2, strategy.patterns.size());
+		Assert.assertTrue(strategy.patterns.get(0).contains("UNION"));
+		Assert.assertTrue(strategy.patterns.get(0).contains("?first_name_2"));
+	}
+
+	@Test
+	public void testBlockSizeOne() throws QueryEvaluationException {
+		for (boolean useValues : new boolean[] { true, false }) {
+			LocalStrategy strategy = new LocalStrategy();
+			Assert.assertEquals(expectedNames(), join(strategy, namePattern(), nameBindings(), 1, useValues));
+			Assert.assertEquals(nameBindings().size(), strategy.patterns.size());
+		}
+	}
+
+	@Test
+	public void testLiteralBindings() throws QueryEvaluationException {
+		// ?who ex:age ?age_years
+		TupleExpr pattern = new StatementPattern(new Var("who"), constant(EX + "age"), new Var("age_years"));
+		List<BindingSet> left = new ArrayList<BindingSet>();
+		left.add(bindings("age_years", vf.createLiteral("30", XSD.INTEGER)));
+		left.add(bindings("age_years", vf.createLiteral("30")));
+
+		List<String> expected = Arrays.asList(
+				"age_years=\"30\"^^<http://www.w3.org/2001/XMLSchema#integer>;who=http://example.org/alice",
+				"age_years=\"30\"^^<http://www.w3.org/2001/XMLSchema#integer>;who=http://example.org/carol");
+		for (boolean useValues : new boolean[] { true, false }) {
+			Assert.assertEquals(expected, join(new LocalStrategy(), pattern, left, 2, useValues));
+		}
+	}
+
+	@Test
+	public void testConstantPattern() throws QueryEvaluationException {
+		// ex:alice foaf:name "Alice" and ex:alice foaf:name "Bob"
+		TupleExpr match = new StatementPattern(constant(EX + "alice"), constant(FOAF + "name"), new Var("-const-Alice", vf.createLiteral("Alice")));
+		TupleExpr noMatch = new StatementPattern(constant(EX + "alice"), constant(FOAF + "name"), new Var("-const-Bob", vf.createLiteral("Bob")));
+		List<BindingSet> left = new ArrayList<BindingSet>();
+		left.add(bindings("x", vf.createIRI(EX + "x1")));
+		left.add(bindings("x", vf.createIRI(EX + "x2")));
+		left.add(bindings("x", vf.createIRI(EX + "x3")));
+
+		for (boolean useValues : new boolean[] { true, false }) {
+			LocalStrategy strategy = new LocalStrategy();
+			Assert.assertEquals(Arrays.asList("x=http://example.org/x1", "x=http://example.org/x2", "x=http://example.org/x3"),
+					join(strategy, match, left, 2, useValues));
+			// the constant pattern is sent only once
+			Assert.assertEquals(1, strategy.patterns.size());
+			Assert.assertTrue(join(new LocalStrategy(), noMatch, left, 2, useValues).isEmpty());
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * ?person_id foaf:name ?first_name
+	 */
+	private TupleExpr namePattern() {
+		return new StatementPattern(new Var("person_id"), constant(FOAF + "name"), new Var("first_name"));
+	}
+
+	/**
+	 * Left bindings with matching, missing, blank node and fully bound join values.
+	 */
+	private List<BindingSet> nameBindings() {
+		List<BindingSet> left = new ArrayList<BindingSet>();
+		left.add(bindings("person_id", vf.createIRI(EX + "alice"), "my_tag", vf.createLiteral("a")));
+		left.add(bindings("person_id", vf.createIRI(EX + "bob"), "my_tag", vf.createLiteral("b")));
+		left.add(bindings("person_id", vf.createIRI(EX + "dave"), "my_tag", vf.createLiteral("d")));
+		left.add(bindings("person_id", vf.createBNode("anon"), "my_tag", vf.createLiteral("x")));
+		left.add(bindings("person_id", vf.createIRI(EX + "alice"), "first_name", vf.createLiteral("Alice")));
+		left.add(bindings("person_id", vf.createIRI(EX + "bob"), "first_name", vf.createLiteral("Alice")));
+		return left;
+	}
+
+	private List<String> expectedNames() {
+		List<String> expected = Arrays.asList(
+				"first_name=\"Alice\";my_tag=\"a\";person_id=http://example.org/alice",
+				"first_name=\"Bob\"@en;my_tag=\"b\";person_id=http://example.org/bob",
+				"first_name=\"Robert\";my_tag=\"b\";person_id=http://example.org/bob",
+				"first_name=\"Alice\";person_id=http://example.org/alice");
+		Collections.sort(expected);
+		return expected;
+	}
+
+	private List<String> join(LocalStrategy strategy, TupleExpr rightArg, List<BindingSet> left, int blockSize, boolean useValues) throws QueryEvaluationException {
+		Set<Graph> sources = Collections.singleton(new Graph(EX + "sparql"));
+		BindJoinCursor cursor = new BindJoinCursor(strategy, iter(left), rightArg, sources, new QueryBindingSet(), blockSize, useValues, DuplicateElimination.NONE);
+		List<String> result = new ArrayList<String>();
+		try {
+			while (cursor.hasNext()) {
+				result.add(toString(cursor.next()));
+			}
+		} finally {
+			cursor.close();
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private String toString(BindingSet bindings) {
+		List<String> names = new ArrayList<String>(bindings.getBindingNames());
+		Collections.sort(names);
+		StringBuilder buffer = new StringBuilder();
+		for (String name : names) {
+			if (buffer.length() > 0)
+				buffer.append(";");
+			buffer.append(name).append("=").append(bindings.getValue(name));
+		}
+		return buffer.toString();
+	}
+
+	private BindingSet bindings(Object... nameValues) {
+		QueryBindingSet bindings = new QueryBindingSet();
+		for (int i = 0; i < nameValues.length; i += 2) {
+			bindings.addBinding((String) nameValues[i], (Value) nameValues[i + 1]);
+		}
+		return bindings;
+	}
+
+	private Var constant(String iri) {
+		IRI value = vf.createIRI(iri);
+		return new Var("-const-" + value.getLocalName(), value);
+	}
+
+	private static CloseableIteration<BindingSet, QueryEvaluationException> iter(List<BindingSet> bindings) {
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindings.iterator());
+	}
+
+	/**
+	 * Evaluates the sub queries of the bind join on the local repository.
+	 */
+	private static class LocalStrategy extends FederationEvalStrategy {
+
+		final List<String> patterns = new ArrayList<String>();
+
+		LocalStrategy() {
+			super(vf, new SubQueryScheduler() {
+				@Override
+				public <T> Future<T> submit(Graph source, Callable<T> task) {
+					throw new UnsupportedOperationException();
+				}
+				@Override
+				public void execute(Graph source, RunnableFuture<?> task) {
+					throw new UnsupportedOperationException();
+				}
+				@Override
+				public void shutdown() {
+				}
+			});
+		}
+
+		@Override
+		protected CloseableIteration<BindingSet, QueryEvaluationException> sendSparqlQuery(String pattern, Set<Graph> sources, DuplicateElimination dedup) {
+			patterns.add(pattern);
+			List<BindingSet> result = new ArrayList<BindingSet>();
+			RepositoryConnection con = repository.getConnection();
+			try {
+				TupleQueryResult tuples = con.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT * WHERE {\n" + pattern + "}").evaluate();
+				try {
+					while (tuples.hasNext()) {
+						result.add(tuples.next());
+					}
+				} finally {
+					tuples.close();
+				}
+			} finally {
+				con.close();
+			}
+			return iter(result);
+		}
+	}
+
+}
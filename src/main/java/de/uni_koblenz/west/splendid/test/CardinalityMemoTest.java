@@ -0,0 +1,108 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.estimation.CardinalityMemo;
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+
+/**
+ * Tests the canonical plan signatures of the cardinality memo table.
+ *
+ * @author Olaf Goerlitz
+ */
+public class CardinalityMemoTest {
+
+	@Test
+	public void testJoinOrderIsIgnored() {
+		TupleExpr p1 = pattern("s", "name", "n", "http://a.org/sparql");
+		TupleExpr p2 = pattern("s", "knows", "o", "http://a.org/sparql");
+		TupleExpr p3 = pattern("o", "name", "m", "http://b.org/sparql");
+
+		String signature = CardinalityMemo.signature(new Join(new Join(p1, p2), p3));
+		Assert.assertEquals(signature, CardinalityMemo.signature(new Join(p3, new Join(p2, p1))));
+		Assert.assertEquals(signature, CardinalityMemo.signature(new Join(new Join(p2, p1).clone(), p3.clone())));
+		Assert.assertFalse(signature.equals(CardinalityMemo.signature(new Join(p1, p2))));
+	}
+
+	@Test
+	public void testPatternSignatureIsQueryIndependent() {
+		String signature = CardinalityMemo.signature(pattern("s", "name", "n", "http://a.org/sparql"));
+		Assert.assertEquals(signature, CardinalityMemo.signature(pattern("x", "name", "y", "http://a.org/sparql")));
+		Assert.assertFalse(signature.equals(CardinalityMemo.signature(pattern("s", "name", "s", "http://a.org/sparql"))));
+		Assert.assertFalse(signature.equals(CardinalityMemo.signature(pattern("s", "name", "n", "http://b.org/sparql"))));
+	}
+
+	@Test
+	public void testVersionInvalidatesEntries() {
+		CardinalityMemo memo = new CardinalityMemo(10);
+		String signature = CardinalityMemo.signature(pattern("s", "name", "n", "http://a.org/sparql"));
+		memo.validate(1);
+		memo.put(signature, 42.0);
+		memo.validate(1);
+		Assert.assertEquals(Double.valueOf(42.0), memo.get(signature));
+		memo.validate(2);
+		Assert.assertNull(memo.get(signature));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		CardinalityMemo memo = new CardinalityMemo(3);
+		TupleExpr p1 = pattern("s", "name", "n", "http://a.org/sparql");
+		String[] plans = new String[4];
+		for (int i = 0; i < plans.length; i++) {
+			plans[i] = CardinalityMemo.signature(new Join(p1, pattern("s", "knows", "o" + i, "http://a.org/sparql")));
+		}
+		memo.put(plans[0], 1.0);
+		memo.put(plans[1], 2.0);
+		memo.put(plans[2], 3.0);
+		Assert.assertEquals(Double.valueOf(1.0), memo.get(plans[0]));
+
+		// a full table keeps the recently used entries
+		memo.put(plans[3], 4.0);
+		Assert.assertEquals(3, memo.size());
+		Assert.assertNull(memo.get(plans[1]));
+		Assert.assertEquals(Double.valueOf(1.0), memo.get(plans[0]));
+		Assert.assertEquals(Double.valueOf(3.0), memo.get(plans[2]));
+		Assert.assertEquals(Double.valueOf(4.0), memo.get(plans[3]));
+	}
+
+	// -------------------------------------------------------------------------
+
+	private TupleExpr pattern(String subj, String pred, String obj, String source) {
+		Var p = new Var("-const-" + pred, SimpleValueFactory.getInstance().createIRI("http://xmlns.com/foaf/0.1/" + pred));
+		p.setConstant(true);
+		Set<Graph> sources = Collections.singleton(new Graph(source));
+		return new MappedStatementPattern(new StatementPattern(new Var(subj), p, new Var(obj)), sources);
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
+import org.eclipse.rdf4j.query.parser.sparql.SPARQLParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.evaluation.BoundedDistinctIteration;
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.DuplicateElimination;
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+import de.uni_koblenz.west.splendid.optimizer.DuplicateEliminationOptimizer;
+
+/**
+ * Checks the choice of the duplicate elimination for remote sub queries.
+ *
+ * @author Olaf Goerlitz
+ */
+public class DuplicateEliminationTest {
+
+	private static final Graph SOURCE1 = new Graph("http://ex.com/sparql1");
+	private static final Graph SOURCE2 = new Graph("http://ex.com/sparql2");
+
+	@Test
+	public void testSingleSource() {
+		Assert.assertEquals(DuplicateElimination.NONE, optimize("SELECT * WHERE { ?s ?p ?o }", SOURCE1));
+	}
+
+	@Test
+	public void testMultipleSources() {
+		Assert.assertEquals(DuplicateElimination.EXACT, optimize("SELECT * WHERE { ?s ?p ?o }", SOURCE1, SOURCE2));
+	}
+
+	@Test
+	public void testDistinctProjection() {
+		Assert.assertEquals(DuplicateElimination.BOUNDED, optimize("SELECT DISTINCT ?s WHERE { ?s ?p ?o }", SOURCE1, SOURCE2));
+		Assert.assertEquals(DuplicateElimination.BOUNDED, optimize("SELECT REDUCED ?s WHERE { ?s ?p ?o }", SOURCE1, SOURCE2));
+	}
+
+	@Test
+	public void testAggregationBelowDistinct() {
+		Assert.assertEquals(DuplicateElimination.EXACT, optimize("SELECT DISTINCT (COUNT(?o) AS ?c) WHERE { ?s ?p ?o }", SOURCE1, SOURCE2));
+		Assert.assertEquals(DuplicateElimination.EXACT, optimize("SELECT DISTINCT ?s WHERE { { SELECT ?s WHERE { ?s ?p ?o } LIMIT 10 } }", SOURCE1, SOURCE2));
+	}
+
+	@Test
+	public void testBoundedDistinct() throws Exception {
+		List<Integer> input = Arrays.asList(1, 2, 1, 3, 3, 2, 4);
+		BoundedDistinctIteration<Integer, Exception> iter = new BoundedDistinctIteration<Integer, Exception>(
+				new CloseableIteratorIteration<Integer, Exception>(input.iterator()), 1024);
+		List<Integer> output = new ArrayList<Integer>();
+		while (iter.hasNext()) {
+			output.add(iter.next());
+		}
+		iter.close();
+		Assert.assertEquals(Arrays.asList(1, 2, 3, 4), output);
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Maps all patterns of the query to the sources and returns the
+	 * duplicate elimination chosen for the first pattern.
+	 */
+	private DuplicateElimination optimize(String query, Graph... sources) {
+		TupleExpr expr = new SPARQLParser().parseQuery(query, null).getTupleExpr();
+		Set<Graph> sourceSet = new HashSet<Graph>(Arrays.asList(sources));
+		MappedStatementPattern mapped = null;
+		for (StatementPattern pattern : StatementPatternCollector.process(expr)) {
+			mapped = new MappedStatementPattern(pattern, sourceSet);
+			pattern.replaceWith(mapped);
+		}
+		new DuplicateEliminationOptimizer().optimize(expr, null, null);
+		return mapped.getDuplicateElimination();
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.algebra.Compare;
+import org.eclipse.rdf4j.query.algebra.Compare.CompareOp;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.ValueConstant;
+import org.eclipse.rdf4j.query.algebra.ValueExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
+import org.eclipse.rdf4j.query.algebra.helpers.VarNameCollector;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.estimation.SPLENDIDCardinalityEstimator;
+import de.uni_koblenz.west.splendid.estimation.SPLENDIDCostEstimator;
+import de.uni_koblenz.west.splendid.helpers.FilterConditionCollector;
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.BindJoin;
+import de.uni_koblenz.west.splendid.model.HashJoin;
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+import de.uni_koblenz.west.splendid.optimizer.DynamicProgrammingOptimizer;
+import de.uni_koblenz.west.splendid.optimizer.JoinGraph;
+import de.uni_koblenz.west.splendid.statistics.VoidIndex;
+import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
+
+/**
+ * Tests the join order optimization with dynamic programming and the
+ * fallback to IDP and greedy search.
+ *
+ * @author Olaf Goerlitz
+ */
+public class DynamicProgrammingOptimizerTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private static final String SOURCE = "http://a.org/sparql";
+	private static final String PREDICATE = "http://ex.org/p";
+	private static final int PREDICATES = 80;
+
+	private static File file;
+	private static VoidStatistics statistics;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		// predicates with different selectivities
+		VoidIndex.Builder builder = new VoidIndex.Builder();
+		builder.addDataset(SOURCE, 10000000, PREDICATES, 500000, 800000);
+		for (int i = 0; i < PREDICATES; i++) {
+			long triples = 1000 + (i * 7919L) % 100000;
+			builder.addPropertyPartition(SOURCE, PREDICATE + i, triples, triples / (2 + i % 5), triples / (1 + i % 7));
+		}
+		file = File.createTempFile("stats", VoidIndex.FILE_EXTENSION);
+		builder.build().write(file);
+		statistics = new VoidStatistics();
+		statistics.load(vf.createIRI(file.toURI().toString()), null);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testDynamicProgramming() {
+		List<TupleExpr> exprs = chain(7);
+		List<ValueExpr> conditions = filter(3);
+		Optimizer dp = new Optimizer(12, 5, 0);
+		TupleExpr plan = dp.plan(exprs, conditions);
+		Assert.assertEquals(7, StatementPatternCollector.process(plan).size());
+
+		// IDP with a block of all expressions is dynamic programming
+		Assert.assertEquals(plan.toString(), new Optimizer(0, 7, 0).plan(exprs, conditions).toString());
+
+		// dynamic programming finds the cheapest plan
+		double cost = dp.cost(plan);
+		for (int k = 2; k < 7; k++) {
+			Optimizer idp = new Optimizer(0, k, 0);
+			Assert.assertTrue(cost <= idp.cost(idp.plan(exprs, conditions)));
+		}
+	}
+
+	@Test
+	public void testIterativeDynamicProgramming() {
+		List<TupleExpr> exprs = star(8);
+		List<ValueExpr> conditions = filter(4);
+
+		// more expressions than allowed for dynamic programming
+		TupleExpr plan = new Optimizer(6, 3, 0).plan(exprs, conditions);
+		Assert.assertEquals(8, StatementPatternCollector.process(plan).size());
+		Assert.assertEquals(new Optimizer(0, 3, 0).plan(exprs, conditions).toString(), plan.toString());
+
+		// the block size is irrelevant for dynamic programming
+		Assert.assertEquals(new Optimizer(8, 3, 0).plan(exprs, conditions).toString(), new Optimizer(12, 5, 0).plan(exprs, conditions).toString());
+	}
+
+	@Test
+	public void testTimeBudget() {
+		List<TupleExpr> exprs = star(40);
+		List<ValueExpr> conditions = filter(7);
+
+		// neither DP nor IDP-5 can enumerate a star of 40 expressions in time
+		long start = System.currentTimeMillis();
+		TupleExpr plan = new Optimizer(40, 5, 50).plan(exprs, conditions);
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+		Assert.assertEquals(40, StatementPatternCollector.process(plan).size());
+
+		// the greedy search is IDP-2 without budget
+		Assert.assertEquals(new Optimizer(0, 2, 0).plan(exprs, conditions).toString(), plan.toString());
+	}
+
+	@Test
+	public void testSharedSubPlans() {
+		List<List<TupleExpr>> queries = new ArrayList<List<TupleExpr>>();
+		queries.add(chain(5));
+		queries.add(star(6));
+		List<TupleExpr> snowflake = star(4);
+		snowflake.add(pattern("v2", 20, "v5"));
+		snowflake.add(pattern("v5", 21, "v6"));
+		queries.add(snowflake);
+
+		// plans share their sub plans, the reference copies the join arguments
+		Optimizer optimizer = new Optimizer(12, 5, 0);
+		for (List<TupleExpr> exprs : queries) {
+			for (int var = 0; var < 3; var++) {
+				List<ValueExpr> conditions = filter(var);
+				conditions.addAll(filter(var + 3));
+				TupleExpr plan = optimizer.plan(exprs, conditions);
+				TupleExpr reference = optimizer.reference(exprs, conditions);
+				Assert.assertEquals(optimizer.cost(reference), optimizer.cost(plan), 0);
+				Assert.assertEquals(reference.toString(), plan.toString());
+				assertParents(plan);
+			}
+		}
+	}
+
+	@Test
+	public void testParallelEnumeration() {
+		List<TupleExpr> exprs = star(8);
+		List<ValueExpr> conditions = filter(2);
+		conditions.addAll(filter(5));
+
+		// the largest levels are split into several tasks
+		int pairs = 0;
+		for (JoinGraph.PairList level : JoinGraph.create(exprs).getConnectedPairs()) {
+			if (level != null)
+				pairs = Math.max(pairs, level.size());
+		}
+		Assert.assertTrue(pairs > 128);
+
+		Optimizer sequential = new Optimizer(12, 5, 0);
+		Optimizer parallel = new Optimizer(12, 5, 0);
+		parallel.setParallelism(4);
+		try {
+			TupleExpr plan = sequential.plan(exprs, conditions);
+			for (int i = 0; i < 3; i++) {
+				TupleExpr parallelPlan = parallel.plan(exprs, conditions);
+				Assert.assertEquals(plan.toString(), parallelPlan.toString());
+				Assert.assertEquals(sequential.cost(plan), parallel.cost(parallelPlan), 0);
+				assertParents(parallelPlan);
+			}
+			Assert.assertEquals(sequential.reference(exprs, conditions).toString(), plan.toString());
+
+			// the planning threads are started again after a shutdown
+			parallel.shutDown();
+			Assert.assertEquals(plan.toString(), parallel.plan(exprs, conditions).toString());
+		} finally {
+			parallel.shutDown();
+		}
+	}
+
+	@Test
+	public void testGreedySearch() {
+		// more expressions than a join graph can hold
+		List<TupleExpr> exprs = chain(70);
+		Optimizer optimizer = new Optimizer(12, 5, 0);
+		TupleExpr plan = optimizer.plan(exprs, filter(30));
+		List<StatementPattern> patterns = StatementPatternCollector.process(plan);
+		Assert.assertEquals(70, patterns.size());
+		Assert.assertEquals(70, new HashSet<StatementPattern>(patterns).size());
+		Assert.assertTrue(optimizer.cost(plan) < Double.POSITIVE_INFINITY);
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Optimizer which exposes the join order optimization.
+	 */
+	static class Optimizer extends DynamicProgrammingOptimizer {
+
+		Optimizer(int maxExpressions, int blockSize, long timeBudget) {
+			super(true, true);
+			setMaxExpressions(maxExpressions);
+			setBlockSize(blockSize);
+			setTimeBudget(timeBudget);
+			SPLENDIDCostEstimator costEstimator = new SPLENDIDCostEstimator();
+			costEstimator.setCardinalityEstimator(new SPLENDIDCardinalityEstimator(statistics, true));
+			setCostEstimator(costEstimator);
+		}
+
+		TupleExpr plan(List<TupleExpr> exprs, List<ValueExpr> conditions) {
+			return optimizeJoinOrder(exprs, conditions);
+		}
+
+		double cost(TupleExpr plan) {
+			return costEstimator.process(plan);
+		}
+
+		/**
+		 * Dynamic programming which copies the join arguments of every
+		 * candidate plan and enumerates the join pairs in the same order.
+		 */
+		TupleExpr reference(List<TupleExpr> exprs, List<ValueExpr> conditions) {
+			Map<Long, TupleExpr> plans = new HashMap<Long, TupleExpr>();
+			for (int i = 0; i < exprs.size(); i++) {
+				plans.put(1L << i, exprs.get(i));
+			}
+			JoinGraph.PairList[] levels = JoinGraph.create(exprs).getConnectedPairs();
+			for (int n = 2; n < levels.length; n++) {
+				for (int i = 0; i < levels[n].size(); i++) {
+					long left = levels[n].getLeft(i);
+					long right = levels[n].getRight(i);
+					TupleExpr leftArg = plans.get(left);
+					TupleExpr rightArg = plans.get(right);
+					offer(plans, left | right, new BindJoin(leftArg.clone(), rightArg.clone()), conditions);
+					offer(plans, left | right, new HashJoin(leftArg.clone(), rightArg.clone()), conditions);
+					offer(plans, left | right, new BindJoin(rightArg.clone(), leftArg.clone()), conditions);
+					offer(plans, left | right, new HashJoin(rightArg.clone(), leftArg.clone()), conditions);
+				}
+			}
+			return plans.get(JoinGraph.all(exprs.size()));
+		}
+
+		private void offer(Map<Long, TupleExpr> plans, long set, TupleExpr join, List<ValueExpr> conditions) {
+			TupleExpr expr = join;
+			List<ValueExpr> applied = FilterConditionCollector.process(join);
+			for (ValueExpr condition : conditions) {
+				if (!applied.contains(condition) && VarNameCollector.process(join).containsAll(VarNameCollector.process(condition)))
+					expr = new Filter(expr, condition.clone());
+			}
+			TupleExpr best = plans.get(set);
+			if (best == null || cost(expr) < cost(best))
+				plans.put(set, expr);
+		}
+	}
+
+	/**
+	 * Checks that all nodes of the plan refer to their parent.
+	 */
+	static void assertParents(final TupleExpr plan) {
+		plan.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+			@Override
+			protected void meetNode(QueryModelNode node) {
+				for (QueryModelNode child : getChildren(node)) {
+					Assert.assertSame(node, child.getParentNode());
+				}
+				super.meetNode(node);
+			}
+		});
+	}
+
+	static List<QueryModelNode> getChildren(QueryModelNode node) {
+		final List<QueryModelNode> children = new ArrayList<QueryModelNode>();
+		node.visitChildren(new AbstractQueryModelVisitor<RuntimeException>() {
+			@Override
+			protected void meetNode(QueryModelNode child) {
+				children.add(child);
+			}
+		});
+		return children;
+	}
+
+	/**
+	 * Creates a chain of patterns: ?v0 p0 ?v1 . ?v1 p1 ?v2 ...
+	 */
+	static List<TupleExpr> chain(int size) {
+		List<TupleExpr> exprs = new ArrayList<TupleExpr>(size);
+		for (int i = 0; i < size; i++) {
+			exprs.add(pattern("v" + i, i % PREDICATES, "v" + (i + 1)));
+		}
+		return exprs;
+	}
+
+	/**
+	 * Creates a star of patterns: ?v0 p0 ?v1 . ?v0 p1 ?v2 ...
+	 */
+	static List<TupleExpr> star(int size) {
+		List<TupleExpr> exprs = new ArrayList<TupleExpr>(size);
+		for (int i = 0; i < size; i++) {
+			exprs.add(pattern("v0", i % PREDICATES, "v" + (i + 1)));
+		}
+		return exprs;
+	}
+
+	/**
+	 * Creates a filter on a variable.
+	 */
+	static List<ValueExpr> filter(int var) {
+		List<ValueExpr> conditions = new ArrayList<ValueExpr>();
+		conditions.add(new Compare(new Var("v" + var), new ValueConstant(vf.createLiteral(42)), CompareOp.LT));
+		return conditions;
+	}
+
+	static TupleExpr pattern(String subj, int pred, String obj) {
+		Var p = new Var("-const-" + pred, vf.createIRI(PREDICATE + pred));
+		p.setConstant(true);
+		StatementPattern pattern = new StatementPattern(new Var(subj), p, new Var(obj));
+		return new MappedStatementPattern(pattern, Collections.singleton(new Graph(SOURCE)));
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.config.RepositoryConfigSchema;
+import org.eclipse.rdf4j.sail.config.SailConfigSchema;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.uni_koblenz.west.splendid.FederationSail;
+import de.uni_koblenz.west.splendid.VoidRepository;
+import de.uni_koblenz.west.splendid.config.FederationSailConfig;
+import de.uni_koblenz.west.splendid.config.FederationSailFactory;
+import de.uni_koblenz.west.splendid.config.FederationSailSchema;
+import de.uni_koblenz.west.splendid.config.VoidRepositoryConfig;
+import de.uni_koblenz.west.splendid.config.VoidRepositoryFactory;
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+import de.uni_koblenz.west.splendid.sources.IndexSelector;
+import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
+
+/**
+ * Tests adding, refreshing and removing federation members and the
+ * corresponding changes of the federation's voiD statistics, which are
+ * not shared with other federations.
+ *
+ * @author Olaf Goerlitz
+ */
+public class FederationMembershipTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private static final String NAME = "http://xmlns.com/foaf/0.1/name";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FederationSail sail;
+
+	@Before
+	public void setUp() {
+		sail = new FederationSail();
+		sail.setSourceSelector(new IndexSelector(true));
+	}
+
+	@After
+	public void tearDown() {
+		sail.shutDown();
+	}
+
+	@Test
+	public void testParallelInit() throws IOException {
+		List<Repository> members = new ArrayList<Repository>();
+		for (int i = 0; i < 8; i++) {
+			members.add(member("source" + i, 100 + i));
+		}
+		sail.setMembers(members);
+		sail.init();
+
+		for (Repository member : members) {
+			Assert.assertTrue(member.isInitialized());
+		}
+		VoidStatistics statistics = (VoidStatistics) sail.getStatistics();
+		Assert.assertEquals(8, statistics.getEndpoints().size());
+		Assert.assertEquals(8, statistics.getVersion());
+		for (int i = 0; i < 8; i++) {
+			Assert.assertEquals(100 + i, statistics.getPredicateCount(endpoint("source" + i), NAME));
+		}
+		Assert.assertEquals(endpoints("source0", "source1", "source2", "source3", "source4", "source5", "source6", "source7"), selectSources());
+	}
+
+	@Test
+	public void testRefreshMember() throws IOException {
+		Repository member = member("source1", 100);
+		sail.setMembers(Arrays.asList(member));
+		sail.init();
+
+		VoidStatistics statistics = (VoidStatistics) sail.getStatistics();
+		long version = statistics.getVersion();
+		Assert.assertEquals(100, statistics.getPredicateCount(endpoint("source1"), NAME));
+
+		describe("source1", 250);
+		sail.refreshMember(member);
+
+		Assert.assertEquals(250, statistics.getPredicateCount(endpoint("source1"), NAME));
+		Assert.assertTrue(statistics.getVersion() > version);
+		Assert.assertEquals(1, statistics.getEndpoints().size());
+	}
+
+	@Test
+	public void testAddMember() throws IOException {
+		sail.setMembers(Arrays.asList(member("source1", 100)));
+		sail.init();
+
+		Repository member = member("source2", 200);
+		sail.addMember(member);
+
+		Assert.assertTrue(member.isInitialized());
+		Assert.assertEquals(endpoints("source1", "source2"), new HashSet<Graph>(((VoidStatistics) sail.getStatistics()).getEndpoints()));
+		Assert.assertEquals(endpoints("source1", "source2"), selectSources());
+	}
+
+	@Test
+	public void testRemoveMember() throws IOException {
+		Repository member = member("source2", 200);
+		sail.setMembers(Arrays.asList(member("source1", 100), member));
+		sail.init();
+
+		VoidStatistics statistics = (VoidStatistics) sail.getStatistics();
+		long version = statistics.getVersion();
+		Assert.assertEquals(endpoints("source1", "source2"), selectSources());
+
+		Assert.assertTrue(sail.removeMember(member));
+		Assert.assertFalse(sail.removeMember(member));
+
+		Assert.assertFalse(member.isInitialized());
+		Assert.assertFalse(sail.getMembers().contains(member));
+		Assert.assertEquals(Arrays.asList(endpoint("source1")), statistics.getEndpoints());
+		Assert.assertEquals(endpoints("source1"), selectSources());
+		Assert.assertTrue(statistics.getVersion() > version);
+	}
+
+	@Test
+	public void testReloadAndUnload() throws IOException {
+		VoidStatistics statistics = new VoidStatistics();
+		IRI voidIRI = describe("source1", 100);
+		Assert.assertEquals(endpoint("source1").toString(), statistics.load(voidIRI, null).stringValue());
+		long version = statistics.getVersion();
+
+		describe("source1", 300);
+		statistics.reload(voidIRI, null);
+		Assert.assertEquals(300, statistics.getPredicateCount(endpoint("source1"), NAME));
+		Assert.assertEquals(1, statistics.getEndpoints().size());
+		Assert.assertEquals(version + 1, statistics.getVersion());
+
+		Assert.assertTrue(statistics.unload(voidIRI));
+		Assert.assertFalse(statistics.unload(voidIRI));
+		Assert.assertTrue(statistics.getEndpoints().isEmpty());
+		Assert.assertTrue(statistics.findSources(null, NAME, null, true).isEmpty());
+		Assert.assertEquals(version + 2, statistics.getVersion());
+	}
+
+	@Test
+	public void testSeparateFederations() throws IOException {
+		Model model = new LinkedHashModel();
+		Resource node = vf.createBNode();
+		model.add(node, SailConfigSchema.SAILTYPE, vf.createLiteral(FederationSailFactory.SAIL_TYPE));
+		model.add(node, FederationSailSchema.STATISTIC, vf.createLiteral(VoidStatistics.class.getName()));
+		Resource selector = vf.createBNode();
+		model.add(node, FederationSailSchema.SRC_SELECTION, selector);
+		model.add(selector, FederationSailSchema.SELECTOR_TYPE, vf.createLiteral("INDEX"));
+		for (String source : Arrays.asList("source1", "source2")) {
+			Resource member = vf.createBNode();
+			model.add(node, FederationSailSchema.MEMBER, member);
+			model.add(member, RepositoryConfigSchema.REPOSITORYTYPE, vf.createLiteral(VoidRepositoryFactory.REPOSITORY_TYPE));
+			model.add(member, FederationSailSchema.VOID_IRI, describe(source, 100));
+		}
+		FederationSailConfig config = new FederationSailConfig();
+		config.parse(model, node);
+
+		// both federations are created from the same configuration
+		FederationSailFactory factory = new FederationSailFactory();
+		FederationSail other = (FederationSail) factory.getSail(config);
+		sail = (FederationSail) factory.getSail(config);
+		try {
+			other.init();
+			sail.init();
+
+			VoidStatistics statistics = (VoidStatistics) sail.getStatistics();
+			VoidStatistics otherStatistics = (VoidStatistics) other.getStatistics();
+			Assert.assertNotSame(statistics, otherStatistics);
+
+			// removing a member of one federation does not affect the other
+			for (Repository member : other.getMembers()) {
+				if (endpoint("source2").toString().equals(((VoidRepository) member).getEndpoint().stringValue()))
+					Assert.assertTrue(other.removeMember(member));
+			}
+			Assert.assertEquals(Arrays.asList(endpoint("source1")), otherStatistics.getEndpoints());
+			Assert.assertEquals(endpoints("source1", "source2"), new HashSet<Graph>(statistics.getEndpoints()));
+			Assert.assertEquals(endpoints("source1", "source2"), selectSources());
+
+			// shutting down one federation keeps the statistics of the other
+			other.shutDown();
+			Assert.assertTrue(otherStatistics.getEndpoints().isEmpty());
+			Assert.assertEquals(endpoints("source1", "source2"), new HashSet<Graph>(statistics.getEndpoints()));
+		} finally {
+			other.shutDown();
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Selects the sources of a triple pattern with the federation's
+	 * source selector.
+	 */
+	private Set<Graph> selectSources() {
+		StatementPattern pattern = new StatementPattern(new Var("s"), new Var("p", vf.createIRI(NAME)), new Var("o"));
+		List<MappedStatementPattern> mapped = sail.getSourceSelector().mapSources(Arrays.asList(pattern), null);
+		return mapped.get(0).getSources();
+	}
+
+	private Repository member(String source, long names) throws IOException {
+		Model model = new LinkedHashModel();
+		Resource node = vf.createBNode();
+		model.add(node, FederationSailSchema.VOID_IRI, describe(source, names));
+		VoidRepositoryConfig config = new VoidRepositoryConfig();
+		config.parse(model, node);
+		return new VoidRepository(config);
+	}
+
+	/**
+	 * Writes a voiD description of a source with a single predicate.
+	 */
+	private IRI describe(String source, long names) throws IOException {
+		File file = new File(folder.getRoot(), source + ".n3");
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write("@prefix void: <http://rdfs.org/ns/void#> .\n");
+			writer.write("[] a void:Dataset ;\n");
+			writer.write("\tvoid:sparqlEndpoint <" + endpoint(source) + "> ;\n");
+			writer.write("\tvoid:triples " + names + " ;\n");
+			writer.write("\tvoid:propertyPartition [ void:property <" + NAME + "> ; void:triples " + names + " ] .\n");
+		} finally {
+			writer.close();
+		}
+		return vf.createIRI(file.toURI().toString());
+	}
+
+	private static Graph endpoint(String source) {
+		return new Graph("http://" + source + ".org/sparql");
+	}
+
+	private static Set<Graph> endpoints(String... sources) {
+		Set<Graph> endpoints = new HashSet<Graph>();
+		for (String source : sources) {
+			endpoints.add(endpoint(source));
+		}
+		return endpoints;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+
+import de.uni_koblenz.west.splendid.evaluation.HashJoinCursor;
+import de.uni_koblenz.west.splendid.evaluation.HybridHashJoinCursor;
+import de.uni_koblenz.west.splendid.evaluation.SymmetricHashJoinCursor;
+
+/**
+ * Micro benchmark for the hash joins on synthetic inputs. The reference is
+ * a copy of the original hash join, which keys a <tt>HashMap</tt> with a
+ * list of the join bindings of every row. It is compared to the
+ * {@link HashJoinCursor}, the in-memory {@link HybridHashJoinCursor} and
+ * the {@link SymmetricHashJoinCursor}, which all use a
+ * {@link de.uni_koblenz.west.splendid.evaluation.JoinHashTable}.
+ * 
+ * Usage: HashJoinBenchmark [rows] [iterations]
+ * (default: 1M x 1M rows, 5 measured iterations after 2 warm-up iterations)
+ * 
+ * @author Olaf Goerlitz
+ */
+public class HashJoinBenchmark {
+	
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+	
+	private static final int WARMUP = 2;
+	
+	public static void main(String[] args) throws QueryEvaluationException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		List<BindingSet> left = new ArrayList<BindingSet>(rows);
+		List<BindingSet> right = new ArrayList<BindingSet>(rows);
+		for (int i = 0; i < rows; i++) {
+			QueryBindingSet l = new QueryBindingSet();
+			l.addBinding("s", vf.createIRI("http://ex.com/s" + i));
+			l.addBinding("name", vf.createLiteral("name" + i));
+			left.add(l);
+			// every second right binding has a join partner
+			QueryBindingSet r = new QueryBindingSet();
+			r.addBinding("s", vf.createIRI("http://ex.com/s" + (i * 2)));
+			r.addBinding("o", vf.createIRI("http://ex.com/o" + i));
+			right.add(r);
+		}
+		Set<String> joinVars = Collections.singleton("s");
+		ExecutorService executor = Executors.newCachedThreadPool();
+		
+		try {
+			for (int i = 0; i < WARMUP + iterations; i++) {
+				String phase = i < WARMUP ? "warm-up" : "run " + (i - WARMUP + 1);
+				
+				long start = System.nanoTime();
+				int baselineCount = drain(new BaselineHashJoinCursor(iter(left), iter(right), joinVars));
+				long baselineTime = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				int hybridCount = drain(new HybridHashJoinCursor(iter(left), iter(right), joinVars, Long.MAX_VALUE));
+				long hybridTime = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				int symmetricCount = drain(new SymmetricHashJoinCursor(iter(left), iter(right), joinVars, executor));
+				long symmetricTime = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				int hashCount = drain(new HashJoinCursor(iter(left), iter(right), joinVars));
+				long hashTime = System.nanoTime() - start;
+				
+				System.out.println(phase + ": baseline " + baselineTime / 1000000 + " ms (" + baselineCount + " results), "
+						+ "hybrid " + hybridTime / 1000000 + " ms (" + hybridCount + " results), "
+						+ "symmetric " + symmetricTime / 1000000 + " ms (" + symmetricCount + " results), "
+						+ "plain " + hashTime / 1000000 + " ms (" + hashCount + " results)");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private static CloseableIteration<BindingSet, QueryEvaluationException> iter(List<BindingSet> bindings) {
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindings.iterator());
+	}
+	
+	private static int drain(CloseableIteration<BindingSet, QueryEvaluationException> cursor) throws QueryEvaluationException {
+		int count = 0;
+		try {
+			while (cursor.hasNext()) {
+				cursor.next();
+				count++;
+			}
+		} finally {
+			cursor.close();
+		}
+		return count;
+	}
+	
+	/**
+	 * The original hash join: the left bindings are put in a hash map which
+	 * is keyed by a list of their join bindings, and a list with the join
+	 * bindings of every right binding set is looked up.
+	 */
+	static class BaselineHashJoinCursor extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+		
+		private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+		private final CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
+		private final List<String> joinBindingNames;
+		
+		private final Deque<BindingSet> joinedBindings = new ArrayDeque<BindingSet>();
+		private HashMap<List<Binding>, List<BindingSet>> joinHashMap;
+		
+		BaselineHashJoinCursor(CloseableIteration<BindingSet, QueryEvaluationException> leftIter, CloseableIteration<BindingSet, QueryEvaluationException> rightIter, Set<String> joinVars) {
+			this.leftIter = leftIter;
+			this.rightIter = rightIter;
+			this.joinBindingNames = new ArrayList<String>(joinVars);
+		}
+		
+		private void buildHashMap() throws QueryEvaluationException {
+			this.joinHashMap = new HashMap<List<Binding>, List<BindingSet>>();
+			while (leftIter.hasNext()) {
+				BindingSet next = leftIter.next();
+				List<Binding> joinBindings = getJoinBindings(next);
+				List<BindingSet> bindings = joinHashMap.get(joinBindings);
+				if (bindings == null) {
+					bindings = new ArrayList<BindingSet>();
+					joinHashMap.put(joinBindings, bindings);
+				}
+				bindings.add(next);
+			}
+		}
+		
+		private List<Binding> getJoinBindings(BindingSet bindings) {
+			List<Binding> joinBindings = new ArrayList<Binding>();
+			for (String bindingName : this.joinBindingNames) {
+				joinBindings.add(bindings.getBinding(bindingName));
+			}
+			return joinBindings;
+		}
+		
+		@Override
+		protected void handleClose() throws QueryEvaluationException {
+			try {
+				leftIter.close();
+			} finally {
+				rightIter.close();
+			}
+		}
+		
+		@Override
+		protected BindingSet getNextElement() throws QueryEvaluationException {
+			if (joinHashMap == null)
+				buildHashMap();
+			
+			if (joinedBindings.size() != 0)
+				return joinedBindings.remove();
+			
+			List<BindingSet> bindings = null;
+			BindingSet next = null;
+			while (bindings == null) {
+				if (!rightIter.hasNext())
+					return null;
+				next = rightIter.next();
+				bindings = joinHashMap.get(getJoinBindings(next));
+			}
+			
+			for (BindingSet binding : bindings) {
+				QueryBindingSet set = new QueryBindingSet(next);
+				set.addAll(binding);
+				joinedBindings.add(set);
+			}
+			return joinedBindings.remove();
+		}
+	}
+
+}
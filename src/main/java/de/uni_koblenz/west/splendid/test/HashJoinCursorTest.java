@@ -0,0 +1,190 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.evaluation.HashJoinCursor;
+import de.uni_koblenz.west.splendid.evaluation.HybridHashJoinCursor;
+import de.uni_koblenz.west.splendid.evaluation.SymmetricHashJoinCursor;
+
+/**
+ * Compares the results of the hash join implementations.
+ *
+ * @author Olaf Goerlitz
+ */
+public class HashJoinCursorTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterClass
+	public static void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testBlockingHashJoin() throws QueryEvaluationException {
+		List<String> result = toStrings(new HashJoinCursor(left(), right(), joinVars()));
+		Assert.assertEquals(expected(), result);
+	}
+
+	@Test
+	public void testBlockingHashJoinLargeInput() throws QueryEvaluationException {
+		// exceeds the initial hash table capacity
+		List<BindingSet> left = new ArrayList<BindingSet>();
+		List<BindingSet> right = new ArrayList<BindingSet>();
+		for (int i = 0; i < 5000; i++) {
+			left.add(bindings("s", "http://ex.com/p" + i, "name", "name" + i));
+			right.add(bindings("s", "http://ex.com/p" + (i * 2), "o", "http://ex.com/p" + i));
+		}
+		List<String> result = toStrings(new HashJoinCursor(iter(left), iter(right), joinVars()));
+		Assert.assertEquals(2500, result.size());
+		Assert.assertEquals(toStrings(new HybridHashJoinCursor(iter(left), iter(right), joinVars(), Long.MAX_VALUE)), result);
+	}
+
+	@Test
+	public void testSymmetricHashJoin() throws QueryEvaluationException {
+		List<String> result = toStrings(new SymmetricHashJoinCursor(left(), right(), joinVars(), executor));
+		Assert.assertEquals(expected(), result);
+	}
+
+	@Test
+	public void testSymmetricHashJoinWithoutFreeThreads() throws QueryEvaluationException {
+		// a single producer thread, the other join argument is read by the consumer
+		ExecutorService single = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		try {
+			Assert.assertEquals(expected(), toStrings(new SymmetricHashJoinCursor(left(), right(), joinVars(), single)));
+		} finally {
+			single.shutdownNow();
+		}
+
+		// no producer thread at all
+		Assert.assertEquals(expected(), toStrings(new SymmetricHashJoinCursor(left(), right(), joinVars(), single)));
+	}
+
+	@Test
+	public void testHybridHashJoinInMemory() throws QueryEvaluationException {
+		List<String> result = toStrings(new HybridHashJoinCursor(left(), right(), joinVars(), 1L << 20));
+		Assert.assertEquals(expected(), result);
+	}
+
+	@Test
+	public void testHybridHashJoinSpilled() throws QueryEvaluationException {
+		// budget is exceeded by a few bindings and forces repartitioning
+		List<String> result = toStrings(new HybridHashJoinCursor(left(), right(), joinVars(), 1000));
+		Assert.assertEquals(expected(), result);
+	}
+
+	@Test
+	public void testSymmetricHashJoinEmptyInput() throws QueryEvaluationException {
+		CloseableIteration<BindingSet, QueryEvaluationException> empty = iter(new ArrayList<BindingSet>());
+		Assert.assertTrue(toStrings(new SymmetricHashJoinCursor(empty, right(), joinVars(), executor)).isEmpty());
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * ?s ex:name ?name for persons 0..99
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> left() {
+		List<BindingSet> bindings = new ArrayList<BindingSet>();
+		for (int i = 0; i < 100; i++) {
+			bindings.add(bindings("s", "http://ex.com/p" + i, "name", "name" + i));
+		}
+		return iter(bindings);
+	}
+
+	/**
+	 * ?s ex:knows ?o for even persons, two friends each
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> right() {
+		List<BindingSet> bindings = new ArrayList<BindingSet>();
+		for (int i = 0; i < 200; i += 2) {
+			bindings.add(bindings("s", "http://ex.com/p" + i, "o", "http://ex.com/p" + (i + 1)));
+			bindings.add(bindings("s", "http://ex.com/p" + i, "o", "http://ex.com/p" + (i + 2)));
+		}
+		return iter(bindings);
+	}
+
+	private List<String> expected() {
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < 100; i += 2) {
+			result.add("http://ex.com/p" + i + " name" + i + " http://ex.com/p" + (i + 1));
+			result.add("http://ex.com/p" + i + " name" + i + " http://ex.com/p" + (i + 2));
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private Set<String> joinVars() {
+		Set<String> joinVars = new HashSet<String>();
+		joinVars.add("s");
+		return joinVars;
+	}
+
+	private BindingSet bindings(String var1, String iri, String var2, String value) {
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding(var1, vf.createIRI(iri));
+		bindings.addBinding(var2, value.startsWith("http:") ? vf.createIRI(value) : vf.createLiteral(value));
+		return bindings;
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> iter(List<BindingSet> bindings) {
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindings.iterator());
+	}
+
+	private List<String> toStrings(CloseableIteration<BindingSet, QueryEvaluationException> cursor) throws QueryEvaluationException {
+		List<String> result = new ArrayList<String>();
+		try {
+			while (cursor.hasNext()) {
+				BindingSet next = cursor.next();
+				result.add(next.getValue("s").stringValue() + " " + next.getValue("name").stringValue() + " " + next.getValue("o").stringValue());
+			}
+		} finally {
+			cursor.close();
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+}
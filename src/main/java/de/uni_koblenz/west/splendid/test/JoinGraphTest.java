@@ -0,0 +1,205 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.optimizer.JoinGraph;
+
+/**
+ * Tests the enumeration of connected join pairs.
+ *
+ * @author Olaf Goerlitz
+ */
+public class JoinGraphTest {
+
+	@Test
+	public void testChain() {
+		// (n^3 - n) / 6 pairs
+		Assert.assertEquals(20, countPairs(chain(5)));
+		Assert.assertEquals(165, countPairs(chain(10)));
+	}
+
+	@Test
+	public void testStar() {
+		// (n - 1) * 2^(n - 2) pairs
+		long[] neighbors = new long[6];
+		for (int i = 1; i < neighbors.length; i++) {
+			neighbors[0] |= 1L << i;
+			neighbors[i] = 1L;
+		}
+		Assert.assertEquals(80, countPairs(new JoinGraph(neighbors)));
+	}
+
+	@Test
+	public void testClique() {
+		// (3^n - 2^(n+1) + 1) / 2 pairs
+		Assert.assertEquals(90, countPairs(JoinGraph.complete(5)));
+	}
+
+	@Test
+	public void testMaxSize() {
+		JoinGraph graph = JoinGraph.complete(6);
+		JoinGraph.PairList[] all = graph.getConnectedPairs();
+		JoinGraph.PairList[] bounded = graph.getConnectedPairs(3);
+		Assert.assertEquals(4, bounded.length);
+		for (int n = 2; n < bounded.length; n++) {
+			Assert.assertEquals(all[n].size(), bounded[n].size());
+		}
+		Assert.assertEquals(25, countPairs(chain(10), 3));
+	}
+
+	@Test
+	public void testComponents() {
+		long[] neighbors = { 1L << 2, 0, 1L };
+		long[] components = new JoinGraph(neighbors).getComponents();
+		Assert.assertEquals(2, components.length);
+		Assert.assertEquals(5L, components[0]);
+		Assert.assertEquals(2L, components[1]);
+	}
+
+	@Test
+	public void testMergedPairs() {
+		// a cycle of 8 expressions with two chords
+		long[] neighbors = new long[8];
+		for (int i = 0; i < neighbors.length; i++) {
+			connect(neighbors, i, (i + 1) % neighbors.length);
+		}
+		connect(neighbors, 0, 4);
+		connect(neighbors, 2, 6);
+
+		// merge the expressions 2, 3 and 4 into a new first expression
+		long block = (1L << 2) | (1L << 3) | (1L << 4);
+		JoinGraph.PairList[] previous = new JoinGraph(neighbors).getConnectedPairs(4);
+		JoinGraph merged = merge(neighbors, block);
+		JoinGraph.PairList[] reused = merged.getConnectedPairs(previous, block, Long.MAX_VALUE);
+		JoinGraph.PairList[] expected = merged.getConnectedPairs(4);
+
+		Assert.assertEquals(expected.length, reused.length);
+		for (int n = 2; n < expected.length; n++) {
+			Assert.assertEquals(getPairs(expected[n]), getPairs(reused[n]));
+			Assert.assertEquals(expected[n].size(), reused[n].size());
+		}
+	}
+
+	@Test
+	public void testDeadline() {
+		// a star of 40 expressions has far too many connected pairs
+		long[] neighbors = new long[40];
+		for (int i = 1; i < neighbors.length; i++) {
+			connect(neighbors, 0, i);
+		}
+		JoinGraph graph = new JoinGraph(neighbors);
+		long start = System.currentTimeMillis();
+		Assert.assertNull(graph.getConnectedPairs(graph.size(), start + 50));
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		Assert.assertNotNull(graph.getConnectedPairs(2, start + 50));
+	}
+
+	// -------------------------------------------------------------------------
+
+	private void connect(long[] neighbors, int i, int j) {
+		neighbors[i] |= 1L << j;
+		neighbors[j] |= 1L << i;
+	}
+
+	/**
+	 * Creates the graph after merging a block of expressions into a new
+	 * first expression which is followed by the remaining expressions.
+	 */
+	private JoinGraph merge(long[] neighbors, long block) {
+		int[] position = new int[neighbors.length];
+		int count = 1;
+		for (int i = 0; i < neighbors.length; i++) {
+			position[i] = ((block & (1L << i)) != 0) ? 0 : count++;
+		}
+		long[] merged = new long[count];
+		for (int i = 0; i < neighbors.length; i++) {
+			for (int j = 0; j < neighbors.length; j++) {
+				if ((neighbors[i] & (1L << j)) != 0 && position[i] != position[j])
+					merged[position[i]] |= 1L << position[j];
+			}
+		}
+		return new JoinGraph(merged);
+	}
+
+	private Set<Set<Long>> getPairs(JoinGraph.PairList pairs) {
+		Set<Set<Long>> result = new HashSet<Set<Long>>();
+		for (int i = 0; i < pairs.size(); i++) {
+			Set<Long> pair = new HashSet<Long>();
+			pair.add(pairs.getLeft(i));
+			pair.add(pairs.getRight(i));
+			result.add(pair);
+		}
+		return result;
+	}
+
+	private JoinGraph chain(int size) {
+		long[] neighbors = new long[size];
+		for (int i = 0; i < size - 1; i++) {
+			neighbors[i] |= 1L << (i + 1);
+			neighbors[i + 1] |= 1L << i;
+		}
+		return new JoinGraph(neighbors);
+	}
+
+	/**
+	 * Counts the enumerated pairs and checks that each pair is valid and
+	 * that the sub plans of each pair have been created in lower levels.
+	 */
+	private int countPairs(JoinGraph graph) {
+		return countPairs(graph, graph.size());
+	}
+
+	private int countPairs(JoinGraph graph, int maxSize) {
+		Set<Long> created = new HashSet<Long>();
+		for (int i = 0; i < graph.size(); i++) {
+			created.add(1L << i);
+		}
+
+		Set<Set<Long>> pairs = new HashSet<Set<Long>>();
+		JoinGraph.PairList[] levels = graph.getConnectedPairs(maxSize);
+		for (int n = 2; n < levels.length; n++) {
+			Set<Long> level = new HashSet<Long>();
+			for (int i = 0; i < levels[n].size(); i++) {
+				long left = levels[n].getLeft(i);
+				long right = levels[n].getRight(i);
+				Assert.assertEquals(0, left & right);
+				Assert.assertEquals(n, Long.bitCount(left | right));
+				Assert.assertTrue((graph.getNeighbors(left) & right) != 0);
+				Assert.assertTrue(created.contains(left) && created.contains(right));
+
+				Set<Long> pair = new HashSet<Long>();
+				pair.add(left);
+				pair.add(right);
+				Assert.assertTrue("duplicate pair", pairs.add(pair));
+				level.add(left | right);
+			}
+			created.addAll(level);
+		}
+		return pairs.size();
+	}
+
+}
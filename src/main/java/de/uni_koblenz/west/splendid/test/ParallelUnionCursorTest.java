@@ -0,0 +1,133 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.evaluation.AsyncCursor;
+import de.uni_koblenz.west.splendid.evaluation.ParallelUnionCursor;
+
+/**
+ * Checks that the parallel union does not wait for slow arguments and
+ * reports the errors of its arguments.
+ *
+ * @author Olaf Goerlitz
+ */
+public class ParallelUnionCursorTest {
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterClass
+	public static void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testInterleavedResults() throws QueryEvaluationException {
+		final CountDownLatch fastDone = new CountDownLatch(100);
+
+		// the first argument blocks until all results of the second one are consumed
+		CloseableIteration<Integer, QueryEvaluationException> slow = new LookAheadIteration<Integer, QueryEvaluationException>() {
+			private int count;
+			@Override
+			protected Integer getNextElement() throws QueryEvaluationException {
+				try {
+					fastDone.await();
+				} catch (InterruptedException e) {
+					throw new QueryEvaluationException(e);
+				}
+				return count < 10 ? 1000 + count++ : null;
+			}
+		};
+		List<Integer> fastInput = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			fastInput.add(i);
+		}
+		CloseableIteration<Integer, QueryEvaluationException> fast = new CloseableIteratorIteration<Integer, QueryEvaluationException>(fastInput.iterator());
+
+		ParallelUnionCursor<Integer> union = new ParallelUnionCursor<Integer>(Arrays.asList(async(slow), async(fast)));
+		List<Integer> output = new ArrayList<Integer>();
+		try {
+			while (union.hasNext()) {
+				output.add(union.next());
+				fastDone.countDown();
+			}
+		} finally {
+			union.close();
+		}
+
+		Assert.assertEquals(fastInput, output.subList(0, 100));
+		Assert.assertEquals(110, output.size());
+		Collections.sort(output);
+		Assert.assertEquals(Integer.valueOf(1009), output.get(109));
+	}
+
+	@Test
+	public void testFailedArgument() {
+		List<Integer> input = Arrays.asList(1, 2, 3);
+		AsyncCursor<Integer> failed = new AsyncCursor<Integer>(executor, new Callable<CloseableIteration<Integer, QueryEvaluationException>>() {
+			@Override
+			public CloseableIteration<Integer, QueryEvaluationException> call() {
+				throw new QueryEvaluationException("source is not available");
+			}
+		});
+		ParallelUnionCursor<Integer> union = new ParallelUnionCursor<Integer>(Arrays.asList(
+				async(new CloseableIteratorIteration<Integer, QueryEvaluationException>(input.iterator())), failed));
+		try {
+			while (union.hasNext()) {
+				union.next();
+			}
+			Assert.fail("error of the union argument has not been reported");
+		} catch (QueryEvaluationException e) {
+			Assert.assertEquals("source is not available", e.getMessage());
+		} finally {
+			union.close();
+		}
+	}
+
+	/**
+	 * Prefetches the results of an iteration into a small buffer.
+	 */
+	private static AsyncCursor<Integer> async(final CloseableIteration<Integer, QueryEvaluationException> iter) {
+		return new AsyncCursor<Integer>(executor, new Callable<CloseableIteration<Integer, QueryEvaluationException>>() {
+			@Override
+			public CloseableIteration<Integer, QueryEvaluationException> call() {
+				return iter;
+			}
+		}, 8, 8, 4);
+	}
+
+}
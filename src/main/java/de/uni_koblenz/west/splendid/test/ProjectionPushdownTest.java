@@ -0,0 +1,111 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
+import org.eclipse.rdf4j.query.parser.sparql.SPARQLParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.model.MappedStatementPattern;
+import de.uni_koblenz.west.splendid.model.RemoteQuery;
+import de.uni_koblenz.west.splendid.optimizer.ProjectionPushdownOptimizer;
+
+/**
+ * Checks the variables which are projected by remote sub queries.
+ *
+ * @author Olaf Goerlitz
+ */
+public class ProjectionPushdownTest {
+
+	private static final String QUERY = "SELECT ?name WHERE { "
+			+ "?s <http://ex.com/name> ?name . "
+			+ "?s <http://ex.com/knows> ?f . "
+			+ "?f <http://ex.com/age> ?age . "
+			+ "?f <http://ex.com/mbox> ?mbox . "
+			+ "FILTER (?age > 30) }";
+
+	@Test
+	public void testPatternProjection() {
+		TupleExpr query = parse(QUERY);
+		List<MappedStatementPattern> patterns = mapPatterns(query);
+		new ProjectionPushdownOptimizer().optimize(query, null, null);
+
+		Assert.assertEquals(set("s", "name"), patterns.get(0).getProjectionVars());
+		Assert.assertEquals(set("s", "f"), patterns.get(1).getProjectionVars());
+		Assert.assertEquals(set("f", "age"), patterns.get(2).getProjectionVars());
+		Assert.assertEquals(set("f"), patterns.get(3).getProjectionVars());
+	}
+
+	@Test
+	public void testRemoteQueryProjection() {
+		TupleExpr query = parse(QUERY);
+		List<MappedStatementPattern> patterns = mapPatterns(query);
+
+		// group the first two patterns in one remote query
+		Join person = (Join) patterns.get(0).getParentNode();
+		RemoteQuery remote = new RemoteQuery(person.clone());
+		person.replaceWith(remote);
+
+		new ProjectionPushdownOptimizer().optimize(query, null, null);
+		Assert.assertEquals(set("name", "f"), remote.getProjectionVars());
+	}
+
+	@Test
+	public void testNoProjection() {
+		// without projection all variables are needed
+		StatementPattern pattern = StatementPatternCollector.process(parse(QUERY)).get(0);
+		MappedStatementPattern mapped = new MappedStatementPattern(pattern, new HashSet<Graph>());
+		new ProjectionPushdownOptimizer().optimize(mapped, null, null);
+		Assert.assertNull(mapped.getProjectionVars());
+	}
+
+	// -------------------------------------------------------------------------
+
+	private TupleExpr parse(String query) {
+		return new SPARQLParser().parseQuery(query, null).getTupleExpr();
+	}
+
+	private List<MappedStatementPattern> mapPatterns(TupleExpr query) {
+		List<MappedStatementPattern> mapped = new ArrayList<MappedStatementPattern>();
+		for (StatementPattern pattern : StatementPatternCollector.process(query)) {
+			MappedStatementPattern msp = new MappedStatementPattern(pattern, new HashSet<Graph>());
+			pattern.replaceWith(msp);
+			mapped.add(msp);
+		}
+		return mapped;
+	}
+
+	private Set<String> set(String... vars) {
+		return new HashSet<String>(Arrays.asList(vars));
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.List;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.optimizer.QueryPlanCache;
+
+/**
+ * Tests the reuse of query plans for queries with the same template.
+ *
+ * @author Olaf Goerlitz
+ */
+public class QueryPlanCacheTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private static final String FOAF = "http://xmlns.com/foaf/0.1/";
+
+	@Test
+	public void testSameTemplateReusesPlan() {
+		QueryPlanCache cache = new QueryPlanCache(QueryPlanCache.DEFAULT_CAPACITY, true);
+		TupleExpr alice = query("alice", "name");
+		cache.put(cache.getTemplate(alice), plan(alice));
+
+		// the plan of the other query uses its own constant
+		TupleExpr plan = cache.get(cache.getTemplate(query("bob", "name")));
+		Assert.assertNotNull(plan);
+		Var person = StatementPatternCollector.process(plan).get(1).getObjectVar();
+		Assert.assertEquals("_const_bob", person.getName());
+		Assert.assertEquals(vf.createIRI("http://example.org/bob"), person.getValue());
+
+		// the cached plan is not modified
+		person = StatementPatternCollector.process(cache.get(cache.getTemplate(alice))).get(1).getObjectVar();
+		Assert.assertEquals(vf.createIRI("http://example.org/alice"), person.getValue());
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testDifferentTemplates() {
+		QueryPlanCache cache = new QueryPlanCache(QueryPlanCache.DEFAULT_CAPACITY, true);
+		TupleExpr query = query("alice", "name");
+		cache.put(cache.getTemplate(query), plan(query));
+
+		// predicates and classes select the sources
+		Assert.assertNull(cache.get(cache.getTemplate(query("alice", "mbox"))));
+		Assert.assertNull(cache.get(cache.getTemplate(typeQuery(FOAF + "Person"))));
+
+		query = typeQuery(FOAF + "Person");
+		cache.put(cache.getTemplate(query), plan(query));
+		Assert.assertNotNull(cache.get(cache.getTemplate(typeQuery(FOAF + "Person"))));
+		Assert.assertNull(cache.get(cache.getTemplate(typeQuery(FOAF + "Agent"))));
+	}
+
+	@Test
+	public void testConstantsWithoutParameters() {
+		QueryPlanCache cache = new QueryPlanCache(QueryPlanCache.DEFAULT_CAPACITY, false);
+		TupleExpr query = query("alice", "name");
+		cache.put(cache.getTemplate(query), plan(query));
+
+		Assert.assertNotNull(cache.get(cache.getTemplate(query("alice", "name"))));
+		Assert.assertNull(cache.get(cache.getTemplate(query("bob", "name"))));
+	}
+
+	@Test
+	public void testStatisticsChange() {
+		QueryPlanCache cache = new QueryPlanCache(QueryPlanCache.DEFAULT_CAPACITY, true);
+		TupleExpr query = query("alice", "name");
+		QueryPlanCache.Template template = cache.getTemplate(query);
+		cache.put(template, plan(query));
+
+		cache.validate(1);
+		Assert.assertEquals(0, cache.size());
+
+		// plans based on outdated statistics are not cached
+		cache.put(template, plan(query));
+		Assert.assertEquals(0, cache.size());
+		Assert.assertNull(cache.get(cache.getTemplate(query)));
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * ?p foaf:knows <person> . ?p foaf:<property> ?o
+	 */
+	private TupleExpr query(String person, String property) {
+		return new Join(
+				new StatementPattern(new Var("p"), constant(FOAF + "knows"), constant("http://example.org/" + person)),
+				new StatementPattern(new Var("p"), constant(FOAF + property), new Var("o")));
+	}
+
+	/**
+	 * ?p rdf:type <type> . ?p foaf:name ?o
+	 */
+	private TupleExpr typeQuery(String type) {
+		return new Join(
+				new StatementPattern(new Var("p"), constant(RDF.TYPE.stringValue()), constant(type)),
+				new StatementPattern(new Var("p"), constant(FOAF + "name"), new Var("o")));
+	}
+
+	/**
+	 * Swaps the join arguments, like a join order optimization would do.
+	 */
+	private TupleExpr plan(TupleExpr query) {
+		List<StatementPattern> patterns = StatementPatternCollector.process(query.clone());
+		return new Join(patterns.get(1), patterns.get(0));
+	}
+
+	private Var constant(String iri) {
+		return new Var("_const_" + iri.substring(iri.lastIndexOf('/') + 1), vf.createIRI(iri));
+	}
+
+}
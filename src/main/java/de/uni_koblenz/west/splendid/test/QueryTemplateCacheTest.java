@@ -0,0 +1,128 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.evaluation.QueryTemplateCache;
+import de.uni_koblenz.west.splendid.helpers.SparqlPrinter;
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Tests the reuse of rendered sub queries.
+ *
+ * @author Olaf Goerlitz
+ */
+public class QueryTemplateCacheTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	@Test
+	public void testSameShapeIsRenderedOnce() {
+		QueryTemplateCache cache = new QueryTemplateCache();
+		String query = cache.get("SELECT *", pattern("name"), sources("http://a.org/sparql"));
+
+		// a different but structurally equal expression reuses the template
+		Assert.assertSame(query, cache.get("SELECT *", pattern("name"), sources("http://a.org/sparql")));
+		Assert.assertEquals(1, cache.size());
+		Assert.assertTrue(query.startsWith("SELECT * WHERE {{GRAPH <http://a.org/sparql> {"));
+	}
+
+	@Test
+	public void testDifferentShapes() {
+		QueryTemplateCache cache = new QueryTemplateCache();
+		String query = cache.get("SELECT *", pattern("name"), sources("http://a.org/sparql"));
+
+		Assert.assertFalse(query.equals(cache.get("SELECT *", pattern("mbox"), sources("http://a.org/sparql"))));
+		Assert.assertFalse(query.equals(cache.get("SELECT *", pattern("name"), sources("http://a.org/sparql", "http://b.org/sparql"))));
+		Assert.assertFalse(query.equals(cache.get("SELECT ?s", pattern("name"), sources("http://a.org/sparql"))));
+		Assert.assertEquals(4, cache.size());
+	}
+
+	@Test
+	public void testCapacity() {
+		QueryTemplateCache cache = new QueryTemplateCache(2);
+		for (int i = 0; i < 10; i++) {
+			cache.get("SELECT *", pattern("p" + i), sources("http://a.org/sparql"));
+		}
+		Assert.assertTrue(cache.size() <= 2);
+	}
+
+	@Test
+	public void testConcurrentPrinting() throws Exception {
+		final TupleExpr expr = new Join(pattern("name"), pattern("mbox"));
+		final String expected = SparqlPrinter.print(expr);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+			for (int t = 0; t < 8; t++) {
+				results.add(executor.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() {
+						List<String> printed = new ArrayList<String>();
+						for (int i = 0; i < 1000; i++) {
+							printed.add(SparqlPrinter.print(expr));
+						}
+						return printed;
+					}
+				}));
+			}
+			for (Future<List<String>> result : results) {
+				Assert.assertEquals(Collections.nCopies(1000, expected), result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	private TupleExpr pattern(String property) {
+		return new StatementPattern(new Var("s"), new Var("-const-" + property, vf.createIRI("http://xmlns.com/foaf/0.1/" + property)), new Var("o"));
+	}
+
+	private Set<Graph> sources(String... endpoints) {
+		Set<Graph> sources = new LinkedHashSet<Graph>();
+		for (String endpoint : endpoints) {
+			sources.add(new Graph(endpoint));
+		}
+		return sources;
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.MapBindingSet;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.uni_koblenz.west.splendid.helpers.QueryExecutor;
+import de.uni_koblenz.west.splendid.helpers.SparqlEndpointRegistry;
+import de.uni_koblenz.west.splendid.helpers.SparqlEndpointRepository;
+
+/**
+ * Checks the result format negotiation and the ASK timeout with a local
+ * SPARQL endpoint.
+ *
+ * @author Olaf Goerlitz
+ */
+public class SparqlEndpointRepositoryTest {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private static final String QUERY = "SELECT ?x WHERE { ?x ?p ?o }";
+
+	private HttpServer server;
+	private SparqlEndpointRegistry registry;
+	private String url;
+
+	// endpoint behavior
+	private TupleQueryResultFormat responseFormat;
+	private TupleQueryResultFormat brokenFormat;
+	private int brokenResponses;
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/sparql", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+		// never answers until the test has finished
+		server.createContext("/hung", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					release.await(30, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/sparql";
+		registry = new SparqlEndpointRegistry();
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		registry.shutDown();
+		server.stop(0);
+	}
+
+	@Test
+	public void testFallbackToNextFormat() {
+		brokenFormat = TupleQueryResultFormat.BINARY;
+		brokenResponses = Integer.MAX_VALUE;
+
+		Assert.assertEquals(2, QueryExecutor.getSize(QueryExecutor.eval(registry, url, QUERY, null)));
+		SparqlEndpointRepository repository = registry.getRepository(url);
+		Assert.assertTrue(repository.isNegotiated());
+		Assert.assertEquals(TupleQueryResultFormat.TSV, repository.getTupleQueryResultFormat());
+	}
+
+	@Test
+	public void testSingleErrorKeepsFormat() {
+		brokenFormat = TupleQueryResultFormat.BINARY;
+		brokenResponses = 1;
+
+		Assert.assertEquals(2, QueryExecutor.getSize(QueryExecutor.eval(registry, url, QUERY, null)));
+		SparqlEndpointRepository repository = registry.getRepository(url);
+		Assert.assertTrue(repository.isNegotiated());
+		Assert.assertEquals(TupleQueryResultFormat.BINARY, repository.getTupleQueryResultFormat());
+	}
+
+	@Test
+	public void testResponseFormatIsRecorded() {
+		// the endpoint ignores the preferred format
+		responseFormat = TupleQueryResultFormat.SPARQL;
+
+		Assert.assertEquals(2, QueryExecutor.getSize(QueryExecutor.eval(registry, url, QUERY, null)));
+		SparqlEndpointRepository repository = registry.getRepository(url);
+		Assert.assertTrue(repository.isNegotiated());
+		Assert.assertEquals(TupleQueryResultFormat.SPARQL, repository.getTupleQueryResultFormat());
+
+		// results of a later query are still processed
+		Assert.assertEquals(2, QueryExecutor.getSize(QueryExecutor.eval(registry, url, QUERY, null)));
+	}
+
+	@Test
+	public void testAskTimeout() {
+		String hung = "http://localhost:" + server.getAddress().getPort() + "/hung";
+		registry.getRepository(hung);
+
+		// the blocking read is aborted by the socket timeout
+		long start = System.currentTimeMillis();
+		try {
+			Assert.assertFalse(QueryExecutor.ask(registry, hung, "?s ?p ?o", null, 1000));
+		} catch (RuntimeException e) {
+			// the endpoint did not answer
+		}
+		long time = System.currentTimeMillis() - start;
+		Assert.assertTrue("ASK query waited " + time + "ms", time < 10000);
+	}
+
+	// -------------------------------------------------------------------------
+
+	private void respond(HttpExchange exchange) throws IOException {
+		TupleQueryResultFormat format = (responseFormat != null) ? responseFormat : getPreferredFormat(exchange);
+		exchange.getResponseHeaders().set("Content-Type", format.getDefaultMIMEType());
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			if (format == brokenFormat && brokenResponses > 0) {
+				brokenResponses--;
+				out.write("broken".getBytes(StandardCharsets.UTF_8));
+			} else {
+				List<BindingSet> bindings = new ArrayList<BindingSet>();
+				for (int i = 0; i < 2; i++) {
+					MapBindingSet set = new MapBindingSet();
+					set.addBinding("x", vf.createIRI("http://example.org/s" + i));
+					bindings.add(set);
+				}
+				QueryResultIO.writeTuple(new IteratingTupleQueryResult(Arrays.asList("x"), bindings), format, out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the format of the accepted MIME type without quality value.
+	 */
+	private static TupleQueryResultFormat getPreferredFormat(HttpExchange exchange) {
+		for (String accept : exchange.getRequestHeaders().get("Accept")) {
+			for (String type : accept.split(",")) {
+				if (type.contains("q="))
+					continue;
+				for (TupleQueryResultFormat format : Arrays.asList(TupleQueryResultFormat.BINARY, TupleQueryResultFormat.TSV,
+						TupleQueryResultFormat.SPARQL, TupleQueryResultFormat.JSON)) {
+					if (format.hasMIMEType(type.trim()))
+						return format;
+				}
+			}
+		}
+		return TupleQueryResultFormat.SPARQL;
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2011 Olaf Goerlitz
+ *
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed
+ * under the Aduna BSD-style license.
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.evaluation.BoundedSubQueryScheduler;
+import de.uni_koblenz.west.splendid.index.Graph;
+
+/**
+ * Checks the concurrency limits of the sub query scheduler.
+ *
+ * @author Olaf Goerlitz
+ */
+public class SubQuerySchedulerTest {
+
+	private static final int MAX_THREADS = 3;
+	private static final int MAX_PER_SOURCE = 2;
+
+	@Test
+	public void testConcurrencyLimits() throws Exception {
+		BoundedSubQueryScheduler scheduler = new BoundedSubQueryScheduler(MAX_THREADS, MAX_PER_SOURCE, 4, false);
+		try {
+			Graph[] sources = { new Graph("http://ex.com/sparql1"), new Graph("http://ex.com/sparql2") };
+			AtomicInteger[] running = { new AtomicInteger(), new AtomicInteger() };
+			AtomicInteger[] maxRunning = { new AtomicInteger(), new AtomicInteger() };
+			AtomicInteger total = new AtomicInteger();
+			AtomicInteger maxTotal = new AtomicInteger();
+
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 40; i++) {
+				int src = i % 2;
+				futures.add(scheduler.submit(sources[src], new Task(i, running[src], maxRunning[src], total, maxTotal)));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				Assert.assertEquals(Integer.valueOf(i), futures.get(i).get());
+			}
+
+			Assert.assertTrue(maxTotal.get() <= MAX_THREADS);
+			Assert.assertTrue(maxRunning[0].get() <= MAX_PER_SOURCE);
+			Assert.assertTrue(maxRunning[1].get() <= MAX_PER_SOURCE);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testShutdownCancelsPendingTasks() throws Exception {
+		BoundedSubQueryScheduler scheduler = new BoundedSubQueryScheduler(1, 1, 4, false);
+		Graph source = new Graph("http://ex.com/sparql1");
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		Future<Integer> running = scheduler.submit(source, new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				started.countDown();
+				release.await();
+				return 0;
+			}
+		});
+		started.await();
+		Future<Integer> pending = scheduler.submit(source, new Task(1, new AtomicInteger(), new AtomicInteger(), new AtomicInteger(), new AtomicInteger()));
+
+		scheduler.shutdown();
+		Assert.assertTrue(pending.isCancelled());
+
+		// tasks submitted after the shutdown are cancelled, too
+		Future<Integer> late = scheduler.submit(source, new Task(2, new AtomicInteger(), new AtomicInteger(), new AtomicInteger(), new AtomicInteger()));
+		Assert.assertTrue(late.isCancelled());
+		release.countDown();
+		Assert.assertFalse(running.isCancelled());
+	}
+
+	@Test(timeout = 5000)
+	public void testIdleSourcesAreRemoved() throws Exception {
+		BoundedSubQueryScheduler scheduler = new BoundedSubQueryScheduler(MAX_THREADS, MAX_PER_SOURCE, 4, false);
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 20; i++) {
+				Graph source = new Graph("http://ex.com/sparql" + i);
+				futures.add(scheduler.submit(source, new Task(i, new AtomicInteger(), new AtomicInteger(), new AtomicInteger(), new AtomicInteger())));
+			}
+			for (Future<Integer> future : futures) {
+				future.get();
+			}
+
+			// a task's source is released after its future has completed
+			while (scheduler.getSourceCount() != 0) {
+				Thread.sleep(1);
+			}
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	private static class Task implements Callable<Integer> {
+
+		private final int id;
+		private final AtomicInteger running, maxRunning, total, maxTotal;
+
+		Task(int id, AtomicInteger running, AtomicInteger maxRunning, AtomicInteger total, AtomicInteger maxTotal) {
+			this.id = id;
+			this.running = running;
+			this.maxRunning = maxRunning;
+			this.total = total;
+			this.maxTotal = maxTotal;
+		}
+
+		@Override
+		public Integer call() throws Exception {
+			update(maxRunning, running.incrementAndGet());
+			update(maxTotal, total.incrementAndGet());
+			Thread.sleep(5);
+			total.decrementAndGet();
+			running.decrementAndGet();
+			return id;
+		}
+
+		private void update(AtomicInteger max, int value) {
+			int current;
+			while ((current = max.get()) < value && !max.compareAndSet(current, value));
+		}
+	}
+
+}
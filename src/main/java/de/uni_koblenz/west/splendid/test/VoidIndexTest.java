@@ -0,0 +1,218 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.uni_koblenz.west.splendid.index.Graph;
+import de.uni_koblenz.west.splendid.statistics.VoidIndex;
+
+/**
+ * Tests the compiled voiD statistics and the statistics snapshot file.
+ *
+ * @author Olaf Goerlitz
+ */
+public class VoidIndexTest {
+
+	private static final String SOURCE1 = "http://a.org/sparql";
+	private static final String SOURCE2 = "http://b.org/sparql";
+
+	private static final String KNOWS = "http://xmlns.com/foaf/0.1/knows";
+	private static final String NAME = "http://xmlns.com/foaf/0.1/name";
+	private static final String PERSON = "http://xmlns.com/foaf/0.1/Person";
+	private static final String STRASSE = "http://ex.org/stra\u00DFe";
+
+	@Test
+	public void testLookup() {
+		check(create());
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		File file = File.createTempFile("stats", VoidIndex.FILE_EXTENSION);
+		try {
+			create().write(file);
+			check(VoidIndex.map(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testWithEndpoint() {
+		VoidIndex index = new VoidIndex.Builder().addPropertyPartition(SOURCE1, NAME, 10, 10, 8).build().withEndpoint(SOURCE2);
+		Assert.assertEquals(Arrays.asList(new Graph(SOURCE2)), index.getEndpoints());
+		Assert.assertEquals(10, index.getPredicateTriples(SOURCE2, NAME));
+		Assert.assertEquals(-1, index.getPredicateTriples(SOURCE1, NAME));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidSnapshot() throws IOException {
+		File file = File.createTempFile("stats", VoidIndex.FILE_EXTENSION);
+		try {
+			VoidIndex.map(file);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCorruptedSnapshot() throws IOException {
+		File file = File.createTempFile("stats", VoidIndex.FILE_EXTENSION);
+		try {
+			// negative predicate count, overlarge class count, name offset beyond the file
+			int[][] corruptions = { { 12, -1 }, { 16, Integer.MAX_VALUE / 2 }, { 36, Integer.MAX_VALUE - 8 } };
+			for (int[] corruption : corruptions) {
+				create().write(file);
+				RandomAccessFile out = new RandomAccessFile(file, "rw");
+				try {
+					out.seek(corruption[0]);
+					out.writeInt(corruption[1]);
+				} finally {
+					out.close();
+				}
+				try {
+					VoidIndex.map(file);
+					Assert.fail("corrupted snapshot was accepted: " + Arrays.toString(corruption));
+				} catch (IOException e) {
+					// expected
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCorruptedHashTable() throws IOException {
+		File file = File.createTempFile("stats", VoidIndex.FILE_EXTENSION);
+		try {
+			// all slots taken by the same ID, an ID missing from the table
+			int[] entries = { 1, 0 };
+			for (int entry : entries) {
+				create().write(file);
+				RandomAccessFile out = new RandomAccessFile(file, "rw");
+				try {
+					out.seek(8);
+					int endpoints = out.readInt();
+					int predicates = out.readInt();
+					out.seek(28);
+					int slots = out.readInt();
+					out.seek(36 + 4 * endpoints + 32 * endpoints + 4 * predicates);
+					for (int slot = 0; slot < slots; slot++) {
+						out.writeInt(entry);
+					}
+				} finally {
+					out.close();
+				}
+				try {
+					VoidIndex.map(file);
+					Assert.fail("corrupted hash table was accepted: " + entry);
+				} catch (IOException e) {
+					// expected
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReplaceMappedSnapshot() throws IOException {
+		File file = File.createTempFile("stats", VoidIndex.FILE_EXTENSION);
+		try {
+			create().write(file);
+			VoidIndex mapped = VoidIndex.map(file);
+
+			new VoidIndex.Builder().addDataset(SOURCE1, 1, 1, 1, 1).build().write(file);
+			check(mapped);
+			Assert.assertEquals(1, VoidIndex.map(file).getTriples(SOURCE1));
+
+			// no temporary files are left behind
+			String[] files = file.getParentFile().list();
+			for (String name : files) {
+				Assert.assertFalse(name.startsWith(file.getName()) && name.endsWith(".tmp"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	// -------------------------------------------------------------------------
+
+	private VoidIndex create() {
+		VoidIndex.Builder builder = new VoidIndex.Builder();
+		builder.addDataset(SOURCE1, 1000, 2, -1, 400);
+		builder.addDataset(SOURCE2, 5000, 3, 700, -1);
+		builder.addPropertyPartition(SOURCE1, KNOWS, 600, 100, 300);
+		builder.addPropertyPartition(SOURCE1, NAME, 400, 100, 100);
+		builder.addPropertyPartition(SOURCE2, NAME, 2000, 700, 650);
+		builder.addClassPartition(SOURCE2, PERSON, 700);
+		builder.addPropertyPartition(SOURCE2, STRASSE, 30, 20, 10);
+		// repeated counts do not replace the first ones
+		builder.addDataset(SOURCE1, 9999, 9, 500, 9999);
+		// many predicates exceed the initial hash table size
+		for (int i = 0; i < 1000; i++) {
+			builder.addPropertyPartition(SOURCE2, "http://ex.org/p" + i, i, -1, -1);
+		}
+		return builder.build();
+	}
+
+	private void check(VoidIndex index) {
+		Assert.assertEquals(Arrays.asList(new Graph(SOURCE1), new Graph(SOURCE2)), index.getEndpoints());
+
+		Assert.assertEquals(1000, index.getTriples(SOURCE1));
+		Assert.assertEquals(2, index.getProperties(SOURCE1));
+		Assert.assertEquals(500, index.getDistinctSubjects(SOURCE1));
+		Assert.assertEquals(400, index.getDistinctObjects(SOURCE1));
+		Assert.assertEquals(-1, index.getDistinctObjects(SOURCE2));
+		Assert.assertEquals(-1, index.getTriples("http://unknown.org/sparql"));
+
+		Assert.assertEquals(new HashSet<Graph>(Arrays.asList(new Graph(SOURCE1), new Graph(SOURCE2))), index.getPredicateSources(NAME));
+		Assert.assertEquals(new HashSet<Graph>(Arrays.asList(new Graph(SOURCE1))), index.getPredicateSources(KNOWS));
+		Assert.assertTrue(index.getPredicateSources(PERSON).isEmpty());
+		Assert.assertEquals(new HashSet<Graph>(Arrays.asList(new Graph(SOURCE2))), index.getClassSources(PERSON));
+
+		Assert.assertEquals(600, index.getPredicateTriples(SOURCE1, KNOWS));
+		Assert.assertEquals(-1, index.getPredicateTriples(SOURCE2, KNOWS));
+		Assert.assertEquals(700, index.getPredicateSubjects(SOURCE2, NAME));
+		Assert.assertEquals(650, index.getPredicateObjects(SOURCE2, NAME));
+		Assert.assertEquals(700, index.getClassEntities(SOURCE2, PERSON));
+		Assert.assertEquals(-1, index.getClassEntities(SOURCE1, PERSON));
+
+		// non-ASCII names
+		Assert.assertEquals(30, index.getPredicateTriples(SOURCE2, STRASSE));
+		Assert.assertEquals(-1, index.getPredicateTriples(SOURCE2, "http://ex.org/stra\u00DF"));
+		Assert.assertEquals(-1, index.getPredicateTriples(SOURCE2, "http://ex.org/strasse"));
+
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals(i, index.getPredicateTriples(SOURCE2, "http://ex.org/p" + i));
+		}
+	}
+
+}
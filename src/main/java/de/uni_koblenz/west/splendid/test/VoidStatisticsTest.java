@@ -43,7 +43,7 @@ import de.uni_koblenz.west.splendid.vocabulary.RDF;
 public class VoidStatisticsTest {
 	
 	private static final String[] STAT_FILES = {"void1.n3", "void2.n3"};
-	private static final VoidStatistics voidStats = VoidStatistics.getInstance();
+	private static final VoidStatistics voidStats = new VoidStatistics();
 	
 	private static URI RDF_TYPE;
 	private static URI FOAF_NAME;
@@ -0,0 +1,137 @@
+/*
+ * This file is part of RDF Federator.
+ * Copyright 2010 Olaf Goerlitz
+ * 
+ * RDF Federator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * RDF Federator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with RDF Federator.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * RDF Federator uses libraries from the OpenRDF Sesame Project licensed 
+ * under the Aduna BSD-style license. 
+ */
+package de.uni_koblenz.west.splendid.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+
+import de.uni_koblenz.west.splendid.statistics.VoidIndex;
+import de.uni_koblenz.west.splendid.statistics.VoidStatistics;
+
+/**
+ * Compiles a voiD description into a binary statistics snapshot which can
+ * be configured as voiD description of a federation member instead of the
+ * voiD file. Snapshots are memory-mapped when the federation starts.
+ * 
+ * @author Olaf Goerlitz
+ */
+public class VoidSnapshotWriter {
+	
+	static final String USAGE = "VoidSnapshotWriter [-h] [-e <endpoint>] -o <outfile> -i <infile>";
+	
+	static final Options OPTIONS    = new Options();
+	static final Option HELP        = new Option("h", "help", false, "print this message");
+	static final Option OUTPUT_FILE = Option.builder("o")
+			.hasArg().argName("outfile")
+			.desc("use given file for output (default: input file with " + VoidIndex.FILE_EXTENSION + " extension)")
+			.build();
+	
+	static final Option INPUT_FILE  = Option.builder("i")
+			.hasArg().argName("infile")
+			.desc("use given voiD file for input")
+			.build();
+	
+	static final Option ENDPOINT    = Option.builder("e")
+			.hasArg().argName("endpoint")
+			.desc("use given SPARQL endpoint instead of the one in the voiD file")
+			.build();
+	
+	static {
+		OPTIONS.addOption(HELP);
+		OPTIONS.addOption(OUTPUT_FILE);
+		OPTIONS.addOption(INPUT_FILE);
+		OPTIONS.addOption(ENDPOINT);
+	}
+	
+	public static void main(String[] args) {
+		
+		try {
+			// parse the command line arguments
+			CommandLineParser parser = new DefaultParser();
+			CommandLine cmd = parser.parse(OPTIONS, args);
+			
+			// print help message
+			if (cmd.hasOption("h") || cmd.hasOption("help")) {
+				new HelpFormatter().printHelp(USAGE, OPTIONS);
+				System.exit(0);
+			}
+			
+			// get input file (from option -i or the first remaining parameter)
+			String inputFile = cmd.getOptionValue("i");
+			if (inputFile == null && cmd.getArgs().length > 0)
+				inputFile = cmd.getArgs()[0];
+			if (inputFile == null) {
+				System.out.println("need an input file.");
+				new HelpFormatter().printUsage(new PrintWriter(System.out, true), 80, USAGE);
+				System.exit(1);
+			}
+			String outputFile = cmd.getOptionValue("o");
+			if (outputFile == null)
+				outputFile = inputFile.replaceFirst("\\.[^./\\\\]*$", "") + VoidIndex.FILE_EXTENSION;
+			
+			new VoidSnapshotWriter().process(new File(inputFile), new File(outputFile), cmd.getOptionValue("e"));
+			
+		} catch (ParseException exp) {
+			// print parse error and display usage message
+			System.out.println(exp.getMessage());
+			new HelpFormatter().printUsage(new PrintWriter(System.out, true), 80, USAGE, OPTIONS);
+		}
+	}
+	
+	// --------------------------------------------------------------
+	
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+	
+	public void process(File inputFile, File outputFile, String endpoint) {
+		
+		// sanity check, output file should not overwrite input file
+		if (inputFile.getAbsoluteFile().equals(outputFile.getAbsoluteFile())) {
+			System.err.println("output file must not overwrite input file");
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		
+		try {
+			IRI voidIRI = vf.createIRI(inputFile.toURI().toString());
+			VoidIndex index = VoidStatistics.compile(voidIRI, endpoint == null ? null : vf.createIRI(endpoint));
+			index.write(outputFile);
+			System.out.println("wrote statistics of " + index.getEndpoints() + " to " + outputFile);
+		} catch (IOException e) {
+			System.err.println("cannot write " + e.getMessage());
+		}
+		
+		System.out.println("time elapsed: " + (System.currentTimeMillis() - start) + " ms.");
+	}
+	
+}